@@ -0,0 +1,99 @@
+package com.atakmap.android.contacts.plugin;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.atakmap.android.contacts.plugin.adapter.ContactAdapter;
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the main thread time per frame while flinging through 10k contacts
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContactListScrollBenchmark {
+    
+    private static final String TAG = "ContactListScrollBenchmark";
+    
+    private static final int CONTACT_COUNT = 10_000;
+    
+    // Distance per frame of a fast fling, about 10000 dp per second at 60 fps
+    private static final int FLING_DP_PER_FRAME = 170;
+    
+    // Frame budget at 60 fps
+    private static final long FRAME_BUDGET_NANOS = 16_666_667L;
+    // Share of the budget the scroll step may take, the rest is left for drawing
+    private static final long SCROLL_BUDGET_NANOS = FRAME_BUDGET_NANOS / 2;
+    
+    @Test
+    public void testScrollFrameTimes() {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final List<Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            contacts.add(new Contact(i + 1, "Contact " + i, "+49 170 " + (1000000 + i), ""));
+        }
+        
+        final List<Long> frameNanos = new ArrayList<>();
+        final int[] lastPosition = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            RecyclerView recyclerView = new RecyclerView(context);
+            LinearLayoutManager layoutManager = new LinearLayoutManager(context);
+            recyclerView.setLayoutManager(layoutManager);
+            recyclerView.setHasFixedSize(true);
+            recyclerView.setAdapter(new ContactAdapter(context, contacts, null));
+            
+            // The list fills the screen
+            int width = context.getResources().getDisplayMetrics().widthPixels;
+            int height = context.getResources().getDisplayMetrics().heightPixels;
+            recyclerView.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+            recyclerView.layout(0, 0, width, height);
+            
+            // Every step creates, binds and lays out the rows that scroll into view, like one frame
+            int dy = (int) (FLING_DP_PER_FRAME * context.getResources().getDisplayMetrics().density);
+            while (layoutManager.findLastVisibleItemPosition() < CONTACT_COUNT - 1
+                    && frameNanos.size() < CONTACT_COUNT) {
+                long start = System.nanoTime();
+                recyclerView.scrollBy(0, dy);
+                frameNanos.add(System.nanoTime() - start);
+            }
+            lastPosition[0] = layoutManager.findLastVisibleItemPosition();
+        });
+        
+        long[] sorted = new long[frameNanos.size()];
+        int slowFrames = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = frameNanos.get(i);
+            if (sorted[i] > FRAME_BUDGET_NANOS) {
+                slowFrames++;
+            }
+        }
+        Arrays.sort(sorted);
+        String report = "Scrolled " + CONTACT_COUNT + " rows in " + sorted.length + " frames"
+                + ", p50 " + sorted[sorted.length / 2] / 1000 + " us"
+                + ", p90 " + sorted[sorted.length * 9 / 10] / 1000 + " us"
+                + ", p99 " + sorted[sorted.length * 99 / 100] / 1000 + " us"
+                + ", max " + sorted[sorted.length - 1] / 1000 + " us"
+                + ", over budget " + slowFrames;
+        Log.i(TAG, report);
+        
+        assertEquals(CONTACT_COUNT - 1, lastPosition[0]);
+        // Rows that bind within the budget leave the odd slow frame to the
+        // inflation of new view types and to garbage collection
+        assertTrue(report, sorted[sorted.length * 9 / 10] < SCROLL_BUDGET_NANOS);
+    }
+}
@@ -9,7 +9,8 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
     ContactManagerTest.class,
-    ContactsTest.class
+    ContactsTest.class,
+    ContactListScrollBenchmark.class
 })
 public class ContactsInstrumentationTestSuite {
     // This class remains empty, it is used only as a holder for the above annotations
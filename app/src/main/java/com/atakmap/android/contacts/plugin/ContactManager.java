@@ -10,7 +10,9 @@ import android.content.ContentValues;
 import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.Gravity;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
@@ -19,19 +21,57 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.ImageButton;
+import android.widget.ToggleButton;
 
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.atak.plugins.impl.PluginLayoutInflater;
 import com.atakmap.android.contacts.plugin.adapter.ContactAdapter;
+import com.atakmap.android.contacts.plugin.adapter.SectionIndex;
+import com.atakmap.android.contacts.plugin.cot.LivePositionIngestor;
+import com.atakmap.android.contacts.plugin.cot.LivePositionMonitor;
+import com.atakmap.android.contacts.plugin.db.ContactChangeBus;
+import com.atakmap.android.contacts.plugin.db.ContactChangeEvent;
 import com.atakmap.android.contacts.plugin.db.DatabaseHelper;
+import com.atakmap.android.contacts.plugin.map.ContactMapOverlay;
+import com.atakmap.android.contacts.plugin.map.CorridorQuery;
+import com.atakmap.android.contacts.plugin.map.Gazetteer;
+import com.atakmap.android.contacts.plugin.map.GeofenceMonitor;
+import com.atakmap.android.contacts.plugin.map.NearestContactIndex;
+import com.atakmap.android.contacts.plugin.map.ReverseGeocoder;
+import com.atakmap.android.contacts.plugin.map.TrackSimplifier;
 import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.android.contacts.plugin.model.ContactDistances;
+import com.atakmap.android.contacts.plugin.model.ContactOrder;
+import com.atakmap.android.contacts.plugin.model.CoordinateCache;
+import com.atakmap.android.contacts.plugin.model.CoordinateFormat;
+import com.atakmap.android.contacts.plugin.model.Coordinates;
+import com.atakmap.android.contacts.plugin.model.SortMode;
+import com.atakmap.android.contacts.plugin.model.Track;
 import com.atakmap.android.maps.MapView;
+import com.atakmap.android.maps.MapItem;
 import com.atakmap.android.maps.Marker;
+import com.atakmap.android.maps.PointMapItem;
+import com.atakmap.android.maps.Shape;
+import com.atakmap.android.util.ATAKUtilities;
+import com.atakmap.coremap.filesystem.FileSystemUtils;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 // New imports for location functionality
 import android.Manifest;
@@ -39,6 +79,8 @@ import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import com.atakmap.coremap.maps.coords.GeoPoint;
@@ -49,13 +91,85 @@ import com.atakmap.coremap.maps.coords.GeoPoint;
 public class ContactManager implements ContactAdapter.OnContactClickListener {
     private static final String TAG = "ContactManager";
     
+    // Rows inflated ahead of time, about two screens of the pane
+    private static final int ROW_POOL_SIZE = 20;
+    // Rows kept bound after they scrolled out
+    private static final int ROW_CACHE_SIZE = 8;
+    
+    // Contacts shown in the Nearby view
+    private static final int NEARBY_COUNT = 10;
+    private static final double NEARBY_MAX_METERS = 100000;
+    // Own movement in meters before the Nearby view is updated
+    private static final double NEARBY_MIN_MOVE = 10;
+    
+    // Map item type of ATAK routes
+    private static final String ROUTE_TYPE = "b-m-r";
+    
+    // Selectable corridor widths in meters on each side of a route
+    private static final double[] CORRIDOR_WIDTHS = { 500, 1000, 2000, 5000, 10000 };
+    
+    // Selectable proximity alert radii in meters, 0 is off
+    private static final double[] PROXIMITY_RADII = { 0, 100, 250, 500, 1000, 5000 };
+    
+    // Selectable track lengths in milliseconds, with their labels
+    private static final long[] TRACK_SPANS = { 60 * 60 * 1000L, 24 * 60 * 60 * 1000L,
+            7 * 24 * 60 * 60 * 1000L, 365 * 24 * 60 * 60 * 1000L };
+    private static final String[] TRACK_SPAN_LABELS = { "Last hour", "Last day", "Last week", "Last year" };
+    // Screen distance in pixels a simplified track may differ from the fixes
+    private static final double TRACK_TOLERANCE_PIXELS = 2;
+    
+    // Database loads, bulk deletes and exports run off the UI thread, one after the other
+    private static final Executor DB_EXECUTOR = Executors.newSingleThreadExecutor();
+    
     private final Context pluginContext;
     private DatabaseHelper dbHelper;
     private final View mainView;
     private RecyclerView recyclerView;
     private ContactAdapter adapter;
     private TextView emptyView;
+    private LinearLayout sectionRail;
+    private View selectionBar;
+    private TextView selectionCountView;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Applies committed database writes to the list
+    private final ContactChangeBus.Observer changeObserver = this::onContactsChanged;
+    // Markers of all located contacts, null without a map
+    private ContactMapOverlay mapOverlay;
+    // Proximity alerts of the watched contacts
+    private GeofenceMonitor geofences;
+    // Positions of the contacts that follow CoT events
+    private LivePositionMonitor livePositions;
+    // Contact locations described by their nearest place, from the bundled gazetteer
+    private final ReverseGeocoder placeNames = new ReverseGeocoder(this::loadGazetteer);
+    // Formatted coordinates of the contacts, for the detail dialog, the clipboard and exports
+    private final CoordinateCache coordinateText = new CoordinateCache();
+    private CoordinateFormat coordinateFormat = CoordinateFormat.MGRS;
+    
+    // Located contacts for the Nearby view
+    private final NearestContactIndex nearbyIndex = new NearestContactIndex();
+    private View nearbyPanel;
+    private TextView nearbyTitle;
+    private LinearLayout nearbyRows;
+    private boolean nearbyUpdatePosted;
+    // Own position of the shown Nearby list, null if unknown
+    private volatile GeoPoint nearbyOrigin;
+    
+    // Own position the distances in the list were measured from, null if unknown
+    private volatile double[] distanceOrigin;
+    // Followed while the pane exists, for the distances and the Nearby view
+    private Marker selfMarker;
+    private final PointMapItem.OnPointChangedListener selfMovedListener = this::onSelfMoved;
     private final List<Contact> contactList = new ArrayList<>();
+    // The same contacts by id, kept together with the list
+    private final Map<Long, Contact> contactsById = new HashMap<>();
+    private String currentQuery = "";
+    // A load result is only applied if no newer load was started and no local edit came in between
+    private int loadGeneration;
+    private int editCount;
+    // True while the first load from the database has not been applied yet
+    private boolean loading;
+    // True once a load from the database has been applied
+    private boolean loaded;
     
     // Temporary variables for location information during contact creation
     private Double tempLatitude;
@@ -93,6 +207,11 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
             this.dbHelper = DatabaseHelper.getInstance(context);
             
             setupViews();
+            dbHelper.getChangeBus().register(changeObserver);
+            setupMapOverlay();
+            geofences = new GeofenceMonitor(dbHelper, DB_EXECUTOR);
+            livePositions = new LivePositionMonitor(dbHelper, DB_EXECUTOR, this::onLivePositions);
+            restoreSettings();
             loadContacts();
         } catch (Exception e) {
             Log.e(TAG, "Error initializing ContactManager: " + e.getMessage(), e);
@@ -100,6 +219,70 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
         }
     }
     
+    /**
+     * Shows or hides the contact density heatmap and remembers the choice
+     */
+    private void toggleDensity() {
+        try {
+            if (mapOverlay == null) {
+                return;
+            }
+            boolean visible = !mapOverlay.isDensityVisible();
+            mapOverlay.setDensityVisible(visible);
+            final String value = visible ? "1" : "0";
+            DB_EXECUTOR.execute(() -> dbHelper.setMetadata(DatabaseHelper.META_DENSITY, value));
+            Toast.makeText(pluginContext, visible ? "Contact density shown" : "Contact density hidden",
+                    Toast.LENGTH_SHORT).show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error toggling contact density: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Reads the choices of the last session on the database executor and
+     * applies them on the UI thread. Queued before the first load, so the
+     * loaded contacts already meet the restored fences and sort mode.
+     */
+    private void restoreSettings() {
+        DB_EXECUTOR.execute(() -> {
+            final String density = dbHelper.getMetadata(DatabaseHelper.META_DENSITY);
+            final String sortMode = dbHelper.getMetadata(DatabaseHelper.META_SORT_MODE);
+            final String format = dbHelper.getMetadata(DatabaseHelper.META_COORDINATE_FORMAT);
+            final String fences = dbHelper.getMetadata(DatabaseHelper.META_GEOFENCES);
+            final String links = dbHelper.getMetadata(DatabaseHelper.META_LIVE_LINKS);
+            mainHandler.post(() -> {
+                try {
+                    if (mapOverlay != null) {
+                        mapOverlay.setDensityVisible("1".equals(density));
+                    }
+                    coordinateFormat = CoordinateFormat.fromName(format);
+                    geofences.restore(fences);
+                    livePositions.restore(links);
+                    if (adapter != null) {
+                        adapter.setSortMode(SortMode.fromName(sortMode));
+                        updateSectionRail();
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error restoring settings: " + e.getMessage(), e);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Adds the contacts overlay to the map, it is filled by the first load
+     */
+    private void setupMapOverlay() {
+        try {
+            MapView mapView = MapView.getMapView();
+            if (mapView != null) {
+                mapOverlay = new ContactMapOverlay(mapView, dbHelper);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting up map overlay: " + e.getMessage(), e);
+        }
+    }
+    
     /**
      * Initializes the UI elements
      */
@@ -110,11 +293,80 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
             emptyView = mainView.findViewById(R.id.tv_empty_view);
             EditText searchEditText = mainView.findViewById(R.id.et_search_contacts);
             ImageButton infoButton = mainView.findViewById(R.id.btn_info);
+            ToggleButton fuzzyButton = mainView.findViewById(R.id.btn_fuzzy_search);
+            ImageButton sortButton = mainView.findViewById(R.id.btn_sort);
+            sectionRail = mainView.findViewById(R.id.ll_section_rail);
+            selectionBar = mainView.findViewById(R.id.ll_selection_bar);
+            nearbyPanel = mainView.findViewById(R.id.ll_nearby);
+            nearbyTitle = mainView.findViewById(R.id.tv_nearby_title);
+            nearbyRows = mainView.findViewById(R.id.ll_nearby_rows);
+            selectionCountView = mainView.findViewById(R.id.tv_selection_count);
             
             // Set up RecyclerView
-            recyclerView.setLayoutManager(new LinearLayoutManager(pluginContext));
+            LinearLayoutManager layoutManager = new LinearLayoutManager(pluginContext);
+            // Rows of the next frame are bound between frames while flinging. The initial
+            // prefetch count is left alone, it only applies to lists nested in another
+            // scrolling list, the first screen comes from the preinflated pool instead
+            layoutManager.setItemPrefetchEnabled(true);
+            recyclerView.setLayoutManager(layoutManager);
+            // The list size never depends on its rows, so changes do not relayout the pane
+            recyclerView.setHasFixedSize(true);
+            // Rows that just left the screen stay bound for a quick scroll back
+            recyclerView.setItemViewCacheSize(ROW_CACHE_SIZE);
             adapter = new ContactAdapter(pluginContext, contactList, this);
             recyclerView.setAdapter(adapter);
+            // Inflate rows while the pane opens instead of during the first fling
+            adapter.preinflate(recyclerView, ROW_POOL_SIZE);
+            
+            // The sort mode chosen last time is restored with the other settings
+            updateDistanceOrigin();
+            trackSelfMarker();
+            
+            setupSectionRail();
+            setupSelectionBar();
+            
+            // Toggles the list of the contacts closest to the own position
+            ImageButton nearbyButton = mainView.findViewById(R.id.btn_nearby);
+            if (nearbyButton != null) {
+                nearbyButton.setOnClickListener(v -> setNearbyVisible(
+                        nearbyPanel != null && nearbyPanel.getVisibility() != View.VISIBLE));
+            }
+            
+            // Lists the contacts along a route on the map
+            ImageButton corridorButton = mainView.findViewById(R.id.btn_corridor);
+            if (corridorButton != null) {
+                corridorButton.setOnClickListener(v -> showCorridorRouteDialog());
+            }
+            
+            // Toggles the contact density heatmap on the map
+            ImageButton densityButton = mainView.findViewById(R.id.btn_density);
+            if (densityButton != null) {
+                densityButton.setOnClickListener(v -> toggleDensity());
+            }
+            
+            // List changes are applied asynchronously, so refresh the empty view when they land
+            adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onChanged() {
+                    updateContactsUI();
+                }
+                
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    updateContactsUI();
+                }
+                
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    updateContactsUI();
+                }
+                
+                @Override
+                public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                    // A sort mode applied in the background, the rail depends on it
+                    updateSectionRail();
+                }
+            });
             
             // Click listener for the "Add Contact" button
             addButton.setOnClickListener(v -> showAddContactDialog());
@@ -122,6 +374,16 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
             // Click listener for the Info button
             infoButton.setOnClickListener(v -> showInfoDialog());
             
+            // Toggle for typo-tolerant search, results are ranked while it is on
+            fuzzyButton.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                Log.d(TAG, "Fuzzy search " + (isChecked ? "enabled" : "disabled"));
+                adapter.setFuzzySearch(isChecked);
+                updateSectionRail();
+            });
+            
+            // Click listener for the sort button
+            sortButton.setOnClickListener(v -> showSortDialog());
+            
             // Set up TextWatcher for search
             searchEditText.addTextChangedListener(new android.text.TextWatcher() {
                 @Override
@@ -140,98 +402,719 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                     // Not needed
                 }
             });
-        } catch (Exception e) {
-            Log.e(TAG, "Error setting up views", e);
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting up views", e);
+        }
+    }
+    
+    /**
+     * Sets up the actions of the multi-select mode. The mode starts with a long press on a row.
+     */
+    private void setupSelectionBar() {
+        try {
+            adapter.setOnSelectionChangedListener(this::updateSelectionBar);
+            if (selectionBar == null) {
+                return;
+            }
+            Button selectAllButton = mainView.findViewById(R.id.btn_select_all);
+            Button mapButton = mainView.findViewById(R.id.btn_bulk_map);
+            Button exportButton = mainView.findViewById(R.id.btn_bulk_export);
+            Button deleteButton = mainView.findViewById(R.id.btn_bulk_delete);
+            ImageButton doneButton = mainView.findViewById(R.id.btn_selection_done);
+            
+            // Selects everything matching the current search, or deselects it if it is all selected
+            selectAllButton.setOnClickListener(v -> adapter.toggleSelectAllMatching());
+            mapButton.setOnClickListener(v -> showSelectedOnMap());
+            exportButton.setOnClickListener(v -> exportSelectedContacts());
+            deleteButton.setOnClickListener(v -> confirmDeleteSelectedContacts());
+            doneButton.setOnClickListener(v -> adapter.setSelectionMode(false));
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting up selection bar: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Shows the selection bar with the number of selected contacts while in multi-select mode
+     */
+    private void updateSelectionBar(int selectedCount, boolean selectionMode) {
+        if (selectionBar == null) {
+            return;
+        }
+        selectionBar.setVisibility(selectionMode ? View.VISIBLE : View.GONE);
+        if (selectionCountView != null) {
+            selectionCountView.setText(selectedCount + " selected");
+        }
+    }
+    
+    /**
+     * Asks for confirmation, then deletes all selected contacts in one database transaction
+     */
+    private void confirmDeleteSelectedContacts() {
+        try {
+            final List<Contact> selected = adapter.getSelectedContacts();
+            if (selected.isEmpty()) {
+                return;
+            }
+            Context mapViewContext = MapView.getMapView().getContext();
+            new AlertDialog.Builder(mapViewContext)
+                    .setTitle("Delete Contacts")
+                    .setMessage("Are you sure you want to delete " + selected.size() + " contacts?")
+                    .setPositiveButton("Delete", (dialogInterface, which) -> deleteContacts(selected))
+                    .setNegativeButton("Cancel", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error confirming bulk delete: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Deletes contacts on the database executor
+     * @param contacts Contacts to delete
+     */
+    private void deleteContacts(List<Contact> contacts) {
+        final long[] ids = new long[contacts.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = contacts.get(i).getId();
+        }
+        DB_EXECUTOR.execute(() -> {
+            final int deleted = dbHelper.deleteContacts(ids);
+            mainHandler.post(() -> {
+                try {
+                    Context mapViewContext = MapView.getMapView().getContext();
+                    if (deleted <= 0) {
+                        Toast.makeText(mapViewContext, "Failed to delete contacts", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    // The rows are removed by the change bus
+                    adapter.setSelectionMode(false);
+                    Toast.makeText(mapViewContext, deleted + " contacts deleted", Toast.LENGTH_SHORT).show();
+                } catch (Exception e) {
+                    Log.e(TAG, "Error applying deleted contacts: " + e.getMessage(), e);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Writes the selected contacts to a CSV file in the ATAK export directory
+     */
+    private void exportSelectedContacts() {
+        final List<Contact> selected = adapter.getSelectedContacts();
+        if (selected.isEmpty()) {
+            return;
+        }
+        DB_EXECUTOR.execute(() -> {
+            File file = null;
+            try {
+                File dir = FileSystemUtils.getItem("export");
+                if (!dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("Cannot create " + dir);
+                }
+                file = new File(dir, "contacts_" + System.currentTimeMillis() + ".csv");
+                // Converted in one batch, contacts exported before are not converted again
+                String[] mgrs = coordinateText.formatAll(selected, CoordinateFormat.MGRS);
+                try (Writer writer = new FileWriter(file)) {
+                    writer.write("name,phone,notes,latitude,longitude,mgrs\n");
+                    for (int i = 0; i < selected.size(); i++) {
+                        Contact contact = selected.get(i);
+                        writer.write(csvField(contact.getName()) + ","
+                                + csvField(contact.getPhoneNumber()) + ","
+                                + csvField(contact.getNotes()) + ","
+                                + (contact.hasLocation() ? contact.getLatitude() + "," + contact.getLongitude() : ",") + ","
+                                + csvField(mgrs[i])
+                                + "\n");
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error exporting contacts: " + e.getMessage(), e);
+                file = null;
+            }
+            final File exported = file;
+            mainHandler.post(() -> {
+                Context mapViewContext = MapView.getMapView().getContext();
+                if (exported != null) {
+                    Toast.makeText(mapViewContext, "Exported " + selected.size() + " contacts to "
+                            + exported.getAbsolutePath(), Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(mapViewContext, "Failed to export contacts", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+    }
+    
+    /**
+     * Quotes a CSV field, doubling the quotes inside
+     */
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    
+    /**
+     * Zooms the map to the markers of all selected contacts with a location
+     */
+    private void showSelectedOnMap() {
+        try {
+            MapView mapView = MapView.getMapView();
+            List<GeoPoint> points = new ArrayList<>();
+            for (Contact contact : adapter.getSelectedContacts()) {
+                if (contact.hasLocation()) {
+                    points.add(new GeoPoint(contact.getLatitude(), contact.getLongitude()));
+                }
+            }
+            if (points.isEmpty()) {
+                Toast.makeText(mapView.getContext(), "No selected contact has a location", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            if (points.size() == 1) {
+                mapView.getMapController().panTo(points.get(0), true);
+            } else {
+                ATAKUtilities.scaleToFit(mapView, points.toArray(new GeoPoint[0]),
+                        mapView.getWidth(), mapView.getHeight());
+            }
+            adapter.setSelectionMode(false);
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing contacts on map: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Fills the fast-scroll rail with letters. Touching or dragging over a
+     * letter jumps straight to its section without laying out the rows in between.
+     */
+    private void setupSectionRail() {
+        try {
+            if (sectionRail == null) {
+                return;
+            }
+            sectionRail.removeAllViews();
+            for (int i = 0; i < SectionIndex.LETTERS.length(); i++) {
+                TextView letterView = new TextView(pluginContext);
+                letterView.setText(String.valueOf(SectionIndex.LETTERS.charAt(i)));
+                letterView.setTextSize(11);
+                letterView.setTextColor(0xFFAAAAAA);
+                letterView.setGravity(Gravity.CENTER);
+                sectionRail.addView(letterView, new LinearLayout.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT, 0, 1f));
+            }
+            
+            sectionRail.setOnTouchListener((v, event) -> {
+                int action = event.getActionMasked();
+                if (action == MotionEvent.ACTION_UP) {
+                    v.performClick();
+                    return true;
+                }
+                if (action != MotionEvent.ACTION_DOWN && action != MotionEvent.ACTION_MOVE) {
+                    return false;
+                }
+                int count = SectionIndex.LETTERS.length();
+                int index = (int) (event.getY() * count / Math.max(1, v.getHeight()));
+                index = Math.max(0, Math.min(count - 1, index));
+                int position = adapter.getPositionForSection(SectionIndex.LETTERS.charAt(index));
+                if (position >= 0 && recyclerView.getLayoutManager() instanceof LinearLayoutManager) {
+                    // Jumps directly, unlike smooth scrolling which binds every row on the way
+                    ((LinearLayoutManager) recyclerView.getLayoutManager())
+                            .scrollToPositionWithOffset(position, 0);
+                }
+                return true;
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting up section rail", e);
+        }
+    }
+    
+    /**
+     * Shows the fast-scroll rail only while the list is in alphabetical order
+     */
+    private void updateSectionRail() {
+        if (sectionRail != null && adapter != null) {
+            sectionRail.setVisibility(adapter.hasSections() && adapter.getItemCount() > 0
+                    ? View.VISIBLE : View.GONE);
+        }
+    }
+    
+    /**
+     * Filters the contact list based on the search term
+     * @param query Search term
+     */
+    protected void filterContacts(String query) {
+        try {
+            if (adapter != null) {
+                Log.d(TAG, "Filtering contacts with query: '" + query + "'");
+                
+                currentQuery = query != null ? query : "";
+                
+                // Apply the filter to the adapter. The result is applied asynchronously
+                // and the data observer updates the empty view once it lands
+                adapter.filter(query);
+                
+                // Update the empty message right away in case the item count does not change
+                updateContactsUI();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error filtering contacts: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Revalidates the contact list against the database. The last known list
+     * stays on screen while the contacts are read on the database executor,
+     * then only the differences are applied on the UI thread.
+     */
+    public void loadContacts() {
+        try {
+            Log.d(TAG, "Loading contacts from database");
+            
+            // Safety check for adapter and recyclerView
+            if (adapter == null || recyclerView == null) {
+                Log.e(TAG, "Adapter or RecyclerView is null, cannot load contacts");
+                return;
+            }
+            
+            final int generation = ++loadGeneration;
+            if (generation == 1) {
+                loading = true;
+            }
+            final int edits = editCount;
+            final List<Contact> known = new ArrayList<>(contactList);
+            DB_EXECUTOR.execute(() -> {
+                List<Contact> contacts = dbHelper.getAllContacts();
+                if (contacts == null) {
+                    Log.e(TAG, "Database returned null contact list");
+                    // Keep the last known list, but stop showing the loading text
+                    mainHandler.post(() -> {
+                        if (generation == loadGeneration) {
+                            loading = false;
+                            updateContactsUI();
+                        }
+                    });
+                    return;
+                }
+                Log.d(TAG, "Retrieved " + contacts.size() + " contacts from database");
+                List<Contact> sorted = new ArrayList<>(contacts);
+                Collections.sort(sorted, ContactOrder.BY_NAME);
+                final boolean unchanged = isUnchanged(known, sorted);
+                mainHandler.post(() -> applyLoadedContacts(generation, edits, sorted, unchanged));
+            });
+            // Rate limited by the database, usually a single metadata read
+            DB_EXECUTOR.execute(() -> dbHelper.pruneTracks(System.currentTimeMillis()));
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading contacts: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Applies a list read by {@link #loadContacts()}, runs on the UI thread
+     * @param generation Generation of the load
+     * @param edits Number of local edits when the load was started
+     * @param loadedContacts Contacts from the database, sorted by name
+     * @param unchanged True if they equal the list that was shown when the load started
+     */
+    private void applyLoadedContacts(int generation, int edits, List<Contact> loadedContacts, boolean unchanged) {
+        try {
+            if (generation != loadGeneration) {
+                // A newer load is on its way
+                return;
+            }
+            if (edits != editCount) {
+                // The read may have missed a local edit, read the database again
+                Log.d(TAG, "Contact list changed while loading, revalidating");
+                loadContacts();
+                return;
+            }
+            loading = false;
+            loaded = true;
+            if (unchanged) {
+                Log.d(TAG, "Contact list is up to date");
+                updateContactsUI();
+                return;
+            }
+            
+            contactList.clear();
+            contactList.addAll(loadedContacts);
+            contactsById.clear();
+            for (Contact contact : contactList) {
+                contactsById.put(contact.getId(), contact);
+            }
+            
+            // The adapter diffs against the shown list and only notifies the changed rows
+            adapter.updateContacts(new ArrayList<>(contactList));
+            if (mapOverlay != null) {
+                mapOverlay.sync(contactList);
+            }
+            nearbyIndex.clear();
+            geofences.retain(contactList);
+            livePositions.retain(contactList);
+            coordinateText.retain(contactList);
+            for (Contact contact : contactList) {
+                indexLocation(contact);
+            }
+            
+            Log.d(TAG, "Updated adapter with " + contactList.size() + " contacts");
+            
+            // Force update UI based on current data
+            updateContactsUI();
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying loaded contacts: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * @return True if both lists hold the same contacts with the same fields in the same order
+     */
+    private static boolean isUnchanged(List<Contact> known, List<Contact> loaded) {
+        if (known.size() != loaded.size()) {
+            return false;
+        }
+        for (int i = 0; i < known.size(); i++) {
+            Contact a = known.get(i);
+            Contact b = loaded.get(i);
+            if (a.getId() != b.getId()
+                    || !TextUtils.equals(a.getName(), b.getName())
+                    || !TextUtils.equals(a.getPhoneNumber(), b.getPhoneNumber())
+                    || !TextUtils.equals(a.getNotes(), b.getNotes())
+                    || !Objects.equals(a.getLatitude(), b.getLatitude())
+                    || !Objects.equals(a.getLongitude(), b.getLongitude())) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Applies the writes of one frame to the list, only the changed rows are touched
+     * @param event Contacts inserted, updated and deleted since the last frame
+     */
+    private void onContactsChanged(ContactChangeEvent event) {
+        try {
+            editCount++;
+            if (event.isReload()) {
+                loadContacts();
+                return;
+            }
+            long[] deleted = event.getDeleted();
+            if (deleted.length == 1) {
+                Contact contact = contactsById.get(deleted[0]);
+                if (contact != null) {
+                    onContactDeleted(contact);
+                }
+            } else if (deleted.length > 1) {
+                for (long id : deleted) {
+                    Contact contact = contactsById.remove(id);
+                    if (contact != null) {
+                        ContactOrder.remove(contactList, contact);
+                    }
+                    nearbyIndex.remove(id);
+                    coordinateText.remove(id);
+                }
+                // The remaining proximity alerts and live links are saved once
+                geofences.removeContacts(deleted);
+                livePositions.removeContacts(deleted);
+                scheduleNearbyUpdate();
+                // One diff instead of a notification per row
+                if (adapter != null) {
+                    adapter.removeContacts(deleted);
+                }
+            }
+            
+            // Writers that only know the id leave the contact to be read from the database
+            List<Long> unknownInserted = new ArrayList<>();
+            List<Long> unknownUpdated = new ArrayList<>();
+            for (long id : event.getInserted()) {
+                Contact contact = event.getContact(id);
+                if (contact != null) {
+                    applyContact(contactsById.get(id), contact);
+                } else {
+                    unknownInserted.add(id);
+                }
+            }
+            for (long id : event.getUpdated()) {
+                Contact contact = event.getContact(id);
+                double[] position = event.getPosition(id);
+                if (contact != null) {
+                    applyContact(contactsById.get(id), contact);
+                } else if (position != null) {
+                    moveContact(id, position);
+                } else if (contactsById.containsKey(id)) {
+                    // A contact that is not shown arrives with the next load
+                    unknownUpdated.add(id);
+                }
+            }
+            if (!unknownInserted.isEmpty()) {
+                readChangedContacts(unknownInserted, true);
+            }
+            if (!unknownUpdated.isEmpty()) {
+                readChangedContacts(unknownUpdated, false);
+            }
+            updateContactsUI();
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying contact changes: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Reads changed contacts on the database executor and applies them on the UI thread
+     * @param ids Ids of the contacts
+     * @param inserted True for new contacts. Updates only replace contacts that
+     *                 are still shown, one deleted in the meantime stays deleted.
+     */
+    private void readChangedContacts(final List<Long> ids, final boolean inserted) {
+        DB_EXECUTOR.execute(() -> {
+            final List<Contact> contacts = new ArrayList<>(ids.size());
+            for (long id : ids) {
+                Contact contact = dbHelper.getContact(id);
+                if (contact != null) {
+                    contacts.add(contact);
+                }
+            }
+            mainHandler.post(() -> {
+                for (Contact contact : contacts) {
+                    Contact shown = contactsById.get(contact.getId());
+                    if (shown != null) {
+                        onContactUpdated(shown, contact);
+                    } else if (inserted) {
+                        onContactAdded(contact);
+                    }
+                }
+            });
+        });
+    }
+    
+    /**
+     * Moves a shown contact to the position it was given in the database,
+     * its other fields stay as they are shown now
+     */
+    private void moveContact(long id, double[] position) {
+        Contact shown = contactsById.get(id);
+        if (shown == null) {
+            return;
+        }
+        Contact moved = new Contact(shown);
+        moved.setLocation(position[0], position[1]);
+        onContactUpdated(shown, moved);
+    }
+    
+    /**
+     * Inserts a contact or replaces the shown one
+     * @param shown Contact with the same id that is shown now, or null
+     * @param contact Contact as it is in the database
+     */
+    private void applyContact(Contact shown, Contact contact) {
+        if (shown == null) {
+            onContactAdded(contact);
+        } else {
+            onContactUpdated(shown, contact);
+        }
+    }
+    
+    /**
+     * @return The shown contact with the given id, or null
+     */
+    private Contact findContact(long id) {
+        return contactsById.get(id);
+    }
+    
+    /**
+     * Keeps the position of a contact in the Nearby index and its proximity alert
+     */
+    private void indexLocation(Contact contact) {
+        if (contact.hasLocation()) {
+            nearbyIndex.put(contact.getId(), contact.getLatitude(), contact.getLongitude());
+        } else {
+            nearbyIndex.remove(contact.getId());
+        }
+        geofences.updateContact(contact);
+        scheduleNearbyUpdate();
+    }
+    
+    /**
+     * Shows or hides the Nearby view
+     */
+    private void setNearbyVisible(boolean visible) {
+        try {
+            if (nearbyPanel == null) {
+                return;
+            }
+            nearbyPanel.setVisibility(visible ? View.VISIBLE : View.GONE);
+            if (visible) {
+                nearbyOrigin = null;
+                scheduleNearbyUpdate();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error toggling nearby view: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Updates the Nearby view once for any number of changes
+     */
+    private void scheduleNearbyUpdate() {
+        if (nearbyUpdatePosted || nearbyPanel == null || nearbyPanel.getVisibility() != View.VISIBLE) {
+            return;
+        }
+        nearbyUpdatePosted = true;
+        mainHandler.post(this::updateNearby);
+    }
+    
+    /**
+     * Fills the Nearby view with the contacts closest to the self marker
+     */
+    private void updateNearby() {
+        nearbyUpdatePosted = false;
+        try {
+            if (nearbyRows == null || nearbyTitle == null) {
+                return;
+            }
+            GeoPoint self = selfMarker != null ? selfMarker.getPoint() : null;
+            if (self == null || !self.isValid()) {
+                nearbyOrigin = null;
+                nearbyTitle.setText("Nearby (own position unknown)");
+                nearbyRows.setVisibility(View.GONE);
+                return;
+            }
+            nearbyOrigin = self;
+            List<NearestContactIndex.Neighbor> neighbors = nearbyIndex.nearest(
+                    self.getLatitude(), self.getLongitude(), NEARBY_COUNT, NEARBY_MAX_METERS);
+            nearbyTitle.setText(neighbors.isEmpty() ? "Nearby (no contacts within 100 km)" : "Nearby");
+            nearbyRows.setVisibility(View.VISIBLE);
+            
+            // Rows are created once and reused
+            for (int i = 0; i < neighbors.size(); i++) {
+                TextView row;
+                if (i < nearbyRows.getChildCount()) {
+                    row = (TextView) nearbyRows.getChildAt(i);
+                } else {
+                    row = new TextView(pluginContext);
+                    row.setTextColor(0xFFFFFFFF);
+                    row.setMaxLines(1);
+                    row.setEllipsize(TextUtils.TruncateAt.END);
+                    row.setPadding(0, 6, 0, 6);
+                    row.setOnClickListener(v -> {
+                        Contact contact = findContact((Long) v.getTag());
+                        if (contact != null) {
+                            onContactClick(contact);
+                        }
+                    });
+                    nearbyRows.addView(row);
+                }
+                NearestContactIndex.Neighbor neighbor = neighbors.get(i);
+                Contact contact = findContact(neighbor.contactId);
+                row.setTag(neighbor.contactId);
+                row.setText((contact != null ? contact.getName() : "") + "  "
+                        + ContactDistances.formatDistance(neighbor.meters));
+                row.setVisibility(View.VISIBLE);
+            }
+            for (int i = neighbors.size(); i < nearbyRows.getChildCount(); i++) {
+                nearbyRows.getChildAt(i).setVisibility(View.GONE);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating nearby view: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Follows the self marker for the distances and the Nearby view
+     */
+    private void trackSelfMarker() {
+        if (selfMarker != null) {
+            selfMarker.removeOnPointChangedListener(selfMovedListener);
+        }
+        MapView mapView = MapView.getMapView();
+        selfMarker = mapView != null ? mapView.getSelfMarker() : null;
+        if (selfMarker != null) {
+            selfMarker.addOnPointChangedListener(selfMovedListener);
+        }
+    }
+    
+    /**
+     * Called for every position fix of the self marker, possibly off the UI
+     * thread. Only movements past a threshold post any work.
+     */
+    private void onSelfMoved(PointMapItem item) {
+        GeoPoint point = item.getPoint();
+        if (point == null || !point.isValid()) {
+            if (nearbyOrigin != null) {
+                mainHandler.post(this::scheduleNearbyUpdate);
+            }
+            return;
+        }
+        GeoPoint origin = nearbyOrigin;
+        if (origin == null || point.distanceTo(origin) >= NEARBY_MIN_MOVE) {
+            mainHandler.post(this::scheduleNearbyUpdate);
+        }
+        final double latitude = point.getLatitude();
+        final double longitude = point.getLongitude();
+        // Every fix, the geofences only look at the contacts nearby
+        mainHandler.post(() -> geofences.update(latitude, longitude));
+        if (ContactDistances.hasMoved(distanceOrigin, latitude, longitude)) {
+            distanceOrigin = new double[] { latitude, longitude };
+            mainHandler.post(() -> {
+                if (adapter != null) {
+                    adapter.updateDistances(latitude, longitude);
+                }
+            });
         }
     }
     
     /**
-     * Filters the contact list based on the search term
-     * @param query Search term
+     * Applies a contact that was added to the database to the in-memory lists
+     * @param contact New contact with its database id
      */
-    protected void filterContacts(String query) {
+    protected void onContactAdded(Contact contact) {
         try {
+            ContactOrder.insert(contactList, contact);
+            contactsById.put(contact.getId(), contact);
             if (adapter != null) {
-                Log.d(TAG, "Filtering contacts with query: '" + query + "'");
-                
-                // Apply the filter to the adapter
-                adapter.filter(query);
-                
-                boolean isSearching = query != null && !query.isEmpty();
-                int resultCount = adapter.getItemCount();
-                
-                Log.d(TAG, "Filter results: " + resultCount + " contacts found for query: '" + query + "'");
-                
-                // Show empty view if no search results were found
-                if (resultCount == 0) {
-                    // Hide the recyclerview
-                    if (recyclerView != null) {
-                        recyclerView.setVisibility(View.GONE);
-                    }
-                    
-                    // Show appropriate empty message
-                    if (emptyView != null) {
-                        if (isSearching) {
-                            // We're searching but found nothing
-                            emptyView.setText("No matching contacts found");
-                        } else {
-                            // No search, but no contacts
-                            emptyView.setText("No contacts added yet");
-                        }
-                        emptyView.setVisibility(View.VISIBLE);
-                    }
-                } else {
-                    // Show the recycler view with results
-                    if (recyclerView != null) {
-                        recyclerView.setVisibility(View.VISIBLE);
-                    }
-                    if (emptyView != null) {
-                        emptyView.setVisibility(View.GONE);
-                    }
-                }
+                adapter.insertContact(contact);
             }
+            indexLocation(contact);
+            updateContactsUI();
         } catch (Exception e) {
-            Log.e(TAG, "Error filtering contacts: " + e.getMessage(), e);
+            Log.e(TAG, "Error applying added contact: " + e.getMessage(), e);
         }
     }
     
     /**
-     * Loads all contacts from the database
+     * Applies a contact that was updated in the database to the in-memory lists
+     * @param previous Contact as it was displayed before the update
+     * @param updated Contact as it was saved
      */
-    public void loadContacts() {
+    protected void onContactUpdated(Contact previous, Contact updated) {
         try {
-            Log.d(TAG, "Loading contacts from database");
-            
-            // Safety check for adapter and recyclerView
-            if (adapter == null || recyclerView == null) {
-                Log.e(TAG, "Adapter or RecyclerView is null, cannot load contacts");
-                return;
+            ContactOrder.remove(contactList, previous);
+            ContactOrder.insert(contactList, updated);
+            contactsById.put(updated.getId(), updated);
+            if (adapter != null) {
+                adapter.replaceContact(updated);
             }
-            
-            // Get fresh contacts from database
-            contactList.clear();
-            List<Contact> contacts = dbHelper.getAllContacts();
-            
-            // Debug the contacts retrieved from database
-            if (contacts != null) {
-                Log.d(TAG, "Retrieved " + contacts.size() + " contacts from database");
-                for (Contact contact : contacts) {
-                    Log.d(TAG, "Contact from DB: " + contact.getId() + ", " + contact.getName() + ", " + contact.getPhoneNumber());
-                }
-                contactList.addAll(contacts);
-            } else {
-                Log.e(TAG, "Database returned null contact list");
+            indexLocation(updated);
+            updateContactsUI();
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying updated contact: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Applies a contact that was deleted from the database to the in-memory lists
+     * @param contact Deleted contact
+     */
+    protected void onContactDeleted(Contact contact) {
+        try {
+            ContactOrder.remove(contactList, contact);
+            contactsById.remove(contact.getId());
+            if (adapter != null) {
+                adapter.removeContact(contact.getId());
             }
-            
-            // Apply the data to the adapter
-            adapter.updateContacts(new ArrayList<>(contactList));
-            
-            Log.d(TAG, "Updated adapter with " + contactList.size() + " contacts");
-            
-            // Force update UI based on current data
+            nearbyIndex.remove(contact.getId());
+            geofences.removeContacts(contact.getId());
+            livePositions.removeContacts(contact.getId());
+            coordinateText.remove(contact.getId());
+            scheduleNearbyUpdate();
             updateContactsUI();
         } catch (Exception e) {
-            Log.e(TAG, "Error loading contacts: " + e.getMessage(), e);
+            Log.e(TAG, "Error applying deleted contact: " + e.getMessage(), e);
         }
     }
     
@@ -242,6 +1125,7 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
         try {
             // Check if we have any contacts to display
             boolean hasContacts = adapter != null && adapter.getItemCount() > 0;
+            updateSectionRail();
             Log.d(TAG, "Updating UI, has contacts: " + hasContacts + ", count: " + 
                   (adapter != null ? adapter.getItemCount() : 0));
             
@@ -260,7 +1144,16 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                     recyclerView.setVisibility(View.GONE);
                 }
                 if (emptyView != null) {
-                    emptyView.setText("No contacts added yet");
+                    if (loading) {
+                        // The first load from the database has not landed yet
+                        emptyView.setText("Loading contacts\u2026"); // …
+                    } else if (!currentQuery.isEmpty()) {
+                        // We're searching but found nothing
+                        emptyView.setText("No matching contacts found");
+                    } else {
+                        // No search, but no contacts
+                        emptyView.setText("No contacts added yet");
+                    }
                     emptyView.setVisibility(View.VISIBLE);
                 }
                 Log.d(TAG, "No contacts found, showing empty view");
@@ -322,7 +1215,7 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                     EditText notesEditText = dialogView.findViewById(R.id.et_contact_notes);
             Button cancelButton = dialogView.findViewById(R.id.btn_cancel);
             Button saveButton = dialogView.findViewById(R.id.btn_save);
-            
+                    
                     // Location UI elements
                     Button currentLocationButton = dialogView.findViewById(R.id.btn_current_location);
                     Button enterCoordinatesButton = dialogView.findViewById(R.id.btn_enter_coordinates);
@@ -450,7 +1343,7 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                     
                     // Cancel button
             cancelButton.setOnClickListener(v -> dialog.dismiss());
-            
+                    
                     // Save button
             saveButton.setOnClickListener(v -> {
                         try {
@@ -458,12 +1351,12 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                             String name = nameEditText.getText().toString().trim();
                             String phone = phoneEditText != null ? phoneEditText.getText().toString().trim() : "";
                             String notes = notesEditText != null ? notesEditText.getText().toString().trim() : "";
-                            
+                
                 if (TextUtils.isEmpty(name)) {
                                 Toast.makeText(dialogContext, "Please enter a name", Toast.LENGTH_SHORT).show();
                     return;
                 }
-                
+                            
                             // Debug output for location data
                             Log.d(TAG, "Saving contact with location data - tempLatitude: " + tempLatitude + ", tempLongitude: " + tempLongitude);
                             
@@ -483,9 +1376,7 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                             Log.d(TAG, "Database returned ID: " + id);
                             
                             if (id != -1) {
-                                // Reload contacts to update the list
-                                loadContacts();
-                                
+                                // The change bus inserts the new row into the sorted list
                                 dialog.dismiss();
                                 Toast.makeText(dialogContext, "Contact added successfully", Toast.LENGTH_SHORT).show();
                             } else {
@@ -674,30 +1565,29 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                             // Debug output for location data
                             Log.d(TAG, "Updating contact with location data - tempLatitude: " + tempLatitude + ", tempLongitude: " + tempLongitude);
                             
-                            // Update contact
-                            contact.setName(name);
-                            contact.setPhoneNumber(phone);
-                            contact.setNotes(notes);
+                            // Update a copy so the displayed contact stays untouched if saving fails
+                            Contact updatedContact = new Contact(contact);
+                            updatedContact.setName(name);
+                            updatedContact.setPhoneNumber(phone);
+                            updatedContact.setNotes(notes);
                             
                             // Update location
                             if (tempLatitude != null && tempLongitude != null) {
-                                contact.setLocation(tempLatitude, tempLongitude);
+                                updatedContact.setLocation(tempLatitude, tempLongitude);
                                 Log.d(TAG, "Setting location: " + tempLatitude + ", " + tempLongitude);
-                                Log.d(TAG, "Contact has location: " + contact.hasLocation());
+                                Log.d(TAG, "Contact has location: " + updatedContact.hasLocation());
                             } else {
-                                contact.clearLocation();
+                                updatedContact.clearLocation();
                                 Log.d(TAG, "Clearing location");
                             }
                             
                             // Update contact in database
-                            Log.d(TAG, "Updating contact in database: " + contact.toString());
-                            int result = dbHelper.updateContact(contact);
+                            Log.d(TAG, "Updating contact in database: " + updatedContact.toString());
+                            int result = dbHelper.updateContact(updatedContact);
                             Log.d(TAG, "Database update result: " + result);
                             
                             if (result > 0) {
-                                // Reload contacts to update the list
-                                        loadContacts();
-                                        
+                                // The change bus moves/rebinds the single row
                                         dialog.dismiss();
                                 Toast.makeText(dialogContext, "Contact updated successfully", Toast.LENGTH_SHORT).show();
                                     } else {
@@ -752,6 +1642,7 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                     // Reference UI elements
                     EditText latitudeEditText = dialogView.findViewById(R.id.et_dialog_latitude);
                     EditText longitudeEditText = dialogView.findViewById(R.id.et_dialog_longitude);
+                    EditText pastedEditText = dialogView.findViewById(R.id.et_dialog_coordinates);
                     Button cancelButton = dialogView.findViewById(R.id.btn_dialog_cancel);
                     Button saveButton = dialogView.findViewById(R.id.btn_dialog_save);
                     
@@ -764,6 +1655,19 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                     // Save button
                     saveButton.setOnClickListener(v -> {
                         try {
+                            // Pasted coordinates take precedence over the separate fields
+                            String pasted = pastedEditText != null ? pastedEditText.getText().toString().trim() : "";
+                            if (!pasted.isEmpty()) {
+                                double[] position = Coordinates.parse(pasted);
+                                if (position == null) {
+                                    Toast.makeText(dialogContext, "Unknown coordinate format, use MGRS, UTM, DMS or decimal degrees", Toast.LENGTH_SHORT).show();
+                                    return;
+                                }
+                                listener.onCoordinatesEntered(new Double[] { position[0], position[1] });
+                                dialog.dismiss();
+                                return;
+                            }
+                            
                             // Validate inputs
                             String latStr = latitudeEditText.getText().toString().trim();
                             String lonStr = longitudeEditText.getText().toString().trim();
@@ -899,8 +1803,13 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
             LinearLayout locationButtonsLayout = dialogView.findViewById(R.id.layout_location_buttons);
             TextView latitudeView = dialogView.findViewById(R.id.tv_detail_latitude);
             TextView longitudeView = dialogView.findViewById(R.id.tv_detail_longitude);
+            TextView placeView = dialogView.findViewById(R.id.tv_detail_place);
+            TextView coordinatesView = dialogView.findViewById(R.id.tv_detail_coordinates);
             Button showOnMapButton = dialogView.findViewById(R.id.btn_show_on_map);
             Button copyCoordinatesButton = dialogView.findViewById(R.id.btn_copy_coordinates);
+            Button proximityAlertButton = dialogView.findViewById(R.id.btn_proximity_alert);
+            Button trackButton = dialogView.findViewById(R.id.btn_track);
+            Button livePositionButton = dialogView.findViewById(R.id.btn_live_position);
             
             // Show contact data
             nameView.setText(contact.getName());
@@ -911,6 +1820,13 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
             builder.setView(dialogView);
             final AlertDialog dialog = builder.create();
             
+            // "Live Position" button, also for contacts that have no location yet
+            if (livePositionButton != null) {
+                livePositionButton.setVisibility(View.VISIBLE);
+                updateLivePositionButton(livePositionButton, contact);
+                livePositionButton.setOnClickListener(v -> showLivePositionDialog(contact, livePositionButton));
+            }
+            
             // Show location data if available
             if (contact.hasLocation()) {
                 locationLayout.setVisibility(View.VISIBLE);
@@ -918,6 +1834,21 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                 latitudeView.setText(String.valueOf(contact.getLatitude()));
                 longitudeView.setText(String.valueOf(contact.getLongitude()));
                 
+                // Coordinates in the chosen format, a click chooses another one
+                if (coordinatesView != null) {
+                    coordinatesView.setVisibility(View.VISIBLE);
+                    coordinatesView.setText(coordinateText.format(contact, coordinateFormat));
+                    coordinatesView.setOnClickListener(v -> showCoordinateFormatDialog(contact, coordinatesView));
+                }
+                
+                // Nearest place, shown once it is looked up
+                if (placeView != null) {
+                    placeNames.describe(contact.getLatitude(), contact.getLongitude(), description -> {
+                        placeView.setText(description);
+                        placeView.setVisibility(description != null ? View.VISIBLE : View.GONE);
+                    });
+                }
+                
                 // Long click on latitude to copy
                 latitudeView.setOnLongClickListener(v -> {
                     try {
@@ -954,8 +1885,8 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                 if (copyCoordinatesButton != null) {
                     copyCoordinatesButton.setOnClickListener(v -> {
                         try {
-                            // Copy both coordinates to clipboard
-                            String coordinates = contact.getLatitude() + "," + contact.getLongitude();
+                            // Copy both coordinates to clipboard, in the chosen format
+                            String coordinates = coordinateText.format(contact, coordinateFormat);
                             ClipboardManager clipboard = (ClipboardManager) mapViewContext.getSystemService(Context.CLIPBOARD_SERVICE);
                             ClipData clip = ClipData.newPlainText("Coordinates", coordinates);
                             clipboard.setPrimaryClip(clip);
@@ -968,6 +1899,23 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                     });
                 }
                 
+                // "Proximity Alert" button
+                if (proximityAlertButton != null) {
+                    proximityAlertButton.setVisibility(View.VISIBLE);
+                    updateProximityAlertButton(proximityAlertButton, contact);
+                    proximityAlertButton.setOnClickListener(v ->
+                            showProximityAlertDialog(contact, proximityAlertButton));
+                }
+                
+                // "Show Track" button
+                if (trackButton != null && mapOverlay != null) {
+                    trackButton.setVisibility(View.VISIBLE);
+                    trackButton.setOnClickListener(v -> {
+                        dialog.dismiss();
+                        showTrackDialog(contact);
+                    });
+                }
+                
                 // "Show on Map" button activate
                 showOnMapButton.setOnClickListener(v -> {
                     try {
@@ -986,33 +1934,7 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                             // Optional: Adjust zoom level
                             mapView.getMapController().zoomTo(0.0002, true);
                             
-                            // Create marker and add to map
-                            try {
-                                // Define marker type for contacts
-                                String markerType = "a-f-G-U-C"; // Civilian Contact
-                                
-                                // Generate marker ID (Contact ID + Name)
-                                String markerId = "contact_" + contact.getId() + "_" + 
-                                    contact.getName().replaceAll("\\s+", "_");
-                                
-                                // Create marker
-                                Marker marker = new Marker(point, markerType);
-                                marker.setMetaString("callsign", contact.getName());
-                                marker.setMetaString("type", "Contact");
-                                marker.setMetaString("how", "h-g-i-g-o");
-                                marker.setMetaBoolean("readiness", true);
-                                marker.setMetaString("remarks", contact.getNotes());
-                                marker.setMetaString("contact", contact.getPhoneNumber());
-                                marker.setMetaString("uid", markerId);
-                                marker.setTitle(contact.getName());
-                                
-                                // Add marker to map
-                                mapView.getRootGroup().addItem(marker);
-                                
-                                Log.d(TAG, "Added marker for contact: " + contact.getName());
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error creating marker: " + e.getMessage(), e);
-                            }
+                            // The marker is kept up to date by the contacts overlay
                             
                             // Close dialog
                             dialog.dismiss();
@@ -1099,9 +2021,7 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                                     // Show success message
                                     Toast.makeText(mapViewContext, "Contact deleted", Toast.LENGTH_SHORT).show();
                                     
-                                    // Reload contacts to refresh the list
-                                    loadContacts();
-                                    
+                                    // The change bus removes the single row
                                     // Close the dialog
                                     dialog.dismiss();
                                 } else {
@@ -1123,6 +2043,316 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
         }
     }
     
+    /**
+     * Lets the user pick one of the routes on the map for the corridor query
+     */
+    private void showCorridorRouteDialog() {
+        try {
+            MapView mapView = MapView.getMapView();
+            Context mapViewContext = mapView.getContext();
+            final List<Shape> routes = new ArrayList<>();
+            for (MapItem item : mapView.getRootGroup().deepFindItems("type", ROUTE_TYPE)) {
+                if (item instanceof Shape) {
+                    routes.add((Shape) item);
+                }
+            }
+            if (routes.isEmpty()) {
+                Toast.makeText(mapViewContext, "No routes on the map", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            String[] titles = new String[routes.size()];
+            for (int i = 0; i < titles.length; i++) {
+                titles[i] = routes.get(i).getTitle();
+            }
+            
+            new AlertDialog.Builder(mapViewContext)
+                    .setTitle("Contacts along route")
+                    .setItems(titles, (dialog, which) -> showCorridorWidthDialog(routes.get(which)))
+                    .setNegativeButton("Cancel", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing route dialog", e);
+        }
+    }
+    
+    /**
+     * Lets the user pick the width of the corridor, then lists the contacts inside it
+     */
+    private void showCorridorWidthDialog(final Shape route) {
+        try {
+            Context mapViewContext = MapView.getMapView().getContext();
+            String[] labels = new String[CORRIDOR_WIDTHS.length];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = "Within " + ContactDistances.formatDistance(CORRIDOR_WIDTHS[i]);
+            }
+            
+            new AlertDialog.Builder(mapViewContext)
+                    .setTitle(route.getTitle())
+                    .setItems(labels, (dialog, which) -> showCorridorContacts(route, CORRIDOR_WIDTHS[which]))
+                    .setNegativeButton("Cancel", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing corridor width dialog", e);
+        }
+    }
+    
+    /**
+     * Lists the contacts within a distance of a route in the order they are passed
+     */
+    private void showCorridorContacts(Shape route, double widthMeters) {
+        try {
+            Context mapViewContext = MapView.getMapView().getContext();
+            GeoPoint[] points = route.getPoints();
+            double[] latitudes = new double[points.length];
+            double[] longitudes = new double[points.length];
+            for (int i = 0; i < points.length; i++) {
+                latitudes[i] = points[i].getLatitude();
+                longitudes[i] = points[i].getLongitude();
+            }
+            // The Nearby index holds every located contact
+            List<CorridorQuery.Hit> hits = CorridorQuery.query(nearbyIndex, latitudes, longitudes, widthMeters);
+            
+            final List<Contact> contacts = new ArrayList<>(hits.size());
+            List<String> labels = new ArrayList<>(hits.size());
+            for (CorridorQuery.Hit hit : hits) {
+                Contact contact = findContact(hit.contactId);
+                if (contact != null) {
+                    contacts.add(contact);
+                    labels.add(contact.getName() + "  "
+                            + ContactDistances.formatDistance(hit.metersAlongRoute) + " along, "
+                            + ContactDistances.formatDistance(hit.metersFromRoute) + " off");
+                }
+            }
+            if (contacts.isEmpty()) {
+                Toast.makeText(mapViewContext, "No contacts within "
+                        + ContactDistances.formatDistance(widthMeters) + " of the route", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            
+            new AlertDialog.Builder(mapViewContext)
+                    .setTitle(contacts.size() + " contacts along " + route.getTitle())
+                    .setItems(labels.toArray(new String[0]), (dialog, which) -> onContactClick(contacts.get(which)))
+                    .setNegativeButton("Close", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error querying contacts along route", e);
+        }
+    }
+    
+    /**
+     * Shows the alert radius of a contact on the detail dialog's button
+     */
+    private void updateProximityAlertButton(Button button, Contact contact) {
+        double radius = geofences.getRadius(contact.getId());
+        button.setText("Proximity Alert: " + (radius > 0 ? ContactDistances.formatDistance(radius) : "Off"));
+    }
+    
+    /**
+     * Lets the user choose the radius around a contact that raises an alert when the own position enters it
+     */
+    private void showProximityAlertDialog(final Contact contact, final Button button) {
+        try {
+            Context mapViewContext = MapView.getMapView().getContext();
+            String[] labels = new String[PROXIMITY_RADII.length];
+            int checked = 0;
+            for (int i = 0; i < PROXIMITY_RADII.length; i++) {
+                labels[i] = PROXIMITY_RADII[i] > 0 ? ContactDistances.formatDistance(PROXIMITY_RADII[i]) : "Off";
+                if (PROXIMITY_RADII[i] == geofences.getRadius(contact.getId())) {
+                    checked = i;
+                }
+            }
+            
+            new AlertDialog.Builder(mapViewContext)
+                    .setTitle("Alert when near " + contact.getName())
+                    .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                        geofences.setRadius(contact, PROXIMITY_RADII[which]);
+                        updateProximityAlertButton(button, contact);
+                        dialog.dismiss();
+                    })
+                    .setNegativeButton("Cancel", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing proximity alert dialog", e);
+        }
+    }
+    
+    /**
+     * Shows the uid or callsign a contact follows on the detail dialog's button
+     */
+    private void updateLivePositionButton(Button button, Contact contact) {
+        String link = livePositions.getLink(contact.getId());
+        button.setText("Live Position: " + (link != null ? link : "Off"));
+    }
+    
+    /**
+     * Lets the user enter the CoT uid or callsign whose position a contact follows
+     */
+    private void showLivePositionDialog(final Contact contact, final Button button) {
+        try {
+            Context mapViewContext = MapView.getMapView().getContext();
+            final EditText input = new EditText(mapViewContext);
+            input.setSingleLine(true);
+            input.setHint("Callsign or UID");
+            String link = livePositions.getLink(contact.getId());
+            input.setText(link != null ? link : contact.getName());
+            input.setSelection(input.getText().length());
+            
+            new AlertDialog.Builder(mapViewContext)
+                    .setTitle("Follow live position")
+                    .setView(input)
+                    .setPositiveButton("Follow", (dialog, which) -> {
+                        livePositions.setLink(contact, input.getText().toString());
+                        updateLivePositionButton(button, contact);
+                    })
+                    .setNeutralButton("Off", (dialog, which) -> {
+                        livePositions.setLink(contact, null);
+                        updateLivePositionButton(button, contact);
+                    })
+                    .setNegativeButton("Cancel", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing live position dialog", e);
+        }
+    }
+    
+    /**
+     * Writes the latest live positions in one batch. The list, the map and
+     * the Nearby view follow through the change event of the write, which
+     * carries the new positions, so nothing is read back from the database.
+     */
+    private void onLivePositions(Collection<LivePositionIngestor.Fix> fixes) {
+        try {
+            // The fixes hold one position per contact
+            final long[] ids = new long[fixes.size()];
+            final double[] latitudes = new double[fixes.size()];
+            final double[] longitudes = new double[fixes.size()];
+            final long[] times = new long[fixes.size()];
+            int count = 0;
+            for (LivePositionIngestor.Fix fix : fixes) {
+                Contact contact = findContact(fix.contactId);
+                if (contact == null) {
+                    continue;
+                }
+                if (contact.hasLocation() && contact.getLatitude() == fix.latitude
+                        && contact.getLongitude() == fix.longitude) {
+                    continue;
+                }
+                ids[count] = fix.contactId;
+                latitudes[count] = fix.latitude;
+                longitudes[count] = fix.longitude;
+                times[count] = fix.time;
+                count++;
+            }
+            if (count > 0) {
+                final int moved = count;
+                DB_EXECUTOR.execute(() -> dbHelper.updateLocations(Arrays.copyOf(ids, moved),
+                        Arrays.copyOf(latitudes, moved), Arrays.copyOf(longitudes, moved), Arrays.copyOf(times, moved)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying live positions: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Lets the user choose the format of the coordinates in the detail dialog and on the clipboard
+     */
+    private void showCoordinateFormatDialog(final Contact contact, final TextView coordinatesView) {
+        try {
+            Context mapViewContext = MapView.getMapView().getContext();
+            final CoordinateFormat[] formats = CoordinateFormat.values();
+            String[] labels = new String[formats.length];
+            for (int i = 0; i < formats.length; i++) {
+                labels[i] = formats[i].getLabel();
+            }
+            
+            new AlertDialog.Builder(mapViewContext)
+                    .setTitle("Show coordinates as")
+                    .setSingleChoiceItems(labels, coordinateFormat.ordinal(), (dialog, which) -> {
+                        coordinateFormat = formats[which];
+                        coordinatesView.setText(coordinateText.format(contact, coordinateFormat));
+                        final String name = coordinateFormat.name();
+                        DB_EXECUTOR.execute(() -> dbHelper.setMetadata(DatabaseHelper.META_COORDINATE_FORMAT, name));
+                        dialog.dismiss();
+                    })
+                    .setNegativeButton("Cancel", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing coordinate format dialog", e);
+        }
+    }
+    
+    /**
+     * Opens the bundled gazetteer, compiling its index on the first start
+     * after an update. Called on the lookup thread of the place names.
+     */
+    private Gazetteer loadGazetteer() throws IOException {
+        File index = new File(FileSystemUtils.getItem("tools/contacts"), "gazetteer.idx");
+        InputStream source = pluginContext.getAssets().open("gazetteer.tsv");
+        try {
+            return Gazetteer.load(source, index);
+        } finally {
+            source.close();
+        }
+    }
+    
+    /**
+     * Lets the user choose how far back the track of a contact is shown, or hide it
+     */
+    private void showTrackDialog(final Contact contact) {
+        try {
+            final MapView mapView = MapView.getMapView();
+            final boolean shown = mapOverlay.isTrackShown(contact.getId());
+            String[] labels = Arrays.copyOf(TRACK_SPAN_LABELS, TRACK_SPAN_LABELS.length + (shown ? 1 : 0));
+            if (shown) {
+                labels[TRACK_SPAN_LABELS.length] = "Hide track";
+            }
+            new AlertDialog.Builder(mapView.getContext())
+                    .setTitle("Track of " + contact.getName())
+                    .setItems(labels, (dialog, which) -> {
+                        if (which < TRACK_SPANS.length) {
+                            showTrack(contact, TRACK_SPANS[which], mapView.getMapResolution());
+                        } else if (mapOverlay != null) {
+                            mapOverlay.hideTrack(contact.getId());
+                        }
+                    })
+                    .setNegativeButton("Cancel", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing track dialog", e);
+        }
+    }
+    
+    /**
+     * Reads and simplifies a track off the UI thread and shows it on the map
+     * @param span How far back the track goes in milliseconds
+     * @param metersPerPixel Map resolution the track is simplified for
+     */
+    private void showTrack(final Contact contact, final long span, final double metersPerPixel) {
+        final long now = System.currentTimeMillis();
+        DB_EXECUTOR.execute(() -> {
+            Track track = dbHelper.getTrack(contact.getId(), now - span, now);
+            double tolerance = Math.max(1.0, metersPerPixel * TRACK_TOLERANCE_PIXELS);
+            final Track simplified = track.subset(TrackSimplifier.simplify(
+                    track.latitudes(), track.longitudes(), track.size(), tolerance));
+            final int fixes = track.size();
+            mainHandler.post(() -> {
+                try {
+                    if (simplified.size() < 2) {
+                        Toast.makeText(pluginContext, "No track for " + contact.getName(), Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    if (mapOverlay != null) {
+                        mapOverlay.showTrack(contact.getName(), simplified);
+                        Toast.makeText(pluginContext, "Track of " + contact.getName() + ": " + fixes + " positions",
+                                Toast.LENGTH_SHORT).show();
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error showing track: " + e.getMessage(), e);
+                }
+            });
+        });
+    }
+    
     /**
      * Shows the Info dialog with version information and instructions
      */
@@ -1175,12 +2405,94 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
         }
     }
     
+    /**
+     * Shows the dialog to choose the sort mode of the list
+     */
+    private void showSortDialog() {
+        try {
+            Context mapViewContext = MapView.getMapView().getContext();
+            final SortMode[] modes = SortMode.values();
+            String[] labels = new String[modes.length];
+            for (int i = 0; i < modes.length; i++) {
+                labels[i] = modes[i].getLabel();
+            }
+            
+            new AlertDialog.Builder(mapViewContext)
+                    .setTitle("Sort contacts by")
+                    .setSingleChoiceItems(labels, adapter.getSortMode().ordinal(), (dialog, which) -> {
+                        SortMode mode = modes[which];
+                        Log.d(TAG, "Sorting contacts by " + mode);
+                        if (mode == SortMode.DISTANCE) {
+                            updateDistanceOrigin();
+                        }
+                        adapter.setSortMode(mode);
+                        updateSectionRail();
+                        DB_EXECUTOR.execute(() -> dbHelper.setMetadata(DatabaseHelper.META_SORT_MODE, mode.name()));
+                        dialog.dismiss();
+                    })
+                    .setNegativeButton("Cancel", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing sort dialog", e);
+        }
+    }
+    
+    /**
+     * Measures distances for the list and for sorting from the current position of the self marker
+     */
+    private void updateDistanceOrigin() {
+        try {
+            MapView mapView = MapView.getMapView();
+            Marker marker = mapView != null ? mapView.getSelfMarker() : null;
+            if (marker != null && marker.getPoint() != null && marker.getPoint().isValid()) {
+                GeoPoint point = marker.getPoint();
+                distanceOrigin = new double[] { point.getLatitude(), point.getLongitude() };
+                adapter.setDistanceOrigin(point.getLatitude(), point.getLongitude());
+            } else {
+                distanceOrigin = null;
+                adapter.setDistanceOrigin(null, null);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting position for distance sorting: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Records that a contact was opened, for sorting by recent use. The time
+     * is written in the background, the list follows through the change bus.
+     * @return The contact with the new time of use
+     */
+    private Contact markContactUsed(Contact contact) {
+        final Contact used = new Contact(contact);
+        used.setLastUsed(System.currentTimeMillis());
+        DB_EXECUTOR.execute(() -> dbHelper.markContactUsed(used.getId(), used.getLastUsed()));
+        return used;
+    }
+    
     /**
      * Implementation of ContactAdapter.OnContactClickListener Interface
      */
     @Override
     public void onContactClick(Contact contact) {
-        showContactDetailDialog(contact);
+        showContactDetailDialog(markContactUsed(contact));
+    }
+    
+    /**
+     * Stops following database changes and removes the map overlay, the manager is not used afterwards
+     */
+    public void dispose() {
+        dbHelper.getChangeBus().unregister(changeObserver);
+        setNearbyVisible(false);
+        if (selfMarker != null) {
+            selfMarker.removeOnPointChangedListener(selfMovedListener);
+            selfMarker = null;
+        }
+        if (mapOverlay != null) {
+            mapOverlay.dispose();
+            mapOverlay = null;
+        }
+        geofences.dispose();
+        livePositions.dispose();
     }
     
     /**
@@ -1201,15 +2513,9 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
                 Log.e(TAG, "Error resetting search field: " + e.getMessage(), e);
             }
             
-            // Clear contact list
-            contactList.clear();
-            
-            // Reload contacts (this will also reset adapter and UI)
-            loadContacts();
-            
-            // Ensure UI is updated
-            if (adapter != null) {
-                adapter.notifyDataSetChanged();
+            // The change bus keeps the list current, it is only read again if no load succeeded yet
+            if (!loaded) {
+                loadContacts();
             }
             
             // Update UI status
@@ -1218,7 +2524,7 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
             Log.e(TAG, "Error resetting ContactManager: " + e.getMessage(), e);
         }
     }
-
+    
     /**
      * Updates the empty view message based on current state
      */
@@ -1238,7 +2544,7 @@ public class ContactManager implements ContactAdapter.OnContactClickListener {
             }
         }
     }
-
+    
     /**
      * Setter for adapter (used for testing)
      */
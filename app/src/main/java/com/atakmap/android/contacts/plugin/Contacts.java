@@ -84,6 +84,16 @@ public class Contacts implements IPlugin {
             return;
 
         uiService.removeToolbarItem(toolbarItem);
+
+        // the pane is built again on the next start
+        if (contactManager != null) {
+            if (contactsPane != null && uiService.isPaneVisible(contactsPane)) {
+                uiService.hidePane(contactsPane);
+            }
+            contactManager.dispose();
+            contactManager = null;
+            contactsPane = null;
+        }
     }
 
     protected void showPane() {
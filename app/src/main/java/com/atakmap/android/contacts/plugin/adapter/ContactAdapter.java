@@ -1,20 +1,34 @@
 package com.atakmap.android.contacts.plugin.adapter;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.CheckBox;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.atakmap.android.contacts.plugin.R;
 import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.android.contacts.plugin.model.ContactDistances;
+import com.atakmap.android.contacts.plugin.model.ContactOrder;
+import com.atakmap.android.contacts.plugin.model.SortMode;
+import com.atakmap.android.contacts.plugin.search.ContactSearchEngine;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Adapter for displaying contacts in a RecyclerView
@@ -22,10 +36,63 @@ import java.util.List;
 public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ViewHolder> {
     
     private static final String TAG = "ContactAdapter";
-    private final List<Contact> contactList;
-    private List<Contact> contactListFull; // Original list for filtering
+    
+    // Partial-bind payload flags, see ContactDiffCallback
+    public static final int PAYLOAD_NAME = 1;
+    public static final int PAYLOAD_PHONE = 1 << 1;
+    // The query changed, the highlighted matches have to be rebuilt
+    public static final int PAYLOAD_HIGHLIGHT = 1 << 2;
+    // Only the selection state of the row changed
+    public static final int PAYLOAD_SELECTION = 1 << 3;
+    // Distance or bearing from the own position changed
+    public static final int PAYLOAD_DISTANCE = 1 << 4;
+    // Only shown as a snippet while searching
+    public static final int PAYLOAD_NOTES = 1 << 5;
+    
+    // Shared worker for list differences, keeps diffing off the UI thread
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+    // Background sorts of a mode before it is sorted on the UI thread, while the contacts keep changing
+    private static final int SORT_ATTEMPTS = 3;
+    
+    // Displayed list, sorted like the search engine's full list. It is only changed in
+    // place while no difference is being computed against it
+    private List<Contact> contactList;
+    private final ContactSearchEngine searchEngine = new ContactSearchEngine(); // Full list and cached search results
     private final Context context;
     private final OnContactClickListener listener;
+    private final Executor diffExecutor;
+    private final Executor mainExecutor;
+    private String currentQuery = "";
+    
+    // Row text measured ahead of binding
+    private final RowTextCache rowText = new RowTextCache();
+    
+    // Highlighted row text per contact and query
+    private final MatchHighlighter highlighter = new MatchHighlighter();
+    // Query generation of the highlights in the displayed rows
+    private int shownHighlightGeneration;
+    
+    // Multi-select mode, the selection is kept by contact id
+    private final ContactSelection selection = new ContactSelection();
+    private boolean selectionMode;
+    private OnSelectionChangedListener selectionListener;
+    
+    // First letters of the displayed list, kept in step with contactList
+    private SectionIndex sectionIndex = new SectionIndex();
+    
+    // Incremented for every submitted list so that outdated differences are dropped
+    private int listGeneration;
+    private int appliedGeneration;
+    
+    // Incremented for every new own position so that outdated distances are dropped
+    private int distanceGeneration;
+    
+    // Sort mode last asked for, it is applied once its order is sorted
+    private SortMode requestedSortMode = SortMode.NAME;
+    // Sort mode being sorted on the diff executor, null if none
+    private SortMode preparingSortMode;
+    // Rows that are bound to a contact, on screen or in the view cache
+    private final Set<ViewHolder> boundRows = new HashSet<>();
     
     /**
      * Interface for click events on contacts
@@ -34,36 +101,145 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ViewHold
         void onContactClick(Contact contact);
     }
     
+    /**
+     * Interface for changes of the multi-select mode
+     */
+    public interface OnSelectionChangedListener {
+        void onSelectionChanged(int selectedCount, boolean selectionMode);
+    }
+    
     /**
      * ViewHolder for a contact entry
      */
-    public static class ViewHolder extends RecyclerView.ViewHolder {
+    public static class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         public TextView nameTextView;
         public TextView phoneTextView;
+        public TextView notesTextView;
+        public TextView distanceTextView;
+        public CheckBox selectedCheckBox;
+        
+        // Contact and listener of the last bind, only used while the row is not bound by a ContactAdapter
+        private Contact boundContact;
+        private OnContactClickListener clickListener;
         
         public ViewHolder(View itemView) {
             super(itemView);
             nameTextView = itemView.findViewById(R.id.tv_contact_name);
             phoneTextView = itemView.findViewById(R.id.tv_contact_phone);
+            notesTextView = itemView.findViewById(R.id.tv_contact_notes);
+            distanceTextView = itemView.findViewById(R.id.tv_contact_distance);
+            selectedCheckBox = itemView.findViewById(R.id.cb_contact_selected);
+            
+            // One click listener for the entire entry, for the lifetime of the row
+            itemView.setOnClickListener(this);
+        }
+        
+        @Override
+        public void onClick(View v) {
+            RecyclerView.Adapter<?> adapter = getBindingAdapter();
+            if (adapter instanceof ContactAdapter) {
+                // Looked up at click time, the contact may have been edited or moved since the bind
+                ((ContactAdapter) adapter).onRowClick(getBindingAdapterPosition());
+            } else if (clickListener != null && boundContact != null) {
+                clickListener.onContactClick(boundContact);
+            }
         }
         
         public void bind(final Contact contact, final OnContactClickListener listener) {
+            if (contact != null) {
+                bind(contact, contact.getName(), contact.getPhoneNumber(), null, listener);
+            }
+        }
+        
+        /**
+         * Binds a contact with text that may have been measured ahead of time
+         * @param contact Contact to bind
+         * @param name Name, plain or precomputed
+         * @param phone Phone number, plain or precomputed
+         * @param notesSnippet Highlighted part of the notes, or null to hide the notes
+         * @param listener Click listener
+         */
+        public void bind(Contact contact, CharSequence name, CharSequence phone, CharSequence notesSnippet,
+                         OnContactClickListener listener) {
             try {
                 if (contact != null) {
-                    nameTextView.setText(contact.getName());
-                    phoneTextView.setText(contact.getPhoneNumber());
-                    
-                    // Click listener for the entire entry
-                    itemView.setOnClickListener(v -> {
-                        if (listener != null) {
-                            listener.onContactClick(contact);
-                        }
-                    });
+                    setRowText(nameTextView, name, contact.getName());
+                    setRowText(phoneTextView, phone, contact.getPhoneNumber());
+                    if (notesTextView != null) {
+                        notesTextView.setText(notesSnippet);
+                        notesTextView.setVisibility(notesSnippet != null ? View.VISIBLE : View.GONE);
+                    }
+                    bindDistance(contact);
+                    boundContact = contact;
+                    clickListener = listener;
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error binding contact to view", e);
             }
         }
+        
+        /**
+         * Shows the check box of the multi-select mode
+         * @param selectionMode True while contacts are being selected
+         * @param selected True if this row is selected
+         */
+        public void bindSelection(boolean selectionMode, boolean selected) {
+            itemView.setActivated(selectionMode && selected);
+            if (selectedCheckBox != null) {
+                selectedCheckBox.setVisibility(selectionMode ? View.VISIBLE : View.GONE);
+                selectedCheckBox.setChecked(selected);
+            }
+        }
+        
+        /**
+         * Shows the distance and bearing from the own position, hidden if either is unknown
+         */
+        public void bindDistance(Contact contact) {
+            if (distanceTextView != null) {
+                String distance = ContactDistances.format(contact);
+                distanceTextView.setText(distance);
+                distanceTextView.setVisibility(distance != null ? View.VISIBLE : View.GONE);
+            }
+        }
+        
+        /**
+         * Sets row text. Precomputed text is rejected if the text metrics of the
+         * view changed since it was measured, the plain text is used then.
+         */
+        private static void setRowText(TextView view, CharSequence text, String plain) {
+            try {
+                view.setText(text);
+            } catch (IllegalArgumentException e) {
+                view.setText(plain);
+            }
+        }
+        
+        /**
+         * Rebinds only the fields named by the payload flags
+         * @param contact Contact to bind
+         * @param changedFields Bit mask of PAYLOAD_* flags
+         * @param listener Click listener
+         */
+        public void bindChanges(final Contact contact, int changedFields, final OnContactClickListener listener) {
+            try {
+                if (contact != null) {
+                    if ((changedFields & PAYLOAD_NAME) != 0) {
+                        nameTextView.setText(contact.getName());
+                    }
+                    if ((changedFields & PAYLOAD_PHONE) != 0) {
+                        phoneTextView.setText(contact.getPhoneNumber());
+                    }
+                    if ((changedFields & PAYLOAD_DISTANCE) != 0) {
+                        bindDistance(contact);
+                    }
+                    
+                    boundContact = contact;
+                    clickListener = listener;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error binding contact changes to view", e);
+            }
+        }
     }
     
     /**
@@ -73,10 +249,27 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ViewHold
      * @param listener Click listener
      */
     public ContactAdapter(Context context, List<Contact> contactList, OnContactClickListener listener) {
+        this(context, contactList, listener, DIFF_EXECUTOR, new Handler(Looper.getMainLooper())::post);
+    }
+    
+    /**
+     * Constructor with explicit executors (used for testing)
+     * @param context Context
+     * @param contactList List of contacts to display
+     * @param listener Click listener
+     * @param diffExecutor Executor that computes list differences
+     * @param mainExecutor Executor that applies results on the UI thread
+     */
+    public ContactAdapter(Context context, List<Contact> contactList, OnContactClickListener listener,
+                          Executor diffExecutor, Executor mainExecutor) {
         this.context = context;
-        this.contactList = contactList;
-        this.contactListFull = new ArrayList<>(contactList); // Create a copy for filtering
+        this.searchEngine.setContacts(contactList); // The engine keeps its own sorted copy
+        this.contactList = new ArrayList<>(searchEngine.getContacts());
+        this.sectionIndex.rebuild(this.contactList);
         this.listener = listener;
+        this.diffExecutor = diffExecutor;
+        this.mainExecutor = mainExecutor;
+        setHasStableIds(true);
     }
     
     @NonNull
@@ -85,7 +278,11 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ViewHold
         try {
             View view = LayoutInflater.from(parent.getContext())
                     .inflate(R.layout.item_contact, parent, false);
-            return new ViewHolder(view);
+            final ViewHolder holder = new ViewHolder(view);
+            rowText.setTextViews(holder.nameTextView, holder.phoneTextView);
+            // Long press starts the multi-select mode with the pressed row
+            view.setOnLongClickListener(v -> onRowLongClick(holder));
+            return holder;
         } catch (Exception e) {
             Log.e(TAG, "Error creating ViewHolder", e);
             // Fallback for unexpected case
@@ -99,44 +296,130 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ViewHold
         try {
             if (position < contactList.size()) {
                 Contact contact = contactList.get(position);
-                holder.bind(contact, listener);
+                if (currentQuery.isEmpty()) {
+                    holder.bind(contact, rowText.name(contact), rowText.phone(contact), null, listener);
+                    // Measure the rows that come into view next
+                    rowText.prefetch(contactList, position);
+                } else {
+                    // Built once per query, later binds of the row reuse it
+                    MatchHighlighter.Row row = highlighter.get(contact, searchEngine, currentQuery);
+                    holder.bind(contact, row.name, row.phone, row.notesSnippet, listener);
+                }
+                holder.bindSelection(selectionMode, selection.isSelected(contact.getId()));
+                boundRows.add(holder);
             }
         } catch (Exception e) {
             Log.e(TAG, "Error binding ViewHolder at position " + position, e);
         }
     }
     
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        try {
+            if (position < contactList.size()) {
+                // Several changes may have been merged into one rebind
+                int changedFields = 0;
+                for (Object payload : payloads) {
+                    if (payload instanceof Integer) {
+                        changedFields |= (Integer) payload;
+                    }
+                }
+                // Neither needs the row text, not even while searching
+                if ((changedFields & ~(PAYLOAD_SELECTION | PAYLOAD_DISTANCE)) == 0) {
+                    Contact contact = contactList.get(position);
+                    if ((changedFields & PAYLOAD_SELECTION) != 0) {
+                        holder.bindSelection(selectionMode, selection.isSelected(contact.getId()));
+                    }
+                    if ((changedFields & PAYLOAD_DISTANCE) != 0) {
+                        holder.bindDistance(contact);
+                    }
+                    return;
+                }
+                // Highlighted rows are built as a whole
+                if ((changedFields & PAYLOAD_HIGHLIGHT) != 0 || !currentQuery.isEmpty()) {
+                    onBindViewHolder(holder, position);
+                    return;
+                }
+                holder.bindChanges(contactList.get(position), changedFields, listener);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error partially binding ViewHolder at position " + position, e);
+        }
+    }
+    
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        boundRows.remove(holder);
+    }
+    
+    @Override
+    public long getItemId(int position) {
+        return contactList.get(position).getId();
+    }
+    
     @Override
     public int getItemCount() {
         return contactList != null ? contactList.size() : 0;
     }
     
+    /**
+     * Inflates rows into the view pool of a RecyclerView while the main thread
+     * is idle, one row per idle pass. The first screen and the first fling then
+     * take rows from the pool instead of inflating them on demand.
+     * @param recyclerView RecyclerView this adapter is set on
+     * @param count Number of rows to inflate
+     */
+    public void preinflate(final RecyclerView recyclerView, final int count) {
+        final RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+        pool.setMaxRecycledViews(0, count);
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            private int created;
+            
+            @Override
+            public boolean queueIdle() {
+                try {
+                    // Stop once the pool is full or the adapter was replaced
+                    if (recyclerView.getAdapter() != ContactAdapter.this || pool.getRecycledViewCount(0) >= count) {
+                        return false;
+                    }
+                    pool.putRecycledView(createViewHolder(recyclerView, 0));
+                    return ++created < count;
+                } catch (Exception e) {
+                    Log.e(TAG, "Error inflating rows ahead of time", e);
+                    return false;
+                }
+            }
+        });
+    }
+    
     /**
      * Updates the contact list
      * @param newContacts New contact list
      */
     public void updateContacts(List<Contact> newContacts) {
         try {
-            Log.d(TAG, "Updating contacts list with " + 
+            Log.d(TAG, "Updating contacts list with " +
                  (newContacts != null ? newContacts.size() : 0) + " contacts");
             
-            // Clear both lists
-            contactList.clear();
-            
-            if (newContacts != null) {
-                contactList.addAll(newContacts);
-                
-                // Create a deep copy of the contacts list
-                contactListFull = new ArrayList<>(newContacts);
-                
-                Log.d(TAG, "Updated contactList with " + contactList.size() + 
-                     " items and contactListFull with " + contactListFull.size() + " items");
-            } else {
-                Log.d(TAG, "No contacts to update with, lists are now empty");
-                contactListFull = new ArrayList<>(); // Create empty list
+            // Hand a copy to the search engine, this also drops cached results
+            searchEngine.setContacts(newContacts);
+            
+            // Contacts that are gone cannot stay selected
+            if (!selection.isEmpty()) {
+                for (long id : selection.toIds()) {
+                    if (searchEngine.getContact(id) == null) {
+                        selection.deselect(id);
+                    }
+                }
+                notifySelectionChanged();
             }
             
-            notifyDataSetChanged();
+            // Keep the current search applied to the new data
+            submitList(searchEngine.search(currentQuery));
         } catch (Exception e) {
             Log.e(TAG, "Error updating contacts: " + e.getMessage(), e);
         }
@@ -148,44 +431,527 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ViewHold
      */
     public void filter(String query) {
         try {
-            Log.d(TAG, "Filtering contacts with query: '" + query + "', contactList size: " + 
-                 (contactList != null ? contactList.size() : 0) + 
-                 ", full list size: " + (contactListFull != null ? contactListFull.size() : 0));
-                
-            // Make sure we have the full list to filter from
-            if (contactListFull == null) {
-                Log.d(TAG, "contactListFull is null, creating new empty list");
-                contactListFull = new ArrayList<>();
-            }
-            
-            // Clear the current display list
-            contactList.clear();
-            
-            if (query == null || query.isEmpty()) {
-                // If search query is empty, show all contacts
-                contactList.addAll(contactListFull);
-                Log.d(TAG, "Search cleared, showing all " + contactList.size() + " contacts");
-            } else {
-                // Convert query to lowercase for case-insensitive search
-                String lowerCaseQuery = query.toLowerCase();
-                
-                // Filter contacts by name only (simplified)
-                for (Contact contact : contactListFull) {
-                    if (contact != null && contact.getName() != null && 
-                        contact.getName().toLowerCase().contains(lowerCaseQuery)) {
-                        contactList.add(contact);
-                        Log.d(TAG, "Adding contact to filtered results: " + contact.getName());
-                    }
-                }
-                
-                Log.d(TAG, "Filtered contacts list, showing " + contactList.size() + 
-                       " results for query: " + query);
+            Log.d(TAG, "Filtering contacts with query: '" + query + "', contactList size: " +
+                 (contactList != null ? contactList.size() : 0) +
+                 ", full list size: " + searchEngine.getContacts().size());
+            
+            String newQuery = query != null ? query : "";
+            if (!newQuery.equals(currentQuery)) {
+                highlighter.nextGeneration();
             }
+            currentQuery = newQuery;
             
-            // Always notify adapter that data has changed
-            notifyDataSetChanged();
+            // The engine narrows from an earlier result where possible
+            List<Contact> result = searchEngine.search(currentQuery);
+            
+            Log.d(TAG, "Filtered contacts list, " + result.size() +
+                   " results for query: " + query);
+            
+            submitList(result);
         } catch (Exception e) {
             Log.e(TAG, "Error filtering contacts: " + e.getMessage(), e);
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Adds a single contact that was inserted into the database.
+     * Only the affected row is notified.
+     * @param contact New contact with its database id
+     */
+    public void insertContact(Contact contact) {
+        try {
+            searchEngine.add(contact);
+            
+            // A difference is computed against the displayed list, recompute instead
+            if (mustResubmit()) {
+                submitList(searchEngine.search(currentQuery));
+                return;
+            }
+            
+            if (searchEngine.matches(contact, currentQuery)) {
+                int position = ContactOrder.insert(contactList, contact, searchEngine.getOrder());
+                sectionIndex.insert(position, SectionIndex.sectionOf(contact));
+                notifyItemInserted(position);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error inserting contact: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Replaces a single contact that was updated in the database.
+     * The row is moved if the name changed and rebound with a payload.
+     * @param contact Updated contact with the same id
+     */
+    public void replaceContact(Contact contact) {
+        try {
+            Contact previous = searchEngine.update(contact);
+            
+            if (mustResubmit()) {
+                submitList(searchEngine.search(currentQuery));
+                return;
+            }
+            
+            int oldPosition = previous != null
+                    ? ContactOrder.indexOf(contactList, previous, searchEngine.getOrder()) : -1;
+            boolean visible = searchEngine.matches(contact, currentQuery);
+            
+            if (oldPosition < 0) {
+                if (visible) {
+                    int position = ContactOrder.insert(contactList, contact, searchEngine.getOrder());
+                    sectionIndex.insert(position, SectionIndex.sectionOf(contact));
+                    notifyItemInserted(position);
+                }
+                return;
+            }
+            
+            contactList.remove(oldPosition);
+            sectionIndex.remove(oldPosition);
+            if (!visible) {
+                notifyItemRemoved(oldPosition);
+                return;
+            }
+            
+            int newPosition = ContactOrder.insert(contactList, contact, searchEngine.getOrder());
+            sectionIndex.insert(newPosition, SectionIndex.sectionOf(contact));
+            if (newPosition != oldPosition) {
+                notifyItemMoved(oldPosition, newPosition);
+            }
+            int changedFields = ContactDiffCallback.changedFields(previous, contact);
+            if (changedFields != 0) {
+                notifyItemChanged(newPosition, changedFields);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error replacing contact: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Removes a single contact that was deleted from the database
+     * @param contactId Id of the deleted contact
+     */
+    public void removeContact(long contactId) {
+        try {
+            Contact previous = searchEngine.remove(contactId);
+            if (previous == null) {
+                return;
+            }
+            if (selection.isSelected(contactId)) {
+                selection.deselect(contactId);
+                notifySelectionChanged();
+            }
+            
+            if (mustResubmit()) {
+                submitList(searchEngine.search(currentQuery));
+                return;
+            }
+            
+            int position = ContactOrder.remove(contactList, previous, searchEngine.getOrder());
+            if (position >= 0) {
+                sectionIndex.remove(position);
+                notifyItemRemoved(position);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error removing contact: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Removes contacts that were deleted from the database in one batch.
+     * The list is recomputed once instead of notifying every row.
+     * @param contactIds Ids of the deleted contacts
+     */
+    public void removeContacts(long[] contactIds) {
+        try {
+            for (long contactId : contactIds) {
+                searchEngine.remove(contactId);
+                selection.deselect(contactId);
+            }
+            submitList(searchEngine.search(currentQuery));
+            notifySelectionChanged();
+        } catch (Exception e) {
+            Log.e(TAG, "Error removing contacts: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Starts or ends the multi-select mode. Ending it clears the selection.
+     * @param enabled True to select contacts instead of opening them
+     */
+    public void setSelectionMode(boolean enabled) {
+        if (enabled == selectionMode) {
+            return;
+        }
+        selectionMode = enabled;
+        if (!enabled) {
+            selection.clear();
+        }
+        notifySelectionRows();
+        notifySelectionChanged();
+    }
+    
+    public boolean isSelectionMode() {
+        return selectionMode;
+    }
+    
+    /**
+     * Selects every contact matching the current search, or deselects
+     * them if all of them are selected already
+     */
+    public void toggleSelectAllMatching() {
+        List<Contact> matching = searchEngine.search(currentQuery);
+        if (selection.containsAll(matching)) {
+            for (Contact contact : matching) {
+                selection.deselect(contact.getId());
+            }
+        } else {
+            selection.selectAll(matching);
+        }
+        notifySelectionRows();
+        notifySelectionChanged();
+    }
+    
+    /**
+     * @return Number of selected contacts, including ones hidden by the current search
+     */
+    public int getSelectedCount() {
+        return selection.size();
+    }
+    
+    /**
+     * @return The selected contacts in id order
+     */
+    public List<Contact> getSelectedContacts() {
+        long[] ids = selection.toIds();
+        List<Contact> selected = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Contact contact = searchEngine.getContact(id);
+            if (contact != null) {
+                selected.add(contact);
+            }
+        }
+        return selected;
+    }
+    
+    public void setOnSelectionChangedListener(OnSelectionChangedListener selectionListener) {
+        this.selectionListener = selectionListener;
+    }
+    
+    /**
+     * Click on a row: opens the contact, or selects it in multi-select mode
+     * @param position Position of the row in the displayed list
+     */
+    private void onRowClick(int position) {
+        if (position == RecyclerView.NO_POSITION || position >= contactList.size()) {
+            return;
+        }
+        Contact contact = contactList.get(position);
+        if (!selectionMode) {
+            if (listener != null) {
+                listener.onContactClick(contact);
+            }
+            return;
+        }
+        selection.toggle(contact.getId());
+        notifyItemChanged(position, PAYLOAD_SELECTION);
+        notifySelectionChanged();
+    }
+    
+    /**
+     * Long press on a row: starts the multi-select mode with this contact selected
+     */
+    private boolean onRowLongClick(ViewHolder holder) {
+        int position = holder.getBindingAdapterPosition();
+        if (position == RecyclerView.NO_POSITION || position >= contactList.size()) {
+            return false;
+        }
+        if (!selectionMode) {
+            selection.select(contactList.get(position).getId());
+            setSelectionMode(true);
+        } else {
+            onRowClick(position);
+        }
+        return true;
+    }
+    
+    /**
+     * Rebinds the selection state of all rows, the text stays as it is
+     */
+    private void notifySelectionRows() {
+        if (!contactList.isEmpty()) {
+            notifyItemRangeChanged(0, contactList.size(), PAYLOAD_SELECTION);
+        }
+    }
+    
+    private void notifySelectionChanged() {
+        if (selectionListener != null) {
+            selectionListener.onSelectionChanged(selection.size(), selectionMode);
+        }
+    }
+    
+    /**
+     * Switches typo-tolerant search on or off and reapplies the current query
+     * @param fuzzy True for ranked fuzzy results
+     */
+    public void setFuzzySearch(boolean fuzzy) {
+        try {
+            searchEngine.setFuzzy(fuzzy);
+            highlighter.nextGeneration();
+            submitList(searchEngine.search(currentQuery));
+        } catch (Exception e) {
+            Log.e(TAG, "Error switching fuzzy search: " + e.getMessage(), e);
+        }
+    }
+    
+    public boolean isFuzzySearch() {
+        return searchEngine.isFuzzy();
+    }
+    
+    /**
+     * Changes the order of the list and reapplies the current query. If the
+     * order of the mode is not ready, it is sorted on the diff executor first
+     * and the list switches once it is done.
+     * @param mode New sort mode
+     */
+    public void setSortMode(SortMode mode) {
+        try {
+            requestedSortMode = mode;
+            if (searchEngine.hasOrder(mode)) {
+                applySortMode(mode);
+            } else {
+                prepareSortOrder(mode, 1);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error changing sort mode: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * @return The sort mode last asked for, the list may still be sorted by the previous one
+     */
+    public SortMode getSortMode() {
+        return requestedSortMode;
+    }
+    
+    private void applySortMode(SortMode mode) {
+        searchEngine.setSortMode(mode);
+        submitList(searchEngine.search(currentQuery));
+    }
+    
+    /**
+     * Sorts a snapshot of the contacts by a mode on the diff executor and
+     * hands it to the search engine, which keeps it up to date from then on.
+     * Only the requested mode is prepared, and the list switches to it once
+     * it is sorted.
+     * @param attempt Number of this attempt, from 1
+     */
+    private void prepareSortOrder(final SortMode mode, final int attempt) {
+        if (searchEngine.hasOrder(mode) || preparingSortMode == mode) {
+            return;
+        }
+        preparingSortMode = mode;
+        final ContactSearchEngine.SortSnapshot snapshot = searchEngine.snapshot();
+        diffExecutor.execute(() -> {
+            List<Contact> sorted = null;
+            try {
+                sorted = snapshot.sort(mode);
+            } catch (Exception e) {
+                Log.e(TAG, "Error sorting contacts by " + mode + ": " + e.getMessage(), e);
+            }
+            final List<Contact> result = sorted;
+            mainExecutor.execute(() -> {
+                if (preparingSortMode == mode) {
+                    preparingSortMode = null;
+                }
+                if (requestedSortMode != mode) {
+                    return;
+                }
+                if (result != null && searchEngine.setOrder(mode, result, snapshot.getVersion())) {
+                    applySortMode(mode);
+                } else if (result != null && attempt < SORT_ATTEMPTS) {
+                    // The contacts changed while sorting, sort the current ones again
+                    prepareSortOrder(mode, attempt + 1);
+                } else {
+                    // The engine sorts on the UI thread instead
+                    applySortMode(mode);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Sets the position distances are measured from
+     * @param latitude Latitude, or null if the position is unknown
+     * @param longitude Longitude, or null if the position is unknown
+     */
+    public void setDistanceOrigin(Double latitude, Double longitude) {
+        try {
+            // Distances still being computed for an earlier position are dropped
+            distanceGeneration++;
+            searchEngine.setDistanceOrigin(latitude, longitude);
+            if (searchEngine.getSortMode() == SortMode.DISTANCE) {
+                submitList(searchEngine.search(currentQuery));
+            }
+            notifyBoundRows(PAYLOAD_DISTANCE);
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting distance origin: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Measures distances from a new own position. They are computed for all
+     * contacts on the worker, then only the rows that are bound are rebound
+     * with a payload.
+     * @param latitude Latitude of the own position
+     * @param longitude Longitude of the own position
+     */
+    public void updateDistances(final double latitude, final double longitude) {
+        final int generation = ++distanceGeneration;
+        // The engine's list changes in place, the worker gets its own copy
+        final List<Contact> snapshot = new ArrayList<>(searchEngine.getContacts());
+        diffExecutor.execute(() -> {
+            try {
+                final ContactDistances distances = ContactDistances.compute(snapshot, latitude, longitude);
+                mainExecutor.execute(() -> {
+                    // A newer position was set in the meantime
+                    if (generation != distanceGeneration) {
+                        return;
+                    }
+                    if (searchEngine.setDistances(distances)) {
+                        submitList(searchEngine.search(currentQuery));
+                    }
+                    notifyBoundRows(PAYLOAD_DISTANCE);
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error computing distances: " + e.getMessage(), e);
+            }
+        });
+    }
+    
+    /**
+     * Rebinds the rows that are bound to a contact with a payload. Rows that
+     * are bound later read the current values anyway.
+     */
+    private void notifyBoundRows(Object payload) {
+        for (ViewHolder holder : boundRows) {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && position < contactList.size()) {
+                notifyItemChanged(position, payload);
+            }
+        }
+    }
+    
+    /**
+     * @return True if the displayed list is in alphabetical order, so that
+     * the section index can be used to jump to a letter
+     */
+    public boolean hasSections() {
+        return searchEngine.getSortMode() == SortMode.NAME && !searchEngine.isRanked(currentQuery);
+    }
+    
+    /**
+     * Looks up the position of a letter in the section table
+     * @param letter Letter of the fast-scroll rail
+     * @return Position of the first row of that letter or the next one, or -1
+     * if the list is empty or not in alphabetical order
+     */
+    public int getPositionForSection(char letter) {
+        return hasSections() ? sectionIndex.getPositionForLetter(letter) : -1;
+    }
+    
+    /**
+     * Single changes are only applied in place to a settled list in display order.
+     * Ranked fuzzy results are recomputed instead.
+     */
+    private boolean mustResubmit() {
+        return isDiffPending() || searchEngine.isRanked(currentQuery);
+    }
+    
+    /**
+     * @return True while a submitted list is still being compared in the background
+     */
+    private boolean isDiffPending() {
+        return appliedGeneration != listGeneration;
+    }
+    
+    /**
+     * Swaps in a new displayed list. The difference to the current list is
+     * computed on the diff executor and dispatched as fine-grained
+     * notifications on the main executor.
+     * @param newList New displayed list, must not be modified afterwards
+     */
+    private void submitList(final List<Contact> newList) {
+        final int generation = ++listGeneration;
+        final List<Contact> oldList = contactList;
+        
+        // Nothing to compare against, apply directly
+        if (oldList.isEmpty() || newList.isEmpty()) {
+            contactList = new ArrayList<>(newList);
+            sectionIndex.rebuild(contactList);
+            appliedGeneration = generation;
+            // All rows are bound fresh
+            shownHighlightGeneration = highlighter.getGeneration();
+            if (!oldList.isEmpty()) {
+                notifyItemRangeRemoved(0, oldList.size());
+            } else if (!newList.isEmpty()) {
+                notifyItemRangeInserted(0, newList.size());
+            }
+            return;
+        }
+        
+        diffExecutor.execute(() -> {
+            try {
+                final DiffUtil.DiffResult diffResult =
+                        DiffUtil.calculateDiff(new ContactDiffCallback(oldList, newList));
+                // Private copy that can later be changed in place
+                final List<Contact> appliedList = new ArrayList<>(newList);
+                final SectionIndex appliedSections = new SectionIndex();
+                appliedSections.rebuild(appliedList);
+                mainExecutor.execute(() -> {
+                    // A newer list was submitted in the meantime
+                    if (generation != listGeneration) {
+                        return;
+                    }
+                    contactList = appliedList;
+                    sectionIndex = appliedSections;
+                    appliedGeneration = generation;
+                    diffResult.dispatchUpdatesTo(this);
+                    refreshHighlights();
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error computing contact list difference: " + e.getMessage(), e);
+                // Without a diff the whole list is replaced, so the generations meet again
+                mainExecutor.execute(() -> {
+                    if (generation != listGeneration) {
+                        return;
+                    }
+                    contactList = new ArrayList<>(newList);
+                    sectionIndex.rebuild(contactList);
+                    appliedGeneration = generation;
+                    shownHighlightGeneration = highlighter.getGeneration();
+                    notifyDataSetChanged();
+                });
+            }
+        });
+    }
+    
+    /**
+     * Rows that stayed in the list across a query change still show the
+     * matches of the old query, rebind them once
+     */
+    private void refreshHighlights() {
+        if (shownHighlightGeneration != highlighter.getGeneration()) {
+            shownHighlightGeneration = highlighter.getGeneration();
+            if (!contactList.isEmpty()) {
+                notifyItemRangeChanged(0, contactList.size(), PAYLOAD_HIGHLIGHT);
+            }
+        }
+    }
+    
+    /**
+     * @return The currently displayed contacts
+     */
+    public List<Contact> getContacts() {
+        return Collections.unmodifiableList(contactList);
+    }
+}
@@ -0,0 +1,76 @@
+package com.atakmap.android.contacts.plugin.adapter;
+
+import android.text.TextUtils;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Computes the difference between two contact lists.
+ * Items are matched by contact id and compared by their displayed content.
+ */
+class ContactDiffCallback extends DiffUtil.Callback {
+    
+    private final List<Contact> oldList;
+    private final List<Contact> newList;
+    
+    ContactDiffCallback(List<Contact> oldList, List<Contact> newList) {
+        this.oldList = oldList;
+        this.newList = newList;
+    }
+    
+    @Override
+    public int getOldListSize() {
+        return oldList.size();
+    }
+    
+    @Override
+    public int getNewListSize() {
+        return newList.size();
+    }
+    
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return oldList.get(oldItemPosition).getId() == newList.get(newItemPosition).getId();
+    }
+    
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return changedFields(oldList.get(oldItemPosition), newList.get(newItemPosition)) == 0;
+    }
+    
+    @Override
+    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+        int changed = changedFields(oldList.get(oldItemPosition), newList.get(newItemPosition));
+        // Returning null makes RecyclerView do a full rebind
+        return changed != 0 ? changed : null;
+    }
+    
+    /**
+     * @return Bit mask of the ContactAdapter.PAYLOAD_* flags for the fields that differ
+     */
+    static int changedFields(Contact oldContact, Contact newContact) {
+        if (oldContact == newContact) {
+            return 0;
+        }
+        int changed = 0;
+        if (!TextUtils.equals(oldContact.getName(), newContact.getName())) {
+            changed |= ContactAdapter.PAYLOAD_NAME;
+        }
+        if (!TextUtils.equals(oldContact.getPhoneNumber(), newContact.getPhoneNumber())) {
+            changed |= ContactAdapter.PAYLOAD_PHONE;
+        }
+        if (!TextUtils.equals(oldContact.getNotes(), newContact.getNotes())) {
+            changed |= ContactAdapter.PAYLOAD_NOTES;
+        }
+        if (!Objects.equals(oldContact.getLatitude(), newContact.getLatitude())
+                || !Objects.equals(oldContact.getLongitude(), newContact.getLongitude())) {
+            changed |= ContactAdapter.PAYLOAD_DISTANCE;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,112 @@
+package com.atakmap.android.contacts.plugin.adapter;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Selected contacts of the multi-select mode.
+ *
+ * The selection is a bit set indexed by contact id. Database ids are
+ * small, dense row ids, so a few hundred selected contacts take a few
+ * hundred bytes. The selection stays valid while the list is filtered or
+ * sorted because it does not depend on positions.
+ */
+public class ContactSelection {
+    
+    private final BitSet ids = new BitSet();
+    
+    /**
+     * @return True if the contact is selected
+     */
+    public boolean isSelected(long contactId) {
+        return isIndexable(contactId) && ids.get((int) contactId);
+    }
+    
+    /**
+     * Selects or deselects a contact
+     * @return True if the contact is selected afterwards
+     */
+    public boolean toggle(long contactId) {
+        if (!isIndexable(contactId)) {
+            return false;
+        }
+        ids.flip((int) contactId);
+        return ids.get((int) contactId);
+    }
+    
+    /**
+     * Selects a contact
+     */
+    public void select(long contactId) {
+        if (isIndexable(contactId)) {
+            ids.set((int) contactId);
+        }
+    }
+    
+    /**
+     * Deselects a contact, e.g. after it was deleted
+     */
+    public void deselect(long contactId) {
+        if (isIndexable(contactId)) {
+            ids.clear((int) contactId);
+        }
+    }
+    
+    /**
+     * Adds all given contacts to the selection
+     * @param contacts Contacts matching the current filter
+     */
+    public void selectAll(List<Contact> contacts) {
+        for (Contact contact : contacts) {
+            select(contact.getId());
+        }
+    }
+    
+    /**
+     * @return True if every given contact is selected
+     */
+    public boolean containsAll(List<Contact> contacts) {
+        for (Contact contact : contacts) {
+            if (!isSelected(contact.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public void clear() {
+        ids.clear();
+    }
+    
+    /**
+     * @return Number of selected contacts
+     */
+    public int size() {
+        return ids.cardinality();
+    }
+    
+    public boolean isEmpty() {
+        return ids.isEmpty();
+    }
+    
+    /**
+     * @return Ids of the selected contacts in ascending order
+     */
+    public long[] toIds() {
+        long[] result = new long[ids.cardinality()];
+        int count = 0;
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result[count++] = id;
+        }
+        return result;
+    }
+    
+    /**
+     * Ids outside of the int range cannot be selected. Row ids of this database never get there.
+     */
+    private static boolean isIndexable(long contactId) {
+        return contactId >= 0 && contactId <= Integer.MAX_VALUE - 1;
+    }
+}
@@ -0,0 +1,130 @@
+package com.atakmap.android.contacts.plugin.adapter;
+
+import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.util.LruCache;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.android.contacts.plugin.search.ContactSearchEngine;
+import com.atakmap.android.contacts.plugin.search.MatchRanges;
+
+/**
+ * Styled row text with the search matches highlighted.
+ *
+ * The text of a row is built once per contact and query generation and
+ * then reused, so scrolling back and forth over the same results does not
+ * allocate spans again. A new query generation makes all cached rows stale.
+ */
+public class MatchHighlighter {
+    
+    // Same as heading_yellow
+    private static final int HIGHLIGHT_COLOR = 0xFFDFB228;
+    
+    // Enough for a few screens of rows
+    private static final int CACHE_SIZE = 128;
+    
+    // Characters of the notes shown before the first match
+    private static final int SNIPPET_LEAD = 16;
+    // Maximum length of the notes snippet
+    private static final int SNIPPET_LENGTH = 64;
+    
+    private static final String ELLIPSIS = "\u2026"; // …
+    
+    private final LruCache<Long, Row> cache = new LruCache<>(CACHE_SIZE);
+    private int generation;
+    
+    /**
+     * Highlighted text of one row
+     */
+    public static final class Row {
+        final Contact contact;
+        final int generation;
+        public final CharSequence name;
+        public final CharSequence phone;
+        // Part of the notes around the first match, null if the notes did not match
+        public final CharSequence notesSnippet;
+        
+        Row(Contact contact, int generation, CharSequence name, CharSequence phone, CharSequence notesSnippet) {
+            this.contact = contact;
+            this.generation = generation;
+            this.name = name;
+            this.phone = phone;
+            this.notesSnippet = notesSnippet;
+        }
+    }
+    
+    /**
+     * Starts a new query generation, the rows of earlier queries are rebuilt on their next bind
+     */
+    public void nextGeneration() {
+        generation++;
+    }
+    
+    public int getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * @return Highlighted text of a row for the current query generation, from the cache if possible
+     */
+    public Row get(Contact contact, ContactSearchEngine searchEngine, String query) {
+        Row row = cache.get(contact.getId());
+        if (row != null && row.contact == contact && row.generation == generation) {
+            return row;
+        }
+        MatchRanges ranges = searchEngine.findMatches(contact, query);
+        row = new Row(contact, generation,
+                highlight(contact.getName(), ranges.getName()),
+                highlight(contact.getPhoneNumber(), ranges.getPhone()),
+                snippet(contact.getNotes(), ranges.getNotes()));
+        cache.put(contact.getId(), row);
+        return row;
+    }
+    
+    private static CharSequence highlight(String text, int[] ranges) {
+        if (text == null || ranges.length == 0) {
+            return text;
+        }
+        SpannableString styled = new SpannableString(text);
+        for (int i = 0; i < ranges.length; i += 2) {
+            styled.setSpan(new ForegroundColorSpan(HIGHLIGHT_COLOR), ranges[i], ranges[i + 1],
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        return styled;
+    }
+    
+    /**
+     * Cuts the notes around the first match and highlights the matches inside
+     */
+    private static CharSequence snippet(String notes, int[] ranges) {
+        if (notes == null || ranges.length == 0) {
+            return null;
+        }
+        int start = Math.max(0, ranges[0] - SNIPPET_LEAD);
+        // Start at a word boundary if there is one before the match
+        if (start > 0) {
+            int space = notes.indexOf(' ', start);
+            if (space >= 0 && space < ranges[0]) {
+                start = space + 1;
+            }
+        }
+        int end = Math.min(notes.length(), Math.max(start + SNIPPET_LENGTH, ranges[1]));
+        
+        SpannableStringBuilder snippet = new SpannableStringBuilder();
+        if (start > 0) {
+            snippet.append(ELLIPSIS);
+        }
+        int offset = snippet.length() - start;
+        snippet.append(notes, start, end);
+        if (end < notes.length()) {
+            snippet.append(ELLIPSIS);
+        }
+        for (int i = 0; i < ranges.length && ranges[i] < end; i += 2) {
+            snippet.setSpan(new ForegroundColorSpan(HIGHLIGHT_COLOR), ranges[i] + offset,
+                    Math.min(ranges[i + 1], end) + offset, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        return snippet;
+    }
+}
@@ -0,0 +1,157 @@
+package com.atakmap.android.contacts.plugin.adapter;
+
+import android.os.Build;
+import android.text.PrecomputedText;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Text layout of contact rows, prepared before the rows are bound.
+ *
+ * On Android 9 and later the name and phone number of the rows ahead of the
+ * bound position are measured with PrecomputedText on a background thread.
+ * Binding then only hands the finished layout to the TextView. On older
+ * versions the plain text is used.
+ */
+public class RowTextCache {
+    
+    private static final String TAG = "RowTextCache";
+    
+    // Rows measured ahead of the bound position, in both directions
+    static final int PREFETCH_ROWS = 12;
+    
+    // Enough for a few screens of rows
+    private static final int CACHE_SIZE = 256;
+    
+    // Shared worker for text measuring, separate from list differences
+    private static final Executor TEXT_EXECUTOR = Executors.newSingleThreadExecutor();
+    
+    private final LruCache<Long, Entry> cache = new LruCache<>(CACHE_SIZE);
+    private final Executor executor;
+    
+    // Text metrics of the row layout, taken from the first created row
+    private volatile PrecomputedText.Params nameParams;
+    private volatile PrecomputedText.Params phoneParams;
+    
+    /**
+     * Measured text of one row. Only valid for the contact instance it was made for.
+     */
+    private static final class Entry {
+        final Contact contact;
+        final CharSequence name;
+        final CharSequence phone;
+        
+        Entry(Contact contact, CharSequence name, CharSequence phone) {
+            this.contact = contact;
+            this.name = name;
+            this.phone = phone;
+        }
+    }
+    
+    public RowTextCache() {
+        this(TEXT_EXECUTOR);
+    }
+    
+    /**
+     * Constructor with an explicit executor (used for testing)
+     * @param executor Executor that measures text
+     */
+    public RowTextCache(Executor executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Takes the text metrics of the row layout. Called once with the views of the first row.
+     * @param nameView Name view of a row
+     * @param phoneView Phone view of a row
+     */
+    public void setTextViews(TextView nameView, TextView phoneView) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return;
+        }
+        if (nameParams != null || nameView == null || phoneView == null) {
+            return;
+        }
+        nameParams = nameView.getTextMetricsParams();
+        phoneParams = phoneView.getTextMetricsParams();
+    }
+    
+    /**
+     * @return Measured name of a contact, or the plain name if it is not measured yet
+     */
+    public CharSequence name(Contact contact) {
+        Entry entry = cache.get(contact.getId());
+        return entry != null && entry.contact == contact ? entry.name : contact.getName();
+    }
+    
+    /**
+     * @return Measured phone number of a contact, or the plain number if it is not measured yet
+     */
+    public CharSequence phone(Contact contact) {
+        Entry entry = cache.get(contact.getId());
+        return entry != null && entry.contact == contact ? entry.phone : contact.getPhoneNumber();
+    }
+    
+    /**
+     * Measures the rows a few positions ahead of and behind a bound row.
+     * Every bind adds at most two rows, so a steady scroll keeps the queue short.
+     * @param contacts Displayed list
+     * @param position Bound position
+     */
+    public void prefetch(List<Contact> contacts, int position) {
+        prefetchRow(contacts, position + PREFETCH_ROWS);
+        prefetchRow(contacts, position - PREFETCH_ROWS);
+    }
+    
+    /**
+     * Measures the first rows of a list, before they are bound
+     * @param contacts Displayed list
+     */
+    public void prefetchStart(List<Contact> contacts) {
+        for (int i = 0; i < PREFETCH_ROWS && i < contacts.size(); i++) {
+            prefetchRow(contacts, i);
+        }
+    }
+    
+    private void prefetchRow(List<Contact> contacts, int position) {
+        if (nameParams == null || position < 0 || position >= contacts.size()) {
+            return;
+        }
+        final Contact contact = contacts.get(position);
+        Entry entry = cache.get(contact.getId());
+        if (entry != null && entry.contact == contact) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                cache.put(contact.getId(), measure(contact));
+            } catch (Exception e) {
+                Log.e(TAG, "Error measuring row text: " + e.getMessage(), e);
+            }
+        });
+    }
+    
+    private Entry measure(Contact contact) {
+        String name = contact.getName() != null ? contact.getName() : "";
+        String phone = contact.getPhoneNumber() != null ? contact.getPhoneNumber() : "";
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return new Entry(contact, name, phone);
+        }
+        return new Entry(contact, PrecomputedText.create(name, nameParams),
+                PrecomputedText.create(phone, phoneParams));
+    }
+    
+    /**
+     * Drops all measured rows, e.g. after the text size changed
+     */
+    public void clear() {
+        cache.evictAll();
+    }
+}
@@ -0,0 +1,218 @@
+package com.atakmap.android.contacts.plugin.adapter;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.android.contacts.plugin.search.SearchKeys;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Alphabetical sections of the displayed contact list.
+ *
+ * The list is stored as runs of rows with the same first letter, so single
+ * inserts and removals only touch one run. The first position of every
+ * letter is kept in a table that is refreshed on the first lookup after a
+ * change, so a jump to a letter is a plain array access.
+ */
+public class SectionIndex {
+    
+    /** Section of names that do not start with a letter from A to Z */
+    public static final char OTHER = '#';
+    
+    /** Letters of the fast-scroll rail, in display order */
+    public static final String LETTERS = "#ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    
+    // Runs of equal sections in list order
+    private char[] labels = new char[32];
+    private int[] counts = new int[32];
+    private int runCount;
+    
+    // First position of every rail letter, valid while not dirty
+    private final int[] letterPositions = new int[LETTERS.length()];
+    private boolean dirty = true;
+    
+    /**
+     * @return Section letter of a contact, based on its folded name so that
+     * umlauts and accents fall into their base letter
+     */
+    public static char sectionOf(Contact contact) {
+        String key = SearchKeys.name(contact);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                return (char) (c - 'a' + 'A');
+            }
+            // Leading blanks and quotes do not count
+            if (Character.isLetterOrDigit(c)) {
+                break;
+            }
+        }
+        return OTHER;
+    }
+    
+    /**
+     * Rebuilds the sections of a whole list
+     * @param contacts Displayed list
+     */
+    public void rebuild(List<Contact> contacts) {
+        runCount = 0;
+        for (Contact contact : contacts) {
+            char label = sectionOf(contact);
+            if (runCount > 0 && labels[runCount - 1] == label) {
+                counts[runCount - 1]++;
+            } else {
+                addRun(runCount, label, 1);
+            }
+        }
+        dirty = true;
+    }
+    
+    /**
+     * Updates the sections for a row inserted into the displayed list
+     * @param position Position of the new row
+     * @param label Section of the new row
+     */
+    public void insert(int position, char label) {
+        dirty = true;
+        int start = 0;
+        for (int run = 0; run < runCount; run++) {
+            int end = start + counts[run];
+            if (position <= end) {
+                if (labels[run] == label) {
+                    counts[run]++;
+                } else if (position == start) {
+                    addRun(run, label, 1);
+                } else if (position == end) {
+                    if (run + 1 < runCount && labels[run + 1] == label) {
+                        counts[run + 1]++;
+                    } else {
+                        addRun(run + 1, label, 1);
+                    }
+                } else {
+                    // The row splits a run of another letter
+                    int tail = end - position;
+                    counts[run] = position - start;
+                    addRun(run + 1, label, 1);
+                    addRun(run + 2, labels[run], tail);
+                }
+                return;
+            }
+            start = end;
+        }
+        // Appended after the last row
+        if (runCount > 0 && labels[runCount - 1] == label) {
+            counts[runCount - 1]++;
+        } else {
+            addRun(runCount, label, 1);
+        }
+    }
+    
+    /**
+     * Updates the sections for a row removed from the displayed list
+     * @param position Former position of the row
+     */
+    public void remove(int position) {
+        int start = 0;
+        for (int run = 0; run < runCount; run++) {
+            int end = start + counts[run];
+            if (position < end) {
+                dirty = true;
+                if (--counts[run] == 0) {
+                    removeRun(run);
+                    // Neighbours of the same letter become one run again
+                    if (run > 0 && run < runCount && labels[run - 1] == labels[run]) {
+                        counts[run - 1] += counts[run];
+                        removeRun(run);
+                    }
+                }
+                return;
+            }
+            start = end;
+        }
+    }
+    
+    /**
+     * @return Position to scroll to for a rail letter. Letters without rows
+     * lead to the next letter that has rows, or -1 if the list is empty
+     */
+    public int getPositionForLetter(char letter) {
+        int index = LETTERS.indexOf(Character.toUpperCase(letter));
+        if (index < 0 || runCount == 0) {
+            return -1;
+        }
+        if (dirty) {
+            refreshLetterPositions();
+        }
+        return letterPositions[index];
+    }
+    
+    /**
+     * @return Section letter of the row at a position, or 0 if it is out of range
+     */
+    public char getSectionAt(int position) {
+        int start = 0;
+        for (int run = 0; run < runCount; run++) {
+            start += counts[run];
+            if (position < start) {
+                return labels[run];
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * @return Number of runs of rows with the same letter
+     */
+    public int getSectionCount() {
+        return runCount;
+    }
+    
+    private void refreshLetterPositions() {
+        Arrays.fill(letterPositions, -1);
+        int start = 0;
+        for (int run = 0; run < runCount; run++) {
+            int index = LETTERS.indexOf(labels[run]);
+            // Only the first run of a letter counts
+            if (index >= 0 && letterPositions[index] < 0) {
+                letterPositions[index] = start;
+            }
+            start += counts[run];
+        }
+        // Missing letters jump to the next letter, at the end to the last one
+        int next = -1;
+        for (int i = letterPositions.length - 1; i >= 0; i--) {
+            if (letterPositions[i] >= 0) {
+                next = letterPositions[i];
+            } else {
+                letterPositions[i] = next;
+            }
+        }
+        int previous = -1;
+        for (int i = 0; i < letterPositions.length; i++) {
+            if (letterPositions[i] >= 0) {
+                previous = letterPositions[i];
+            } else {
+                letterPositions[i] = previous;
+            }
+        }
+        dirty = false;
+    }
+    
+    private void addRun(int run, char label, int count) {
+        if (runCount == labels.length) {
+            labels = Arrays.copyOf(labels, runCount * 2);
+            counts = Arrays.copyOf(counts, runCount * 2);
+        }
+        System.arraycopy(labels, run, labels, run + 1, runCount - run);
+        System.arraycopy(counts, run, counts, run + 1, runCount - run);
+        labels[run] = label;
+        counts[run] = count;
+        runCount++;
+    }
+    
+    private void removeRun(int run) {
+        System.arraycopy(labels, run + 1, labels, run, runCount - run - 1);
+        System.arraycopy(counts, run + 1, counts, run, runCount - run - 1);
+        runCount--;
+    }
+}
@@ -0,0 +1,204 @@
+package com.atakmap.android.contacts.plugin.cot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the position report of CoT event XML.
+ *
+ * Only the attributes the live positions need are looked up: the uid and
+ * time of the event, the point and the callsign of the contact detail.
+ * This is a scan for a few attribute names and not a full XML parser, so
+ * recorded feeds can be replayed without the ATAK CoT classes.
+ */
+public final class CotXml {
+    
+    /**
+     * The position of one event
+     */
+    public static final class Report {
+        public final String uid;
+        // Null if the event has no contact detail
+        public final String callsign;
+        public final double latitude;
+        public final double longitude;
+        // Milliseconds since the epoch, 0 if the event has no time
+        public final long time;
+        
+        public Report(String uid, String callsign, double latitude, double longitude, long time) {
+            this.uid = uid;
+            this.callsign = callsign;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.time = time;
+        }
+    }
+    
+    private CotXml() {
+    }
+    
+    /**
+     * Splits a recording into its events, e.g. a file of events one after the other
+     * @return The text of each complete event element
+     */
+    public static List<String> splitEvents(String text) {
+        List<String> events = new ArrayList<>();
+        int from = 0;
+        while (true) {
+            int start = text.indexOf("<event", from);
+            if (start < 0) {
+                break;
+            }
+            int tagEnd = text.indexOf('>', start);
+            if (tagEnd < 0) {
+                break;
+            }
+            if (text.charAt(tagEnd - 1) == '/') {
+                // An event without details closes itself
+                events.add(text.substring(start, tagEnd + 1));
+                from = tagEnd + 1;
+                continue;
+            }
+            int end = text.indexOf("</event>", tagEnd);
+            if (end < 0) {
+                break;
+            }
+            events.add(text.substring(start, end + "</event>".length()));
+            from = end + "</event>".length();
+        }
+        return events;
+    }
+    
+    /**
+     * @return The position report of an event, null if it has no uid or no valid point
+     */
+    public static Report parse(String event) {
+        try {
+            int eventTag = event.indexOf("<event");
+            if (eventTag < 0) {
+                return null;
+            }
+            int eventEnd = event.indexOf('>', eventTag);
+            String uid = attribute(event, eventTag, eventEnd, "uid");
+            if (uid == null || uid.isEmpty()) {
+                return null;
+            }
+            int pointTag = event.indexOf("<point", eventEnd);
+            if (pointTag < 0) {
+                return null;
+            }
+            int pointEnd = event.indexOf('>', pointTag);
+            String lat = attribute(event, pointTag, pointEnd, "lat");
+            String lon = attribute(event, pointTag, pointEnd, "lon");
+            if (lat == null || lon == null) {
+                return null;
+            }
+            double latitude = Double.parseDouble(lat);
+            double longitude = Double.parseDouble(lon);
+            if (!(Math.abs(latitude) <= 90) || !(Math.abs(longitude) <= 180)) {
+                return null;
+            }
+            String callsign = null;
+            int contactTag = event.indexOf("<contact", eventEnd);
+            if (contactTag >= 0) {
+                callsign = attribute(event, contactTag, event.indexOf('>', contactTag), "callsign");
+            }
+            String time = attribute(event, eventTag, eventEnd, "time");
+            return new Report(unescape(uid), callsign != null ? unescape(callsign) : null,
+                    latitude, longitude, time != null ? parseTime(time) : 0);
+        } catch (RuntimeException e) {
+            // Malformed numbers or tags
+            return null;
+        }
+    }
+    
+    /**
+     * @return Value of an attribute inside a tag, null if the tag does not have it
+     */
+    static String attribute(String text, int tagStart, int tagEnd, String name) {
+        if (tagEnd < 0) {
+            tagEnd = text.length();
+        }
+        int from = tagStart;
+        while (true) {
+            int at = text.indexOf(name, from);
+            if (at < 0 || at >= tagEnd) {
+                return null;
+            }
+            from = at + name.length();
+            // A whole attribute name followed by =, not the end of a longer one
+            if (!Character.isWhitespace(text.charAt(at - 1))) {
+                continue;
+            }
+            int equals = from;
+            while (equals < tagEnd && Character.isWhitespace(text.charAt(equals))) {
+                equals++;
+            }
+            if (equals >= tagEnd || text.charAt(equals) != '=') {
+                continue;
+            }
+            int quote = equals + 1;
+            while (quote < tagEnd && Character.isWhitespace(text.charAt(quote))) {
+                quote++;
+            }
+            if (quote >= tagEnd) {
+                return null;
+            }
+            char mark = text.charAt(quote);
+            int close = text.indexOf(mark, quote + 1);
+            if ((mark != '"' && mark != '\'') || close < 0 || close > tagEnd) {
+                return null;
+            }
+            return text.substring(quote + 1, close);
+        }
+    }
+    
+    /**
+     * Parses a CoT time like 2024-05-01T12:30:15.250Z
+     * @return Milliseconds since the epoch, 0 if the time is malformed
+     */
+    static long parseTime(String time) {
+        try {
+            int year = Integer.parseInt(time.substring(0, 4));
+            int month = Integer.parseInt(time.substring(5, 7));
+            int day = Integer.parseInt(time.substring(8, 10));
+            int hour = Integer.parseInt(time.substring(11, 13));
+            int minute = Integer.parseInt(time.substring(14, 16));
+            int second = Integer.parseInt(time.substring(17, 19));
+            long millis = 0;
+            if (time.length() > 20 && time.charAt(19) == '.') {
+                // Fractions of a second, to milliseconds
+                int end = 20;
+                while (end < time.length() && Character.isDigit(time.charAt(end))) {
+                    end++;
+                }
+                String fraction = (time.substring(20, end) + "000").substring(0, 3);
+                millis = Integer.parseInt(fraction);
+            }
+            return ((daysFromEpoch(year, month, day) * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+    
+    /**
+     * @return Days from 1970-01-01 to a date of the proleptic Gregorian calendar
+     */
+    private static long daysFromEpoch(int year, int month, int day) {
+        // Years start in March, so the leap day is the last day of a year
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+    
+    private static String unescape(String value) {
+        if (value.indexOf('&') < 0) {
+            return value;
+        }
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&apos;", "'").replace("&amp;", "&");
+    }
+}
@@ -0,0 +1,203 @@
+package com.atakmap.android.contacts.plugin.cot;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Matches incoming position reports to the contacts that follow them.
+ *
+ * A contact is linked to a CoT uid or callsign. Reports are matched with
+ * two hash lookups, by uid and by callsign ignoring case, and only the
+ * latest position of each contact is kept until the next {@link #drain()}.
+ * So any number of reports between two drains cost one write per contact.
+ *
+ * Reports may be offered from any thread. The links are replaced as a
+ * whole when they change, which is rare, so offering takes no lock for
+ * the lookup and a short one to keep the position.
+ */
+public class LivePositionIngestor {
+    
+    // Cadence of the drains, so of the batched position writes
+    public static final long FLUSH_INTERVAL_MS = 1000;
+    
+    /**
+     * The latest position of a contact
+     */
+    public static final class Fix {
+        public final long contactId;
+        public final double latitude;
+        public final double longitude;
+        public final long time;
+        
+        Fix(long contactId, double latitude, double longitude, long time) {
+            this.contactId = contactId;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.time = time;
+        }
+    }
+    
+    // Link of each contact, and contact of each uid and folded callsign
+    private volatile Map<Long, String> links = new HashMap<>();
+    private volatile Map<String, Long> byUid = new HashMap<>();
+    private volatile Map<String, Long> byCallsign = new HashMap<>();
+    
+    private final Object lock = new Object();
+    // Positions received since the last drain, guarded by lock
+    private Map<Long, Fix> pending = new HashMap<>();
+    // Time of the last accepted report of each contact, guarded by lock
+    private final Map<Long, Long> lastTimes = new HashMap<>();
+    private long reports;
+    private long matched;
+    
+    /**
+     * Makes a contact follow the reports of a uid or callsign
+     * @param key Uid or callsign, null or empty to stop following
+     */
+    public synchronized void link(long contactId, String key) {
+        Map<Long, String> newLinks = new HashMap<>(links);
+        if (key == null || key.trim().isEmpty()) {
+            newLinks.remove(contactId);
+        } else {
+            newLinks.put(contactId, key.trim());
+        }
+        setLinks(newLinks);
+    }
+    
+    /**
+     * @return Uid or callsign a contact follows, null if it follows none
+     */
+    public String getLink(long contactId) {
+        return links.get(contactId);
+    }
+    
+    /**
+     * @return Uid or callsign by contact id of all following contacts
+     */
+    public Map<Long, String> getLinks() {
+        return new HashMap<>(links);
+    }
+    
+    /**
+     * @return The links as text for storage, one "id:key" per line
+     */
+    public String saveLinks() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Long, String> entry : links.entrySet()) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Adds the links stored by {@link #saveLinks()}. Malformed lines are skipped.
+     */
+    public synchronized void restoreLinks(String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        Map<Long, String> newLinks = new HashMap<>(links);
+        for (String line : text.split("\n")) {
+            int colon = line.indexOf(':');
+            try {
+                String key = line.substring(colon + 1).trim();
+                if (!key.isEmpty()) {
+                    newLinks.put(Long.parseLong(line.substring(0, colon)), key);
+                }
+            } catch (RuntimeException e) {
+                // Skipped, the text is only ever written by saveLinks
+            }
+        }
+        setLinks(newLinks);
+    }
+    
+    public int size() {
+        return links.size();
+    }
+    
+    /**
+     * Keeps a report if it belongs to a following contact and is not older than its last one
+     * @param callsign Callsign of the report, may be null
+     * @param time Time of the report in milliseconds
+     * @return True if the report was kept
+     */
+    public boolean offer(String uid, String callsign, double latitude, double longitude, long time) {
+        Long contactId = uid != null ? byUid.get(uid) : null;
+        if (contactId == null && callsign != null) {
+            contactId = byCallsign.get(fold(callsign));
+        }
+        synchronized (lock) {
+            reports++;
+            if (contactId == null) {
+                return false;
+            }
+            Long last = lastTimes.get(contactId);
+            if (last != null && time < last) {
+                // Out of order, a newer position is known
+                return false;
+            }
+            lastTimes.put(contactId, time);
+            pending.put(contactId, new Fix(contactId, latitude, longitude, time));
+            matched++;
+            return true;
+        }
+    }
+    
+    /**
+     * Takes the positions received since the last drain
+     * @return The latest position of each contact that reported, by contact id
+     */
+    public Map<Long, Fix> drain() {
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return new HashMap<>();
+            }
+            Map<Long, Fix> drained = pending;
+            pending = new HashMap<>();
+            return drained;
+        }
+    }
+    
+    /**
+     * @return Number of offered reports
+     */
+    public long getReportCount() {
+        synchronized (lock) {
+            return reports;
+        }
+    }
+    
+    /**
+     * @return Number of kept reports, several per contact between drains are counted each
+     */
+    public long getMatchedCount() {
+        synchronized (lock) {
+            return matched;
+        }
+    }
+    
+    private void setLinks(Map<Long, String> newLinks) {
+        Map<String, Long> uids = new HashMap<>();
+        Map<String, Long> callsigns = new HashMap<>();
+        for (Map.Entry<Long, String> entry : newLinks.entrySet()) {
+            uids.put(entry.getValue(), entry.getKey());
+            callsigns.put(fold(entry.getValue()), entry.getKey());
+        }
+        byUid = uids;
+        byCallsign = callsigns;
+        links = newLinks;
+        synchronized (lock) {
+            // Contacts that no longer follow anything drop their pending position
+            pending.keySet().retainAll(newLinks.keySet());
+            lastTimes.keySet().retainAll(newLinks.keySet());
+        }
+    }
+    
+    private static String fold(String callsign) {
+        return callsign.trim().toLowerCase(Locale.ROOT);
+    }
+}
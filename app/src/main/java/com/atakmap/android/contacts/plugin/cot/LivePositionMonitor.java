@@ -0,0 +1,213 @@
+package com.atakmap.android.contacts.plugin.cot;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.atakmap.android.contacts.plugin.db.DatabaseHelper;
+import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.comms.CommsMapComponent;
+import com.atakmap.comms.CotServiceRemote;
+import com.atakmap.coremap.cot.event.CotDetail;
+import com.atakmap.coremap.cot.event.CotEvent;
+import com.atakmap.coremap.cot.event.CotPoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Live positions of contacts from the CoT events ATAK receives.
+ *
+ * Each received event is handed to a {@link LivePositionIngestor} on the
+ * thread that delivers it. Once per {@link LivePositionIngestor#FLUSH_INTERVAL_MS} the latest
+ * position of each contact that reported is passed to the listener on the
+ * UI thread, which writes them in one batch. The links between contacts and
+ * CoT uids or callsigns are kept in the metadata table, saved on the given
+ * executor and restored by the owner with {@link #restore(String)}.
+ */
+public class LivePositionMonitor implements CotServiceRemote.CotEventListener {
+    
+    private static final String TAG = "LivePositionMonitor";
+    
+    /**
+     * Receives the positions of a flush on the UI thread
+     */
+    public interface Listener {
+        void onLivePositions(Collection<LivePositionIngestor.Fix> fixes);
+    }
+    
+    private final DatabaseHelper dbHelper;
+    private final Executor saveExecutor;
+    private final Listener listener;
+    private final LivePositionIngestor ingestor = new LivePositionIngestor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+    private boolean registered;
+    
+    /**
+     * @param saveExecutor Executor of the metadata writes, off the UI thread
+     */
+    public LivePositionMonitor(DatabaseHelper dbHelper, Executor saveExecutor, Listener listener) {
+        this.dbHelper = dbHelper;
+        this.saveExecutor = saveExecutor;
+        this.listener = listener;
+    }
+    
+    /**
+     * Follows the links saved in the metadata table again
+     * @param saved Value of {@link DatabaseHelper#META_LIVE_LINKS}, read off the UI thread
+     */
+    public void restore(String saved) {
+        ingestor.restoreLinks(saved);
+        updateRegistration();
+    }
+    
+    /**
+     * @return Uid or callsign a contact follows, null if it follows none
+     */
+    public String getLink(long contactId) {
+        return ingestor.getLink(contactId);
+    }
+    
+    /**
+     * Makes a contact follow the events of a uid or callsign
+     * @param key Uid or callsign, null or empty to stop following
+     */
+    public void setLink(Contact contact, String key) {
+        ingestor.link(contact.getId(), key);
+        save();
+        updateRegistration();
+    }
+    
+    /**
+     * Stops following for deleted contacts, the links are saved once
+     */
+    public void removeContacts(long... contactIds) {
+        boolean removed = false;
+        for (long contactId : contactIds) {
+            if (ingestor.getLink(contactId) != null) {
+                ingestor.link(contactId, null);
+                removed = true;
+            }
+        }
+        if (removed) {
+            save();
+            updateRegistration();
+        }
+    }
+    
+    /**
+     * Stops following for contacts that are no longer in the database
+     * @param contacts All contacts
+     */
+    public void retain(List<Contact> contacts) {
+        Set<Long> ids = new HashSet<>(contacts.size() * 2);
+        for (Contact contact : contacts) {
+            ids.add(contact.getId());
+        }
+        List<Long> gone = new ArrayList<>();
+        for (long contactId : ingestor.getLinks().keySet()) {
+            if (!ids.contains(contactId)) {
+                gone.add(contactId);
+            }
+        }
+        long[] goneIds = new long[gone.size()];
+        for (int i = 0; i < goneIds.length; i++) {
+            goneIds[i] = gone.get(i);
+        }
+        removeContacts(goneIds);
+    }
+    
+    /**
+     * Stops listening to CoT events
+     */
+    public void dispose() {
+        if (registered) {
+            setRegistered(false);
+        }
+    }
+    
+    @Override
+    public void onCotEvent(CotEvent event, Bundle extra) {
+        try {
+            if (event == null || !event.isValid()) {
+                return;
+            }
+            CotPoint point = event.getCotPoint();
+            if (point == null) {
+                return;
+            }
+            String callsign = null;
+            CotDetail detail = event.getDetail();
+            CotDetail contact = detail != null ? detail.getFirstChildByName(0, "contact") : null;
+            if (contact != null) {
+                callsign = contact.getAttribute("callsign");
+            }
+            long time = event.getTime() != null ? event.getTime().getMilliseconds() : System.currentTimeMillis();
+            ingestor.offer(event.getUID(), callsign, point.getLat(), point.getLon(), time);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading CoT event: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Passes the positions received since the last flush to the listener
+     */
+    private void flush() {
+        try {
+            Map<Long, LivePositionIngestor.Fix> fixes = ingestor.drain();
+            if (!fixes.isEmpty()) {
+                listener.onLivePositions(fixes.values());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error flushing live positions: " + e.getMessage(), e);
+        }
+        if (registered) {
+            mainHandler.postDelayed(flush, LivePositionIngestor.FLUSH_INTERVAL_MS);
+        }
+    }
+    
+    /**
+     * Listens to CoT events only while a contact follows one
+     */
+    private void updateRegistration() {
+        boolean wanted = ingestor.size() > 0;
+        if (wanted != registered) {
+            setRegistered(wanted);
+        }
+    }
+    
+    private void setRegistered(boolean register) {
+        try {
+            CommsMapComponent comms = CommsMapComponent.getInstance();
+            if (comms == null) {
+                return;
+            }
+            if (register) {
+                comms.addOnCotEventListener(this);
+                mainHandler.postDelayed(flush, LivePositionIngestor.FLUSH_INTERVAL_MS);
+            } else {
+                comms.removeOnCotEventListener(this);
+                mainHandler.removeCallbacks(flush);
+            }
+            registered = register;
+        } catch (Exception e) {
+            Log.e(TAG, "Error " + (register ? "registering" : "unregistering") + " CoT listener: " + e.getMessage(), e);
+        }
+    }
+    
+    private void save() {
+        try {
+            final String links = ingestor.saveLinks();
+            saveExecutor.execute(() -> dbHelper.setMetadata(DatabaseHelper.META_LIVE_LINKS, links));
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving live position links: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.atakmap.android.contacts.plugin.db;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tells observers which contacts changed in the database.
+ *
+ * Writes are reported after their transaction was committed, from any
+ * thread. They are collected until the next frame and then sent to the
+ * observers on the UI thread as one {@link ContactChangeEvent}, so a burst
+ * of writes causes one update of each view and not one per row.
+ */
+public class ContactChangeBus {
+    
+    private static final String TAG = "ContactChangeBus";
+    
+    /**
+     * Receives the changes, always on the UI thread
+     */
+    public interface Observer {
+        void onContactsChanged(ContactChangeEvent event);
+    }
+    
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> dispatch();
+    
+    // Changes since the last event, guarded by this
+    private ContactChangeEvent.Builder pending = new ContactChangeEvent.Builder();
+    private boolean scheduled;
+    
+    public void register(Observer observer) {
+        if (!observers.contains(observer)) {
+            observers.add(observer);
+        }
+    }
+    
+    public void unregister(Observer observer) {
+        observers.remove(observer);
+    }
+    
+    /**
+     * @param contact New contact with its database id
+     */
+    void postInserted(Contact contact) {
+        synchronized (this) {
+            pending.inserted(contact);
+        }
+        schedule();
+    }
+    
+    /**
+     * @param contact The contact as it was written, null if only the id is known
+     */
+    void postUpdated(long contactId, Contact contact) {
+        synchronized (this) {
+            pending.updated(contactId, contact);
+        }
+        schedule();
+    }
+    
+    /**
+     * Reports a contact of which only the location was written
+     */
+    void postMoved(long contactId, double latitude, double longitude) {
+        synchronized (this) {
+            pending.moved(contactId, latitude, longitude);
+        }
+        schedule();
+    }
+    
+    void postDeleted(long... contactIds) {
+        synchronized (this) {
+            for (long contactId : contactIds) {
+                pending.deleted(contactId);
+            }
+        }
+        schedule();
+    }
+    
+    /**
+     * Reports that the whole table changed
+     */
+    void postReload() {
+        synchronized (this) {
+            pending.reload();
+        }
+        schedule();
+    }
+    
+    private void schedule() {
+        synchronized (this) {
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        // The choreographer belongs to the UI thread
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        } else {
+            mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(frameCallback));
+        }
+    }
+    
+    private void dispatch() {
+        ContactChangeEvent event;
+        synchronized (this) {
+            event = pending.build();
+            pending = new ContactChangeEvent.Builder();
+            scheduled = false;
+        }
+        if (event.isEmpty()) {
+            return;
+        }
+        for (Observer observer : observers) {
+            try {
+                observer.onContactsChanged(event);
+            } catch (Exception e) {
+                Log.e(TAG, "Error notifying observer: " + e.getMessage(), e);
+            }
+        }
+    }
+}
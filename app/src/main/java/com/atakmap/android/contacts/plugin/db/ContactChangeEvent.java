@@ -0,0 +1,190 @@
+package com.atakmap.android.contacts.plugin.db;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Contacts that were inserted, updated or deleted since the last event.
+ *
+ * Several writes to the same contact are merged, e.g. a contact that was
+ * inserted and deleted again before the event was sent does not show up
+ * at all, and an insert followed by an update is a single insert. A
+ * contact that only moved carries its new position instead of a copy, so
+ * observers move the contact they show and keep its other fields.
+ */
+public final class ContactChangeEvent {
+    
+    private final long[] inserted;
+    private final long[] updated;
+    private final long[] deleted;
+    private final Map<Long, Contact> contacts;
+    private final Map<Long, double[]> positions;
+    private final boolean reload;
+    
+    private ContactChangeEvent(long[] inserted, long[] updated, long[] deleted,
+                               Map<Long, Contact> contacts, Map<Long, double[]> positions, boolean reload) {
+        this.inserted = inserted;
+        this.updated = updated;
+        this.deleted = deleted;
+        this.contacts = contacts;
+        this.positions = positions;
+        this.reload = reload;
+    }
+    
+    /**
+     * @return Ids of the new contacts, in the order they were written
+     */
+    public long[] getInserted() {
+        return inserted;
+    }
+    
+    /**
+     * @return Ids of the changed contacts, in the order they were written
+     */
+    public long[] getUpdated() {
+        return updated;
+    }
+    
+    /**
+     * @return Ids of the deleted contacts, in the order they were written
+     */
+    public long[] getDeleted() {
+        return deleted;
+    }
+    
+    /**
+     * @return The contact as it was written, or null if it has to be read from the database
+     */
+    public Contact getContact(long contactId) {
+        return contacts.get(contactId);
+    }
+    
+    /**
+     * @return Latitude and longitude of a changed contact that only moved, null otherwise
+     */
+    public double[] getPosition(long contactId) {
+        return positions.get(contactId);
+    }
+    
+    /**
+     * @return True if the whole table changed and observers should read all contacts again
+     */
+    public boolean isReload() {
+        return reload;
+    }
+    
+    public boolean isEmpty() {
+        return !reload && inserted.length == 0 && updated.length == 0 && deleted.length == 0;
+    }
+    
+    /**
+     * Collects and merges changes until they are sent
+     */
+    public static final class Builder {
+        
+        private static final int INSERTED = 1;
+        private static final int UPDATED = 2;
+        private static final int DELETED = 3;
+        
+        private final Map<Long, Integer> changes = new LinkedHashMap<>();
+        private final Map<Long, Contact> contacts = new HashMap<>();
+        private final Map<Long, double[]> positions = new HashMap<>();
+        private boolean reload;
+        
+        /**
+         * @param contact New contact with its database id
+         */
+        public Builder inserted(Contact contact) {
+            Integer previous = changes.get(contact.getId());
+            // A deleted id that is used again is a changed row for the observers
+            changes.put(contact.getId(), previous != null && previous == DELETED ? UPDATED : INSERTED);
+            contacts.put(contact.getId(), contact);
+            positions.remove(contact.getId());
+            return this;
+        }
+        
+        /**
+         * @param contact The contact as it was written, null if only the id is known
+         */
+        public Builder updated(long contactId, Contact contact) {
+            Integer previous = changes.get(contactId);
+            if (previous == null) {
+                changes.put(contactId, UPDATED);
+            } else if (previous == DELETED) {
+                return this;
+            }
+            // A state written earlier is outdated now
+            if (contact != null) {
+                contacts.put(contactId, contact);
+            } else {
+                contacts.remove(contactId);
+            }
+            positions.remove(contactId);
+            return this;
+        }
+        
+        /**
+         * A contact of which only the location was written
+         */
+        public Builder moved(long contactId, double latitude, double longitude) {
+            Integer previous = changes.get(contactId);
+            if (previous == null) {
+                changes.put(contactId, UPDATED);
+                positions.put(contactId, new double[] { latitude, longitude });
+            } else if (previous == DELETED) {
+                return this;
+            } else if (positions.containsKey(contactId)) {
+                positions.put(contactId, new double[] { latitude, longitude });
+            } else {
+                // A written state is moved, a contact that is read again comes with its position
+                Contact contact = contacts.get(contactId);
+                if (contact != null) {
+                    Contact moved = new Contact(contact);
+                    moved.setLocation(latitude, longitude);
+                    contacts.put(contactId, moved);
+                }
+            }
+            return this;
+        }
+        
+        public Builder deleted(long contactId) {
+            Integer previous = changes.remove(contactId);
+            contacts.remove(contactId);
+            positions.remove(contactId);
+            if (previous == null || previous != INSERTED) {
+                changes.put(contactId, DELETED);
+            }
+            return this;
+        }
+        
+        /**
+         * Marks the whole table as changed
+         */
+        public Builder reload() {
+            reload = true;
+            return this;
+        }
+        
+        public boolean isEmpty() {
+            return !reload && changes.isEmpty();
+        }
+        
+        public ContactChangeEvent build() {
+            int[] counts = new int[4];
+            for (int change : changes.values()) {
+                counts[change]++;
+            }
+            long[][] ids = { null, new long[counts[INSERTED]], new long[counts[UPDATED]], new long[counts[DELETED]] };
+            int[] next = new int[4];
+            for (Map.Entry<Long, Integer> entry : changes.entrySet()) {
+                int change = entry.getValue();
+                ids[change][next[change]++] = entry.getKey();
+            }
+            return new ContactChangeEvent(ids[INSERTED], ids[UPDATED], ids[DELETED],
+                    new HashMap<>(contacts), new HashMap<>(positions), reload);
+        }
+    }
+}
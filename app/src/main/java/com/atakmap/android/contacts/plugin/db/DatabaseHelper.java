@@ -5,12 +5,17 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.android.contacts.plugin.model.SortKeys;
+import com.atakmap.android.contacts.plugin.model.Track;
+import com.atakmap.android.contacts.plugin.search.SearchKeys;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -20,13 +25,23 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "ContactsDB";
     
     // Database version
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
+    
+    // Ids per statement when deleting in bulk
+    private static final int DELETE_CHUNK_SIZE = 500;
+    
+    // Tracks are pruned at most this often, in milliseconds
+    private static final long TRACK_PRUNE_INTERVAL = 60 * 60 * 1000L;
+    // Track coordinates are stored as integers in this fraction of a degree, about 1 cm
+    private static final double TRACK_SCALE = 1e7;
     
     // Database name
     private static final String DATABASE_NAME = "contacts_db";
     
     // Table names
     public static final String TABLE_CONTACTS = "contacts";
+    public static final String TABLE_METADATA = "metadata";
+    public static final String TABLE_TRACKS = "track_points";
     
     // Column names
     public static final String KEY_ID = "id";
@@ -35,6 +50,35 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String KEY_NOTES = "notes";
     public static final String KEY_LATITUDE = "latitude";
     public static final String KEY_LONGITUDE = "longitude";
+    // Folded search keys, see SearchKeys
+    public static final String KEY_NAME_KEY = "name_key";
+    public static final String KEY_PHONE_KEY = "phone_key";
+    public static final String KEY_NOTES_KEY = "notes_key";
+    // Collation key of the name (see SortKeys) and time of last use in milliseconds
+    public static final String KEY_SORT_KEY = "sort_key";
+    public static final String KEY_LAST_USED = "last_used";
+    
+    // Track columns, coordinates in units of 1e-7 degrees
+    public static final String KEY_CONTACT_ID = "contact_id";
+    public static final String KEY_TIME = "time";
+    public static final String KEY_LATITUDE_E7 = "latitude_e7";
+    public static final String KEY_LONGITUDE_E7 = "longitude_e7";
+    
+    // Metadata columns and entries
+    public static final String KEY_META_KEY = "key";
+    public static final String KEY_META_VALUE = "value";
+    public static final String META_COLLATION_LOCALE = "collation_locale";
+    public static final String META_SORT_MODE = "sort_mode";
+    // Proximity alert radius per contact id, see GeofenceEngine.saveRadii
+    public static final String META_GEOFENCES = "geofences";
+    // "1" while the contact density heatmap is shown
+    public static final String META_DENSITY = "density_visible";
+    // Time of the last pruning of the tracks in milliseconds
+    public static final String META_TRACKS_PRUNED = "tracks_pruned";
+    // CoT uid or callsign per contact id, see LivePositionIngestor.saveLinks
+    public static final String META_LIVE_LINKS = "live_links";
+    // Name of the CoordinateFormat chosen for the detail dialog
+    public static final String META_COORDINATE_FORMAT = "coordinate_format";
     
     // SQL statement to create the table
     private static final String CREATE_TABLE_CONTACTS = "CREATE TABLE " + TABLE_CONTACTS + "("
@@ -43,11 +87,45 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + KEY_PHONE + " TEXT,"
             + KEY_NOTES + " TEXT,"
             + KEY_LATITUDE + " REAL,"
-            + KEY_LONGITUDE + " REAL" + ")";
+            + KEY_LONGITUDE + " REAL,"
+            + KEY_NAME_KEY + " TEXT,"
+            + KEY_PHONE_KEY + " TEXT,"
+            + KEY_NOTES_KEY + " TEXT,"
+            + KEY_SORT_KEY + " BLOB,"
+            + KEY_LAST_USED + " INTEGER DEFAULT 0" + ")";
+    
+    private static final String CREATE_TABLE_METADATA = "CREATE TABLE IF NOT EXISTS " + TABLE_METADATA + "("
+            + KEY_META_KEY + " TEXT PRIMARY KEY,"
+            + KEY_META_VALUE + " TEXT" + ")";
+    
+    // Position history, append-only. The fixes of a contact are stored
+    // together in time order, so a track is one range of the primary key.
+    private static final String CREATE_TABLE_TRACKS = "CREATE TABLE IF NOT EXISTS " + TABLE_TRACKS + "("
+            + KEY_CONTACT_ID + " INTEGER NOT NULL,"
+            + KEY_TIME + " INTEGER NOT NULL,"
+            + KEY_LATITUDE_E7 + " INTEGER NOT NULL,"
+            + KEY_LONGITUDE_E7 + " INTEGER NOT NULL,"
+            + "PRIMARY KEY (" + KEY_CONTACT_ID + ", " + KEY_TIME + ")) WITHOUT ROWID";
+    
+    // Index for lookups and prefix matches on the folded name
+    private static final String CREATE_INDEX_NAME_KEY = "CREATE INDEX IF NOT EXISTS idx_"
+            + TABLE_CONTACTS + "_" + KEY_NAME_KEY + " ON " + TABLE_CONTACTS + "(" + KEY_NAME_KEY + ")";
+    
+    // Index so the contacts can be read in display order
+    private static final String CREATE_INDEX_SORT_KEY = "CREATE INDEX IF NOT EXISTS idx_"
+            + TABLE_CONTACTS + "_" + KEY_SORT_KEY + " ON " + TABLE_CONTACTS + "(" + KEY_SORT_KEY + ", " + KEY_ID + ")";
     
     private static DatabaseHelper instance;
     private String dbPath;
     
+    // The database file is opened directly, so the schema version is checked on first access
+    private boolean schemaChecked;
+    // Connection shared by all reads and writes, opened on first access
+    private SQLiteDatabase database;
+    
+    // Observers of committed writes
+    private final ContactChangeBus changeBus = new ContactChangeBus();
+    
     /**
      * Singleton pattern for database access
      */
@@ -64,6 +142,13 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return instance;
     }
     
+    /**
+     * @return The bus that reports committed changes of the contacts table
+     */
+    public ContactChangeBus getChangeBus() {
+        return changeBus;
+    }
+    
     private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         Log.d(TAG, "DatabaseHelper constructor called");
@@ -128,7 +213,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             String path = new File(externalDir, DATABASE_NAME).getAbsolutePath();
             Log.d(TAG, "Using external storage fallback: " + path);
             return path;
-            
+        
         } catch (Exception e) {
             Log.e(TAG, "Error creating alternative database path: " + e.getMessage(), e);
             
@@ -214,6 +299,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 db.execSQL(CREATE_TABLE_CONTACTS);
                 Log.d(TAG, "Table created successfully");
             }
+            
+            // Older tables without version info may lack the search and sort keys
+            addSearchKeys(db);
+            addSortKeys(db);
+            addTracks(db);
         } catch (Exception e) {
             Log.e(TAG, "Error creating database tables: " + e.getMessage(), e);
             
@@ -232,15 +322,286 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.d(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
         
-        try {
-            if (oldVersion < 2) {
+        // Each step on its own, databases created without a version already have some columns
+        if (oldVersion < 2) {
+            try {
                 // Upgrade from version 1 to 2: Adding location columns
-                db.execSQL("ALTER TABLE " + TABLE_CONTACTS + " ADD COLUMN " + KEY_LATITUDE + " REAL;");
-                db.execSQL("ALTER TABLE " + TABLE_CONTACTS + " ADD COLUMN " + KEY_LONGITUDE + " REAL;");
-                Log.d(TAG, "Added location columns to contacts table");
+                if (hasColumn(db, KEY_LATITUDE)) {
+                    Log.d(TAG, "Location columns already exist");
+                } else {
+                    db.execSQL("ALTER TABLE " + TABLE_CONTACTS + " ADD COLUMN " + KEY_LATITUDE + " REAL;");
+                    db.execSQL("ALTER TABLE " + TABLE_CONTACTS + " ADD COLUMN " + KEY_LONGITUDE + " REAL;");
+                    Log.d(TAG, "Added location columns to contacts table");
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error adding location columns: " + e.getMessage(), e);
+            }
+        }
+        
+        if (oldVersion < 3) {
+            // Upgrade from version 2 to 3: Adding folded search keys
+            addSearchKeys(db);
+        }
+        
+        if (oldVersion < 4) {
+            // Upgrade from version 3 to 4: Adding sort keys and metadata
+            addSortKeys(db);
+        }
+        
+        if (oldVersion < 5) {
+            // Upgrade from version 4 to 5: Adding the position history
+            addTracks(db);
+        }
+    }
+    
+    /**
+     * Runs the upgrade once for a database that was opened directly
+     */
+    private synchronized void checkSchema(SQLiteDatabase db) {
+        if (schemaChecked || db == null || db.isReadOnly()) {
+            return;
+        }
+        schemaChecked = true;
+        try {
+            int version = db.getVersion();
+            if (version < DATABASE_VERSION) {
+                onUpgrade(db, version, DATABASE_VERSION);
+                db.setVersion(DATABASE_VERSION);
+            }
+            // Collation keys depend on the device locale, rows written without keys are filled in
+            boolean localeChanged = !SortKeys.collationLocale().equals(getMetadata(db, META_COLLATION_LOCALE));
+            computeSortKeys(db, !localeChanged);
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking database schema: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Adds the search key columns and their index if they are missing and
+     * fills in the keys of existing rows. Folding needs Unicode
+     * normalization, so the keys are computed here and not in SQL.
+     */
+    private void addSearchKeys(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            if (!hasColumn(db, KEY_NAME_KEY)) {
+                db.execSQL("ALTER TABLE " + TABLE_CONTACTS + " ADD COLUMN " + KEY_NAME_KEY + " TEXT;");
+                db.execSQL("ALTER TABLE " + TABLE_CONTACTS + " ADD COLUMN " + KEY_PHONE_KEY + " TEXT;");
+                db.execSQL("ALTER TABLE " + TABLE_CONTACTS + " ADD COLUMN " + KEY_NOTES_KEY + " TEXT;");
+                Log.d(TAG, "Added search key columns to contacts table");
+            }
+            db.execSQL(CREATE_INDEX_NAME_KEY);
+            
+            // Backfill rows without keys in one transaction
+            db.beginTransaction();
+            try {
+                cursor = db.rawQuery("SELECT " + KEY_ID + ", " + KEY_NAME + ", " + KEY_PHONE + ", " + KEY_NOTES
+                        + " FROM " + TABLE_CONTACTS + " WHERE " + KEY_NAME_KEY + " IS NULL", null);
+                int count = 0;
+                ContentValues values = new ContentValues();
+                while (cursor.moveToNext()) {
+                    values.clear();
+                    values.put(KEY_NAME_KEY, SearchKeys.fold(cursor.getString(1)));
+                    values.put(KEY_PHONE_KEY, SearchKeys.fold(cursor.getString(2)));
+                    values.put(KEY_NOTES_KEY, SearchKeys.fold(cursor.getString(3)));
+                    db.update(TABLE_CONTACTS, values, KEY_ID + " = ?",
+                            new String[] { String.valueOf(cursor.getLong(0)) });
+                    count++;
+                }
+                db.setTransactionSuccessful();
+                Log.d(TAG, "Computed search keys for " + count + " contacts");
+            } finally {
+                db.endTransaction();
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error upgrading database: " + e.getMessage(), e);
+            Log.e(TAG, "Error adding search keys: " + e.getMessage(), e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
+    /**
+     * Adds the sort key columns, their index and the metadata table if they
+     * are missing and computes the collation keys of existing rows
+     */
+    private void addSortKeys(SQLiteDatabase db) {
+        try {
+            db.execSQL(CREATE_TABLE_METADATA);
+            if (!hasColumn(db, KEY_SORT_KEY)) {
+                db.execSQL("ALTER TABLE " + TABLE_CONTACTS + " ADD COLUMN " + KEY_SORT_KEY + " BLOB;");
+                db.execSQL("ALTER TABLE " + TABLE_CONTACTS + " ADD COLUMN " + KEY_LAST_USED + " INTEGER DEFAULT 0;");
+                Log.d(TAG, "Added sort key columns to contacts table");
+            }
+            db.execSQL(CREATE_INDEX_SORT_KEY);
+            computeSortKeys(db, true);
+        } catch (Exception e) {
+            Log.e(TAG, "Error adding sort keys: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Adds the track table if it is missing
+     */
+    private void addTracks(SQLiteDatabase db) {
+        try {
+            db.execSQL(CREATE_TABLE_TRACKS);
+        } catch (Exception e) {
+            Log.e(TAG, "Error adding track table: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Computes the collation keys for the current locale and records the locale
+     * @param missingOnly True to only fill rows without a key
+     */
+    private void computeSortKeys(SQLiteDatabase db, boolean missingOnly) {
+        Cursor cursor = null;
+        db.beginTransaction();
+        try {
+            cursor = db.rawQuery("SELECT " + KEY_ID + ", " + KEY_NAME + " FROM " + TABLE_CONTACTS
+                    + (missingOnly ? " WHERE " + KEY_SORT_KEY + " IS NULL" : ""), null);
+            int count = 0;
+            ContentValues values = new ContentValues();
+            while (cursor.moveToNext()) {
+                values.clear();
+                values.put(KEY_SORT_KEY, SortKeys.collationKey(cursor.getString(1)));
+                db.update(TABLE_CONTACTS, values, KEY_ID + " = ?",
+                        new String[] { String.valueOf(cursor.getLong(0)) });
+                count++;
+            }
+            setMetadata(db, META_COLLATION_LOCALE, SortKeys.collationLocale());
+            db.setTransactionSuccessful();
+            Log.d(TAG, "Computed sort keys for " + count + " contacts, locale " + SortKeys.collationLocale());
+        } catch (Exception e) {
+            Log.e(TAG, "Error computing sort keys: " + e.getMessage(), e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            db.endTransaction();
+        }
+    }
+    
+    /**
+     * @return True if the contacts table has the given column
+     */
+    private boolean hasColumn(SQLiteDatabase db, String column) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("PRAGMA table_info(" + TABLE_CONTACTS + ")", null);
+            int nameIndex = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(nameIndex))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
+    /**
+     * Reads a metadata entry
+     * @return The value, or null if it is not set
+     */
+    public String getMetadata(String key) {
+        try {
+            return getMetadata(getWritableDatabase(), key);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading metadata " + key + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Writes a metadata entry
+     */
+    public void setMetadata(String key, String value) {
+        try {
+            setMetadata(getWritableDatabase(), key, value);
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing metadata " + key + ": " + e.getMessage(), e);
+        }
+    }
+    
+    private static String getMetadata(SQLiteDatabase db, String key) {
+        Cursor cursor = null;
+        try {
+            cursor = db.query(TABLE_METADATA, new String[] { KEY_META_VALUE }, KEY_META_KEY + " = ?",
+                    new String[] { key }, null, null, null);
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } catch (Exception e) {
+            // The table is missing before the upgrade
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
+    private static void setMetadata(SQLiteDatabase db, String key, String value) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_META_KEY, key);
+        values.put(KEY_META_VALUE, value);
+        db.insertWithOnConflict(TABLE_METADATA, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+    
+    /**
+     * Records that a contact was used, for sorting by recent use
+     * @return Number of updated rows
+     */
+    public int markContactUsed(long contactId, long time) {
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(KEY_LAST_USED, time);
+            int result = db.update(TABLE_CONTACTS, values, KEY_ID + " = ?",
+                    new String[] { String.valueOf(contactId) });
+            if (result > 0) {
+                changeBus.postUpdated(contactId, null);
+            }
+            return result;
+        } catch (Exception e) {
+            Log.e(TAG, "Error marking contact " + contactId + " as used: " + e.getMessage(), e);
+            return 0;
+        }
+    }
+    
+    /**
+     * Puts the folded search keys and the sort key of a contact into the values
+     */
+    private static void putSearchKeys(ContentValues values, Contact contact) {
+        values.put(KEY_NAME_KEY, SearchKeys.name(contact));
+        values.put(KEY_PHONE_KEY, SearchKeys.phone(contact));
+        values.put(KEY_NOTES_KEY, SearchKeys.notes(contact));
+        values.put(KEY_SORT_KEY, SortKeys.of(contact));
+    }
+    
+    /**
+     * Reads the stored search and sort keys into a contact. Missing keys stay
+     * null and are computed when the contact is first searched or sorted.
+     */
+    private static void readSearchKeys(Cursor cursor, Contact contact) {
+        int nameKeyIndex = cursor.getColumnIndex(KEY_NAME_KEY);
+        int phoneKeyIndex = cursor.getColumnIndex(KEY_PHONE_KEY);
+        int notesKeyIndex = cursor.getColumnIndex(KEY_NOTES_KEY);
+        if (nameKeyIndex != -1 && phoneKeyIndex != -1 && notesKeyIndex != -1) {
+            contact.setNameKey(cursor.getString(nameKeyIndex));
+            contact.setPhoneKey(cursor.getString(phoneKeyIndex));
+            contact.setNotesKey(cursor.getString(notesKeyIndex));
+        }
+        
+        int sortKeyIndex = cursor.getColumnIndex(KEY_SORT_KEY);
+        int lastUsedIndex = cursor.getColumnIndex(KEY_LAST_USED);
+        if (sortKeyIndex != -1 && lastUsedIndex != -1) {
+            contact.setSortKey(cursor.getBlob(sortKeyIndex));
+            contact.setLastUsed(cursor.getLong(lastUsedIndex));
         }
     }
     
@@ -287,6 +648,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             values.put(KEY_NAME, contact.getName());
             values.put(KEY_PHONE, contact.getPhoneNumber());
             values.put(KEY_NOTES, contact.getNotes());
+            putSearchKeys(values, contact);
             
             // Füge Standortdaten hinzu, wenn vorhanden
             if (contact.hasLocation()) {
@@ -353,6 +715,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     db.execSQL("DROP TABLE IF EXISTS " + TABLE_CONTACTS);
                     db.execSQL(CREATE_TABLE_CONTACTS);
                     Log.d(TAG, "Recreated table for alternative approach");
+                    // All other rows are gone now
+                    changeBus.postReload();
                     
                     // Versuche erneut einzufügen
                     db.beginTransaction();
@@ -427,6 +791,16 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     Log.e(TAG, "Error in SQL insert approach: " + e.getMessage(), e);
                 }
             }
+            
+            if (id != -1) {
+                if (contact.hasLocation()) {
+                    appendTrackPoint(db, id, contact.getLatitude(), contact.getLongitude(),
+                            System.currentTimeMillis());
+                }
+                Contact inserted = new Contact(contact);
+                inserted.setId(id);
+                changeBus.postInserted(inserted);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error adding contact: " + e.getMessage(), e);
         }
@@ -441,7 +815,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             SQLiteDatabase db = this.getReadableDatabase();
             
             Cursor cursor = db.query(TABLE_CONTACTS, 
-                    new String[] { KEY_ID, KEY_NAME, KEY_PHONE, KEY_NOTES, KEY_LATITUDE, KEY_LONGITUDE },
+                    new String[] { KEY_ID, KEY_NAME, KEY_PHONE, KEY_NOTES, KEY_LATITUDE, KEY_LONGITUDE,
+                            KEY_NAME_KEY, KEY_PHONE_KEY, KEY_NOTES_KEY, KEY_SORT_KEY, KEY_LAST_USED },
                     KEY_ID + "=?", new String[] { String.valueOf(id) }, 
                     null, null, null, null);
             
@@ -451,6 +826,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                         cursor.getString(1),
                         cursor.getString(2),
                         cursor.getString(3));
+                readSearchKeys(cursor, contact);
                 
                 // Prüfe, ob Standortdaten vorhanden sind
                 int latIndex = cursor.getColumnIndex(KEY_LATITUDE);
@@ -520,7 +896,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             }
             
             // Alle Kontakte abrufen
-            String selectQuery = "SELECT * FROM " + TABLE_CONTACTS + " ORDER BY " + KEY_NAME + " COLLATE NOCASE ASC";
+            String selectQuery = "SELECT * FROM " + TABLE_CONTACTS + " ORDER BY " + KEY_SORT_KEY + " ASC, " + KEY_ID + " ASC";
             Log.d(TAG, "Executing query: " + selectQuery);
             
             cursor = db.rawQuery(selectQuery, null);
@@ -549,6 +925,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                             String notes = cursor.getString(notesIndex);
                             
                             Contact contact = new Contact(id, name, phone, notes);
+                            readSearchKeys(cursor, contact);
                             
                             // Prüfe, ob Standortdaten vorhanden sind
                             if (latIndex != -1 && longIndex != -1 && !cursor.isNull(latIndex) && !cursor.isNull(longIndex)) {
@@ -605,6 +982,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             values.put(KEY_NAME, contact.getName());
             values.put(KEY_PHONE, contact.getPhoneNumber());
             values.put(KEY_NOTES, contact.getNotes());
+            putSearchKeys(values, contact);
             
             // Aktualisiere Standortdaten
             if (contact.hasLocation()) {
@@ -710,6 +1088,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                         insertValues.put(KEY_NAME, contact.getName());
                         insertValues.put(KEY_PHONE, contact.getPhoneNumber());
                         insertValues.put(KEY_NOTES, contact.getNotes());
+                        putSearchKeys(insertValues, contact);
                         
                         if (contact.hasLocation()) {
                             insertValues.put(KEY_LATITUDE, contact.getLatitude());
@@ -734,6 +1113,14 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     Log.e(TAG, "Error in delete and reinsert approach: " + e.getMessage(), e);
                 }
             }
+            
+            if (result > 0) {
+                if (contact.hasLocation()) {
+                    appendTrackPoint(db, contact.getId(), contact.getLatitude(), contact.getLongitude(),
+                            System.currentTimeMillis());
+                }
+                changeBus.postUpdated(contact.getId(), new Contact(contact));
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error updating contact: " + e.getMessage(), e);
         }
@@ -755,17 +1142,289 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             try {
                 result = db.delete(TABLE_CONTACTS, KEY_ID + " = ?",
                         new String[] { String.valueOf(contact.getId()) });
+                db.delete(TABLE_TRACKS, KEY_CONTACT_ID + " = ?", new String[] { String.valueOf(contact.getId()) });
                 db.setTransactionSuccessful();
                 Log.d(TAG, "Deleted contact with ID: " + contact.getId() + ", rows affected: " + result);
             } finally {
                 db.endTransaction();
             }
+            if (result > 0) {
+                changeBus.postDeleted(contact.getId());
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error deleting contact with id " + contact.getId() + ": " + e.getMessage(), e);
         }
         return result;
     }
     
+    /**
+     * Deletes several contacts in one transaction
+     * @param contactIds Ids of the contacts to delete
+     * @return Number of deleted rows
+     */
+    public int deleteContacts(long[] contactIds) {
+        int result = 0;
+        boolean committed = false;
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                // Chunks stay below the SQLite limit of 999 bound parameters
+                for (int start = 0; start < contactIds.length; start += DELETE_CHUNK_SIZE) {
+                    int end = Math.min(contactIds.length, start + DELETE_CHUNK_SIZE);
+                    StringBuilder where = new StringBuilder(KEY_ID).append(" IN (");
+                    String[] args = new String[end - start];
+                    for (int i = start; i < end; i++) {
+                        where.append(i > start ? ",?" : "?");
+                        args[i - start] = String.valueOf(contactIds[i]);
+                    }
+                    where.append(')');
+                    result += db.delete(TABLE_CONTACTS, where.toString(), args);
+                }
+                // Their tracks go in the same transaction
+                for (int start = 0; start < contactIds.length; start += DELETE_CHUNK_SIZE) {
+                    int end = Math.min(contactIds.length, start + DELETE_CHUNK_SIZE);
+                    StringBuilder where = new StringBuilder(KEY_CONTACT_ID).append(" IN (");
+                    String[] args = new String[end - start];
+                    for (int i = start; i < end; i++) {
+                        where.append(i > start ? ",?" : "?");
+                        args[i - start] = String.valueOf(contactIds[i]);
+                    }
+                    where.append(')');
+                    db.delete(TABLE_TRACKS, where.toString(), args);
+                }
+                db.setTransactionSuccessful();
+                committed = true;
+                Log.d(TAG, "Deleted " + result + " of " + contactIds.length + " contacts");
+            } finally {
+                db.endTransaction();
+            }
+            if (result > 0) {
+                changeBus.postDeleted(contactIds);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error deleting " + contactIds.length + " contacts: " + e.getMessage(), e);
+        }
+        // Nothing was deleted if the transaction was rolled back
+        return committed ? result : 0;
+    }
+    
+    /**
+     * Writes the positions of several contacts in one transaction and adds
+     * them to their tracks. Only the location columns are written, and only
+     * the positions are reported, so observers keep the other fields they show.
+     * @param contactIds Ids of the contacts
+     * @param latitudes New latitude of each contact
+     * @param longitudes New longitude of each contact
+     * @param times Time of each position in milliseconds
+     * @return Number of updated rows
+     */
+    public int updateLocations(long[] contactIds, double[] latitudes, double[] longitudes, long[] times) {
+        int result = 0;
+        boolean[] updated = new boolean[contactIds.length];
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_CONTACTS + " SET "
+                    + KEY_LATITUDE + " = ?, " + KEY_LONGITUDE + " = ? WHERE " + KEY_ID + " = ?");
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < contactIds.length; i++) {
+                    update.bindDouble(1, latitudes[i]);
+                    update.bindDouble(2, longitudes[i]);
+                    update.bindLong(3, contactIds[i]);
+                    if (update.executeUpdateDelete() > 0) {
+                        appendTrackPoint(db, contactIds[i], latitudes[i], longitudes[i], times[i]);
+                        updated[i] = true;
+                        result++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                update.close();
+            }
+            for (int i = 0; i < contactIds.length; i++) {
+                if (updated[i]) {
+                    changeBus.postMoved(contactIds[i], latitudes[i], longitudes[i]);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating " + contactIds.length + " locations: " + e.getMessage(), e);
+            return 0;
+        }
+        return result;
+    }
+    
+    /**
+     * Records a position fix of a contact in its track
+     * @param time Time of the fix in milliseconds
+     */
+    public void addTrackPoint(long contactId, double latitude, double longitude, long time) {
+        try {
+            appendTrackPoint(getWritableDatabase(), contactId, latitude, longitude, time);
+        } catch (Exception e) {
+            Log.e(TAG, "Error adding track point of contact " + contactId + ": " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Appends a fix unless the contact is still where its last fix was
+     */
+    private void appendTrackPoint(SQLiteDatabase db, long contactId, double latitude, double longitude, long time) {
+        Cursor cursor = null;
+        try {
+            long latitudeE7 = Math.round(latitude * TRACK_SCALE);
+            long longitudeE7 = Math.round(longitude * TRACK_SCALE);
+            cursor = db.rawQuery("SELECT " + KEY_LATITUDE_E7 + ", " + KEY_LONGITUDE_E7 + " FROM " + TABLE_TRACKS
+                    + " WHERE " + KEY_CONTACT_ID + " = ? ORDER BY " + KEY_TIME + " DESC LIMIT 1",
+                    new String[] { String.valueOf(contactId) });
+            if (cursor != null && cursor.moveToFirst()
+                    && cursor.getLong(0) == latitudeE7 && cursor.getLong(1) == longitudeE7) {
+                return;
+            }
+            ContentValues values = new ContentValues();
+            values.put(KEY_CONTACT_ID, contactId);
+            values.put(KEY_TIME, time);
+            values.put(KEY_LATITUDE_E7, latitudeE7);
+            values.put(KEY_LONGITUDE_E7, longitudeE7);
+            // A second fix in the same millisecond replaces the first
+            db.insertWithOnConflict(TABLE_TRACKS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (Exception e) {
+            Log.e(TAG, "Error appending track point of contact " + contactId + ": " + e.getMessage(), e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
+    /**
+     * Reads the fixes of a contact in a time range, one range of the primary key
+     * @param from Start of the range in milliseconds, inclusive
+     * @param to End of the range in milliseconds, inclusive
+     * @return The track, empty on error
+     */
+    public Track getTrack(long contactId, long from, long to) {
+        Track track = new Track(contactId, 256);
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + KEY_TIME + ", " + KEY_LATITUDE_E7 + ", " + KEY_LONGITUDE_E7
+                    + " FROM " + TABLE_TRACKS + " WHERE " + KEY_CONTACT_ID + " = ? AND " + KEY_TIME
+                    + " BETWEEN ? AND ? ORDER BY " + KEY_TIME,
+                    new String[] { String.valueOf(contactId), String.valueOf(from), String.valueOf(to) });
+            while (cursor.moveToNext()) {
+                track.add(cursor.getLong(0), cursor.getLong(1) / TRACK_SCALE, cursor.getLong(2) / TRACK_SCALE);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading track of contact " + contactId + ": " + e.getMessage(), e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return track;
+    }
+    
+    /**
+     * Drops the fixes beyond the retention and thins the ones that aged into
+     * a sparser interval since the last pruning, see {@link TrackRetention}.
+     * Does nothing if the tracks were pruned less than an hour ago.
+     * @param now Current time in milliseconds
+     * @return Number of dropped fixes
+     */
+    public int pruneTracks(long now) {
+        int dropped = 0;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            long lastPruned = 0;
+            String value = getMetadata(db, META_TRACKS_PRUNED);
+            if (value != null) {
+                try {
+                    lastPruned = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Ignoring malformed track pruning time " + value);
+                }
+            }
+            if (lastPruned <= now && now - lastPruned < TRACK_PRUNE_INTERVAL) {
+                return 0;
+            }
+            db.beginTransaction();
+            try {
+                dropped += db.delete(TABLE_TRACKS, KEY_TIME + " < ?",
+                        new String[] { String.valueOf(now - TrackRetention.MAX_AGE) });
+                // Fixes that got older than a day or a week since the last pruning
+                dropped += thinTracks(db, TrackRetention.windowStart(lastPruned - TrackRetention.RAW_AGE),
+                        now - TrackRetention.RAW_AGE, now);
+                dropped += thinTracks(db, TrackRetention.windowStart(lastPruned - TrackRetention.MINUTE_AGE),
+                        now - TrackRetention.MINUTE_AGE, now);
+                setMetadata(db, META_TRACKS_PRUNED, String.valueOf(now));
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            Log.d(TAG, "Pruned " + dropped + " track points");
+        } catch (Exception e) {
+            Log.e(TAG, "Error pruning tracks: " + e.getMessage(), e);
+            return 0;
+        }
+        return dropped;
+    }
+    
+    /**
+     * Thins the fixes of all contacts in a time range
+     * @param from Start of the range, a multiple of {@link TrackRetention#MAX_INTERVAL}
+     * @param to End of the range, exclusive
+     * @return Number of dropped fixes
+     */
+    private int thinTracks(SQLiteDatabase db, long from, long to, long now) {
+        if (to <= from) {
+            return 0;
+        }
+        int dropped = 0;
+        Cursor cursor = null;
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_TRACKS
+                + " WHERE " + KEY_CONTACT_ID + " = ? AND " + KEY_TIME + " = ?");
+        try {
+            cursor = db.rawQuery("SELECT " + KEY_CONTACT_ID + ", " + KEY_TIME + " FROM " + TABLE_TRACKS
+                    + " WHERE " + KEY_TIME + " >= ? AND " + KEY_TIME + " < ? ORDER BY "
+                    + KEY_CONTACT_ID + ", " + KEY_TIME,
+                    new String[] { String.valueOf(from), String.valueOf(to) });
+            long contactId = 0;
+            long[] times = new long[256];
+            int count = 0;
+            while (true) {
+                boolean more = cursor.moveToNext();
+                if (count > 0 && (!more || cursor.getLong(0) != contactId)) {
+                    // All fixes of one contact in the range are read
+                    boolean[] drop = TrackRetention.thin(times, count, now);
+                    for (int i = 0; i < count; i++) {
+                        if (drop[i]) {
+                            delete.bindLong(1, contactId);
+                            delete.bindLong(2, times[i]);
+                            dropped += delete.executeUpdateDelete();
+                        }
+                    }
+                    count = 0;
+                }
+                if (!more) {
+                    break;
+                }
+                contactId = cursor.getLong(0);
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                }
+                times[count++] = cursor.getLong(1);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            delete.close();
+        }
+        return dropped;
+    }
+    
     /**
      * Anzahl der Kontakte abrufen
      */
@@ -785,8 +1444,30 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return count;
     }
     
+    /**
+     * @return The shared connection, opened on the first call and kept until {@link #close()}
+     */
     @Override
     public synchronized SQLiteDatabase getWritableDatabase() {
+        if (database == null || !database.isOpen()) {
+            database = openWritableDatabase();
+        }
+        return database;
+    }
+    
+    /**
+     * Closes the shared connection
+     */
+    @Override
+    public synchronized void close() {
+        if (database != null) {
+            database.close();
+            database = null;
+        }
+        super.close();
+    }
+    
+    private SQLiteDatabase openWritableDatabase() {
         SQLiteDatabase db = null;
         try {
             if (dbPath != null) {
@@ -805,6 +1486,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                         try {
                             db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
                             onCreate(db);
+                            db.setVersion(DATABASE_VERSION);
                             Log.d(TAG, "Created new database at: " + dbPath);
                             return db;
                         } catch (Exception e) {
@@ -818,6 +1500,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                         try {
                             Log.d(TAG, "Opening existing database at: " + dbPath);
                             db = SQLiteDatabase.openDatabase(dbPath, null, SQLiteDatabase.OPEN_READWRITE);
+                            checkSchema(db);
                             return db;
                         } catch (Exception e) {
                             Log.e(TAG, "Error opening existing database at " + dbPath + ": " + e.getMessage(), e);
@@ -830,6 +1513,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                                 
                                 db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
                                 onCreate(db);
+                                db.setVersion(DATABASE_VERSION);
                                 Log.d(TAG, "Recreated database at: " + dbPath);
                                 return db;
                             } catch (Exception e2) {
@@ -862,9 +1546,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 
                 // Prüfen, ob die Datenbank existiert
                 if (dbFile.exists()) {
-                    // Wenn die Datenbank existiert, öffnen wir sie
-                    Log.d(TAG, "Opening existing database for reading at: " + dbPath);
-                    return SQLiteDatabase.openDatabase(dbPath, null, SQLiteDatabase.OPEN_READONLY);
+                    // Reads share the writable connection, which also runs the upgrade once
+                    return getWritableDatabase();
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error opening readable database at " + dbPath + ": " + e.getMessage(), e);
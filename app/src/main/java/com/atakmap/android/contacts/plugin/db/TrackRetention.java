@@ -0,0 +1,82 @@
+package com.atakmap.android.contacts.plugin.db;
+
+/**
+ * How long position fixes are kept and how densely.
+ *
+ * Fixes of the last day are all kept. Up to a week back one fix per
+ * minute is kept, up to a year back one per quarter hour, and older fixes
+ * are dropped. So a contact that reports every few seconds still has
+ * about 50000 stored fixes at most. The kept fix of an interval is the
+ * first one, and the intervals are aligned to the epoch, so thinning the
+ * same fixes again drops nothing more.
+ */
+public final class TrackRetention {
+    
+    static final long MINUTE = 60 * 1000L;
+    static final long DAY = 24 * 60 * MINUTE;
+    
+    // Fixes younger than this are all kept
+    public static final long RAW_AGE = DAY;
+    // Up to this age one fix per minute is kept, beyond it one per quarter hour
+    public static final long MINUTE_AGE = 7 * DAY;
+    // Older fixes are dropped
+    public static final long MAX_AGE = 365 * DAY;
+    // The longest interval, windows of fixes to thin start at a multiple of it
+    public static final long MAX_INTERVAL = 15 * MINUTE;
+    
+    private TrackRetention() {
+    }
+    
+    /**
+     * @param age Age of a fix in milliseconds
+     * @return The interval with one kept fix at that age, 0 to keep every fix, -1 to drop it
+     */
+    public static long interval(long age) {
+        if (age < RAW_AGE) {
+            return 0;
+        }
+        if (age < MINUTE_AGE) {
+            return MINUTE;
+        }
+        return age < MAX_AGE ? MAX_INTERVAL : -1;
+    }
+    
+    /**
+     * Finds the fixes of one contact that are no longer kept
+     * @param times Times of the fixes, ascending. A window should start at a
+     *              multiple of {@link #MAX_INTERVAL}, so no interval starts before it.
+     * @param count Number of fixes in times
+     * @param now Current time
+     * @return True for each fix that is dropped
+     */
+    public static boolean[] thin(long[] times, int count, long now) {
+        boolean[] drop = new boolean[count];
+        long lastInterval = 0;
+        long lastBucket = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            long interval = interval(now - times[i]);
+            if (interval < 0) {
+                drop[i] = true;
+            } else if (interval > 0) {
+                long bucket = floorDiv(times[i], interval);
+                drop[i] = interval == lastInterval && bucket == lastBucket;
+                lastInterval = interval;
+                lastBucket = bucket;
+            }
+        }
+        return drop;
+    }
+    
+    /**
+     * @return The time rounded down to a multiple of {@link #MAX_INTERVAL}
+     */
+    public static long windowStart(long time) {
+        return floorDiv(time, MAX_INTERVAL) * MAX_INTERVAL;
+    }
+    
+    // Math.floorDiv needs API level 24
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? quotient - 1 : quotient;
+    }
+}
@@ -0,0 +1,276 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Grid clusters of contact positions for every zoom level.
+ *
+ * Level n divides the world into cells of 360 / 2^n degrees. Each level
+ * keeps the count and coordinate sums of its non-empty cells, so adding,
+ * moving or removing a contact updates one cell per level and the clusters
+ * of a level can be read without looking at the contacts again. The cells
+ * of the finest level also list their contacts, which makes the index a
+ * spatial index for the contacts inside a map area. The cell counts of a
+ * level are also the contact density shown by the heatmap of the overlay.
+ *
+ * Not thread-safe, the overlay uses it from one worker thread.
+ */
+public class ClusterIndex {
+    
+    // Cells of the finest level are about 40 m wide
+    public static final int MAX_LEVEL = 20;
+    
+    private static final double METERS_PER_DEGREE = 111320.0;
+    
+    /**
+     * A cluster of one level, or a single contact
+     */
+    public static final class Cluster {
+        // Cell of the cluster, unique within its level
+        public final long key;
+        public final int count;
+        public final double latitude;
+        public final double longitude;
+        // The contact if the cluster holds only one, -1 otherwise
+        public final long contactId;
+        
+        Cluster(long key, int count, double latitude, double longitude, long contactId) {
+            this.key = key;
+            this.count = count;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.contactId = contactId;
+        }
+    }
+    
+    private static final class Cell {
+        int count;
+        double latitudeSum;
+        double longitudeSum;
+        // Xor of the contact ids, which is the id itself while the cell holds one contact
+        long idXor;
+    }
+    
+    // Latitude and longitude of each contact
+    private final Map<Long, double[]> positions = new HashMap<>();
+    // Cells of each zoom level by their key
+    private final List<Map<Long, Cell>> levels = new ArrayList<>(MAX_LEVEL + 1);
+    // Contacts of each cell of the finest level
+    private final Map<Long, Set<Long>> members = new HashMap<>();
+    
+    public ClusterIndex() {
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            levels.add(new HashMap<>());
+        }
+    }
+    
+    /**
+     * Adds a contact or moves it to a new position
+     */
+    public void put(long contactId, double latitude, double longitude) {
+        double[] previous = positions.get(contactId);
+        if (previous != null) {
+            if (previous[0] == latitude && previous[1] == longitude) {
+                return;
+            }
+            update(contactId, previous[0], previous[1], -1);
+        }
+        positions.put(contactId, new double[] { latitude, longitude });
+        update(contactId, latitude, longitude, 1);
+    }
+    
+    public void remove(long contactId) {
+        double[] previous = positions.remove(contactId);
+        if (previous != null) {
+            update(contactId, previous[0], previous[1], -1);
+        }
+    }
+    
+    public void clear() {
+        positions.clear();
+        members.clear();
+        for (Map<Long, Cell> cells : levels) {
+            cells.clear();
+        }
+    }
+    
+    public int size() {
+        return positions.size();
+    }
+    
+    /**
+     * @param level Zoom level, above {@link #MAX_LEVEL} every contact is returned on its own
+     * @return The clusters of the level
+     */
+    public List<Cluster> clusters(int level) {
+        if (level > MAX_LEVEL) {
+            List<Cluster> singles = new ArrayList<>(positions.size());
+            for (Map.Entry<Long, double[]> entry : positions.entrySet()) {
+                double[] position = entry.getValue();
+                singles.add(new Cluster(entry.getKey(), 1, position[0], position[1], entry.getKey()));
+            }
+            return singles;
+        }
+        Map<Long, Cell> cells = levels.get(Math.max(0, level));
+        List<Cluster> clusters = new ArrayList<>(cells.size());
+        for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+            addCell(clusters, level, entry.getKey(), entry.getValue());
+        }
+        return clusters;
+    }
+    
+    /**
+     * The clusters of a level inside an area. Clusters are included if their
+     * cell overlaps the area, so they may lie a little outside of it.
+     * @param level Zoom level, above {@link #MAX_LEVEL} every contact is returned on its own
+     * @param west West edge, may be below -180 if the area crosses the antimeridian
+     * @param east East edge, may be above 180 if the area crosses the antimeridian
+     * @return The clusters of the level in the area
+     */
+    public List<Cluster> clusters(int level, double south, double west, double north, double east) {
+        List<Cluster> clusters = new ArrayList<>();
+        if (east - west >= 360.0) {
+            west = -180.0;
+            east = 180.0;
+        } else {
+            // Normalize the west edge, the east edge follows
+            double span = east - west;
+            west = ((west + 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+            east = west + span;
+        }
+        int gridLevel = Math.max(0, Math.min(MAX_LEVEL, level));
+        if (east > 180.0) {
+            collect(clusters, level, gridLevel, south, west, north, 180.0);
+            collect(clusters, level, gridLevel, south, -180.0, north, east - 360.0);
+        } else {
+            collect(clusters, level, gridLevel, south, west, north, east);
+        }
+        return clusters;
+    }
+    
+    private void collect(List<Cluster> clusters, int level, int gridLevel,
+                         double south, double west, double north, double east) {
+        Map<Long, Cell> cells = levels.get(gridLevel);
+        double size = 360.0 / (1L << gridLevel);
+        long rowMin = (long) Math.floor((Math.max(-90.0, south) + 90.0) / size);
+        long rowMax = (long) Math.floor((Math.min(90.0, north) + 90.0) / size);
+        long columnMin = (long) Math.floor((west + 180.0) / size);
+        long columnMax = (long) Math.floor((east + 180.0) / size);
+        if (rowMax < rowMin || columnMax < columnMin) {
+            return;
+        }
+        // Look up the cells of the area, or scan the non-empty cells if there are fewer of those
+        long area = (rowMax - rowMin + 1) * (columnMax - columnMin + 1);
+        if (area <= cells.size()) {
+            for (long row = rowMin; row <= rowMax; row++) {
+                for (long column = columnMin; column <= columnMax; column++) {
+                    long key = (row << 32) | (column & 0xFFFFFFFFL);
+                    Cell cell = cells.get(key);
+                    if (cell != null) {
+                        addCell(clusters, level, key, cell);
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                long key = entry.getKey();
+                long row = key >> 32;
+                long column = key & 0xFFFFFFFFL;
+                if (row >= rowMin && row <= rowMax && column >= columnMin && column <= columnMax) {
+                    addCell(clusters, level, key, entry.getValue());
+                }
+            }
+        }
+    }
+    
+    private void addCell(List<Cluster> clusters, int level, long key, Cell cell) {
+        if (level > MAX_LEVEL && cell.count > 1) {
+            for (long id : members.get(key)) {
+                double[] position = positions.get(id);
+                clusters.add(new Cluster(id, 1, position[0], position[1], id));
+            }
+        } else if (cell.count == 1) {
+            // The exact position, sums may have picked up rounding errors
+            double[] position = positions.get(cell.idXor);
+            clusters.add(new Cluster(level > MAX_LEVEL ? cell.idXor : key, 1, position[0], position[1], cell.idXor));
+        } else {
+            clusters.add(new Cluster(key, cell.count,
+                    cell.latitudeSum / cell.count, cell.longitudeSum / cell.count, -1));
+        }
+    }
+    
+    /**
+     * @param metersPerPixel Current map resolution
+     * @param clusterPixels Screen size of one cell
+     * @return The level whose cells are about clusterPixels wide, MAX_LEVEL + 1 if no clustering is needed
+     */
+    public static int levelFor(double metersPerPixel, int clusterPixels) {
+        double cellDegrees = metersPerPixel * clusterPixels / METERS_PER_DEGREE;
+        if (!(cellDegrees > 0)) {
+            return MAX_LEVEL + 1;
+        }
+        int level = (int) Math.floor(Math.log(360.0 / cellDegrees) / Math.log(2));
+        return Math.max(0, Math.min(MAX_LEVEL + 1, level));
+    }
+    
+    /**
+     * @param key Key of a cell, as in {@link Cluster#key}
+     * @return South, west, north and east edge of the cell of a level
+     */
+    public static double[] cellBounds(int level, long key) {
+        double size = 360.0 / (1L << level);
+        long row = key >> 32;
+        long column = key & 0xFFFFFFFFL;
+        return new double[] {
+                row * size - 90.0, column * size - 180.0,
+                Math.min(90.0, (row + 1) * size - 90.0), (column + 1) * size - 180.0 };
+    }
+    
+    /**
+     * @return Key of the cell that contains a position at a level
+     */
+    static long cellKey(int level, double latitude, double longitude) {
+        double size = 360.0 / (1L << level);
+        long row = (long) Math.floor((latitude + 90.0) / size);
+        long column = (long) Math.floor((longitude + 180.0) / size);
+        return (row << 32) | (column & 0xFFFFFFFFL);
+    }
+    
+    private void update(long contactId, double latitude, double longitude, int delta) {
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            long key = cellKey(level, latitude, longitude);
+            Map<Long, Cell> cells = levels.get(level);
+            Cell cell = cells.get(key);
+            if (cell == null) {
+                cell = new Cell();
+                cells.put(key, cell);
+            }
+            cell.count += delta;
+            cell.latitudeSum += delta * latitude;
+            cell.longitudeSum += delta * longitude;
+            cell.idXor ^= contactId;
+            if (cell.count == 0) {
+                cells.remove(key);
+            }
+        }
+        long key = cellKey(MAX_LEVEL, latitude, longitude);
+        Set<Long> ids = members.get(key);
+        if (delta > 0) {
+            if (ids == null) {
+                ids = new HashSet<>(2);
+                members.put(key, ids);
+            }
+            ids.add(contactId);
+        } else if (ids != null) {
+            ids.remove(contactId);
+            if (ids.isEmpty()) {
+                members.remove(key);
+            }
+        }
+    }
+}
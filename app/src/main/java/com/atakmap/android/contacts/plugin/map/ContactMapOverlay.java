@@ -0,0 +1,594 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.atakmap.android.contacts.plugin.db.ContactChangeBus;
+import com.atakmap.android.contacts.plugin.db.ContactChangeEvent;
+import com.atakmap.android.contacts.plugin.db.DatabaseHelper;
+import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.android.contacts.plugin.model.Track;
+import com.atakmap.android.maps.DefaultMapGroup;
+import com.atakmap.android.maps.MapGroup;
+import com.atakmap.android.maps.MapView;
+import com.atakmap.android.maps.Marker;
+import com.atakmap.android.maps.Polyline;
+import com.atakmap.coremap.maps.coords.GeoPoint;
+import com.atakmap.map.AtakMapView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The "Contacts" map overlay with the contacts that have a location.
+ *
+ * The markers live in their own map group. Where contacts are dense for
+ * the current zoom, they are shown as one cluster marker with their count,
+ * otherwise each contact has its own marker keyed by the contact id. The
+ * clusters are computed by a {@link ClusterIndex} on a worker thread when
+ * the data or the zoom level changes, and only the markers that differ
+ * from the last result are added, moved or removed on the UI thread.
+ *
+ * Markers only exist for the visible area plus a margin. The area is
+ * recomputed when the view leaves it, so small pans do no work, and the
+ * number of markers follows the screen and not the number of contacts.
+ * Released markers are kept in a small pool and reused when their contact
+ * comes back into view.
+ *
+ * The optional density heatmap is read from the cell counts of the same
+ * index, at a finer level than the clusters. Each non-empty cell of the
+ * area is one filled rectangle in the "Contact density" group, coloured by
+ * its count. The index keeps the counts up to date with every change, so
+ * the heatmap costs the visible cells and not the number of contacts.
+ */
+public class ContactMapOverlay implements ContactChangeBus.Observer, AtakMapView.OnMapMovedListener {
+    
+    private static final String TAG = "ContactMapOverlay";
+    
+    public static final String GROUP_NAME = "Contacts";
+    public static final String DENSITY_GROUP_NAME = "Contact density";
+    
+    // Civilian contact
+    private static final String MARKER_TYPE = "a-f-G-U-C";
+    // Group of contacts
+    private static final String CLUSTER_TYPE = "a-f-G";
+    
+    // Screen size of a cluster cell
+    private static final int CLUSTER_PIXELS = 64;
+    // Screen size of a heatmap cell
+    private static final int DENSITY_PIXELS = 32;
+    // Heatmap cells at most, a coarser level is used for more
+    private static final int MAX_DENSITY_CELLS = 2000;
+    
+    private static final int TRACK_COLOR = 0xFF00B0FF;
+    
+    // Markers are created for the view plus this share of its size on every side
+    private static final double VIEW_MARGIN = 0.5;
+    // Released markers kept for reuse
+    private static final int POOL_SIZE = 64;
+    
+    private static final double METERS_PER_DEGREE = 111320.0;
+    
+    // Contacts that are only known by id are read here
+    private static final Executor READ_EXECUTOR = Executors.newSingleThreadExecutor();
+    // Owns the cluster index, changes and cluster queries run in order
+    private static final Executor CLUSTER_EXECUTOR = Executors.newSingleThreadExecutor();
+    
+    private final MapView mapView;
+    private final DatabaseHelper dbHelper;
+    private final MapGroup group;
+    private final MapGroup densityGroup;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Located contacts by id, only touched on the UI thread
+    private final Map<Long, Contact> contacts = new HashMap<>();
+    // Markers on the map by uid, only touched on the UI thread
+    private final Map<String, Marker> markers = new HashMap<>();
+    // Markers released from the map by uid, least recently released first
+    private final Map<String, Marker> pool = new LinkedHashMap<String, Marker>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Marker> eldest) {
+            return size() > POOL_SIZE;
+        }
+    };
+    
+    // Only used on the cluster executor
+    private final ClusterIndex clusterIndex = new ClusterIndex();
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+    private volatile int level;
+    // South, west, north and east edge of the area that has markers
+    private volatile double[] area;
+    private volatile int densityLevel;
+    private volatile boolean densityVisible;
+    // Heatmap cells on the map by cell key, only touched on the UI thread
+    private final Map<Long, Polyline> densityShapes = new HashMap<>();
+    // Level of the heatmap cells on the map, -1 if there are none
+    private int densityShownLevel = -1;
+    private int densityShapeCount;
+    // Shown tracks by contact id, only touched on the UI thread
+    private final Map<Long, Polyline> tracks = new HashMap<>();
+    
+    public ContactMapOverlay(MapView mapView, DatabaseHelper dbHelper) {
+        this.mapView = mapView;
+        this.dbHelper = dbHelper;
+        
+        // Markers of an earlier session are replaced by the first sync
+        MapGroup existing = mapView.getRootGroup().findMapGroup(GROUP_NAME);
+        if (existing != null) {
+            existing.clearItems();
+            group = existing;
+        } else {
+            group = new DefaultMapGroup(GROUP_NAME);
+            mapView.getRootGroup().addGroup(group);
+        }
+        MapGroup existingDensity = mapView.getRootGroup().findMapGroup(DENSITY_GROUP_NAME);
+        if (existingDensity != null) {
+            existingDensity.clearItems();
+            densityGroup = existingDensity;
+        } else {
+            densityGroup = new DefaultMapGroup(DENSITY_GROUP_NAME);
+            mapView.getRootGroup().addGroup(densityGroup);
+        }
+        level = ClusterIndex.levelFor(mapView.getMapResolution(), CLUSTER_PIXELS);
+        densityLevel = densityLevelFor(mapView.getMapResolution());
+        area = expand(viewport(mapView), VIEW_MARGIN);
+        mapView.addOnMapMovedListener(this);
+        dbHelper.getChangeBus().register(this);
+    }
+    
+    /**
+     * @return Unique id of the marker of a single contact
+     */
+    public static String markerUid(long contactId) {
+        return "contact_" + contactId;
+    }
+    
+    /**
+     * Shows or hides the contact density heatmap
+     */
+    public void setDensityVisible(boolean visible) {
+        densityVisible = visible;
+        if (visible) {
+            densityLevel = densityLevelFor(mapView.getMapResolution());
+            schedulePublish();
+        } else {
+            densityGroup.clearItems();
+            densityShapes.clear();
+            densityShownLevel = -1;
+        }
+    }
+    
+    public boolean isDensityVisible() {
+        return densityVisible;
+    }
+    
+    /**
+     * Shows the track of a contact as a line, replacing a track shown before
+     * @param track Fixes of the track, usually simplified for the current zoom
+     */
+    public void showTrack(String name, Track track) {
+        long contactId = track.getContactId();
+        Polyline line = tracks.get(contactId);
+        if (line == null) {
+            line = new Polyline("contact_track_" + contactId);
+            line.setStrokeColor(TRACK_COLOR);
+            line.setStrokeWeight(3);
+            line.setMetaBoolean("addToObjList", false);
+            group.addItem(line);
+            tracks.put(contactId, line);
+        }
+        GeoPoint[] points = new GeoPoint[track.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new GeoPoint(track.getLatitude(i), track.getLongitude(i));
+        }
+        line.setPoints(points);
+        line.setTitle("Track of " + name);
+    }
+    
+    public void hideTrack(long contactId) {
+        Polyline line = tracks.remove(contactId);
+        if (line != null) {
+            group.removeItem(line);
+        }
+    }
+    
+    public boolean isTrackShown(long contactId) {
+        return tracks.containsKey(contactId);
+    }
+    
+    /**
+     * Brings the markers in line with a full contact list, only the differences are applied
+     * @param all All contacts
+     */
+    public void sync(List<Contact> all) {
+        try {
+            // One task for the index instead of one per contact
+            List<Contact> located = new ArrayList<>();
+            Set<Long> locatedIds = new HashSet<>();
+            for (Contact contact : all) {
+                if (contact.hasLocation()) {
+                    located.add(contact);
+                    locatedIds.add(contact.getId());
+                }
+            }
+            final List<Long> gone = new ArrayList<>();
+            for (Long id : contacts.keySet()) {
+                if (!locatedIds.contains(id)) {
+                    gone.add(id);
+                }
+            }
+            for (long id : gone) {
+                contacts.remove(id);
+            }
+            for (Contact contact : located) {
+                contacts.put(contact.getId(), contact);
+                Marker marker = markers.get(markerUid(contact.getId()));
+                if (marker != null) {
+                    setDetails(marker, contact);
+                }
+            }
+            final long[] ids = new long[located.size()];
+            final double[] coordinates = new double[located.size() * 2];
+            for (int i = 0; i < ids.length; i++) {
+                Contact contact = located.get(i);
+                ids[i] = contact.getId();
+                coordinates[2 * i] = contact.getLatitude();
+                coordinates[2 * i + 1] = contact.getLongitude();
+            }
+            CLUSTER_EXECUTOR.execute(() -> {
+                for (long id : gone) {
+                    clusterIndex.remove(id);
+                }
+                for (int i = 0; i < ids.length; i++) {
+                    clusterIndex.put(ids[i], coordinates[2 * i], coordinates[2 * i + 1]);
+                }
+            });
+            schedulePublish();
+            Log.d(TAG, "Synced " + contacts.size() + " located contacts");
+        } catch (Exception e) {
+            Log.e(TAG, "Error syncing contact markers: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public void onContactsChanged(ContactChangeEvent event) {
+        try {
+            // A reload is followed by a sync with the new list
+            for (long id : event.getDeleted()) {
+                remove(id);
+                // Its track is gone from the database as well
+                hideTrack(id);
+            }
+            List<Long> unknown = new ArrayList<>();
+            for (long[] ids : new long[][] { event.getInserted(), event.getUpdated() }) {
+                for (long id : ids) {
+                    Contact contact = event.getContact(id);
+                    double[] position = event.getPosition(id);
+                    Contact shown = contacts.get(id);
+                    if (contact == null && position != null && shown != null) {
+                        // Only moved, the details of the marker stay
+                        contact = new Contact(shown);
+                        contact.setLocation(position[0], position[1]);
+                    }
+                    if (contact != null) {
+                        apply(contact);
+                    } else {
+                        unknown.add(id);
+                    }
+                }
+            }
+            if (!unknown.isEmpty()) {
+                READ_EXECUTOR.execute(() -> {
+                    final List<Contact> read = new ArrayList<>(unknown.size());
+                    for (long id : unknown) {
+                        Contact contact = dbHelper.getContact(id);
+                        if (contact != null) {
+                            read.add(contact);
+                        }
+                    }
+                    mainHandler.post(() -> {
+                        for (Contact contact : read) {
+                            apply(contact);
+                        }
+                    });
+                });
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying contact changes: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public void onMapMoved(AtakMapView view, boolean animate) {
+        // Markers change with a new zoom level or when the view leaves the area that has markers
+        int newLevel = ClusterIndex.levelFor(view.getMapResolution(), CLUSTER_PIXELS);
+        int newDensityLevel = densityLevelFor(view.getMapResolution());
+        double[] visible = viewport(view);
+        if (newLevel != level || (densityVisible && newDensityLevel != densityLevel) || !contains(area, visible)) {
+            level = newLevel;
+            densityLevel = newDensityLevel;
+            area = expand(visible, VIEW_MARGIN);
+            schedulePublish();
+        }
+    }
+    
+    /**
+     * @return South, west, north and east edge around the visible area. The
+     * circle around the screen is used, so a rotated map is covered as well.
+     */
+    static double[] viewport(AtakMapView view) {
+        GeoPoint center = view.getCenterPoint().get();
+        double radius = Math.hypot(view.getWidth(), view.getHeight()) / 2 * view.getMapResolution();
+        double latitudeSpan = radius / METERS_PER_DEGREE;
+        double longitudeSpan = Math.min(180.0,
+                latitudeSpan / Math.max(0.01, Math.cos(Math.toRadians(center.getLatitude()))));
+        return new double[] {
+                center.getLatitude() - latitudeSpan, center.getLongitude() - longitudeSpan,
+                center.getLatitude() + latitudeSpan, center.getLongitude() + longitudeSpan };
+    }
+    
+    /**
+     * @return Level of the heatmap cells, the finest level once contacts are shown on their own
+     */
+    private static int densityLevelFor(double metersPerPixel) {
+        return Math.min(ClusterIndex.MAX_LEVEL, ClusterIndex.levelFor(metersPerPixel, DENSITY_PIXELS));
+    }
+    
+    /**
+     * @return Heatmap colour of a cell, from translucent blue for single contacts
+     * to red for the densest cell on the logarithmic scale of the counts
+     */
+    static int densityColor(int count, int maxCount) {
+        double share = maxCount > 1 ? Math.log(count) / Math.log(maxCount) : 0;
+        share = Math.max(0, Math.min(1, share));
+        int alpha = (int) Math.round(0x50 + share * 0x50);
+        int red = (int) Math.round(share * 0xFF);
+        int blue = (int) Math.round((1 - share) * 0xFF);
+        int green = (int) Math.round((1 - Math.abs(2 * share - 1)) * 0xC0);
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+    
+    /**
+     * @return The area grown by a share of its size on every side
+     */
+    static double[] expand(double[] area, double margin) {
+        double latitude = (area[2] - area[0]) * margin;
+        double longitude = (area[3] - area[1]) * margin;
+        return new double[] { area[0] - latitude, area[1] - longitude, area[2] + latitude, area[3] + longitude };
+    }
+    
+    static boolean contains(double[] outer, double[] inner) {
+        return inner[0] >= outer[0] && inner[1] >= outer[1] && inner[2] <= outer[2] && inner[3] <= outer[3];
+    }
+    
+    /**
+     * Removes the overlay from the map and stops following the database
+     */
+    public void dispose() {
+        mapView.removeOnMapMovedListener(this);
+        dbHelper.getChangeBus().unregister(this);
+        densityVisible = false;
+        group.clearItems();
+        densityGroup.clearItems();
+        markers.clear();
+        pool.clear();
+        densityShapes.clear();
+        tracks.clear();
+        contacts.clear();
+        CLUSTER_EXECUTOR.execute(clusterIndex::clear);
+        mapView.getRootGroup().removeGroup(group);
+        mapView.getRootGroup().removeGroup(densityGroup);
+    }
+    
+    /**
+     * Records the position of one contact, its marker is updated with the next clusters
+     */
+    private void apply(Contact contact) {
+        if (!contact.hasLocation()) {
+            remove(contact.getId());
+            return;
+        }
+        final long id = contact.getId();
+        final double latitude = contact.getLatitude();
+        final double longitude = contact.getLongitude();
+        contacts.put(id, contact);
+        CLUSTER_EXECUTOR.execute(() -> clusterIndex.put(id, latitude, longitude));
+        // A marker of the contact on its own gets its new details right away
+        Marker marker = markers.get(markerUid(id));
+        if (marker != null) {
+            setDetails(marker, contact);
+        }
+        schedulePublish();
+    }
+    
+    private void remove(final long contactId) {
+        if (contacts.remove(contactId) == null) {
+            return;
+        }
+        CLUSTER_EXECUTOR.execute(() -> clusterIndex.remove(contactId));
+        schedulePublish();
+    }
+    
+    /**
+     * Computes the clusters of the current level, and the heatmap cells if it
+     * is shown, once for any number of changes
+     */
+    private void schedulePublish() {
+        if (publishScheduled.getAndSet(true)) {
+            return;
+        }
+        CLUSTER_EXECUTOR.execute(() -> {
+            publishScheduled.set(false);
+            final int publishLevel = level;
+            double[] bounds = area;
+            final List<ClusterIndex.Cluster> clusters = clusterIndex.clusters(publishLevel,
+                    bounds[0], bounds[1], bounds[2], bounds[3]);
+            List<ClusterIndex.Cluster> density = null;
+            int cellLevel = densityLevel;
+            if (densityVisible) {
+                density = clusterIndex.clusters(cellLevel, bounds[0], bounds[1], bounds[2], bounds[3]);
+                while (density.size() > MAX_DENSITY_CELLS && cellLevel > 0) {
+                    cellLevel--;
+                    density = clusterIndex.clusters(cellLevel, bounds[0], bounds[1], bounds[2], bounds[3]);
+                }
+            }
+            final List<ClusterIndex.Cluster> densityCells = density;
+            final int densityCellLevel = cellLevel;
+            mainHandler.post(() -> {
+                publish(publishLevel, clusters);
+                if (densityCells != null) {
+                    publishDensity(densityCellLevel, densityCells);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Brings the markers in line with computed clusters, only the differences are applied
+     */
+    private void publish(int publishLevel, List<ClusterIndex.Cluster> clusters) {
+        try {
+            Map<String, Marker> published = new HashMap<>(clusters.size() * 2);
+            for (ClusterIndex.Cluster cluster : clusters) {
+                String uid;
+                Contact contact = null;
+                if (cluster.count == 1) {
+                    contact = contacts.get(cluster.contactId);
+                    if (contact == null) {
+                        // Removed after the clusters were computed
+                        continue;
+                    }
+                    uid = markerUid(contact.getId());
+                } else {
+                    uid = "contact_cluster_" + publishLevel + "_" + cluster.key;
+                }
+                GeoPoint point = new GeoPoint(cluster.latitude, cluster.longitude);
+                Marker marker = markers.remove(uid);
+                if (marker == null && (marker = pool.remove(uid)) != null) {
+                    group.addItem(marker);
+                }
+                if (marker == null) {
+                    marker = new Marker(point, uid);
+                    marker.setMetaString("how", "h-g-i-g-o");
+                    if (contact != null) {
+                        marker.setType(MARKER_TYPE);
+                        marker.setMetaBoolean("readiness", true);
+                    } else {
+                        marker.setType(CLUSTER_TYPE);
+                    }
+                    group.addItem(marker);
+                } else if (marker.getPoint().getLatitude() != cluster.latitude
+                        || marker.getPoint().getLongitude() != cluster.longitude) {
+                    marker.setPoint(point);
+                }
+                if (contact != null) {
+                    setDetails(marker, contact);
+                } else {
+                    setClusterDetails(marker, cluster.count);
+                }
+                published.put(uid, marker);
+            }
+            // Markers that are not part of the result any more
+            for (Map.Entry<String, Marker> entry : markers.entrySet()) {
+                group.removeItem(entry.getValue());
+                pool.put(entry.getKey(), entry.getValue());
+            }
+            markers.clear();
+            markers.putAll(published);
+        } catch (Exception e) {
+            Log.e(TAG, "Error publishing contact markers: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Brings the heatmap in line with computed cells. Cells that are still
+     * shown only get a new colour if their count changed, the rectangles of
+     * another level are moved to the new cells instead of being recreated.
+     */
+    private void publishDensity(int cellLevel, List<ClusterIndex.Cluster> cells) {
+        try {
+            if (!densityVisible) {
+                // Hidden after the cells were computed
+                return;
+            }
+            List<Polyline> spare = new ArrayList<>();
+            if (cellLevel != densityShownLevel) {
+                spare.addAll(densityShapes.values());
+                densityShapes.clear();
+                densityShownLevel = cellLevel;
+            }
+            int maxCount = 1;
+            for (ClusterIndex.Cluster cell : cells) {
+                maxCount = Math.max(maxCount, cell.count);
+            }
+            Map<Long, Polyline> shown = new HashMap<>(cells.size() * 2);
+            for (ClusterIndex.Cluster cell : cells) {
+                Polyline shape = densityShapes.remove(cell.key);
+                if (shape == null) {
+                    if (!spare.isEmpty()) {
+                        shape = spare.remove(spare.size() - 1);
+                    } else {
+                        shape = createDensityShape();
+                    }
+                    double[] bounds = ClusterIndex.cellBounds(cellLevel, cell.key);
+                    shape.setPoints(new GeoPoint[] {
+                            new GeoPoint(bounds[0], bounds[1]), new GeoPoint(bounds[2], bounds[1]),
+                            new GeoPoint(bounds[2], bounds[3]), new GeoPoint(bounds[0], bounds[3]) });
+                }
+                int color = densityColor(cell.count, maxCount);
+                if (shape.getFillColor() != color) {
+                    shape.setFillColor(color);
+                }
+                shown.put(cell.key, shape);
+            }
+            // Cells that are empty or out of the area now
+            spare.addAll(densityShapes.values());
+            for (Polyline shape : spare) {
+                densityGroup.removeItem(shape);
+            }
+            densityShapes.clear();
+            densityShapes.putAll(shown);
+        } catch (Exception e) {
+            Log.e(TAG, "Error publishing contact density: " + e.getMessage(), e);
+        }
+    }
+    
+    private Polyline createDensityShape() {
+        Polyline shape = new Polyline("contact_density_" + densityShapeCount++);
+        shape.setStyle(Polyline.STYLE_CLOSED_MASK | Polyline.STYLE_FILLED_MASK);
+        shape.setStrokeWeight(0);
+        shape.setClickable(false);
+        shape.setMetaBoolean("addToObjList", false);
+        densityGroup.addItem(shape);
+        return shape;
+    }
+    
+    private static void setDetails(Marker marker, Contact contact) {
+        if (Objects.equals(marker.getTitle(), contact.getName())
+                && Objects.equals(marker.getMetaString("remarks", null), contact.getNotes())
+                && Objects.equals(marker.getMetaString("contact", null), contact.getPhoneNumber())) {
+            return;
+        }
+        marker.setMetaString("callsign", contact.getName());
+        marker.setMetaString("remarks", contact.getNotes());
+        marker.setMetaString("contact", contact.getPhoneNumber());
+        marker.setTitle(contact.getName());
+    }
+    
+    private static void setClusterDetails(Marker marker, int count) {
+        String title = count + " contacts";
+        if (!title.equals(marker.getTitle())) {
+            marker.setMetaString("callsign", title);
+            marker.setTitle(title);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the contacts within a distance of a route.
+ *
+ * Each route segment is cut into pieces no longer than twice the corridor
+ * width. A piece is covered by one circle around its middle, which is
+ * looked up in a {@link NearestContactIndex}, so the candidates stay close
+ * to the corridor however long the segment is. The candidates are then
+ * measured against the segment on the sphere: across the great circle of
+ * the segment where their foot point lies on it, otherwise to the nearer
+ * end. A contact near several segments is reported once, at its closest.
+ */
+public final class CorridorQuery {
+    
+    // Pieces per segment at most, for very narrow corridors along long segments
+    private static final int MAX_PIECES = 4096;
+    
+    /**
+     * A contact inside the corridor
+     */
+    public static final class Hit {
+        public final long contactId;
+        // Distance from the route
+        public final double metersFromRoute;
+        // Distance along the route from its start to the closest point
+        public final double metersAlongRoute;
+        
+        Hit(long contactId, double metersFromRoute, double metersAlongRoute) {
+            this.contactId = contactId;
+            this.metersFromRoute = metersFromRoute;
+            this.metersAlongRoute = metersAlongRoute;
+        }
+    }
+    
+    private CorridorQuery() {
+    }
+    
+    /**
+     * @param latitudes Latitudes of the route vertices
+     * @param longitudes Longitudes of the route vertices
+     * @param widthMeters Maximum distance from the route
+     * @return The contacts within widthMeters of the route, in the order they are passed along it
+     */
+    public static List<Hit> query(NearestContactIndex index, double[] latitudes, double[] longitudes,
+                                  double widthMeters) {
+        int count = Math.min(latitudes.length, longitudes.length);
+        if (count == 0 || widthMeters <= 0) {
+            return new ArrayList<>();
+        }
+        // One range query per piece follows
+        index.compact();
+        double[] vertices = new double[count * 3];
+        for (int i = 0; i < count; i++) {
+            NearestContactIndex.toPoint(latitudes[i], longitudes[i], vertices, i * 3);
+        }
+        
+        double width = widthMeters / NearestContactIndex.EARTH_RADIUS;
+        Map<Long, Hit> hits = new HashMap<>();
+        double[] a = new double[3];
+        double[] b = new double[3];
+        double[] normal = new double[3];
+        double[] tangent = new double[3];
+        double[] center = new double[3];
+        double along = 0;
+        
+        if (count == 1) {
+            System.arraycopy(vertices, 0, a, 0, 3);
+            visitPoint(index, a, width, 0, hits);
+        }
+        for (int i = 0; i + 1 < count; i++) {
+            System.arraycopy(vertices, i * 3, a, 0, 3);
+            System.arraycopy(vertices, i * 3 + 3, b, 0, 3);
+            cross(a, b, normal);
+            double length = Math.atan2(norm(normal), dot(a, b));
+            if (length < 1e-12) {
+                // Repeated vertex
+                visitPoint(index, a, width, along, hits);
+                continue;
+            }
+            scale(normal, 1 / norm(normal));
+            // Unit direction of the segment at its start
+            cross(normal, a, tangent);
+            
+            int pieces = (int) Math.max(1, Math.min(MAX_PIECES, Math.ceil(length / (2 * width))));
+            double pieceLength = length / pieces;
+            double limit = NearestContactIndex.chordSquared(
+                    (pieceLength / 2 + width) * NearestContactIndex.EARTH_RADIUS);
+            for (int piece = 0; piece < pieces; piece++) {
+                double middle = (piece + 0.5) * pieceLength;
+                for (int axis = 0; axis < 3; axis++) {
+                    center[axis] = a[axis] * Math.cos(middle) + tangent[axis] * Math.sin(middle);
+                }
+                final double segmentLength = length;
+                final double segmentStart = along;
+                index.visitWithin(center, limit, (contactId, points, offset, distance) -> {
+                    double[] p = { points[offset], points[offset + 1], points[offset + 2] };
+                    // Position of the foot point along the segment, as an angle from its start
+                    double t = Math.atan2(dot(p, tangent), dot(p, a));
+                    double fromRoute;
+                    double at;
+                    if (t >= 0 && t <= segmentLength) {
+                        fromRoute = Math.abs(Math.asin(Math.max(-1, Math.min(1, dot(p, normal)))));
+                        at = t;
+                    } else {
+                        double toStart = angle(p, a);
+                        double toEnd = angle(p, b);
+                        fromRoute = Math.min(toStart, toEnd);
+                        at = toStart <= toEnd ? 0 : segmentLength;
+                    }
+                    if (fromRoute <= width) {
+                        offer(hits, contactId, fromRoute, segmentStart + at);
+                    }
+                });
+            }
+            along += length;
+        }
+        
+        List<Hit> result = new ArrayList<>(hits.values());
+        Collections.sort(result, (x, y) -> x.metersAlongRoute != y.metersAlongRoute
+                ? Double.compare(x.metersAlongRoute, y.metersAlongRoute)
+                : Double.compare(x.metersFromRoute, y.metersFromRoute));
+        return result;
+    }
+    
+    /**
+     * Contacts around a single point of the route
+     */
+    private static void visitPoint(NearestContactIndex index, double[] point, final double width,
+                                   final double along, final Map<Long, Hit> hits) {
+        index.visitWithin(point, NearestContactIndex.chordSquared(width * NearestContactIndex.EARTH_RADIUS),
+                (contactId, points, offset, distance) -> offer(hits, contactId,
+                        2 * Math.asin(Math.min(1.0, Math.sqrt(distance) / 2)), along));
+    }
+    
+    /**
+     * Keeps the closest hit of a contact, both angles in radians
+     */
+    private static void offer(Map<Long, Hit> hits, long contactId, double fromRoute, double along) {
+        double meters = fromRoute * NearestContactIndex.EARTH_RADIUS;
+        Hit previous = hits.get(contactId);
+        if (previous == null || meters < previous.metersFromRoute) {
+            hits.put(contactId, new Hit(contactId, meters, along * NearestContactIndex.EARTH_RADIUS));
+        }
+    }
+    
+    private static double angle(double[] u, double[] v) {
+        double[] c = new double[3];
+        cross(u, v, c);
+        return Math.atan2(norm(c), dot(u, v));
+    }
+    
+    private static void cross(double[] u, double[] v, double[] out) {
+        double x = u[1] * v[2] - u[2] * v[1];
+        double y = u[2] * v[0] - u[0] * v[2];
+        double z = u[0] * v[1] - u[1] * v[0];
+        out[0] = x;
+        out[1] = y;
+        out[2] = z;
+    }
+    
+    private static double dot(double[] u, double[] v) {
+        return u[0] * v[0] + u[1] * v[1] + u[2] * v[2];
+    }
+    
+    private static double norm(double[] u) {
+        return Math.sqrt(dot(u, u));
+    }
+    
+    private static void scale(double[] u, double factor) {
+        u[0] *= factor;
+        u[1] *= factor;
+        u[2] *= factor;
+    }
+}
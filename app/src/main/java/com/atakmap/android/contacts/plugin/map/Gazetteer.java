@@ -0,0 +1,352 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import com.atakmap.android.contacts.plugin.model.ContactDistances;
+import com.atakmap.android.contacts.plugin.model.SortKeys;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Offline gazetteer of named places, to describe a position as "2.3 km NE of Town".
+ *
+ * The places are bundled as a text list, one "name, tab, latitude, tab,
+ * longitude" per line. The list is compiled once into an index file that
+ * holds the places sorted by 1 degree grid cell, a directory of the
+ * non-empty cells and the names. The index is memory-mapped, so opening it
+ * reads nothing and a lookup only touches the pages of a few cells. The
+ * index is compiled again when the checksum of the list changes.
+ */
+public final class Gazetteer {
+    
+    private static final int MAGIC = 0x47415A31; // "GAZ1"
+    // Magic, checksum of the list, cell, place and name byte counts
+    private static final int HEADER_SIZE = 24;
+    private static final int CELL_SIZE = 8;
+    private static final int PLACE_SIZE = 12;
+    private static final double SCALE = 1e6;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    // Rings of cells searched around the cell of a position, so places up to about 200 km away are found
+    static final int MAX_RING = 2;
+    // Closer than this a position is described by the place name alone
+    static final double AT_PLACE_METERS = 500;
+    
+    private static final String[] COMPASS = { "N", "NE", "E", "SE", "S", "SW", "W", "NW" };
+    
+    /**
+     * A named place
+     */
+    public static final class Place {
+        public final String name;
+        public final double latitude;
+        public final double longitude;
+        
+        public Place(String name, double latitude, double longitude) {
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+    
+    private final ByteBuffer buffer;
+    private final int cellCount;
+    private final int placeCount;
+    private final int placesStart;
+    private final int namesStart;
+    
+    private Gazetteer(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a gazetteer index");
+        }
+        this.buffer = buffer;
+        cellCount = buffer.getInt(12);
+        placeCount = buffer.getInt(16);
+        placesStart = HEADER_SIZE + cellCount * CELL_SIZE;
+        namesStart = placesStart + placeCount * PLACE_SIZE;
+        if (cellCount < 0 || placeCount < 0 || namesStart + buffer.getInt(20) > buffer.capacity()) {
+            throw new IOException("Truncated gazetteer index");
+        }
+    }
+    
+    /**
+     * Opens the index of a place list, compiling it first if it is missing or outdated
+     * @param source Place list, read completely and not closed
+     * @param index Index file
+     */
+    public static Gazetteer load(InputStream source, File index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = source.read(chunk)) > 0) {
+            bytes.write(chunk, 0, read);
+        }
+        byte[] list = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(list, 0, list.length);
+        long checksum = crc.getValue();
+        if (checksum(index) != checksum) {
+            compile(parse(new String(list, UTF8)), checksum, index);
+        }
+        return open(index);
+    }
+    
+    /**
+     * Memory-maps an index file
+     */
+    public static Gazetteer open(File index) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(index, "r");
+        try {
+            // The mapping stays valid after the file is closed
+            return new Gazetteer(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()));
+        } finally {
+            file.close();
+        }
+    }
+    
+    /**
+     * @return Checksum of the list an index was compiled from, -1 if there is no valid index
+     */
+    static long checksum(File index) {
+        if (!index.isFile() || index.length() < HEADER_SIZE) {
+            return -1;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(index, "r");
+            try {
+                return file.readInt() == MAGIC ? file.readLong() : -1;
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Reads a place list. Empty lines, lines starting with # and malformed lines are skipped.
+     */
+    static List<Place> parse(String list) throws IOException {
+        List<Place> places = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new StringReader(list));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length < 3 || fields[0].trim().isEmpty()) {
+                continue;
+            }
+            try {
+                double latitude = Double.parseDouble(fields[1].trim());
+                double longitude = Double.parseDouble(fields[2].trim());
+                if (Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180) {
+                    places.add(new Place(fields[0].trim(), latitude, longitude));
+                }
+            } catch (NumberFormatException e) {
+                // Skipped like any other malformed line
+            }
+        }
+        return places;
+    }
+    
+    /**
+     * Writes the index of a list of places. It is written next to the
+     * target first, so a reader never maps a half written file.
+     * @param checksum Checksum of the list, stored to detect a changed list
+     */
+    static void compile(List<Place> places, long checksum, File index) throws IOException {
+        final int[] cells = new int[places.size()];
+        Integer[] order = new Integer[places.size()];
+        for (int i = 0; i < order.length; i++) {
+            Place place = places.get(i);
+            cells[i] = cell(row(place.latitude), column(place.longitude));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(cells[a], cells[b]));
+        
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        ByteArrayOutputStream cellBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream placeBytes = new ByteArrayOutputStream();
+        DataOutputStream cellOut = new DataOutputStream(cellBytes);
+        DataOutputStream placeOut = new DataOutputStream(placeBytes);
+        int cellCount = 0;
+        int previous = -1;
+        for (int i = 0; i < order.length; i++) {
+            int cell = cells[order[i]];
+            if (cell != previous) {
+                cellOut.writeInt(cell);
+                cellOut.writeInt(i);
+                cellCount++;
+                previous = cell;
+            }
+            Place place = places.get(order[i]);
+            placeOut.writeInt((int) Math.round(place.latitude * SCALE));
+            placeOut.writeInt((int) Math.round(place.longitude * SCALE));
+            placeOut.writeInt(names.size());
+            byte[] name = place.name.getBytes(UTF8);
+            int length = Math.min(name.length, 0xFFFF);
+            names.write(length >> 8);
+            names.write(length & 0xFF);
+            names.write(name, 0, length);
+        }
+        
+        File parent = index.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File temp = new File(index.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+        try {
+            out.writeInt(MAGIC);
+            out.writeLong(checksum);
+            out.writeInt(cellCount);
+            out.writeInt(order.length);
+            out.writeInt(names.size());
+            cellBytes.writeTo(out);
+            placeBytes.writeTo(out);
+            names.writeTo(out);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(index)) {
+            // Renaming over an existing file fails on some file systems
+            if (!index.delete() || !temp.renameTo(index)) {
+                throw new IOException("Cannot replace " + index);
+            }
+        }
+    }
+    
+    public int size() {
+        return placeCount;
+    }
+    
+    /**
+     * @return The place nearest to a position within about {@link #MAX_RING} degrees, null if there is none
+     */
+    public Place nearest(double latitude, double longitude) {
+        int row = row(latitude);
+        int column = column(longitude);
+        // Squared distances in degrees, longitudes shrunk to the width at the position
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        int best = -1;
+        double bestSquared = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ring <= MAX_RING; ring++) {
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= 180) {
+                    continue;
+                }
+                // Only the border of the ring, the inside was searched before
+                int step = r == row - ring || r == row + ring ? 1 : Math.max(1, 2 * ring);
+                for (int c = column - ring; c <= column + ring; c += step) {
+                    int first = findCell(cell(r, ((c % 360) + 360) % 360));
+                    if (first < 0) {
+                        continue;
+                    }
+                    int end = first + 1 < cellCount ? cellStart(first + 1) : placeCount;
+                    for (int i = cellStart(first); i < end; i++) {
+                        int at = placesStart + i * PLACE_SIZE;
+                        double dLat = buffer.getInt(at) / SCALE - latitude;
+                        double dLon = buffer.getInt(at + 4) / SCALE - longitude;
+                        dLon -= 360.0 * Math.round(dLon / 360.0);
+                        dLon *= cosLatitude;
+                        double squared = dLat * dLat + dLon * dLon;
+                        if (squared < bestSquared) {
+                            bestSquared = squared;
+                            best = i;
+                        }
+                    }
+                }
+            }
+            // Cells further out are at least ring degrees of latitude or longitude away
+            double bound = ring * cosLatitude;
+            if (best >= 0 && Math.sqrt(bestSquared) <= bound) {
+                break;
+            }
+        }
+        return best >= 0 ? place(best) : null;
+    }
+    
+    /**
+     * @return A position relative to its nearest place, e.g. "2.3 km NE of Town", null if no place is near
+     */
+    public String describe(double latitude, double longitude) {
+        Place place = nearest(latitude, longitude);
+        return place != null ? describe(place, latitude, longitude) : null;
+    }
+    
+    /**
+     * @return A position relative to a place, only the name when it is at the place
+     */
+    public static String describe(Place place, double latitude, double longitude) {
+        double meters = SortKeys.distanceMeters(place.latitude, place.longitude, latitude, longitude);
+        if (meters < AT_PLACE_METERS) {
+            return place.name;
+        }
+        double bearing = SortKeys.bearingDegrees(place.latitude, place.longitude, latitude, longitude);
+        int sector = (int) Math.round(((bearing % 360) + 360) % 360 / 45.0) % 8;
+        return ContactDistances.formatDistance(meters) + " " + COMPASS[sector] + " of " + place.name;
+    }
+    
+    private Place place(int i) {
+        int at = placesStart + i * PLACE_SIZE;
+        int nameAt = namesStart + buffer.getInt(at + 8);
+        int length = ((buffer.get(nameAt) & 0xFF) << 8) | (buffer.get(nameAt + 1) & 0xFF);
+        byte[] name = new byte[length];
+        for (int b = 0; b < length; b++) {
+            // Absolute reads, the buffer is shared between threads
+            name[b] = buffer.get(nameAt + 2 + b);
+        }
+        return new Place(new String(name, UTF8), buffer.getInt(at) / SCALE, buffer.getInt(at + 4) / SCALE);
+    }
+    
+    /**
+     * @return Position of a cell in the directory, -1 if it has no places
+     */
+    private int findCell(int cell) {
+        int low = 0;
+        int high = cellCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int key = buffer.getInt(HEADER_SIZE + middle * CELL_SIZE);
+            if (key < cell) {
+                low = middle + 1;
+            } else if (key > cell) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+    
+    private int cellStart(int position) {
+        return buffer.getInt(HEADER_SIZE + position * CELL_SIZE + 4);
+    }
+    
+    private static int row(double latitude) {
+        return Math.max(0, Math.min(179, (int) Math.floor(latitude + 90)));
+    }
+    
+    private static int column(double longitude) {
+        return (((int) Math.floor(longitude + 180)) % 360 + 360) % 360;
+    }
+    
+    private static int cell(int row, int column) {
+        return row * 360 + column;
+    }
+}
@@ -0,0 +1,258 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import com.atakmap.android.contacts.plugin.model.SortKeys;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Proximity alerts for contacts with a geofence.
+ *
+ * A fence is a radius around the position of a contact. Each position fix
+ * only looks at the fences whose contact is within the largest exit radius,
+ * found through a {@link NearestContactIndex}, and at the fences the own
+ * position is inside of. So the cost of a fix grows with the logarithm of
+ * the number of fences plus the fences nearby, not with all of them.
+ *
+ * A fence is left at a larger radius than it is entered, so a position
+ * jittering around its edge does not raise an alert on every fix.
+ *
+ * Not thread-safe, used from the UI thread.
+ */
+public class GeofenceEngine {
+    
+    // A fence is left this share of its radius beyond its edge
+    static final double EXIT_MARGIN = 0.2;
+    // But at least this far, about the error of a GPS fix
+    static final double MIN_EXIT_MARGIN_METERS = 25;
+    
+    /**
+     * Receives the crossings of fences
+     */
+    public interface Listener {
+        void onEnter(long contactId, double meters);
+        
+        void onExit(long contactId, double meters);
+    }
+    
+    private static final class Fence {
+        double radius;
+        boolean located;
+        double latitude;
+        double longitude;
+        boolean inside;
+        // Fix that looked at this fence last
+        int checkedFix;
+    }
+    
+    private final Map<Long, Fence> fences = new HashMap<>();
+    // Located fences only
+    private final NearestContactIndex index = new NearestContactIndex();
+    private final Set<Long> insideIds = new HashSet<>();
+    private double maxExitRadius;
+    private Listener listener;
+    
+    // Last own position, null before the first fix
+    private double[] position;
+    private int fixCount;
+    
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Sets the alert radius of a contact
+     * @param meters Radius, 0 or less removes the fence
+     */
+    public void setRadius(long contactId, double meters) {
+        if (meters <= 0) {
+            removeFence(contactId);
+            return;
+        }
+        Fence fence = fences.get(contactId);
+        if (fence == null) {
+            fence = new Fence();
+            fences.put(contactId, fence);
+        }
+        double previous = fence.radius;
+        fence.radius = meters;
+        if (meters >= previous) {
+            maxExitRadius = Math.max(maxExitRadius, exitRadius(meters));
+        } else {
+            shrinkMaxExitRadius(previous);
+        }
+        check(contactId, fence);
+    }
+    
+    /**
+     * @return Alert radius of a contact, 0 if it has no fence
+     */
+    public double getRadius(long contactId) {
+        Fence fence = fences.get(contactId);
+        return fence != null ? fence.radius : 0;
+    }
+    
+    /**
+     * @return Alert radius by contact id of all fences
+     */
+    public Map<Long, Double> getRadii() {
+        Map<Long, Double> radii = new HashMap<>();
+        for (Map.Entry<Long, Fence> entry : fences.entrySet()) {
+            radii.put(entry.getKey(), entry.getValue().radius);
+        }
+        return radii;
+    }
+    
+    /**
+     * @return The alert radii as text for storage, e.g. "12:250;40:1000"
+     */
+    public String saveRadii() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Long, Fence> entry : fences.entrySet()) {
+            if (text.length() > 0) {
+                text.append(';');
+            }
+            text.append(entry.getKey()).append(':').append(Math.round(entry.getValue().radius));
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Adds the fences stored by {@link #saveRadii()}, without locations yet.
+     * Malformed entries are skipped.
+     */
+    public void restoreRadii(String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String entry : text.split(";")) {
+            int colon = entry.indexOf(':');
+            try {
+                setRadius(Long.parseLong(entry.substring(0, colon)), Double.parseDouble(entry.substring(colon + 1)));
+            } catch (RuntimeException e) {
+                // Skipped, the text is only ever written by saveRadii
+            }
+        }
+    }
+    
+    /**
+     * Updates the position of a contact, ignored unless it has a fence
+     * @param latitude Latitude, or null if the contact has no location
+     * @param longitude Longitude, or null if the contact has no location
+     */
+    public void setLocation(long contactId, Double latitude, Double longitude) {
+        Fence fence = fences.get(contactId);
+        if (fence == null) {
+            return;
+        }
+        fence.located = latitude != null && longitude != null;
+        if (fence.located) {
+            fence.latitude = latitude;
+            fence.longitude = longitude;
+            index.put(contactId, latitude, longitude);
+        } else {
+            index.remove(contactId);
+        }
+        check(contactId, fence);
+    }
+    
+    /**
+     * Drops the fence of a contact without an alert, e.g. when it was deleted
+     */
+    public void removeFence(long contactId) {
+        Fence fence = fences.remove(contactId);
+        if (fence != null) {
+            index.remove(contactId);
+            insideIds.remove(contactId);
+            shrinkMaxExitRadius(fence.radius);
+        }
+    }
+    
+    public int size() {
+        return fences.size();
+    }
+    
+    /**
+     * @return True if the last position was inside the fence of a contact
+     */
+    public boolean isInside(long contactId) {
+        return insideIds.contains(contactId);
+    }
+    
+    /**
+     * Checks a new own position against the fences nearby
+     */
+    public void update(double latitude, double longitude) {
+        position = new double[] { latitude, longitude };
+        int fix = ++fixCount;
+        for (NearestContactIndex.Neighbor neighbor : index.within(latitude, longitude, maxExitRadius)) {
+            Fence fence = fences.get(neighbor.contactId);
+            if (fence != null) {
+                fence.checkedFix = fix;
+                cross(neighbor.contactId, fence, neighbor.meters);
+            }
+        }
+        
+        // Fences that were entered but are now beyond every exit radius
+        List<Long> left = new ArrayList<>();
+        for (long contactId : insideIds) {
+            if (fences.get(contactId).checkedFix != fix) {
+                left.add(contactId);
+            }
+        }
+        for (long contactId : left) {
+            check(contactId, fences.get(contactId));
+        }
+    }
+    
+    /**
+     * Checks one fence against the last own position
+     */
+    private void check(long contactId, Fence fence) {
+        if (position == null) {
+            return;
+        }
+        double meters = fence.located
+                ? SortKeys.distanceMeters(position[0], position[1], fence.latitude, fence.longitude)
+                : Double.POSITIVE_INFINITY;
+        cross(contactId, fence, meters);
+    }
+    
+    private void cross(long contactId, Fence fence, double meters) {
+        if (!fence.inside && meters <= fence.radius) {
+            fence.inside = true;
+            insideIds.add(contactId);
+            if (listener != null) {
+                listener.onEnter(contactId, meters);
+            }
+        } else if (fence.inside && meters > exitRadius(fence.radius)) {
+            fence.inside = false;
+            insideIds.remove(contactId);
+            if (listener != null) {
+                listener.onExit(contactId, meters);
+            }
+        }
+    }
+    
+    static double exitRadius(double radius) {
+        return radius + Math.max(radius * EXIT_MARGIN, MIN_EXIT_MARGIN_METERS);
+    }
+    
+    /**
+     * Recomputes the largest exit radius if the fence that had it got smaller or was removed
+     */
+    private void shrinkMaxExitRadius(double previousRadius) {
+        if (exitRadius(previousRadius) < maxExitRadius) {
+            return;
+        }
+        double max = 0;
+        for (Fence fence : fences.values()) {
+            max = Math.max(max, exitRadius(fence.radius));
+        }
+        maxExitRadius = max;
+    }
+}
@@ -0,0 +1,195 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import android.util.Log;
+
+import com.atakmap.android.contacts.plugin.db.DatabaseHelper;
+import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.android.contacts.plugin.model.ContactDistances;
+import com.atakmap.android.util.NotificationUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Proximity alerts as ATAK notifications.
+ *
+ * The alert radius of each watched contact is kept in the metadata table
+ * and restored by the owner with {@link #restore(String)}.
+ * The contact manager feeds in the contact locations and every position
+ * fix of the self marker, the {@link GeofenceEngine} decides when a fence
+ * is entered or left. Used from the UI thread, the radii are saved on the
+ * given executor, once per change or batch of removals.
+ */
+public class GeofenceMonitor implements GeofenceEngine.Listener {
+    
+    private static final String TAG = "GeofenceMonitor";
+    
+    private final DatabaseHelper dbHelper;
+    private final Executor saveExecutor;
+    private final GeofenceEngine engine = new GeofenceEngine();
+    // Names of the watched contacts for the notifications
+    private final Map<Long, String> names = new HashMap<>();
+    // Notification of each watched contact, reserved on its first alert
+    private final Map<Long, Integer> notifyIds = new HashMap<>();
+    
+    /**
+     * @param saveExecutor Executor of the metadata writes, off the UI thread
+     */
+    public GeofenceMonitor(DatabaseHelper dbHelper, Executor saveExecutor) {
+        this.dbHelper = dbHelper;
+        this.saveExecutor = saveExecutor;
+        engine.setListener(this);
+    }
+    
+    /**
+     * Watches the contacts saved in the metadata table again
+     * @param saved Value of {@link DatabaseHelper#META_GEOFENCES}, read off the UI thread
+     */
+    public void restore(String saved) {
+        engine.restoreRadii(saved);
+    }
+    
+    /**
+     * @return Alert radius of a contact in meters, 0 if it is not watched
+     */
+    public double getRadius(long contactId) {
+        return engine.getRadius(contactId);
+    }
+    
+    /**
+     * Watches a contact, or stops watching it
+     * @param meters Alert radius, 0 to stop watching
+     */
+    public void setRadius(Contact contact, double meters) {
+        engine.setRadius(contact.getId(), meters);
+        if (meters > 0) {
+            updateContact(contact);
+        } else {
+            forget(contact.getId());
+        }
+        save();
+    }
+    
+    /**
+     * Updates the name and location of a contact if it is watched
+     */
+    public void updateContact(Contact contact) {
+        if (engine.getRadius(contact.getId()) > 0) {
+            names.put(contact.getId(), contact.getName());
+            engine.setLocation(contact.getId(), contact.getLatitude(), contact.getLongitude());
+        }
+    }
+    
+    /**
+     * Stops watching deleted contacts, the radii are saved once
+     */
+    public void removeContacts(long... contactIds) {
+        boolean removed = false;
+        for (long contactId : contactIds) {
+            if (engine.getRadius(contactId) > 0) {
+                engine.removeFence(contactId);
+                forget(contactId);
+                removed = true;
+            }
+        }
+        if (removed) {
+            save();
+        }
+    }
+    
+    /**
+     * Stops watching contacts that are no longer in the database
+     * @param contacts All contacts
+     */
+    public void retain(List<Contact> contacts) {
+        Set<Long> ids = new HashSet<>(contacts.size() * 2);
+        for (Contact contact : contacts) {
+            ids.add(contact.getId());
+        }
+        List<Long> gone = new ArrayList<>();
+        for (long contactId : engine.getRadii().keySet()) {
+            if (!ids.contains(contactId)) {
+                gone.add(contactId);
+            }
+        }
+        long[] goneIds = new long[gone.size()];
+        for (int i = 0; i < goneIds.length; i++) {
+            goneIds[i] = gone.get(i);
+        }
+        removeContacts(goneIds);
+    }
+    
+    /**
+     * Checks a position fix of the self marker
+     */
+    public void update(double latitude, double longitude) {
+        engine.update(latitude, longitude);
+    }
+    
+    /**
+     * Removes the notifications that are still shown
+     */
+    public void dispose() {
+        engine.setListener(null);
+        for (long contactId : new ArrayList<>(notifyIds.keySet())) {
+            forget(contactId);
+        }
+    }
+    
+    @Override
+    public void onEnter(long contactId, double meters) {
+        notify(contactId, "Near " + names.get(contactId),
+                names.get(contactId) + " is " + ContactDistances.formatDistance(meters) + " away");
+    }
+    
+    @Override
+    public void onExit(long contactId, double meters) {
+        String name = names.get(contactId);
+        notify(contactId, "Left " + name, Double.isInfinite(meters)
+                ? name + " no longer has a location"
+                : name + " is " + ContactDistances.formatDistance(meters) + " away");
+    }
+    
+    private void notify(long contactId, String title, String message) {
+        try {
+            Integer notifyId = notifyIds.get(contactId);
+            if (notifyId == null) {
+                notifyId = NotificationUtil.getInstance().reserveNotifyId();
+                notifyIds.put(contactId, notifyId);
+            }
+            NotificationUtil.getInstance().postNotification(notifyId,
+                    android.R.drawable.ic_menu_mylocation, NotificationUtil.WHITE, title, title, message);
+        } catch (Exception e) {
+            Log.e(TAG, "Error posting proximity alert: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Drops the name and the notification of a contact that is no longer watched
+     */
+    private void forget(long contactId) {
+        names.remove(contactId);
+        Integer notifyId = notifyIds.remove(contactId);
+        if (notifyId != null) {
+            try {
+                NotificationUtil.getInstance().clearNotification(notifyId);
+            } catch (Exception e) {
+                Log.e(TAG, "Error clearing proximity alert: " + e.getMessage(), e);
+            }
+        }
+    }
+    
+    private void save() {
+        try {
+            final String radii = engine.saveRadii();
+            saveExecutor.execute(() -> dbHelper.setMetadata(DatabaseHelper.META_GEOFENCES, radii));
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving proximity alerts: " + e.getMessage(), e);
+        }
+    }
+}
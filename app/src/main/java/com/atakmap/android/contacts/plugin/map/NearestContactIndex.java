@@ -0,0 +1,443 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the contacts closest to a position or within a distance of it.
+ *
+ * Positions are stored as points on the unit sphere, so the straight-line
+ * (chord) distance between two points orders them the same way as the
+ * great-circle distance, without trigonometry per comparison. The points
+ * are kept in a balanced KD-tree laid out in flat arrays. Changes are not
+ * applied to the tree directly: removed points are marked, new and moved
+ * points go to a small list that is searched linearly, and the tree is
+ * rebuilt once those make up a quarter of it.
+ *
+ * Not thread-safe, used from the UI thread.
+ */
+public class NearestContactIndex {
+    
+    // Mean earth radius
+    public static final double EARTH_RADIUS = 6371008.8;
+    
+    // The tree is rebuilt when this many changes are pending, or a quarter of its size
+    private static final int MIN_REBUILD_CHANGES = 64;
+    
+    /**
+     * A contact and its distance from the query position
+     */
+    public static final class Neighbor {
+        public final long contactId;
+        public final double meters;
+        
+        Neighbor(long contactId, double meters) {
+            this.contactId = contactId;
+            this.meters = meters;
+        }
+    }
+    
+    // Tree in array order, the root of a range is its middle element
+    private long[] treeIds = new long[0];
+    private double[] treePoints = new double[0];
+    private byte[] treeAxes = new byte[0];
+    private boolean[] treeRemoved = new boolean[0];
+    private int removedCount;
+    
+    // Points added since the last build
+    private long[] addedIds = new long[16];
+    private double[] addedPoints = new double[48];
+    private int addedCount;
+    
+    // Tree index of a contact, or -(added index + 1)
+    private final Map<Long, Integer> slots = new HashMap<>();
+    
+    /**
+     * Adds a contact or moves it to a new position
+     */
+    public void put(long contactId, double latitude, double longitude) {
+        remove(contactId);
+        if (addedCount == addedIds.length) {
+            addedIds = Arrays.copyOf(addedIds, addedCount * 2);
+            addedPoints = Arrays.copyOf(addedPoints, addedCount * 6);
+        }
+        addedIds[addedCount] = contactId;
+        toPoint(latitude, longitude, addedPoints, addedCount * 3);
+        slots.put(contactId, -(addedCount + 1));
+        addedCount++;
+        rebuildIfNeeded();
+    }
+    
+    public void remove(long contactId) {
+        Integer slot = slots.remove(contactId);
+        if (slot == null) {
+            return;
+        }
+        if (slot >= 0) {
+            treeRemoved[slot] = true;
+            removedCount++;
+            rebuildIfNeeded();
+        } else {
+            // Move the last added point into the gap
+            int index = -slot - 1;
+            int last = --addedCount;
+            if (index != last) {
+                addedIds[index] = addedIds[last];
+                System.arraycopy(addedPoints, last * 3, addedPoints, index * 3, 3);
+                slots.put(addedIds[index], -(index + 1));
+            }
+        }
+    }
+    
+    public void clear() {
+        slots.clear();
+        treeIds = new long[0];
+        treePoints = new double[0];
+        treeAxes = new byte[0];
+        treeRemoved = new boolean[0];
+        removedCount = 0;
+        addedCount = 0;
+    }
+    
+    public int size() {
+        return slots.size();
+    }
+    
+    /**
+     * @param k Maximum number of contacts
+     * @param maxMeters Maximum distance, 0 or less for no limit
+     * @return Up to k contacts within maxMeters, closest first
+     */
+    public List<Neighbor> nearest(double latitude, double longitude, int k, double maxMeters) {
+        if (k <= 0 || slots.isEmpty()) {
+            return new ArrayList<>();
+        }
+        double[] query = new double[3];
+        toPoint(latitude, longitude, query, 0);
+        
+        Heap heap = new Heap(k, maxMeters > 0 ? chordSquared(maxMeters) : 4.0);
+        search(0, treeIds.length, query, heap);
+        for (int i = 0; i < addedCount; i++) {
+            heap.offer(addedIds[i], distanceSquared(query, addedPoints, i * 3));
+        }
+        return heap.sorted();
+    }
+    
+    /**
+     * Receives the points found by a range query
+     */
+    interface PointVisitor {
+        /**
+         * @param points Coordinates on the unit sphere, x, y and z from offset
+         * @param chordSquared Squared chord length from the query point
+         */
+        void visit(long contactId, double[] points, int offset, double chordSquared);
+    }
+    
+    /**
+     * @return All contacts within maxMeters, in no particular order
+     */
+    public List<Neighbor> within(double latitude, double longitude, double maxMeters) {
+        final List<Neighbor> result = new ArrayList<>();
+        if (maxMeters < 0) {
+            return result;
+        }
+        double[] query = new double[3];
+        toPoint(latitude, longitude, query, 0);
+        visitWithin(query, chordSquared(maxMeters),
+                (contactId, points, offset, distance) -> result.add(new Neighbor(contactId, meters(distance))));
+        return result;
+    }
+    
+    /**
+     * Applies all pending changes to the tree. Worth it before many queries in a row,
+     * which then do not search the added points linearly each time.
+     */
+    void compact() {
+        if (addedCount + removedCount > 0) {
+            rebuild();
+        }
+    }
+    
+    /**
+     * Visits all points within a squared chord length of a point on the unit sphere
+     */
+    void visitWithin(double[] query, double limit, PointVisitor visitor) {
+        if (slots.isEmpty()) {
+            return;
+        }
+        collect(0, treeIds.length, query, limit, visitor);
+        for (int i = 0; i < addedCount; i++) {
+            double distance = distanceSquared(query, addedPoints, i * 3);
+            if (distance <= limit) {
+                visitor.visit(addedIds[i], addedPoints, i * 3, distance);
+            }
+        }
+    }
+    
+    /**
+     * @return Squared chord length of a great-circle distance, 4 is the whole sphere
+     */
+    static double chordSquared(double meters) {
+        double angle = meters / EARTH_RADIUS;
+        if (angle >= Math.PI) {
+            return 4.0;
+        }
+        double chord = 2 * Math.sin(angle / 2);
+        return chord * chord;
+    }
+    
+    /**
+     * @return Great-circle distance of the chord between two points on the unit sphere
+     */
+    static double meters(double chordSquared) {
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(chordSquared) / 2));
+    }
+    
+    private void search(int from, int to, double[] query, Heap heap) {
+        if (from >= to) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        if (!treeRemoved[mid]) {
+            heap.offer(treeIds[mid], distanceSquared(query, treePoints, mid * 3));
+        }
+        int axis = treeAxes[mid];
+        double delta = query[axis] - treePoints[mid * 3 + axis];
+        // The side of the query first, the other side only if it can still hold a closer point
+        if (delta < 0) {
+            search(from, mid, query, heap);
+            if (delta * delta < heap.bound()) {
+                search(mid + 1, to, query, heap);
+            }
+        } else {
+            search(mid + 1, to, query, heap);
+            if (delta * delta < heap.bound()) {
+                search(from, mid, query, heap);
+            }
+        }
+    }
+    
+    private void collect(int from, int to, double[] query, double limit, PointVisitor visitor) {
+        if (from >= to) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        double distance = distanceSquared(query, treePoints, mid * 3);
+        if (!treeRemoved[mid] && distance <= limit) {
+            visitor.visit(treeIds[mid], treePoints, mid * 3, distance);
+        }
+        int axis = treeAxes[mid];
+        double delta = query[axis] - treePoints[mid * 3 + axis];
+        // A side is only visited if the splitting plane is within the limit
+        if (delta < 0 || delta * delta <= limit) {
+            collect(from, mid, query, limit, visitor);
+        }
+        if (delta >= 0 || delta * delta <= limit) {
+            collect(mid + 1, to, query, limit, visitor);
+        }
+    }
+    
+    private void rebuildIfNeeded() {
+        int changes = addedCount + removedCount;
+        if (changes >= MIN_REBUILD_CHANGES && changes * 4 >= slots.size()) {
+            rebuild();
+        }
+    }
+    
+    /**
+     * Builds a balanced tree from all current points
+     */
+    private void rebuild() {
+        int count = slots.size();
+        long[] ids = new long[count];
+        double[] points = new double[count * 3];
+        int n = 0;
+        for (int i = 0; i < treeIds.length; i++) {
+            if (!treeRemoved[i]) {
+                ids[n] = treeIds[i];
+                System.arraycopy(treePoints, i * 3, points, n * 3, 3);
+                n++;
+            }
+        }
+        System.arraycopy(addedIds, 0, ids, n, addedCount);
+        System.arraycopy(addedPoints, 0, points, n * 3, addedCount * 3);
+        
+        treeIds = ids;
+        treePoints = points;
+        treeAxes = new byte[count];
+        treeRemoved = new boolean[count];
+        removedCount = 0;
+        addedCount = 0;
+        build(0, count);
+        slots.clear();
+        for (int i = 0; i < count; i++) {
+            slots.put(treeIds[i], i);
+        }
+    }
+    
+    private void build(int from, int to) {
+        if (to - from <= 0) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        int axis = widestAxis(from, to);
+        select(from, to - 1, mid, axis);
+        treeAxes[mid] = (byte) axis;
+        build(from, mid);
+        build(mid + 1, to);
+    }
+    
+    private int widestAxis(int from, int to) {
+        double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        double[] max = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        for (int i = from; i < to; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                double value = treePoints[i * 3 + axis];
+                min[axis] = Math.min(min[axis], value);
+                max[axis] = Math.max(max[axis], value);
+            }
+        }
+        int widest = 0;
+        for (int axis = 1; axis < 3; axis++) {
+            if (max[axis] - min[axis] > max[widest] - min[widest]) {
+                widest = axis;
+            }
+        }
+        return widest;
+    }
+    
+    /**
+     * Moves the point of rank k within [left, right] on the axis to position k,
+     * smaller ones before and larger ones after it
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (left < right) {
+            double pivot = treePoints[((left + right) >>> 1) * 3 + axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (treePoints[i * 3 + axis] < pivot) {
+                    i++;
+                }
+                while (treePoints[j * 3 + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+    
+    private void swap(int a, int b) {
+        long id = treeIds[a];
+        treeIds[a] = treeIds[b];
+        treeIds[b] = id;
+        for (int axis = 0; axis < 3; axis++) {
+            double value = treePoints[a * 3 + axis];
+            treePoints[a * 3 + axis] = treePoints[b * 3 + axis];
+            treePoints[b * 3 + axis] = value;
+        }
+    }
+    
+    static void toPoint(double latitude, double longitude, double[] out, int offset) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        double cosLat = Math.cos(lat);
+        out[offset] = cosLat * Math.cos(lon);
+        out[offset + 1] = cosLat * Math.sin(lon);
+        out[offset + 2] = Math.sin(lat);
+    }
+    
+    private static double distanceSquared(double[] query, double[] points, int offset) {
+        double dx = query[0] - points[offset];
+        double dy = query[1] - points[offset + 1];
+        double dz = query[2] - points[offset + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+    
+    /**
+     * The k closest candidates so far, as a max-heap on the squared chord length
+     */
+    private static final class Heap {
+        private final long[] ids;
+        private final double[] distances;
+        private final double limit;
+        private int size;
+        
+        Heap(int k, double limit) {
+            ids = new long[k];
+            distances = new double[k];
+            this.limit = limit;
+        }
+        
+        /**
+         * @return Squared chord length a candidate has to be below
+         */
+        double bound() {
+            return size == ids.length ? distances[0] : limit;
+        }
+        
+        void offer(long id, double distance) {
+            if (distance > limit) {
+                return;
+            }
+            if (size < ids.length) {
+                // Sift up
+                int i = size++;
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    int parent = (i - 1) / 2;
+                    ids[i] = ids[parent];
+                    distances[i] = distances[parent];
+                    i = parent;
+                }
+                ids[i] = id;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                // Replace the farthest and sift down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && distances[child + 1] > distances[child]) {
+                        child++;
+                    }
+                    if (distances[child] <= distance) {
+                        break;
+                    }
+                    ids[i] = ids[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+                ids[i] = id;
+                distances[i] = distance;
+            }
+        }
+        
+        List<Neighbor> sorted() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+            List<Neighbor> result = new ArrayList<>(size);
+            for (int i : order) {
+                result.add(new Neighbor(ids[i], meters(distances[i])));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Descriptions of positions relative to the nearest place of a {@link Gazetteer}.
+ *
+ * Lookups run on a worker thread and are cached per cell of about 100 m,
+ * so a contact that was described before is described again without a
+ * lookup. Requests for a cell that is being looked up wait for that lookup.
+ * The gazetteer is opened by the first lookup, so nothing is read before a
+ * description is needed. Requests are made on the UI thread.
+ */
+public class ReverseGeocoder {
+    
+    private static final String TAG = "ReverseGeocoder";
+    
+    // Size of the cache cells in degrees, about 100 m of latitude
+    static final double CELL_DEGREES = 0.001;
+    private static final long COLUMNS = Math.round(360 / CELL_DEGREES);
+    private static final int CACHE_SIZE = 1024;
+    // Cached for cells without a place nearby
+    private static final String NONE = "";
+    
+    // Shared worker for lookups, the first one also compiles the index
+    private static final Executor LOOKUP_EXECUTOR = Executors.newSingleThreadExecutor();
+    
+    /**
+     * Opens the gazetteer, called once on the worker thread
+     */
+    public interface Loader {
+        Gazetteer load() throws IOException;
+    }
+    
+    /**
+     * Receives a description
+     */
+    public interface Callback {
+        /**
+         * @param description Position relative to the nearest place, null if no place is near
+         */
+        void onDescription(String description);
+    }
+    
+    private final Loader loader;
+    private final Executor worker;
+    private final Executor mainExecutor;
+    
+    // Description of each looked up cell, least recently used first
+    private final Map<Long, String> cache = new LinkedHashMap<Long, String>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    // Callbacks of the cells being looked up, UI thread only
+    private final Map<Long, List<Callback>> waiting = new HashMap<>();
+    
+    // Worker thread only
+    private Gazetteer gazetteer;
+    private boolean loadFailed;
+    
+    public ReverseGeocoder(Loader loader) {
+        this(loader, LOOKUP_EXECUTOR, new Handler(Looper.getMainLooper())::post);
+    }
+    
+    /**
+     * Constructor with explicit executors (used for testing)
+     * @param loader Opens the gazetteer
+     * @param worker Executor of the lookups
+     * @param mainExecutor Executor that delivers the descriptions on the UI thread
+     */
+    public ReverseGeocoder(Loader loader, Executor worker, Executor mainExecutor) {
+        this.loader = loader;
+        this.worker = worker;
+        this.mainExecutor = mainExecutor;
+    }
+    
+    /**
+     * Describes a position. A cached description is passed to the callback
+     * at once, otherwise it is looked up and passed on the UI thread.
+     */
+    public void describe(double latitude, double longitude, Callback callback) {
+        final long key = cell(latitude, longitude);
+        String cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            callback.onDescription(cached.isEmpty() ? null : cached);
+            return;
+        }
+        List<Callback> callbacks = waiting.get(key);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        waiting.put(key, callbacks);
+        worker.execute(() -> {
+            String description = lookup(key);
+            synchronized (cache) {
+                cache.put(key, description != null ? description : NONE);
+            }
+            mainExecutor.execute(() -> {
+                List<Callback> done = waiting.remove(key);
+                if (done != null) {
+                    for (Callback c : done) {
+                        c.onDescription(description);
+                    }
+                }
+            });
+        });
+    }
+    
+    /**
+     * @return Cached description of a position, null if it is not cached or no place is near
+     */
+    public String getCached(double latitude, double longitude) {
+        String cached;
+        synchronized (cache) {
+            cached = cache.get(cell(latitude, longitude));
+        }
+        return cached != null && !cached.isEmpty() ? cached : null;
+    }
+    
+    /**
+     * Describes the middle of a cell, on the worker thread
+     */
+    private String lookup(long key) {
+        try {
+            if (gazetteer == null) {
+                if (loadFailed) {
+                    return null;
+                }
+                gazetteer = loader.load();
+                Log.d(TAG, "Gazetteer loaded with " + gazetteer.size() + " places");
+            }
+            double latitude = (key / COLUMNS + 0.5) * CELL_DEGREES - 90;
+            double longitude = (key % COLUMNS + 0.5) * CELL_DEGREES - 180;
+            return gazetteer.describe(latitude, longitude);
+        } catch (Exception e) {
+            // Not retried, the bundled list does not change while running
+            loadFailed = gazetteer == null;
+            Log.e(TAG, "Error describing position: " + e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    static long cell(double latitude, double longitude) {
+        long row = Math.max(0, Math.min(Math.round(180 / CELL_DEGREES) - 1,
+                (long) Math.floor((latitude + 90) / CELL_DEGREES)));
+        long column = (long) Math.floor((longitude + 180) / CELL_DEGREES) % COLUMNS;
+        if (column < 0) {
+            column += COLUMNS;
+        }
+        return row * COLUMNS + column;
+    }
+}
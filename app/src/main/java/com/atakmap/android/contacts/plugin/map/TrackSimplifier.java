@@ -0,0 +1,119 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of a track for display.
+ *
+ * The fixes are projected to meters around the middle latitude of the
+ * track, which is accurate enough at the tolerances of a screen. The
+ * ranges still to split are kept on an explicit stack, so a track of a
+ * year of fixes does not run into the recursion limit.
+ */
+public final class TrackSimplifier {
+    
+    private static final double METERS_PER_DEGREE = 111320.0;
+    
+    private TrackSimplifier() {
+    }
+    
+    /**
+     * @param latitudes Latitudes of the fixes
+     * @param longitudes Longitudes of the fixes
+     * @param count Number of fixes
+     * @param toleranceMeters Largest distance of a dropped fix from the simplified line
+     * @return Positions of the kept fixes, ascending, always with the first and the last
+     */
+    public static int[] simplify(double[] latitudes, double[] longitudes, int count, double toleranceMeters) {
+        if (count <= 2) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+        }
+        double xScale = METERS_PER_DEGREE * Math.cos(Math.toRadians((minLatitude + maxLatitude) / 2));
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double longitude = longitudes[0];
+        for (int i = 0; i < count; i++) {
+            // Longitudes are unwrapped, so a track across the antimeridian stays continuous
+            if (i > 0) {
+                double step = longitudes[i] - longitudes[i - 1];
+                step -= 360.0 * Math.round(step / 360.0);
+                longitude += step;
+            }
+            x[i] = longitude * xScale;
+            y[i] = latitudes[i] * METERS_PER_DEGREE;
+        }
+        
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        double toleranceSquared = toleranceMeters * toleranceMeters;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double farthestSquared = toleranceSquared;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distance > farthestSquared) {
+                    farthestSquared = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest < 0) {
+                continue;
+            }
+            keep[farthest] = true;
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+        
+        int kept = 0;
+        for (boolean k : keep) {
+            if (k) {
+                kept++;
+            }
+        }
+        int[] indices = new int[kept];
+        kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                indices[kept++] = i;
+            }
+        }
+        return indices;
+    }
+    
+    /**
+     * @return Squared distance of point p from the segment from a to b
+     */
+    static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double ex = ax + t * dx - px;
+        double ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+}
@@ -12,6 +12,17 @@ public class Contact {
     private Double latitude;
     private Double longitude;
     private boolean hasLocation;
+    // Folded search keys, null until computed or loaded from the database
+    private String nameKey;
+    private String phoneKey;
+    private String notesKey;
+    // Sort keys: collation key of the name, last use and distance from the sort origin
+    private byte[] sortKey;
+    private long sortPrefix;
+    private long lastUsed;
+    private double sortDistance = Double.NaN;
+    // Bearing from the sort origin in degrees, shown next to the distance
+    private float sortBearing = Float.NaN;
 
     // Default constructor
     public Contact() {
@@ -56,6 +67,25 @@ public class Contact {
         this.hasLocation = (latitude != null && longitude != null);
     }
 
+    // Copy constructor, used to edit a contact without touching the displayed instance
+    public Contact(Contact other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.phoneNumber = other.phoneNumber;
+        this.notes = other.notes;
+        this.latitude = other.latitude;
+        this.longitude = other.longitude;
+        this.hasLocation = other.hasLocation;
+        this.nameKey = other.nameKey;
+        this.phoneKey = other.phoneKey;
+        this.notesKey = other.notesKey;
+        this.sortKey = other.sortKey;
+        this.sortPrefix = other.sortPrefix;
+        this.lastUsed = other.lastUsed;
+        this.sortDistance = other.sortDistance;
+        this.sortBearing = other.sortBearing;
+    }
+
     // Getters and Setters
     public long getId() {
         return id;
@@ -71,6 +101,8 @@ public class Contact {
 
     public void setName(String name) {
         this.name = name;
+        this.nameKey = null;
+        this.sortKey = null;
     }
 
     public String getPhoneNumber() {
@@ -79,6 +111,7 @@ public class Contact {
 
     public void setPhoneNumber(String phoneNumber) {
         this.phoneNumber = phoneNumber;
+        this.phoneKey = null;
     }
 
     public String getNotes() {
@@ -87,6 +120,71 @@ public class Contact {
 
     public void setNotes(String notes) {
         this.notes = notes;
+        this.notesKey = null;
+    }
+
+    // Search keys, see SearchKeys. Changing a field drops its key.
+    public String getNameKey() {
+        return nameKey;
+    }
+
+    public void setNameKey(String nameKey) {
+        this.nameKey = nameKey;
+    }
+
+    public String getPhoneKey() {
+        return phoneKey;
+    }
+
+    public void setPhoneKey(String phoneKey) {
+        this.phoneKey = phoneKey;
+    }
+
+    public String getNotesKey() {
+        return notesKey;
+    }
+
+    public void setNotesKey(String notesKey) {
+        this.notesKey = notesKey;
+    }
+
+    // Sort keys, see SortKeys and ContactOrder
+    public byte[] getSortKey() {
+        return sortKey;
+    }
+
+    public void setSortKey(byte[] sortKey) {
+        this.sortKey = sortKey;
+        this.sortPrefix = SortKeys.prefix(sortKey);
+    }
+
+    // First bytes of the sort key, most comparisons are decided by them
+    public long getSortPrefix() {
+        return sortPrefix;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public void setLastUsed(long lastUsed) {
+        this.lastUsed = lastUsed;
+    }
+
+    public double getSortDistance() {
+        return sortDistance;
+    }
+
+    public void setSortDistance(double sortDistance) {
+        this.sortDistance = sortDistance;
+    }
+
+    public float getSortBearing() {
+        return sortBearing;
+    }
+
+    public void setSortBearing(float sortBearing) {
+        this.sortBearing = sortBearing;
     }
 
     // New getters and setters for location information
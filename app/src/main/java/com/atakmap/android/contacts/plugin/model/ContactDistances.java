@@ -0,0 +1,103 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Distances and bearings of a list of contacts from one origin.
+ *
+ * They are computed for all contacts at once on a worker thread, which
+ * only reads the contacts. Applying them on the UI thread is a plain copy
+ * into the contacts, so a new own position costs the UI thread one pass
+ * over the list and no trigonometry.
+ */
+public final class ContactDistances {
+    
+    // Own movement in meters before distances are computed again
+    public static final double MIN_MOVE_METERS = 25;
+    
+    private static final String DEGREE = "\u00B0"; // °
+    
+    private final double[] origin;
+    private final List<Contact> contacts;
+    private final double[] distances;
+    private final float[] bearings;
+    
+    private ContactDistances(double[] origin, List<Contact> contacts, double[] distances, float[] bearings) {
+        this.origin = origin;
+        this.contacts = contacts;
+        this.distances = distances;
+        this.bearings = bearings;
+    }
+    
+    /**
+     * Computes the distances of all contacts, may run on any thread
+     * @param contacts Contacts to measure, must not be changed until the result is applied
+     */
+    public static ContactDistances compute(List<Contact> contacts, double latitude, double longitude) {
+        int size = contacts.size();
+        double[] distances = new double[size];
+        float[] bearings = new float[size];
+        for (int i = 0; i < size; i++) {
+            Contact contact = contacts.get(i);
+            if (contact.hasLocation()) {
+                double lat = contact.getLatitude();
+                double lon = contact.getLongitude();
+                distances[i] = SortKeys.distanceMeters(latitude, longitude, lat, lon);
+                bearings[i] = (float) SortKeys.bearingDegrees(latitude, longitude, lat, lon);
+            } else {
+                distances[i] = Double.NaN;
+                bearings[i] = Float.NaN;
+            }
+        }
+        return new ContactDistances(new double[] { latitude, longitude }, contacts, distances, bearings);
+    }
+    
+    /**
+     * @return Latitude and longitude the distances were measured from
+     */
+    public double[] getOrigin() {
+        return origin;
+    }
+    
+    /**
+     * Stores the distances on the contacts, on the UI thread
+     */
+    public void apply() {
+        for (int i = 0; i < distances.length; i++) {
+            Contact contact = contacts.get(i);
+            contact.setSortDistance(distances[i]);
+            contact.setSortBearing(bearings[i]);
+        }
+    }
+    
+    /**
+     * @return True if a position is far enough from an origin to measure again
+     * @param origin Latitude and longitude of the last measurement, or null
+     */
+    public static boolean hasMoved(double[] origin, double latitude, double longitude) {
+        return origin == null
+                || SortKeys.distanceMeters(origin[0], origin[1], latitude, longitude) >= MIN_MOVE_METERS;
+    }
+    
+    /**
+     * @return Distance and bearing of a contact, e.g. "1.2 km 045°", or null if unknown
+     */
+    public static String format(Contact contact) {
+        if (Double.isNaN(contact.getSortDistance())) {
+            return null;
+        }
+        return formatDistance(contact.getSortDistance())
+                + String.format(Locale.US, " %03d", Math.round(contact.getSortBearing()) % 360) + DEGREE;
+    }
+    
+    /**
+     * @return Distance as meters below 1 km, otherwise as kilometers
+     */
+    public static String formatDistance(double meters) {
+        if (meters < 1000) {
+            return Math.round(meters) + " m";
+        }
+        return (Math.round(meters / 100) / 10.0) + " km";
+    }
+}
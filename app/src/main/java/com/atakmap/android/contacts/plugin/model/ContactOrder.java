@@ -0,0 +1,117 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Display orders of contacts and helpers to keep sorted lists up to date
+ * with binary search instead of re-sorting.
+ *
+ * The comparators only read keys precomputed on the contacts (see
+ * {@link SortKeys}), so sorting allocates nothing per comparison.
+ */
+public final class ContactOrder {
+    
+    /**
+     * Order by name using the collation rules of the device locale, like
+     * "ORDER BY sort_key, id" in the database. The id makes the order total
+     * so every contact has exactly one position.
+     */
+    public static final Comparator<Contact> BY_NAME = (a, b) -> {
+        int result = SortKeys.compareNames(a, b);
+        return result != 0 ? result : Long.compare(a.getId(), b.getId());
+    };
+    
+    /**
+     * Most recently used first, never used contacts by name
+     */
+    public static final Comparator<Contact> BY_RECENT = (a, b) -> {
+        int result = Long.compare(b.getLastUsed(), a.getLastUsed());
+        return result != 0 ? result : BY_NAME.compare(a, b);
+    };
+    
+    /**
+     * Nearest first by the distance stored on the contacts, contacts without location last
+     */
+    public static final Comparator<Contact> BY_DISTANCE = (a, b) -> {
+        // Double.compare orders NaN after every distance
+        int result = Double.compare(a.getSortDistance(), b.getSortDistance());
+        return result != 0 ? result : BY_NAME.compare(a, b);
+    };
+    
+    /**
+     * Contacts with location first, each group by name
+     */
+    public static final Comparator<Contact> LOCATION_FIRST = (a, b) -> {
+        int result = Boolean.compare(b.hasLocation(), a.hasLocation());
+        return result != 0 ? result : BY_NAME.compare(a, b);
+    };
+    
+    private ContactOrder() {
+    }
+    
+    /**
+     * Finds the position of a contact in a list sorted by name. The contact
+     * must not have been modified since it was inserted, edits work on copies.
+     * @return Position of the contact, or -1 if it is not in the list
+     */
+    public static int indexOf(List<Contact> sortedList, Contact contact) {
+        return indexOf(sortedList, contact, BY_NAME);
+    }
+    
+    /**
+     * Finds the position of a contact in a list sorted by the given order
+     * @return Position of the contact, or -1 if it is not in the list
+     */
+    public static int indexOf(List<Contact> sortedList, Contact contact, Comparator<Contact> order) {
+        int index = Collections.binarySearch(sortedList, contact, order);
+        return index >= 0 ? index : -1;
+    }
+    
+    /**
+     * Finds the position at which a contact has to be inserted into a sorted list
+     */
+    public static int insertionPoint(List<Contact> sortedList, Contact contact, Comparator<Contact> order) {
+        int index = Collections.binarySearch(sortedList, contact, order);
+        return index >= 0 ? index : -(index + 1);
+    }
+    
+    /**
+     * Inserts a contact into a list sorted by name
+     * @return Position of the inserted contact
+     */
+    public static int insert(List<Contact> sortedList, Contact contact) {
+        return insert(sortedList, contact, BY_NAME);
+    }
+    
+    /**
+     * Inserts a contact into a list sorted by the given order
+     * @return Position of the inserted contact
+     */
+    public static int insert(List<Contact> sortedList, Contact contact, Comparator<Contact> order) {
+        int index = insertionPoint(sortedList, contact, order);
+        sortedList.add(index, contact);
+        return index;
+    }
+    
+    /**
+     * Removes a contact from a list sorted by name
+     * @return Former position of the contact, or -1 if it was not in the list
+     */
+    public static int remove(List<Contact> sortedList, Contact contact) {
+        return remove(sortedList, contact, BY_NAME);
+    }
+    
+    /**
+     * Removes a contact from a list sorted by the given order
+     * @return Former position of the contact, or -1 if it was not in the list
+     */
+    public static int remove(List<Contact> sortedList, Contact contact, Comparator<Contact> order) {
+        int index = indexOf(sortedList, contact, order);
+        if (index >= 0) {
+            sortedList.remove(index);
+        }
+        return index;
+    }
+}
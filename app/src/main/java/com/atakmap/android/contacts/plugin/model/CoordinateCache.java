@@ -0,0 +1,162 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Formatted coordinates of contacts, converted once per location.
+ *
+ * An entry belongs to the location it was made for, so a contact that
+ * moved is converted again on its next use and an unchanged one never is.
+ * Lists are formatted in one call that converts only the missing entries,
+ * outside the lock, so a repeated export of many contacts costs lookups.
+ * May be used from any thread.
+ */
+public class CoordinateCache {
+    
+    private static final CoordinateFormat[] FORMATS = CoordinateFormat.values();
+    
+    /**
+     * Formatted text of one location, per format
+     */
+    private static final class Entry {
+        final double latitude;
+        final double longitude;
+        final String[] text = new String[FORMATS.length];
+        
+        Entry(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+        
+        boolean isAt(double lat, double lon) {
+            return latitude == lat && longitude == lon;
+        }
+    }
+    
+    private final Map<Long, Entry> entries = new HashMap<>();
+    // Number of conversions, for testing
+    private long conversions;
+    
+    /**
+     * @return Coordinates of a contact in a format, null if it has no location
+     */
+    public String format(Contact contact, CoordinateFormat format) {
+        if (!contact.hasLocation()) {
+            return null;
+        }
+        double latitude = contact.getLatitude();
+        double longitude = contact.getLongitude();
+        synchronized (entries) {
+            Entry entry = entries.get(contact.getId());
+            if (entry != null && entry.isAt(latitude, longitude) && entry.text[format.ordinal()] != null) {
+                return entry.text[format.ordinal()];
+            }
+        }
+        String text = format.format(latitude, longitude);
+        store(contact.getId(), latitude, longitude, format, text);
+        return text;
+    }
+    
+    /**
+     * Formats the coordinates of a list of contacts
+     * @return Text of each contact in list order, null for contacts without a location
+     */
+    public String[] formatAll(List<Contact> contacts, CoordinateFormat format) {
+        String[] result = new String[contacts.size()];
+        List<Integer> missing = new ArrayList<>();
+        synchronized (entries) {
+            for (int i = 0; i < result.length; i++) {
+                Contact contact = contacts.get(i);
+                if (!contact.hasLocation()) {
+                    continue;
+                }
+                Entry entry = entries.get(contact.getId());
+                if (entry != null && entry.isAt(contact.getLatitude(), contact.getLongitude())) {
+                    result[i] = entry.text[format.ordinal()];
+                }
+                if (result[i] == null) {
+                    missing.add(i);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        // Converted without holding the lock, then stored in one pass
+        double[] latitudes = new double[missing.size()];
+        double[] longitudes = new double[missing.size()];
+        for (int m = 0; m < missing.size(); m++) {
+            Contact contact = contacts.get(missing.get(m));
+            latitudes[m] = contact.getLatitude();
+            longitudes[m] = contact.getLongitude();
+            result[missing.get(m)] = format.format(latitudes[m], longitudes[m]);
+        }
+        synchronized (entries) {
+            conversions += missing.size();
+            for (int m = 0; m < missing.size(); m++) {
+                int i = missing.get(m);
+                put(contacts.get(i).getId(), latitudes[m], longitudes[m], format, result[i]);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Drops the entry of a deleted contact
+     */
+    public void remove(long contactId) {
+        synchronized (entries) {
+            entries.remove(contactId);
+        }
+    }
+    
+    /**
+     * Drops the entries of contacts that are no longer in the list
+     * @param contacts All contacts
+     */
+    public void retain(List<Contact> contacts) {
+        Set<Long> ids = new HashSet<>(contacts.size() * 2);
+        for (Contact contact : contacts) {
+            ids.add(contact.getId());
+        }
+        synchronized (entries) {
+            entries.keySet().retainAll(ids);
+        }
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    long getConversionCount() {
+        synchronized (entries) {
+            return conversions;
+        }
+    }
+    
+    private void store(long contactId, double latitude, double longitude, CoordinateFormat format, String text) {
+        synchronized (entries) {
+            conversions++;
+            put(contactId, latitude, longitude, format, text);
+        }
+    }
+    
+    /**
+     * Keeps a text, replacing the entry if it was made for another location. Called with the lock held.
+     */
+    private void put(long contactId, double latitude, double longitude, CoordinateFormat format, String text) {
+        Entry entry = entries.get(contactId);
+        if (entry == null || !entry.isAt(latitude, longitude)) {
+            entry = new Entry(latitude, longitude);
+            entries.put(contactId, entry);
+        }
+        entry.text[format.ordinal()] = text;
+    }
+}
@@ -0,0 +1,59 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import java.util.Locale;
+
+/**
+ * Selectable formats of contact coordinates
+ */
+public enum CoordinateFormat {
+    MGRS("MGRS"),
+    UTM("UTM"),
+    DMS("Degrees, minutes, seconds"),
+    DECIMAL("Decimal degrees");
+    
+    private final String label;
+    
+    CoordinateFormat(String label) {
+        this.label = label;
+    }
+    
+    /**
+     * @return Text shown in the format dialog
+     */
+    public String getLabel() {
+        return label;
+    }
+    
+    /**
+     * @return A position in this format. Outside the UTM area MGRS and UTM fall back to decimal degrees.
+     */
+    public String format(double latitude, double longitude) {
+        String text = null;
+        switch (this) {
+            case MGRS:
+                text = Coordinates.toMgrs(latitude, longitude);
+                break;
+            case UTM:
+                text = Coordinates.toUtm(latitude, longitude);
+                break;
+            case DMS:
+                text = Coordinates.toDms(latitude, longitude);
+                break;
+            default:
+                break;
+        }
+        return text != null ? text : String.format(Locale.US, "%.6f, %.6f", latitude, longitude);
+    }
+    
+    /**
+     * @return The format with the given name, or MGRS if it is unknown
+     */
+    public static CoordinateFormat fromName(String name) {
+        for (CoordinateFormat format : values()) {
+            if (format.name().equals(name)) {
+                return format;
+            }
+        }
+        return MGRS;
+    }
+}
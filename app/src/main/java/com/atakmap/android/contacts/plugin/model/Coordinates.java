@@ -0,0 +1,407 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Conversion of positions to and from DMS, UTM and MGRS text on WGS84.
+ *
+ * The transverse Mercator projection uses the series of Snyder, which are
+ * accurate to well below a meter inside a zone. UTM and MGRS cover 80S to
+ * 84N with the Norway and Svalbard zone exceptions. The polar UPS areas
+ * are not supported, positions there have no UTM or MGRS text.
+ */
+public final class Coordinates {
+    
+    private static final String DEGREE = "\u00B0"; // °
+    
+    // WGS84 ellipsoid and UTM scale
+    private static final double A = 6378137.0;
+    private static final double F = 1 / 298.257223563;
+    private static final double E2 = F * (2 - F);
+    private static final double EP2 = E2 / (1 - E2);
+    private static final double K0 = 0.9996;
+    private static final double FALSE_EASTING = 500000;
+    private static final double FALSE_NORTHING = 10000000;
+    
+    // Meridian arc coefficients
+    private static final double M0 = 1 - E2 / 4 - 3 * E2 * E2 / 64 - 5 * E2 * E2 * E2 / 256;
+    private static final double M2 = 3 * E2 / 8 + 3 * E2 * E2 / 32 + 45 * E2 * E2 * E2 / 1024;
+    private static final double M4 = 15 * E2 * E2 / 256 + 45 * E2 * E2 * E2 / 1024;
+    private static final double M6 = 35 * E2 * E2 * E2 / 3072;
+    
+    private static final String BANDS = "CDEFGHJKLMNPQRSTUVWX";
+    private static final String[] COLUMN_LETTERS = { "ABCDEFGH", "JKLMNPQR", "STUVWXYZ" };
+    private static final String ROW_LETTERS = "ABCDEFGHJKLMNPQRSTUV";
+    
+    private static final Pattern MGRS = Pattern.compile(
+            "(\\d{1,2})\\s*([C-HJ-NP-X])\\s*([A-HJ-NP-Z])([A-HJ-NP-V])\\s*(\\d*)\\s*(\\d*)");
+    private static final Pattern UTM = Pattern.compile(
+            "(\\d{1,2})\\s*([C-HJ-NP-X])\\s+(\\d+(?:\\.\\d+)?)\\s*M?E?\\s+(\\d+(?:\\.\\d+)?)\\s*M?N?");
+    
+    private Coordinates() {
+    }
+    
+    /**
+     * @return Position as degrees, minutes and seconds, e.g. 48°08'06.36"N 11°34'55.20"E
+     */
+    public static String toDms(double latitude, double longitude) {
+        return dms(latitude, 'N', 'S', 2) + " " + dms(longitude, 'E', 'W', 3);
+    }
+    
+    /**
+     * @return Position as UTM zone, band, easting and northing in meters, e.g. 32U 691607 5334760,
+     *         null outside the UTM area
+     */
+    public static String toUtm(double latitude, double longitude) {
+        double[] utm = utm(latitude, longitude);
+        if (utm == null) {
+            return null;
+        }
+        return String.format(Locale.US, "%d%c %d %d", (int) utm[0], band(latitude),
+                (long) Math.floor(utm[1]), (long) Math.floor(utm[2]));
+    }
+    
+    /**
+     * @return Position as MGRS with 1 m precision, e.g. 32U PU 91607 34760, null outside the UTM area
+     */
+    public static String toMgrs(double latitude, double longitude) {
+        double[] utm = utm(latitude, longitude);
+        if (utm == null) {
+            return null;
+        }
+        int zone = (int) utm[0];
+        long easting = (long) Math.floor(utm[1]);
+        long northing = (long) Math.floor(utm[2]);
+        int set = (zone - 1) % 3;
+        int column = (int) (easting / 100000) - 1;
+        int row = (int) ((northing / 100000) % 20);
+        if (zone % 2 == 0) {
+            // Even zones start their row letters five squares later
+            row = (row + 5) % 20;
+        }
+        if (column < 0 || column > 7) {
+            return null;
+        }
+        return String.format(Locale.US, "%d%c %c%c %05d %05d", zone, band(latitude),
+                COLUMN_LETTERS[set].charAt(column), ROW_LETTERS.charAt(row), easting % 100000, northing % 100000);
+    }
+    
+    /**
+     * Reads a position in any of the formats: decimal degrees, degrees with
+     * minutes and seconds with or without hemisphere letters, UTM or MGRS
+     * @return Latitude and longitude, null if the text is not a valid position
+     */
+    public static double[] parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        String normalized = text.trim().toUpperCase(Locale.ROOT);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        try {
+            Matcher mgrs = MGRS.matcher(normalized);
+            if (mgrs.matches()) {
+                return fromMgrs(mgrs);
+            }
+            Matcher utm = UTM.matcher(normalized);
+            if (utm.matches()) {
+                return fromUtm(Integer.parseInt(utm.group(1)), utm.group(2).charAt(0),
+                        Double.parseDouble(utm.group(3)), Double.parseDouble(utm.group(4)));
+            }
+            return fromDegrees(normalized);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * @return UTM zone, easting and northing with the false northing in the south, null outside the UTM area
+     */
+    static double[] utm(double latitude, double longitude) {
+        if (!(latitude >= -80 && latitude < 84) || !(Math.abs(longitude) <= 180)) {
+            return null;
+        }
+        int zone = zone(latitude, longitude);
+        double centralMeridian = (zone - 1) * 6 - 180 + 3;
+        double deltaLongitude = longitude - centralMeridian;
+        // Longitudes near 180 of zone 1, or near -180 of zone 60
+        deltaLongitude -= 360 * Math.round(deltaLongitude / 360);
+        
+        double phi = Math.toRadians(latitude);
+        double sin = Math.sin(phi);
+        double cos = Math.cos(phi);
+        double tan = Math.tan(phi);
+        double n = A / Math.sqrt(1 - E2 * sin * sin);
+        double t = tan * tan;
+        double c = EP2 * cos * cos;
+        double a = cos * Math.toRadians(deltaLongitude);
+        double m = meridianArc(phi);
+        
+        double a2 = a * a;
+        double easting = K0 * n * (a + (1 - t + c) * a2 * a / 6
+                + (5 - 18 * t + t * t + 72 * c - 58 * EP2) * a2 * a2 * a / 120) + FALSE_EASTING;
+        double northing = K0 * (m + n * tan * (a2 / 2 + (5 - t + 9 * c + 4 * c * c) * a2 * a2 / 24
+                + (61 - 58 * t + t * t + 600 * c - 330 * EP2) * a2 * a2 * a2 / 720));
+        if (latitude < 0) {
+            northing += FALSE_NORTHING;
+        }
+        return new double[] { zone, easting, northing };
+    }
+    
+    /**
+     * @param band Latitude band letter, which also tells the hemisphere
+     * @return Latitude and longitude of a UTM position, null if it is invalid
+     */
+    static double[] fromUtm(int zone, char band, double easting, double northing) {
+        if (zone < 1 || zone > 60 || BANDS.indexOf(band) < 0) {
+            return null;
+        }
+        if (band < 'N') {
+            northing -= FALSE_NORTHING;
+        }
+        double centralMeridian = (zone - 1) * 6 - 180 + 3;
+        double mu = northing / K0 / (A * M0);
+        double e1 = (1 - Math.sqrt(1 - E2)) / (1 + Math.sqrt(1 - E2));
+        double phi1 = mu + (3 * e1 / 2 - 27 * e1 * e1 * e1 / 32) * Math.sin(2 * mu)
+                + (21 * e1 * e1 / 16 - 55 * e1 * e1 * e1 * e1 / 32) * Math.sin(4 * mu)
+                + (151 * e1 * e1 * e1 / 96) * Math.sin(6 * mu)
+                + (1097 * e1 * e1 * e1 * e1 / 512) * Math.sin(8 * mu);
+        
+        double sin = Math.sin(phi1);
+        double cos = Math.cos(phi1);
+        double tan = Math.tan(phi1);
+        double c1 = EP2 * cos * cos;
+        double t1 = tan * tan;
+        double n1 = A / Math.sqrt(1 - E2 * sin * sin);
+        double r1 = A * (1 - E2) / Math.pow(1 - E2 * sin * sin, 1.5);
+        double d = (easting - FALSE_EASTING) / (n1 * K0);
+        double d2 = d * d;
+        
+        double latitude = phi1 - (n1 * tan / r1) * (d2 / 2
+                - (5 + 3 * t1 + 10 * c1 - 4 * c1 * c1 - 9 * EP2) * d2 * d2 / 24
+                + (61 + 90 * t1 + 298 * c1 + 45 * t1 * t1 - 252 * EP2 - 3 * c1 * c1) * d2 * d2 * d2 / 720);
+        double longitude = (d - (1 + 2 * t1 + c1) * d2 * d / 6
+                + (5 - 2 * c1 + 28 * t1 - 3 * c1 * c1 + 8 * EP2 + 24 * t1 * t1) * d2 * d2 * d / 120) / cos;
+        
+        double lat = Math.toDegrees(latitude);
+        double lon = centralMeridian + Math.toDegrees(longitude);
+        lon -= 360 * Math.floor((lon + 180) / 360);
+        if (!(Math.abs(lat) <= 90)) {
+            return null;
+        }
+        return new double[] { lat, lon };
+    }
+    
+    private static double[] fromMgrs(Matcher mgrs) {
+        int zone = Integer.parseInt(mgrs.group(1));
+        char band = mgrs.group(2).charAt(0);
+        if (zone < 1 || zone > 60) {
+            return null;
+        }
+        // Digits may be split by a space or run together
+        String digits = mgrs.group(5);
+        String second = mgrs.group(6);
+        String eastDigits;
+        String northDigits;
+        if (second.isEmpty()) {
+            if (digits.length() % 2 != 0) {
+                return null;
+            }
+            eastDigits = digits.substring(0, digits.length() / 2);
+            northDigits = digits.substring(digits.length() / 2);
+        } else {
+            eastDigits = digits;
+            northDigits = second;
+        }
+        if (eastDigits.length() != northDigits.length() || eastDigits.length() > 5) {
+            return null;
+        }
+        // The middle of the square the digits name
+        double precision = Math.pow(10, 5 - eastDigits.length());
+        double eastInSquare = (eastDigits.isEmpty() ? 0 : Long.parseLong(eastDigits)) * precision + precision / 2;
+        double northInSquare = (northDigits.isEmpty() ? 0 : Long.parseLong(northDigits)) * precision + precision / 2;
+        
+        int set = (zone - 1) % 3;
+        int column = COLUMN_LETTERS[set].indexOf(mgrs.group(3).charAt(0));
+        int row = ROW_LETTERS.indexOf(mgrs.group(4).charAt(0));
+        if (column < 0 || row < 0) {
+            return null;
+        }
+        if (zone % 2 == 0) {
+            row = (row + 15) % 20;
+        }
+        double easting = (column + 1) * 100000 + eastInSquare;
+        
+        // The row letters repeat every 2000 km, the band tells which repetition
+        int bandIndex = BANDS.indexOf(band);
+        double bandLatitude = -80 + bandIndex * 8;
+        double[] bandStart = utm(bandLatitude, (zone - 1) * 6 - 180 + 3);
+        if (bandStart == null) {
+            return null;
+        }
+        double bandNorthing = Math.floor(bandStart[2] / 100000) * 100000;
+        double northing = row * 100000 + northInSquare;
+        while (northing < bandNorthing) {
+            northing += 2000000;
+        }
+        return fromUtm(zone, band, easting, northing);
+    }
+    
+    /**
+     * Reads decimal degrees or degrees, minutes and seconds. Signs or
+     * hemisphere letters give the direction, without letters the latitude
+     * comes first.
+     */
+    private static double[] fromDegrees(String text) {
+        // Marks and separators become spaces, letters are split from the numbers
+        String spaced = text.replaceAll("[\u00B0\u00BA'\"\u2032\u2033,;:]", " ")
+                .replaceAll("([NSEW])", " $1 ");
+        List<String> tokens = new ArrayList<>();
+        for (String token : spaced.trim().split("\\s+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        
+        List<List<String>> groups = new ArrayList<>();
+        List<Character> letters = new ArrayList<>();
+        boolean hasLetters = false;
+        for (String token : tokens) {
+            if (isHemisphere(token)) {
+                hasLetters = true;
+            }
+        }
+        if (hasLetters) {
+            boolean prefix = isHemisphere(tokens.get(0));
+            List<String> group = new ArrayList<>();
+            for (String token : tokens) {
+                if (isHemisphere(token)) {
+                    if (prefix && !group.isEmpty()) {
+                        groups.add(group);
+                        group = new ArrayList<>();
+                    }
+                    letters.add(token.charAt(0));
+                    if (!prefix) {
+                        groups.add(group);
+                        group = new ArrayList<>();
+                    }
+                } else {
+                    group.add(token);
+                }
+            }
+            if (prefix) {
+                groups.add(group);
+            } else if (!group.isEmpty()) {
+                return null;
+            }
+        } else {
+            if (tokens.size() != 2 && tokens.size() != 4 && tokens.size() != 6) {
+                return null;
+            }
+            int half = tokens.size() / 2;
+            groups.add(tokens.subList(0, half));
+            groups.add(tokens.subList(half, tokens.size()));
+        }
+        if (groups.size() != 2 || (hasLetters && letters.size() != 2)) {
+            return null;
+        }
+        
+        double first = degrees(groups.get(0));
+        double second = degrees(groups.get(1));
+        if (Double.isNaN(first) || Double.isNaN(second)) {
+            return null;
+        }
+        double latitude = first;
+        double longitude = second;
+        if (hasLetters) {
+            char a = letters.get(0);
+            char b = letters.get(1);
+            boolean firstIsLatitude = a == 'N' || a == 'S';
+            if (firstIsLatitude == (b == 'N' || b == 'S')) {
+                return null;
+            }
+            if ((a == 'S' || a == 'W') == (first > 0)) {
+                first = -first;
+            }
+            if ((b == 'S' || b == 'W') == (second > 0)) {
+                second = -second;
+            }
+            latitude = firstIsLatitude ? first : second;
+            longitude = firstIsLatitude ? second : first;
+        }
+        if (!(Math.abs(latitude) <= 90) || !(Math.abs(longitude) <= 180)) {
+            return null;
+        }
+        return new double[] { latitude, longitude };
+    }
+    
+    /**
+     * @return Degrees of one to three numbers, NaN if minutes or seconds are out of range
+     */
+    private static double degrees(List<String> parts) {
+        if (parts.isEmpty() || parts.size() > 3) {
+            return Double.NaN;
+        }
+        double degrees = Double.parseDouble(parts.get(0));
+        double fraction = 0;
+        for (int i = 1; i < parts.size(); i++) {
+            double value = Double.parseDouble(parts.get(i));
+            if (!(value >= 0 && value < 60)) {
+                return Double.NaN;
+            }
+            fraction += value / (i == 1 ? 60 : 3600);
+        }
+        boolean negative = degrees < 0 || parts.get(0).startsWith("-");
+        return negative ? -(Math.abs(degrees) + fraction) : degrees + fraction;
+    }
+    
+    private static boolean isHemisphere(String token) {
+        return token.length() == 1 && "NSEW".indexOf(token.charAt(0)) >= 0;
+    }
+    
+    private static String dms(double value, char positive, char negative, int degreeDigits) {
+        // Rounded to hundredths of a second first, so 59.999 seconds carry into the minute
+        long hundredths = Math.round(Math.abs(value) * 360000);
+        long degrees = hundredths / 360000;
+        long minutes = (hundredths / 6000) % 60;
+        double seconds = (hundredths % 6000) / 100.0;
+        return String.format(Locale.US, "%0" + degreeDigits + "d" + DEGREE + "%02d'%05.2f\"%c",
+                degrees, minutes, seconds, value < 0 ? negative : positive);
+    }
+    
+    private static double meridianArc(double phi) {
+        return A * (M0 * phi - M2 * Math.sin(2 * phi) + M4 * Math.sin(4 * phi) - M6 * Math.sin(6 * phi));
+    }
+    
+    private static int zone(double latitude, double longitude) {
+        int zone = (int) Math.floor((longitude + 180) / 6) + 1;
+        if (zone > 60) {
+            zone = 1;
+        }
+        // Norway and Svalbard
+        if (latitude >= 56 && latitude < 64 && longitude >= 3 && longitude < 12) {
+            return 32;
+        }
+        if (latitude >= 72) {
+            if (longitude >= 0 && longitude < 9) {
+                return 31;
+            } else if (longitude >= 9 && longitude < 21) {
+                return 33;
+            } else if (longitude >= 21 && longitude < 33) {
+                return 35;
+            } else if (longitude >= 33 && longitude < 42) {
+                return 37;
+            }
+        }
+        return zone;
+    }
+    
+    private static char band(double latitude) {
+        return BANDS.charAt(Math.min(19, (int) Math.floor((latitude + 80) / 8)));
+    }
+}
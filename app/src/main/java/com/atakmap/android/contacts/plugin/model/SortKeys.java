@@ -0,0 +1,138 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * Precomputed sort keys of contacts.
+ *
+ * Names are ordered by the collation rules of the device locale. The
+ * collation key of a name is computed once, kept on the contact and stored
+ * in the database, so sorting compares plain byte arrays. The bytes compare
+ * the same way in SQLite (memcmp on BLOBs), so the database can return
+ * contacts in display order as well.
+ */
+public final class SortKeys {
+    
+    private static final Locale LOCALE = Locale.getDefault();
+    private static final Collator COLLATOR = Collator.getInstance(LOCALE);
+    
+    // Mean earth radius in meters
+    private static final double EARTH_RADIUS = 6371008.8;
+    
+    static {
+        // Accents and case matter only between otherwise equal names
+        COLLATOR.setStrength(Collator.TERTIARY);
+        COLLATOR.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+    }
+    
+    private SortKeys() {
+    }
+    
+    /**
+     * @return Locale of the collation keys, stored to detect a changed device locale
+     */
+    public static String collationLocale() {
+        return LOCALE.toString();
+    }
+    
+    /**
+     * @return Collation key bytes of a name
+     */
+    public static byte[] collationKey(String name) {
+        synchronized (COLLATOR) {
+            return COLLATOR.getCollationKey(name != null ? name : "").toByteArray();
+        }
+    }
+    
+    /**
+     * @return Collation key of a contact's name, computed once and kept on the contact
+     */
+    public static byte[] of(Contact contact) {
+        byte[] key = contact.getSortKey();
+        if (key == null) {
+            key = collationKey(contact.getName());
+            contact.setSortKey(key);
+        }
+        return key;
+    }
+    
+    /**
+     * Compares the names of two contacts by their collation keys
+     */
+    public static int compareNames(Contact a, Contact b) {
+        byte[] keyA = of(a);
+        byte[] keyB = of(b);
+        // Unsigned comparison of the first eight bytes, the full keys only on a tie
+        int result = Long.compare(a.getSortPrefix() ^ Long.MIN_VALUE, b.getSortPrefix() ^ Long.MIN_VALUE);
+        return result != 0 ? result : compare(keyA, keyB);
+    }
+    
+    /**
+     * Packs the first eight bytes of a key into a long, padded with zeros
+     */
+    static long prefix(byte[] key) {
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (key != null && i < key.length ? key[i] & 0xff : 0);
+        }
+        return prefix;
+    }
+    
+    /**
+     * Compares two keys as unsigned bytes, like SQLite compares BLOBs
+     */
+    public static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int result = (a[i] & 0xff) - (b[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return a.length - b.length;
+    }
+    
+    /**
+     * Stores the distance of a contact from an origin for sorting by distance
+     * @param origin Latitude and longitude of the origin, or null if unknown
+     */
+    public static void updateDistance(Contact contact, double[] origin) {
+        if (origin == null || !contact.hasLocation()) {
+            contact.setSortDistance(Double.NaN);
+            contact.setSortBearing(Float.NaN);
+        } else {
+            contact.setSortDistance(distanceMeters(origin[0], origin[1],
+                    contact.getLatitude(), contact.getLongitude()));
+            contact.setSortBearing((float) bearingDegrees(origin[0], origin[1],
+                    contact.getLatitude(), contact.getLongitude()));
+        }
+    }
+    
+    /**
+     * Great-circle distance (haversine)
+     * @return Distance in meters
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+    
+    /**
+     * Initial great-circle bearing from the first to the second point
+     * @return Bearing in degrees clockwise from true north, 0 up to 360
+     */
+    public static double bearingDegrees(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double y = Math.sin(dLon) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLon);
+        double bearing = Math.toDegrees(Math.atan2(y, x));
+        return bearing < 0 ? bearing + 360 : bearing;
+    }
+}
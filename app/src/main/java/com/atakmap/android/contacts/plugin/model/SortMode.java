@@ -0,0 +1,47 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import java.util.Comparator;
+
+/**
+ * Selectable sort modes of the contact list
+ */
+public enum SortMode {
+    NAME("Name", ContactOrder.BY_NAME),
+    RECENT("Recently used", ContactOrder.BY_RECENT),
+    DISTANCE("Distance from me", ContactOrder.BY_DISTANCE),
+    LOCATION_FIRST("With location first", ContactOrder.LOCATION_FIRST);
+    
+    private final String label;
+    private final Comparator<Contact> order;
+    
+    SortMode(String label, Comparator<Contact> order) {
+        this.label = label;
+        this.order = order;
+    }
+    
+    /**
+     * @return Text shown in the sort dialog
+     */
+    public String getLabel() {
+        return label;
+    }
+    
+    /**
+     * @return Shared comparator of this mode
+     */
+    public Comparator<Contact> getOrder() {
+        return order;
+    }
+    
+    /**
+     * @return The mode with the given name, or NAME if it is unknown
+     */
+    public static SortMode fromName(String name) {
+        for (SortMode mode : values()) {
+            if (mode.name().equals(name)) {
+                return mode;
+            }
+        }
+        return NAME;
+    }
+}
@@ -0,0 +1,92 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import java.util.Arrays;
+
+/**
+ * Position history of one contact, oldest fix first.
+ *
+ * The fixes are kept in parallel arrays, so a track of a year of fixes is
+ * three arrays and not one object per fix.
+ */
+public final class Track {
+    
+    private final long contactId;
+    private long[] times;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int size;
+    
+    public Track(long contactId) {
+        this(contactId, 16);
+    }
+    
+    public Track(long contactId, int capacity) {
+        this.contactId = contactId;
+        capacity = Math.max(1, capacity);
+        times = new long[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+    }
+    
+    /**
+     * Appends a fix, fixes are expected in ascending time
+     */
+    public void add(long time, double latitude, double longitude) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+        }
+        times[size] = time;
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        size++;
+    }
+    
+    /**
+     * @param indices Positions of the fixes to keep, ascending
+     * @return A track with the fixes at the given positions
+     */
+    public Track subset(int[] indices) {
+        Track track = new Track(contactId, indices.length);
+        for (int index : indices) {
+            track.add(times[index], latitudes[index], longitudes[index]);
+        }
+        return track;
+    }
+    
+    public long getContactId() {
+        return contactId;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public long getTime(int index) {
+        return times[index];
+    }
+    
+    public double getLatitude(int index) {
+        return latitudes[index];
+    }
+    
+    public double getLongitude(int index) {
+        return longitudes[index];
+    }
+    
+    /**
+     * @return The latitudes of the fixes, the array may be longer than {@link #size()}
+     */
+    public double[] latitudes() {
+        return latitudes;
+    }
+    
+    /**
+     * @return The longitudes of the fixes, the array may be longer than {@link #size()}
+     */
+    public double[] longitudes() {
+        return longitudes;
+    }
+}
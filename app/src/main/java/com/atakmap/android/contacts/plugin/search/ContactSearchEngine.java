@@ -0,0 +1,580 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.android.contacts.plugin.model.ContactDistances;
+import com.atakmap.android.contacts.plugin.model.ContactOrder;
+import com.atakmap.android.contacts.plugin.model.SortKeys;
+import com.atakmap.android.contacts.plugin.model.SortMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Search engine for the contact list that refines incrementally.
+ *
+ * A small stack of recent query/result pairs is kept. When a new query
+ * contains an earlier query, only that earlier result is filtered, so
+ * typing "jo" then "joh" costs the size of the "jo" result instead of the
+ * size of the address book. Going back to an earlier query (backspace)
+ * returns the cached result without recomputing it.
+ *
+ * The contacts are kept sorted by the current {@link SortMode} so single
+ * changes can be applied with a binary search instead of a reload. Orders
+ * of the other modes can be handed in once, sorted on a worker, and are
+ * then kept up to date the same way, so switching to them is a swap.
+ *
+ * Queries of three or more characters without a usable cached result are
+ * answered from a {@link TrigramIndex} over name, phone and notes, so a
+ * fragment from the middle of any field only verifies a few candidates.
+ *
+ * Queries and contacts are compared by their folded {@link SearchKeys}, so
+ * accents and common transliterations do not matter.
+ *
+ * In fuzzy mode queries tolerate typos. Candidates sharing enough word
+ * trigrams with the query are scored by {@link FuzzyMatcher} and returned
+ * best match first instead of in display order.
+ *
+ * Match ranges for highlighting are found separately with
+ * {@link #findMatches(Contact, String)} for the rows that are shown.
+ */
+public class ContactSearchEngine {
+    
+    // Number of query/result pairs kept for refinement and backspace
+    private static final int MAX_CACHED_QUERIES = 8;
+    
+    // Cached results larger than this are compared against the index candidates
+    private static final int TRIGRAM_FALLBACK_THRESHOLD = 256;
+    
+    private List<Contact> contacts = new ArrayList<>();
+    private final Map<Long, Contact> contactsById = new HashMap<>();
+    // The contacts in the order of other sort modes, see setOrder
+    private final Map<SortMode, List<Contact>> orders = new EnumMap<>(SortMode.class);
+    // Incremented for every change of the contacts or their sort keys
+    private int version;
+    private final LinkedList<CachedQuery> recentQueries = new LinkedList<>();
+    private final TrigramIndex trigramIndex = new TrigramIndex();
+    
+    // The index is built on the first query that can use it and then kept up to date
+    private boolean trigramIndexValid;
+    
+    private final FuzzyMatcher fuzzyMatcher = new FuzzyMatcher();
+    private final MatchFinder matchFinder = new MatchFinder();
+    private boolean fuzzy;
+    
+    private SortMode sortMode = SortMode.NAME;
+    // Latitude and longitude for sorting by distance, null if unknown
+    private double[] distanceOrigin;
+    
+    /**
+     * A query together with the contacts that matched it
+     */
+    private static class CachedQuery {
+        final String query;
+        final boolean fuzzy;
+        final List<Contact> result;
+        
+        CachedQuery(String query, boolean fuzzy, List<Contact> result) {
+            this.query = query;
+            this.fuzzy = fuzzy;
+            this.result = result;
+        }
+    }
+    
+    /**
+     * Changes the order of the contacts and drops all cached results. The
+     * contacts are only sorted if no order of the mode was set before.
+     * @param mode New sort mode
+     */
+    public void setSortMode(SortMode mode) {
+        if (mode == sortMode) {
+            return;
+        }
+        List<Contact> sorted = orders.remove(mode);
+        // The current order is kept for switching back
+        orders.put(sortMode, contacts);
+        sortMode = mode;
+        if (sorted != null) {
+            contacts = sorted;
+        } else {
+            // Only the shared comparator of the mode is used, the keys are precomputed
+            contacts = new ArrayList<>(contacts);
+            Collections.sort(contacts, sortMode.getOrder());
+        }
+        recentQueries.clear();
+    }
+    
+    /**
+     * @return True if switching to the mode needs no sorting
+     */
+    public boolean hasOrder(SortMode mode) {
+        return mode == sortMode || orders.containsKey(mode);
+    }
+    
+    /**
+     * Sets the order of a sort mode that was sorted from a copy of {@link #getContacts()}
+     * @param mode Sort mode of the order
+     * @param sorted List sorted from a {@link SortSnapshot}, must not be used afterwards
+     * @param atVersion {@link SortSnapshot#getVersion()} of that snapshot
+     * @return False if the contacts changed since the copy was taken, the order is dropped then
+     */
+    public boolean setOrder(SortMode mode, List<Contact> sorted, int atVersion) {
+        if (atVersion != version) {
+            return false;
+        }
+        if (mode != sortMode) {
+            orders.put(mode, sorted);
+        }
+        return true;
+    }
+    
+    /**
+     * Sorts contacts by copies of their sort keys
+     * @return New list of the contacts in the order of the mode
+     */
+    public static List<Contact> sort(List<Contact> contacts, SortMode mode) {
+        return new SortSnapshot(contacts, 0).sort(mode);
+    }
+    
+    /**
+     * Takes the contacts with copies of their sort keys, for sorting on a
+     * worker thread. Called on the UI thread.
+     */
+    public SortSnapshot snapshot() {
+        return new SortSnapshot(contacts, version);
+    }
+    
+    /**
+     * The contacts together with copies made when the snapshot was taken.
+     * Sorting compares the copies only, so it neither reads sort keys that
+     * change on the UI thread nor writes missing keys onto shown contacts.
+     */
+    public static final class SortSnapshot {
+        
+        private final Contact[] contacts;
+        private final Contact[] copies;
+        private final int version;
+        
+        SortSnapshot(List<Contact> contacts, int version) {
+            this.contacts = contacts.toArray(new Contact[0]);
+            this.copies = new Contact[this.contacts.length];
+            for (int i = 0; i < copies.length; i++) {
+                copies[i] = new Contact(this.contacts[i]);
+            }
+            this.version = version;
+        }
+        
+        /**
+         * @return {@link #getVersion()} of the engine when the snapshot was taken
+         */
+        public int getVersion() {
+            return version;
+        }
+        
+        /**
+         * @return New list of the contacts in the order of the mode
+         */
+        public List<Contact> sort(SortMode mode) {
+            final Comparator<Contact> order = mode.getOrder();
+            Integer[] positions = new Integer[copies.length];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            Arrays.sort(positions, (a, b) -> order.compare(copies[a], copies[b]));
+            List<Contact> sorted = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                sorted.add(contacts[position]);
+            }
+            return sorted;
+        }
+    }
+    
+    /**
+     * @return Number of changes of the contacts or their sort keys so far
+     */
+    public int getVersion() {
+        return version;
+    }
+    
+    public SortMode getSortMode() {
+        return sortMode;
+    }
+    
+    /**
+     * @return Comparator of the current sort mode
+     */
+    public Comparator<Contact> getOrder() {
+        return sortMode.getOrder();
+    }
+    
+    /**
+     * Sets the position distances are measured from. Re-sorts when sorting
+     * by distance.
+     * @param latitude Latitude, or null if the position is unknown
+     * @param longitude Longitude, or null if the position is unknown
+     */
+    public void setDistanceOrigin(Double latitude, Double longitude) {
+        distanceOrigin = latitude != null && longitude != null
+                ? new double[] { latitude, longitude } : null;
+        for (Contact contact : contacts) {
+            SortKeys.updateDistance(contact, distanceOrigin);
+        }
+        version++;
+        orders.remove(SortMode.DISTANCE);
+        if (sortMode == SortMode.DISTANCE) {
+            Collections.sort(contacts, sortMode.getOrder());
+            recentQueries.clear();
+        }
+    }
+    
+    /**
+     * Applies distances computed in the background for a new own position.
+     * Contacts added or updated since the computation keep the distance from
+     * the previous origin until the next one.
+     * @param distances Distances of a copy of {@link #getContacts()}
+     * @return True if the contacts were re-sorted because they are sorted by distance
+     */
+    public boolean setDistances(ContactDistances distances) {
+        distanceOrigin = distances.getOrigin();
+        distances.apply();
+        version++;
+        orders.remove(SortMode.DISTANCE);
+        if (sortMode != SortMode.DISTANCE) {
+            return false;
+        }
+        Collections.sort(contacts, sortMode.getOrder());
+        recentQueries.clear();
+        return true;
+    }
+    
+    /**
+     * Switches typo-tolerant search on or off
+     */
+    public void setFuzzy(boolean fuzzy) {
+        this.fuzzy = fuzzy;
+    }
+    
+    public boolean isFuzzy() {
+        return fuzzy;
+    }
+    
+    /**
+     * @return True if results for this query are ranked instead of in display order
+     */
+    public boolean isRanked(String query) {
+        return fuzzy && !normalize(query).isEmpty();
+    }
+    
+    /**
+     * Replaces the searchable contacts and drops all cached results
+     * @param newContacts Contacts to search
+     */
+    public void setContacts(List<Contact> newContacts) {
+        contacts.clear();
+        contactsById.clear();
+        orders.clear();
+        version++;
+        recentQueries.clear();
+        trigramIndex.clear();
+        trigramIndexValid = false;
+        if (newContacts != null) {
+            contacts.addAll(newContacts);
+            for (Contact contact : contacts) {
+                contactsById.put(contact.getId(), contact);
+                SortKeys.updateDistance(contact, distanceOrigin);
+            }
+            // Already sorted by name when coming from the database, so this is cheap then
+            Collections.sort(contacts, sortMode.getOrder());
+        }
+    }
+    
+    /**
+     * Adds a single contact and drops all cached results
+     * @param contact New contact
+     */
+    public void add(Contact contact) {
+        replace(contact);
+    }
+    
+    /**
+     * Replaces a single contact with the same id and drops all cached results
+     * @param contact Updated contact
+     * @return The replaced contact, or null if it was not known
+     */
+    public Contact update(Contact contact) {
+        return replace(contact);
+    }
+    
+    /**
+     * Puts a contact into all orders in place of the one with the same id
+     * @return The replaced contact, or null if it was not known
+     */
+    private Contact replace(Contact contact) {
+        Contact previous = contactsById.put(contact.getId(), contact);
+        SortKeys.updateDistance(contact, distanceOrigin);
+        if (previous != null) {
+            ContactOrder.remove(contacts, previous, sortMode.getOrder());
+        }
+        ContactOrder.insert(contacts, contact, sortMode.getOrder());
+        for (Map.Entry<SortMode, List<Contact>> order : orders.entrySet()) {
+            if (previous != null) {
+                ContactOrder.remove(order.getValue(), previous, order.getKey().getOrder());
+            }
+            ContactOrder.insert(order.getValue(), contact, order.getKey().getOrder());
+        }
+        if (trigramIndexValid) {
+            trigramIndex.add(contact);
+        }
+        version++;
+        recentQueries.clear();
+        return previous;
+    }
+    
+    /**
+     * Removes a single contact and drops all cached results
+     * @param contactId Id of the contact
+     * @return The removed contact, or null if it was not known
+     */
+    public Contact remove(long contactId) {
+        Contact previous = contactsById.remove(contactId);
+        if (previous != null) {
+            ContactOrder.remove(contacts, previous, sortMode.getOrder());
+            for (Map.Entry<SortMode, List<Contact>> order : orders.entrySet()) {
+                ContactOrder.remove(order.getValue(), previous, order.getKey().getOrder());
+            }
+            version++;
+            if (trigramIndexValid) {
+                trigramIndex.remove(contactId);
+            }
+            recentQueries.clear();
+        }
+        return previous;
+    }
+    
+    /**
+     * @return The contact with the given id, or null
+     */
+    public Contact getContact(long contactId) {
+        return contactsById.get(contactId);
+    }
+    
+    /**
+     * @return All searchable contacts in the order of the current sort mode
+     */
+    public List<Contact> getContacts() {
+        return Collections.unmodifiableList(contacts);
+    }
+    
+    /**
+     * Checks whether a contact matches a search term
+     * @param contact Contact to check
+     * @param query Search term, an empty term matches everything
+     */
+    public boolean matches(Contact contact, String query) {
+        String normalizedQuery = normalize(query);
+        return normalizedQuery.isEmpty() || matchesNormalized(contact, normalizedQuery);
+    }
+    
+    /**
+     * Finds where a query matched in a contact, for highlighting. Only
+     * meant for the rows on screen, searching itself does not track ranges.
+     * @param contact Contact from a search result
+     * @param query Search term of that result
+     * @return Match ranges in the original field texts, empty for an empty query
+     */
+    public MatchRanges findMatches(Contact contact, String query) {
+        String normalizedQuery = normalize(query);
+        if (normalizedQuery.isEmpty()) {
+            return new MatchRanges(contact.getId(), null, null, null);
+        }
+        return fuzzy ? matchFinder.fuzzy(contact, normalizedQuery) : matchFinder.exact(contact, normalizedQuery);
+    }
+    
+    /**
+     * Searches the contacts. The returned list is shared with the cache and
+     * must not be modified by the caller.
+     * @param query Search term
+     * @return Matching contacts in display order
+     */
+    public List<Contact> search(String query) {
+        String normalizedQuery = normalize(query);
+        if (normalizedQuery.isEmpty()) {
+            // Snapshot, the full list changes in place
+            return Collections.unmodifiableList(new ArrayList<>(contacts));
+        }
+        
+        // Exact hit (e.g. after backspace): reuse and move to the top
+        Iterator<CachedQuery> iterator = recentQueries.iterator();
+        while (iterator.hasNext()) {
+            CachedQuery cached = iterator.next();
+            if (cached.fuzzy == fuzzy && cached.query.equals(normalizedQuery)) {
+                iterator.remove();
+                recentQueries.addFirst(cached);
+                return cached.result;
+            }
+        }
+        
+        if (fuzzy) {
+            return cache(normalizedQuery, fuzzySearch(normalizedQuery));
+        }
+        
+        // Narrow from the smallest earlier result whose query is contained in the new one
+        List<Contact> base = contacts;
+        for (CachedQuery cached : recentQueries) {
+            // Fuzzy results are not a superset of longer queries, only exact ones can be narrowed
+            if (!cached.fuzzy && normalizedQuery.contains(cached.query)
+                    && cached.result.size() < base.size()) {
+                base = cached.result;
+            }
+        }
+        
+        // Without a small cached result, ask the trigram index for candidates
+        boolean fromIndex = false;
+        if (base == contacts || base.size() > TRIGRAM_FALLBACK_THRESHOLD) {
+            List<Contact> candidates = indexCandidates(normalizedQuery);
+            if (candidates != null && candidates.size() < base.size()) {
+                base = candidates;
+                fromIndex = true;
+            }
+        }
+        
+        List<Contact> result = new ArrayList<>();
+        for (Contact contact : base) {
+            if (matchesNormalized(contact, normalizedQuery)) {
+                result.add(contact);
+            }
+        }
+        
+        // Index candidates come in slot order, bring them into display order
+        if (fromIndex) {
+            Collections.sort(result, sortMode.getOrder());
+        }
+        return cache(normalizedQuery, result);
+    }
+    
+    /**
+     * Pushes a result onto the query cache
+     * @return The unmodifiable result
+     */
+    private List<Contact> cache(String normalizedQuery, List<Contact> result) {
+        result = Collections.unmodifiableList(result);
+        recentQueries.addFirst(new CachedQuery(normalizedQuery, fuzzy, result));
+        if (recentQueries.size() > MAX_CACHED_QUERIES) {
+            recentQueries.removeLast();
+        }
+        return result;
+    }
+    
+    /**
+     * Typo-tolerant search, best match first
+     */
+    private List<Contact> fuzzySearch(String normalizedQuery) {
+        List<String> queryWords = TrigramIndex.words(normalizedQuery);
+        if (queryWords.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        // A word within k edits keeps all but 3k of its trigrams, one less for a
+        // prefix match that loses the end marker. Short words where that bound
+        // drops to zero still need one shared trigram, which the boundary
+        // trigrams nearly always provide.
+        long[] grams = new long[0];
+        int minShared = 0;
+        for (String word : queryWords) {
+            long[] wordGrams = TrigramIndex.wordGrams(word);
+            grams = concat(grams, wordGrams);
+            int kept = wordGrams.length - TrigramIndex.GRAM_LENGTH * FuzzyMatcher.maxEdits(word.length()) - 1;
+            minShared += Math.max(0, kept);
+        }
+        List<Contact> candidates = ensureIndex().candidatesSharing(grams, minShared);
+        
+        final Map<Contact, Float> scores = new HashMap<>();
+        List<Contact> result = new ArrayList<>();
+        for (Contact contact : candidates) {
+            float score = fuzzyMatcher.score(queryWords, contact);
+            if (score >= 0) {
+                scores.put(contact, score);
+                result.add(contact);
+            }
+        }
+        final Comparator<Contact> order = sortMode.getOrder();
+        Collections.sort(result, (a, b) -> {
+            int byScore = Float.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : order.compare(a, b);
+        });
+        return result;
+    }
+    
+    /**
+     * Joins trigram lists, duplicates are kept so each word counts its own hits
+     */
+    private static long[] concat(long[] a, long[] b) {
+        long[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+    
+    /**
+     * @return Index candidates for the query, or null if the index cannot help
+     */
+    private List<Contact> indexCandidates(String normalizedQuery) {
+        String plainQuery = SearchKeys.plain(normalizedQuery);
+        if (plainQuery.length() < TrigramIndex.GRAM_LENGTH) {
+            return null;
+        }
+        List<Contact> candidates = ensureIndex().candidates(normalizedQuery);
+        if (plainQuery.equals(normalizedQuery)) {
+            return candidates;
+        }
+        // Names spelled without the umlaut only have the trigrams of the plain query
+        Set<Contact> union = new LinkedHashSet<>(candidates);
+        union.addAll(trigramIndex.candidates(plainQuery));
+        return new ArrayList<>(union);
+    }
+    
+    /**
+     * @return The trigram index, built on first use
+     */
+    private TrigramIndex ensureIndex() {
+        if (!trigramIndexValid) {
+            for (Contact contact : contacts) {
+                trigramIndex.add(contact);
+            }
+            trigramIndexValid = true;
+        }
+        return trigramIndex;
+    }
+    
+    /**
+     * Checks whether any searchable field of a contact contains an already normalized query
+     */
+    static boolean matchesNormalized(Contact contact, String normalizedQuery) {
+        if (contact == null) {
+            return false;
+        }
+        String plainQuery = SearchKeys.plain(normalizedQuery);
+        String[] fields = TrigramIndex.searchableFields(contact);
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].contains(i < TrigramIndex.FIRST_PLAIN_FIELD ? normalizedQuery : plainQuery)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Normalizes a query for matching and cache lookups, see {@link SearchKeys#fold(String)}
+     */
+    static String normalize(String query) {
+        return SearchKeys.fold(query);
+    }
+}
@@ -0,0 +1,178 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import java.util.List;
+
+/**
+ * Typo-tolerant matching and ranking of contacts.
+ *
+ * Each query word is compared against the words of the name and notes
+ * with a bounded edit distance (Damerau-Levenshtein, adjacent
+ * transpositions count as one edit). Only a diagonal band of the distance
+ * matrix is evaluated and the comparison stops as soon as the bound
+ * cannot be met anymore. The score combines match quality, a bonus for
+ * prefix matches and the weight of the field that matched.
+ *
+ * Not thread-safe, the distance rows are reused between calls.
+ */
+public class FuzzyMatcher {
+    
+    // Field weights for the ranking
+    static final float WEIGHT_NAME = 1.0f;
+    static final float WEIGHT_NOTES = 0.5f;
+    
+    // Bonus for a query word that matches the start of a word
+    static final float PREFIX_BONUS = 0.25f;
+    
+    private int[] previousRow = new int[32];
+    private int[] currentRow = new int[32];
+    private int[] transpositionRow = new int[32];
+    
+    /**
+     * @return Number of edits tolerated for a query word of the given length
+     */
+    public static int maxEdits(int wordLength) {
+        if (wordLength <= 2) {
+            return 0;
+        }
+        if (wordLength <= 4) {
+            return 1;
+        }
+        return wordLength <= 8 ? 2 : 3;
+    }
+    
+    /**
+     * Scores a contact against the words of a query
+     * @param queryWords Normalized query words
+     * @param contact Contact to score
+     * @return Score, higher is better, or a negative value if a query word did not match
+     */
+    public float score(List<String> queryWords, Contact contact) {
+        List<String> nameWords = TrigramIndex.words(SearchKeys.name(contact));
+        List<String> notesWords = null;
+        
+        float total = 0;
+        for (String queryWord : queryWords) {
+            float best = bestWordScore(queryWord, nameWords, WEIGHT_NAME);
+            if (best < WEIGHT_NAME) {
+                // Notes are only looked at if the name did not match perfectly
+                if (notesWords == null) {
+                    notesWords = TrigramIndex.words(SearchKeys.notes(contact));
+                }
+                best = Math.max(best, bestWordScore(queryWord, notesWords, WEIGHT_NOTES));
+            }
+            if (best < 0) {
+                return -1;
+            }
+            total += best;
+        }
+        return total / queryWords.size();
+    }
+    
+    /**
+     * @return Best score of a query word against the words of one field, or -1
+     */
+    private float bestWordScore(String queryWord, List<String> fieldWords, float weight) {
+        int maxEdits = maxEdits(queryWord.length());
+        float best = -1;
+        for (String word : fieldWords) {
+            // Whole word
+            int distance = distance(queryWord, word, maxEdits);
+            boolean prefix = false;
+            
+            // Start of the word, for names that are still being typed
+            if (word.length() > queryWord.length()) {
+                int prefixDistance = distance(queryWord, word.substring(0, queryWord.length()), maxEdits);
+                if (prefixDistance < distance) {
+                    distance = prefixDistance;
+                    prefix = true;
+                } else if (prefixDistance == 0) {
+                    prefix = true;
+                }
+            }
+            
+            if (distance <= maxEdits) {
+                float quality = 1f - (float) distance / (queryWord.length() + 1);
+                float score = weight * quality + (prefix && distance == 0 ? PREFIX_BONUS * weight : 0);
+                if (word.length() == queryWord.length() && distance == 0) {
+                    // An exact word beats a prefix of a longer word
+                    score += PREFIX_BONUS * weight * 2;
+                }
+                best = Math.max(best, score);
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Bounded Damerau-Levenshtein distance (optimal string alignment)
+     * @param a First string
+     * @param b Second string
+     * @param maxDistance Largest distance of interest
+     * @return The distance, or maxDistance + 1 if it is larger than maxDistance
+     */
+    public int distance(CharSequence a, CharSequence b, int maxDistance) {
+        int lengthA = a.length();
+        int lengthB = b.length();
+        if (Math.abs(lengthA - lengthB) > maxDistance) {
+            return maxDistance + 1;
+        }
+        if (lengthA == 0 || lengthB == 0) {
+            return Math.max(lengthA, lengthB);
+        }
+        ensureCapacity(lengthB + 1);
+        
+        // Cells outside the band are treated as "too far"
+        int outside = maxDistance + 1;
+        int[] previous = previousRow;
+        int[] current = currentRow;
+        int[] beforePrevious = transpositionRow;
+        for (int j = 0; j <= lengthB; j++) {
+            previous[j] = j <= maxDistance ? j : outside;
+        }
+        
+        for (int i = 1; i <= lengthA; i++) {
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(lengthB, i + maxDistance);
+            current[0] = i <= maxDistance ? i : outside;
+            if (from > 1) {
+                current[from - 1] = outside;
+            }
+            
+            int rowMinimum = current[0];
+            char charA = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = charA == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && charA == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, beforePrevious[j - 2] + 1);
+                }
+                current[j] = Math.min(value, outside);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (to < lengthB) {
+                current[to + 1] = outside;
+            }
+            
+            // Every later row can only grow from here
+            if (rowMinimum > maxDistance) {
+                return outside;
+            }
+            
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[lengthB], outside);
+    }
+    
+    private void ensureCapacity(int length) {
+        if (previousRow.length < length) {
+            previousRow = new int[length];
+            currentRow = new int[length];
+            transpositionRow = new int[length];
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the ranges a query matched in the original text of a contact.
+ *
+ * The fields are folded again letter by letter with a map back to the
+ * original offsets, so a match on "mueller" highlights "Müller". This is
+ * only done for rows that are shown, not while searching.
+ */
+class MatchFinder {
+    
+    private final FuzzyMatcher fuzzyMatcher = new FuzzyMatcher();
+    
+    /**
+     * Ranges of a substring match in name, phone number and notes
+     * @param normalizedQuery Folded query, not empty
+     */
+    MatchRanges exact(Contact contact, String normalizedQuery) {
+        return new MatchRanges(contact.getId(),
+                textOccurrences(contact.getName(), normalizedQuery),
+                phoneOccurrences(contact.getPhoneNumber(), normalizedQuery),
+                textOccurrences(contact.getNotes(), normalizedQuery));
+    }
+    
+    /**
+     * Occurrences in the folded text, or else in its plain form, see {@link SearchKeys#plain(String)}
+     */
+    private static int[] textOccurrences(String original, String normalizedQuery) {
+        SearchKeys.Mapped text = SearchKeys.foldMapped(original);
+        int[] ranges = occurrences(text, normalizedQuery);
+        if (ranges == null) {
+            ranges = occurrences(SearchKeys.plain(text), SearchKeys.plain(normalizedQuery));
+        }
+        return ranges;
+    }
+    
+    /**
+     * Ranges of the words in name and notes that are within the typo tolerance
+     * of a query word, see {@link FuzzyMatcher}
+     * @param normalizedQuery Folded query, not empty
+     */
+    MatchRanges fuzzy(Contact contact, String normalizedQuery) {
+        List<String> queryWords = TrigramIndex.words(normalizedQuery);
+        return new MatchRanges(contact.getId(),
+                similarWords(SearchKeys.foldMapped(contact.getName()), queryWords),
+                // Phone numbers are not matched with typos
+                phoneOccurrences(contact.getPhoneNumber(), normalizedQuery),
+                similarWords(SearchKeys.foldMapped(contact.getNotes()), queryWords));
+    }
+    
+    private static int[] occurrences(SearchKeys.Mapped text, String query) {
+        int[] ranges = null;
+        int count = 0;
+        int from = 0;
+        int index;
+        while ((index = text.folded.indexOf(query, from)) >= 0) {
+            ranges = add(ranges, count, text.start(index), text.end(index + query.length()));
+            count += 2;
+            from = index + query.length();
+        }
+        return trim(ranges, count);
+    }
+    
+    /**
+     * Phone numbers also match on their digits alone, so "4567" finds "123-456-7890"
+     */
+    private static int[] phoneOccurrences(String phone, String query) {
+        SearchKeys.Mapped text = SearchKeys.foldMapped(phone);
+        int[] ranges = occurrences(text, query);
+        if (ranges != null || !isDigits(query)) {
+            return ranges;
+        }
+        
+        // Positions of the digits in the folded number
+        int[] digitPositions = new int[text.folded.length()];
+        StringBuilder digits = new StringBuilder(text.folded.length());
+        for (int i = 0; i < text.folded.length(); i++) {
+            char c = text.folded.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digitPositions[digits.length()] = i;
+                digits.append(c);
+            }
+        }
+        int count = 0;
+        int from = 0;
+        int index;
+        while ((index = digits.indexOf(query, from)) >= 0) {
+            // One range from the first to the last digit, separators in between included
+            ranges = add(ranges, count, text.start(digitPositions[index]),
+                    text.end(digitPositions[index + query.length() - 1] + 1));
+            count += 2;
+            from = index + query.length();
+        }
+        return trim(ranges, count);
+    }
+    
+    private int[] similarWords(SearchKeys.Mapped text, List<String> queryWords) {
+        int[] ranges = null;
+        int count = 0;
+        String folded = text.folded;
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                int end = matchedEnd(folded.substring(start, i), queryWords);
+                if (end > 0) {
+                    ranges = add(ranges, count, text.start(start), text.end(start + end));
+                    count += 2;
+                }
+                start = -1;
+            }
+        }
+        return trim(ranges, count);
+    }
+    
+    /**
+     * @return Length of the part of a word that matched a query word, 0 if none did
+     */
+    private int matchedEnd(String word, List<String> queryWords) {
+        int best = 0;
+        for (String queryWord : queryWords) {
+            int maxEdits = FuzzyMatcher.maxEdits(queryWord.length());
+            if (fuzzyMatcher.distance(queryWord, word, maxEdits) <= maxEdits) {
+                return word.length();
+            }
+            // Start of the word, for names that are still being typed
+            if (word.length() > queryWord.length()
+                    && fuzzyMatcher.distance(queryWord, word.substring(0, queryWord.length()), maxEdits) <= maxEdits) {
+                best = Math.max(best, queryWord.length());
+            }
+        }
+        return best;
+    }
+    
+    private static boolean isDigits(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return !text.isEmpty();
+    }
+    
+    private static int[] add(int[] ranges, int count, int start, int end) {
+        if (ranges == null) {
+            ranges = new int[4];
+        } else if (count == ranges.length) {
+            ranges = Arrays.copyOf(ranges, count * 2);
+        }
+        ranges[count] = start;
+        ranges[count + 1] = end;
+        return ranges;
+    }
+    
+    private static int[] trim(int[] ranges, int count) {
+        return ranges == null || ranges.length == count ? ranges : Arrays.copyOf(ranges, count);
+    }
+}
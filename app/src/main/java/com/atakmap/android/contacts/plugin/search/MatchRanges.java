@@ -0,0 +1,54 @@
+package com.atakmap.android.contacts.plugin.search;
+
+/**
+ * Where a search query matched in the fields of one contact.
+ *
+ * Ranges are pairs of start (inclusive) and end (exclusive) offsets into
+ * the original, unfolded field text, so they can be used for spans
+ * directly.
+ */
+public final class MatchRanges {
+    
+    private static final int[] NONE = new int[0];
+    
+    private final long contactId;
+    private final int[] name;
+    private final int[] phone;
+    private final int[] notes;
+    
+    MatchRanges(long contactId, int[] name, int[] phone, int[] notes) {
+        this.contactId = contactId;
+        this.name = name != null ? name : NONE;
+        this.phone = phone != null ? phone : NONE;
+        this.notes = notes != null ? notes : NONE;
+    }
+    
+    public long getContactId() {
+        return contactId;
+    }
+    
+    /**
+     * @return Start and end offsets of the matches in the name, in pairs
+     */
+    public int[] getName() {
+        return name;
+    }
+    
+    /**
+     * @return Start and end offsets of the matches in the phone number, in pairs
+     */
+    public int[] getPhone() {
+        return phone;
+    }
+    
+    /**
+     * @return Start and end offsets of the matches in the notes, in pairs
+     */
+    public int[] getNotes() {
+        return notes;
+    }
+    
+    public boolean isEmpty() {
+        return name.length == 0 && phone.length == 0 && notes.length == 0;
+    }
+}
@@ -0,0 +1,303 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Folded search keys for accent- and transliteration-insensitive matching.
+ *
+ * Folding lower-cases the text, applies transliterations that Unicode
+ * decomposition does not cover (ü becomes ue, ß becomes ss, æ becomes ae,
+ * ...), decomposes to NFD and strips the combining marks. Apostrophes and
+ * the ayn/hamza letters of Arabic transliterations are dropped and hyphens
+ * become spaces, so "Müller" and "Mueller" or "Abd al-Rahman" and
+ * "ʿAbd al Rahman" fold to the same key.
+ *
+ * The keys of a contact are computed once, stored in the database and kept
+ * on the contact, so queries only fold the query itself. Names spelled
+ * without the umlaut ("Muller") are matched through {@link #plain(String)}.
+ */
+public final class SearchKeys {
+    
+    private SearchKeys() {
+    }
+    
+    /**
+     * Folds a text for matching
+     * @param text Text to fold, may be null
+     * @return Folded text, never null
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        
+        // Plain ASCII only needs the punctuation rules, skip the decomposition
+        boolean ascii = true;
+        for (int i = 0; i < lower.length() && ascii; i++) {
+            ascii = lower.charAt(i) < 0x80;
+        }
+        if (!ascii) {
+            lower = stripMarks(expand(lower));
+        }
+        
+        StringBuilder folded = null;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            char replacement = punctuation(c);
+            if (replacement != c && folded == null) {
+                folded = new StringBuilder(lower.length());
+                folded.append(lower, 0, i);
+            }
+            if (folded != null && replacement != 0) {
+                folded.append(replacement);
+            }
+        }
+        return folded != null ? folded.toString() : lower;
+    }
+    
+    /**
+     * A folded text together with the position in the original text that
+     * every folded character came from
+     */
+    static final class Mapped {
+        final String folded;
+        // Start and end of the original characters each folded character was made from
+        final int[] originStart;
+        final int[] originEnd;
+        
+        Mapped(String folded, int[] originStart, int[] originEnd) {
+            this.folded = folded;
+            this.originStart = originStart;
+            this.originEnd = originEnd;
+        }
+        
+        /**
+         * @return Start in the original text of a folded range
+         */
+        int start(int foldedStart) {
+            return originStart[foldedStart];
+        }
+        
+        /**
+         * @return End in the original text of a folded range, so that a
+         * range ending inside an expansion (the u of ue from ü) covers the whole letter
+         */
+        int end(int foldedEnd) {
+            return originEnd[foldedEnd - 1];
+        }
+    }
+    
+    /**
+     * Folds a text letter by letter and keeps track of where every folded
+     * character came from. Only used to highlight matches, the keys for
+     * matching come from {@link #fold(String)}.
+     * @param text Text to fold, may be null
+     */
+    static Mapped foldMapped(String text) {
+        if (text == null) {
+            text = "";
+        }
+        StringBuilder folded = new StringBuilder(text.length());
+        int[] originStart = new int[text.length() + 4];
+        int[] originEnd = new int[text.length() + 4];
+        int i = 0;
+        while (i < text.length()) {
+            // A letter with its combining marks folds as one unit
+            int end = i + Character.charCount(text.codePointAt(i));
+            while (end < text.length() && Character.getType(text.charAt(end)) == Character.NON_SPACING_MARK) {
+                end++;
+            }
+            String piece = fold(text.substring(i, end));
+            for (int j = 0; j < piece.length(); j++) {
+                if (folded.length() == originStart.length) {
+                    originStart = Arrays.copyOf(originStart, originStart.length * 2);
+                    originEnd = Arrays.copyOf(originEnd, originEnd.length * 2);
+                }
+                originStart[folded.length()] = i;
+                originEnd[folded.length()] = end;
+                folded.append(piece.charAt(j));
+            }
+            i = end;
+        }
+        return new Mapped(folded.toString(), originStart, originEnd);
+    }
+    
+    /**
+     * Drops the e of ae, oe and ue in a folded text, so "mueller" (also the
+     * fold of "Müller") and "muller" give the same plain key
+     * @param folded Folded text
+     * @return Plain text, the same instance if it has no such pair
+     */
+    public static String plain(String folded) {
+        if (!hasPair(folded)) {
+            return folded;
+        }
+        StringBuilder plain = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            plain.append(folded.charAt(i));
+            if (isPair(folded, i)) {
+                i++;
+            }
+        }
+        return plain.toString();
+    }
+    
+    /**
+     * {@link #plain(String)} of a mapped text, the vowel of a dropped pair
+     * covers the original letters of both
+     */
+    static Mapped plain(Mapped mapped) {
+        String folded = mapped.folded;
+        if (!hasPair(folded)) {
+            return mapped;
+        }
+        StringBuilder plain = new StringBuilder(folded.length());
+        int[] originStart = new int[folded.length()];
+        int[] originEnd = new int[folded.length()];
+        for (int i = 0; i < folded.length(); i++) {
+            originStart[plain.length()] = mapped.originStart[i];
+            originEnd[plain.length()] = mapped.originEnd[isPair(folded, i) ? i + 1 : i];
+            plain.append(folded.charAt(i));
+            if (isPair(folded, i)) {
+                i++;
+            }
+        }
+        return new Mapped(plain.toString(), originStart, originEnd);
+    }
+    
+    private static boolean hasPair(String folded) {
+        for (int i = 0; i + 1 < folded.length(); i++) {
+            if (isPair(folded, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return True if an a, o or u followed by an e starts at the index
+     */
+    private static boolean isPair(String folded, int i) {
+        char c = folded.charAt(i);
+        return (c == 'a' || c == 'o' || c == 'u') && i + 1 < folded.length() && folded.charAt(i + 1) == 'e';
+    }
+    
+    /**
+     * @return Folded name of a contact, computed once and kept on the contact
+     */
+    public static String name(Contact contact) {
+        String key = contact.getNameKey();
+        if (key == null) {
+            key = fold(contact.getName());
+            contact.setNameKey(key);
+        }
+        return key;
+    }
+    
+    /**
+     * @return Folded phone number of a contact, computed once and kept on the contact
+     */
+    public static String phone(Contact contact) {
+        String key = contact.getPhoneKey();
+        if (key == null) {
+            key = fold(contact.getPhoneNumber());
+            contact.setPhoneKey(key);
+        }
+        return key;
+    }
+    
+    /**
+     * @return Folded notes of a contact, computed once and kept on the contact
+     */
+    public static String notes(Contact contact) {
+        String key = contact.getNotesKey();
+        if (key == null) {
+            key = fold(contact.getNotes());
+            contact.setNotesKey(key);
+        }
+        return key;
+    }
+    
+    /**
+     * Transliterations that are not canonical decompositions
+     */
+    private static String expand(String text) {
+        StringBuilder expanded = new StringBuilder(text.length() + 4);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                // German umlauts, also after decomposition (u + combining diaeresis)
+                case '\u00e4': expanded.append("ae"); break; // ä
+                case '\u00f6': expanded.append("oe"); break; // ö
+                case '\u00fc': expanded.append("ue"); break; // ü
+                case '\u00df': expanded.append("ss"); break; // ß
+                // Nordic and French ligatures
+                case '\u00e6': expanded.append("ae"); break; // æ
+                case '\u00f8': expanded.append("oe"); break; // ø
+                case '\u0153': expanded.append("oe"); break; // œ
+                case '\u00fe': expanded.append("th"); break; // þ
+                case '\u00f0': expanded.append('d'); break; // ð
+                // Letters with strokes have no decomposition
+                case '\u0142': expanded.append('l'); break; // ł
+                case '\u0111': expanded.append('d'); break; // đ
+                case '\u0127': expanded.append('h'); break; // ħ
+                case '\u0131': expanded.append('i'); break; // ı
+                default:
+                    if ((c == 'a' || c == 'o' || c == 'u') && i + 1 < text.length()
+                            && text.charAt(i + 1) == '\u0308') {
+                        // Decomposed umlaut
+                        expanded.append(c).append('e');
+                        i++;
+                    } else {
+                        expanded.append(c);
+                    }
+                    break;
+            }
+        }
+        return expanded.toString();
+    }
+    
+    /**
+     * Decomposes to NFD and drops the combining marks
+     */
+    private static String stripMarks(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder stripped = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                stripped.append(c);
+            }
+        }
+        return stripped.toString();
+    }
+    
+    /**
+     * @return Replacement for a punctuation character, 0 to drop it, or the character itself
+     */
+    private static char punctuation(char c) {
+        switch (c) {
+            // Apostrophes and the ayn/hamza of Arabic transliterations
+            case '\'':
+            case '\u2019': // ’
+            case '\u2018': // ‘
+            case '`':
+            case '\u02bc': // ʼ
+            case '\u02bf': // ʿ
+            case '\u02be': // ʾ
+                return 0;
+            // Hyphenated names match with or without the hyphen
+            case '-':
+            case '\u2010':
+            case '_':
+                return ' ';
+            default:
+                return c;
+        }
+    }
+}
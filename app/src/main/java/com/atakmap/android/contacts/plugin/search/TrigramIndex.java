@@ -0,0 +1,374 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory trigram index over the searchable fields of contacts.
+ *
+ * Every contact gets a dense slot number. For each trigram (three
+ * consecutive characters) of name, phone and notes a sorted posting list
+ * of slots is kept. A substring query is answered by intersecting the
+ * posting lists of its trigrams, smallest first, which yields a small
+ * candidate set that the caller verifies. Contacts are added and removed
+ * one at a time; slots of removed contacts are compacted once they make
+ * up half of the index.
+ *
+ * The words of name and notes are additionally indexed with boundary
+ * markers, so fuzzy queries can count shared trigrams per word (q-gram
+ * lemma) instead of requiring all of them.
+ */
+public class TrigramIndex {
+    
+    // Trigram length, queries shorter than this cannot use the index
+    public static final int GRAM_LENGTH = 3;
+    
+    // Markers around words for the boundary trigrams, never part of a query
+    static final char WORD_START = '\u0002';
+    static final char WORD_END = '\u0003';
+    
+    // Compact once at least this many slots are dead and they outnumber live ones
+    private static final int MIN_DEAD_SLOTS_FOR_COMPACTION = 1024;
+    
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private final Map<Long, Integer> slotsById = new HashMap<>();
+    private Contact[] slots = new Contact[64];
+    private int slotCount;
+    private int deadSlots;
+    
+    // Shared trigram counters per slot, reused between fuzzy lookups
+    private int[] sharedCounts = new int[0];
+    
+    /**
+     * Sorted, growable list of slot numbers
+     */
+    private static final class PostingList {
+        int[] slots = new int[4];
+        int size;
+        
+        void append(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+        
+        void remove(int slot) {
+            int index = Arrays.binarySearch(slots, 0, size, slot);
+            if (index >= 0) {
+                System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+    
+    /**
+     * Removes all contacts from the index
+     */
+    public void clear() {
+        postings.clear();
+        slotsById.clear();
+        slots = new Contact[64];
+        slotCount = 0;
+        deadSlots = 0;
+    }
+    
+    /**
+     * Adds a contact, replacing an indexed contact with the same id
+     */
+    public void add(Contact contact) {
+        remove(contact.getId());
+        
+        if (slotCount == slots.length) {
+            slots = Arrays.copyOf(slots, slotCount * 2);
+        }
+        int slot = slotCount++;
+        slots[slot] = contact;
+        slotsById.put(contact.getId(), slot);
+        
+        // Slots only grow, so appending keeps every posting list sorted
+        for (long gram : distinctGrams(contact)) {
+            PostingList list = postings.get(gram);
+            if (list == null) {
+                list = new PostingList();
+                postings.put(gram, list);
+            }
+            list.append(slot);
+        }
+    }
+    
+    /**
+     * Removes the contact with the given id
+     */
+    public void remove(long contactId) {
+        Integer slot = slotsById.remove(contactId);
+        if (slot == null) {
+            return;
+        }
+        Contact contact = slots[slot];
+        slots[slot] = null;
+        deadSlots++;
+        
+        for (long gram : distinctGrams(contact)) {
+            PostingList list = postings.get(gram);
+            if (list != null) {
+                list.remove(slot);
+                if (list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        }
+        
+        if (deadSlots >= MIN_DEAD_SLOTS_FOR_COMPACTION && deadSlots > slotsById.size()) {
+            compact();
+        }
+    }
+    
+    /**
+     * @return Number of indexed contacts
+     */
+    public int size() {
+        return slotsById.size();
+    }
+    
+    /**
+     * Returns the contacts that contain every trigram of the query. The
+     * candidates still have to be verified against the query.
+     * @param normalizedQuery Query normalized like the indexed fields
+     * @return Candidate contacts, or null if the query is too short for the index
+     */
+    public List<Contact> candidates(String normalizedQuery) {
+        if (normalizedQuery == null || normalizedQuery.length() < GRAM_LENGTH) {
+            return null;
+        }
+        
+        long[] grams = gramsOf(normalizedQuery);
+        PostingList[] lists = new PostingList[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postings.get(grams[i]);
+            if (lists[i] == null) {
+                return new ArrayList<>();
+            }
+        }
+        
+        // Intersect starting with the shortest list so the work is bounded by it
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] result = Arrays.copyOf(lists[0].slots, lists[0].size);
+        int resultSize = result.length;
+        for (int i = 1; i < lists.length && resultSize > 0; i++) {
+            resultSize = intersect(result, resultSize, lists[i]);
+        }
+        
+        List<Contact> candidates = new ArrayList<>(resultSize);
+        for (int i = 0; i < resultSize; i++) {
+            candidates.add(slots[result[i]]);
+        }
+        return candidates;
+    }
+    
+    /**
+     * Returns the contacts that share at least minShared of the given
+     * trigrams. Used as a pre-filter for fuzzy matching: a word within k
+     * edits of another shares all but at most 3k of its trigrams.
+     * @param grams Distinct trigrams, see {@link #wordGrams(String)}
+     * @param minShared Smallest number of shared trigrams, at least 1
+     * @return Candidate contacts in slot order
+     */
+    public List<Contact> candidatesSharing(long[] grams, int minShared) {
+        minShared = Math.max(1, minShared);
+        if (sharedCounts.length < slotCount) {
+            sharedCounts = new int[slots.length];
+        }
+        int[] counts = sharedCounts;
+        
+        // Count hits per slot, remember touched slots so only those are reset
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (long gram : grams) {
+            PostingList list = postings.get(gram);
+            if (list == null) {
+                continue;
+            }
+            for (int i = 0; i < list.size; i++) {
+                int slot = list.slots[i];
+                if (counts[slot]++ == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = slot;
+                }
+            }
+        }
+        
+        Arrays.sort(touched, 0, touchedCount);
+        List<Contact> candidates = new ArrayList<>();
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            if (counts[slot] >= minShared) {
+                candidates.add(slots[slot]);
+            }
+            counts[slot] = 0;
+        }
+        return candidates;
+    }
+    
+    /**
+     * Intersects the first size entries of result with a posting list in place
+     * @return New size of result
+     */
+    private static int intersect(int[] result, int size, PostingList list) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < list.size; i++) {
+            int slot = result[i];
+            // Skip ahead with a binary search, the other list is usually much longer
+            j = Arrays.binarySearch(list.slots, j, list.size, slot);
+            if (j >= 0) {
+                result[kept++] = slot;
+                j++;
+            } else {
+                j = -(j + 1);
+            }
+        }
+        return kept;
+    }
+    
+    /**
+     * Rebuilds the slot table without dead slots
+     */
+    private void compact() {
+        Contact[] live = new Contact[slotsById.size()];
+        int count = 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (slots[i] != null) {
+                live[count++] = slots[i];
+            }
+        }
+        clear();
+        for (int i = 0; i < count; i++) {
+            add(live[i]);
+        }
+    }
+    
+    // Fields from this index on are plain keys, see SearchKeys#plain(String)
+    static final int FIRST_PLAIN_FIELD = 4;
+    
+    /**
+     * @return The folded texts of a contact that are indexed and searched
+     */
+    static String[] searchableFields(Contact contact) {
+        String phone = SearchKeys.phone(contact);
+        String name = SearchKeys.name(contact);
+        String notes = SearchKeys.notes(contact);
+        return new String[] {
+                name,
+                phone,
+                // Digits only, so "4567" finds "123-456-7890"
+                digitsOnly(phone),
+                notes,
+                // Matched with the plain query, so "muller" finds "Müller" and "Mueller"
+                SearchKeys.plain(name),
+                SearchKeys.plain(notes)
+        };
+    }
+    
+    /**
+     * Splits a normalized text into words of letters and digits
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+    
+    /**
+     * @return Distinct trigrams of a word including its boundary markers
+     */
+    static long[] wordGrams(String word) {
+        return gramsOf(WORD_START + word + WORD_END);
+    }
+    
+    static String digitsOnly(String text) {
+        StringBuilder digits = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+    
+    /**
+     * @return Distinct trigrams over all searchable fields of a contact
+     */
+    private static long[] distinctGrams(Contact contact) {
+        String[] fields = searchableFields(contact);
+        List<String> texts = new ArrayList<>(Arrays.asList(fields));
+        // Boundary trigrams of the words in name and notes for fuzzy lookups
+        for (String word : words(fields[0])) {
+            texts.add(WORD_START + word + WORD_END);
+        }
+        for (String word : words(fields[3])) {
+            texts.add(WORD_START + word + WORD_END);
+        }
+        
+        long[] grams = new long[0];
+        int count = 0;
+        for (String text : texts) {
+            for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+                if (count == grams.length) {
+                    grams = Arrays.copyOf(grams, Math.max(16, count * 2));
+                }
+                grams[count++] = pack(text, i);
+            }
+        }
+        return dedupe(grams, count);
+    }
+    
+    /**
+     * @return Distinct trigrams of a single text
+     */
+    static long[] gramsOf(String text) {
+        int count = Math.max(0, text.length() - GRAM_LENGTH + 1);
+        long[] grams = new long[count];
+        for (int i = 0; i < count; i++) {
+            grams[i] = pack(text, i);
+        }
+        return dedupe(grams, count);
+    }
+    
+    private static long[] dedupe(long[] grams, int count) {
+        Arrays.sort(grams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || grams[distinct - 1] != grams[i]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+    
+    /**
+     * Packs three UTF-16 characters into one key
+     */
+    private static long pack(String text, int start) {
+        return ((long) text.charAt(start) << 32)
+                | ((long) text.charAt(start + 1) << 16)
+                | text.charAt(start + 2);
+    }
+}
@@ -1,8 +1,31 @@
 package com.atakmap.android.contacts.plugin;
 
 import com.atakmap.android.contacts.plugin.adapter.ContactAdapterTest;
+import com.atakmap.android.contacts.plugin.adapter.ContactSelectionTest;
+import com.atakmap.android.contacts.plugin.adapter.SectionIndexTest;
+import com.atakmap.android.contacts.plugin.cot.CotReplayTest;
+import com.atakmap.android.contacts.plugin.cot.CotXmlTest;
+import com.atakmap.android.contacts.plugin.cot.LivePositionIngestorTest;
+import com.atakmap.android.contacts.plugin.db.ContactChangeEventTest;
 import com.atakmap.android.contacts.plugin.db.DatabaseHelperTest;
+import com.atakmap.android.contacts.plugin.db.TrackRetentionTest;
+import com.atakmap.android.contacts.plugin.map.ClusterIndexTest;
+import com.atakmap.android.contacts.plugin.map.CorridorQueryTest;
+import com.atakmap.android.contacts.plugin.map.GazetteerTest;
+import com.atakmap.android.contacts.plugin.map.GeofenceEngineTest;
+import com.atakmap.android.contacts.plugin.map.NearestContactIndexTest;
+import com.atakmap.android.contacts.plugin.map.ReverseGeocoderTest;
+import com.atakmap.android.contacts.plugin.map.TrackSimplifierTest;
 import com.atakmap.android.contacts.plugin.model.ContactTest;
+import com.atakmap.android.contacts.plugin.model.ContactDistancesTest;
+import com.atakmap.android.contacts.plugin.model.CoordinateCacheTest;
+import com.atakmap.android.contacts.plugin.model.CoordinatesTest;
+import com.atakmap.android.contacts.plugin.model.SortKeysTest;
+import com.atakmap.android.contacts.plugin.search.ContactSearchEngineTest;
+import com.atakmap.android.contacts.plugin.search.FuzzyMatcherTest;
+import com.atakmap.android.contacts.plugin.search.MatchRangesTest;
+import com.atakmap.android.contacts.plugin.search.SearchKeysTest;
+import com.atakmap.android.contacts.plugin.search.TrigramIndexTest;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -15,7 +38,30 @@ import org.junit.runners.Suite;
     ContactTest.class,
     ContactAdapterTest.class,
     DatabaseHelperTest.class,
-    ContactsNativeLoaderTest.class
+    ContactsNativeLoaderTest.class,
+    ContactSearchEngineTest.class,
+    TrigramIndexTest.class,
+    FuzzyMatcherTest.class,
+    SearchKeysTest.class,
+    SortKeysTest.class,
+    SectionIndexTest.class,
+    MatchRangesTest.class,
+    ContactSelectionTest.class,
+    ContactChangeEventTest.class,
+    ClusterIndexTest.class,
+    NearestContactIndexTest.class,
+    ContactDistancesTest.class,
+    GeofenceEngineTest.class,
+    CorridorQueryTest.class,
+    TrackRetentionTest.class,
+    TrackSimplifierTest.class,
+    CotXmlTest.class,
+    LivePositionIngestorTest.class,
+    CotReplayTest.class,
+    GazetteerTest.class,
+    ReverseGeocoderTest.class,
+    CoordinatesTest.class,
+    CoordinateCacheTest.class
 })
 public class ContactsTestSuite {
     // This class remains empty, it is used only as a holder for the above annotations
@@ -13,6 +13,8 @@ import com.atakmap.android.contacts.plugin.model.Contact;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import androidx.recyclerview.widget.RecyclerView;
+
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
@@ -40,6 +42,9 @@ public class ContactAdapterTest {
     @Mock
     private TextView mockPhoneTextView;
     
+    @Mock
+    private RecyclerView.AdapterDataObserver mockObserver;
+    
     private ContactAdapter adapter;
     private List<Contact> contactList;
     
@@ -52,8 +57,8 @@ public class ContactAdapterTest {
         contactList.add(new Contact(1, "John Doe", "123-456-7890", "Test notes"));
         contactList.add(new Contact(2, "Jane Smith", "987-654-3210", "Another note"));
         
-        // Create adapter
-        adapter = new ContactAdapter(mockContext, contactList, mockListener);
+        // Create adapter, running list differences synchronously
+        adapter = new ContactAdapter(mockContext, contactList, mockListener, Runnable::run, Runnable::run);
         
         // Mock findViewById for ViewHolder
         when(mockItemView.findViewById(R.id.tv_contact_name)).thenReturn(mockNameTextView);
@@ -132,4 +137,149 @@ public class ContactAdapterTest {
             return true;
         }));
     }
-} 
\ No newline at end of file
+    
+    @Test
+    public void testClickListenerIsSetOnce() {
+        ContactAdapter.ViewHolder viewHolder = new ContactAdapter.ViewHolder(mockItemView);
+        
+        // Rebinding the row reuses the listener and only changes the bound contact
+        viewHolder.bind(contactList.get(0), mockListener);
+        viewHolder.bind(contactList.get(1), mockListener);
+        viewHolder.onClick(mockItemView);
+        
+        verify(mockItemView, times(1)).setOnClickListener(viewHolder);
+        verify(mockListener).onContactClick(contactList.get(1));
+        verify(mockListener, never()).onContactClick(contactList.get(0));
+    }
+    
+    @Test
+    public void testStableIds() {
+        assertTrue(adapter.hasStableIds());
+        
+        // Displayed sorted by name: Jane Smith, John Doe
+        assertEquals(2L, adapter.getItemId(0));
+        assertEquals(1L, adapter.getItemId(1));
+    }
+    
+    @Test
+    public void testEditSendsPartialPayload() {
+        adapter.registerAdapterDataObserver(mockObserver);
+        
+        // Same contacts, only the phone number of the second one changed
+        List<Contact> newContacts = new ArrayList<>();
+        newContacts.add(new Contact(1, "John Doe", "123-456-7890", "Test notes"));
+        newContacts.add(new Contact(2, "Jane Smith", "000-000-0000", "Another note"));
+        adapter.updateContacts(newContacts);
+        
+        // Exactly one row is rebound, with the phone payload
+        verify(mockObserver).onItemRangeChanged(0, 1, ContactAdapter.PAYLOAD_PHONE);
+        verify(mockObserver, never()).onChanged();
+        verify(mockObserver, never()).onItemRangeInserted(anyInt(), anyInt());
+        verify(mockObserver, never()).onItemRangeRemoved(anyInt(), anyInt());
+    }
+    
+    @Test
+    public void testFilterDispatchesRemovals() {
+        adapter.registerAdapterDataObserver(mockObserver);
+        
+        adapter.filter("John");
+        
+        // Jane is removed, John stays untouched
+        verify(mockObserver).onItemRangeRemoved(0, 1);
+        verify(mockObserver, never()).onChanged();
+    }
+    
+    @Test
+    public void testQueryChangeRebindsHighlights() {
+        adapter.registerAdapterDataObserver(mockObserver);
+        
+        adapter.filter("John");
+        
+        // The remaining row has to show the new match
+        verify(mockObserver).onItemRangeChanged(0, 1, ContactAdapter.PAYLOAD_HIGHLIGHT);
+        
+        // Same query again, nothing to rebuild
+        adapter.filter("John");
+        verify(mockObserver, times(1)).onItemRangeChanged(0, 1, ContactAdapter.PAYLOAD_HIGHLIGHT);
+    }
+    
+    @Test
+    public void testOutdatedDifferenceIsDropped() {
+        List<Runnable> pendingDiffs = new ArrayList<>();
+        ContactAdapter deferredAdapter = new ContactAdapter(mockContext, contactList, mockListener,
+                pendingDiffs::add, Runnable::run);
+        
+        deferredAdapter.filter("John");
+        deferredAdapter.filter("Jane");
+        assertEquals(2, pendingDiffs.size());
+        
+        // The newest result lands first, the older one must not overwrite it
+        pendingDiffs.get(1).run();
+        pendingDiffs.get(0).run();
+        assertEquals(1, deferredAdapter.getItemCount());
+        assertEquals("Jane Smith", deferredAdapter.getContacts().get(0).getName());
+    }
+    
+    @Test
+    public void testInsertContactNotifiesSingleRow() {
+        adapter.registerAdapterDataObserver(mockObserver);
+        
+        // Sorted by name: Jane Smith, John Doe -> Jim goes in between
+        adapter.insertContact(new Contact(3, "Jim Beam", "555-000-1111", ""));
+        
+        verify(mockObserver).onItemRangeInserted(1, 1);
+        assertEquals(3, adapter.getItemCount());
+        assertEquals("Jim Beam", adapter.getContacts().get(1).getName());
+    }
+    
+    @Test
+    public void testReplaceContactMovesRenamedRow() {
+        adapter.registerAdapterDataObserver(mockObserver);
+        
+        // Renaming Jane Smith (position 0) to Zoe Smith moves her to the end
+        adapter.replaceContact(new Contact(2, "Zoe Smith", "987-654-3210", "Another note"));
+        
+        verify(mockObserver).onItemRangeMoved(0, 1, 1);
+        verify(mockObserver).onItemRangeChanged(1, 1, ContactAdapter.PAYLOAD_NAME);
+        assertEquals("Zoe Smith", adapter.getContacts().get(1).getName());
+    }
+    
+    @Test
+    public void testReplaceContactHiddenByFilter() {
+        adapter.filter("John");
+        adapter.registerAdapterDataObserver(mockObserver);
+        
+        // The renamed contact no longer matches the active search
+        adapter.replaceContact(new Contact(1, "Jack Doe", "123-456-7890", "Test notes"));
+        
+        verify(mockObserver).onItemRangeRemoved(0, 1);
+        assertEquals(0, adapter.getItemCount());
+    }
+    
+    @Test
+    public void testNotesEditRebindsRow() {
+        adapter.registerAdapterDataObserver(mockObserver);
+        
+        // Only the notes of John Doe (position 1) changed
+        adapter.replaceContact(new Contact(1, "John Doe", "123-456-7890", "Changed notes"));
+        verify(mockObserver).onItemRangeChanged(1, 1, ContactAdapter.PAYLOAD_NOTES);
+        assertEquals("Changed notes", adapter.getContacts().get(1).getNotes());
+        
+        // The same through a difference of the whole list
+        List<Contact> newContacts = new ArrayList<>();
+        newContacts.add(new Contact(1, "John Doe", "123-456-7890", "Changed notes"));
+        newContacts.add(new Contact(2, "Jane Smith", "987-654-3210", "Changed as well"));
+        adapter.updateContacts(newContacts);
+        verify(mockObserver).onItemRangeChanged(0, 1, ContactAdapter.PAYLOAD_NOTES);
+    }
+    
+    @Test
+    public void testRemoveContactNotifiesSingleRow() {
+        adapter.registerAdapterDataObserver(mockObserver);
+        
+        adapter.removeContact(1);
+        
+        verify(mockObserver).onItemRangeRemoved(1, 1);
+        assertEquals(1, adapter.getItemCount());
+    }
+}
\ No newline at end of file
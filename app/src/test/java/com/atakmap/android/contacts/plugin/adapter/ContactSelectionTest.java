@@ -0,0 +1,63 @@
+package com.atakmap.android.contacts.plugin.adapter;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ContactSelectionTest {
+    
+    private ContactSelection selection;
+    
+    @Before
+    public void setUp() {
+        selection = new ContactSelection();
+    }
+    
+    @Test
+    public void testToggle() {
+        assertTrue(selection.toggle(5));
+        assertTrue(selection.isSelected(5));
+        assertFalse(selection.isSelected(4));
+        
+        assertFalse(selection.toggle(5));
+        assertFalse(selection.isSelected(5));
+        assertTrue(selection.isEmpty());
+    }
+    
+    @Test
+    public void testSelectAllAndContainsAll() {
+        List<Contact> contacts = Arrays.asList(
+                new Contact(1, "Anna", "", ""),
+                new Contact(3, "Bert", "", ""),
+                new Contact(70, "Carl", "", ""));
+        
+        selection.select(3);
+        assertFalse(selection.containsAll(contacts));
+        
+        selection.selectAll(contacts);
+        assertTrue(selection.containsAll(contacts));
+        assertEquals(3, selection.size());
+        assertArrayEquals(new long[] { 1, 3, 70 }, selection.toIds());
+        
+        selection.deselect(3);
+        assertArrayEquals(new long[] { 1, 70 }, selection.toIds());
+        
+        selection.clear();
+        assertEquals(0, selection.size());
+        assertEquals(0, selection.toIds().length);
+    }
+    
+    @Test
+    public void testIdsOutsideTheIntRangeAreIgnored() {
+        assertFalse(selection.toggle(-1));
+        selection.select(Long.MAX_VALUE);
+        assertFalse(selection.isSelected(Long.MAX_VALUE));
+        assertTrue(selection.isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package com.atakmap.android.contacts.plugin.adapter;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+import com.atakmap.android.contacts.plugin.model.ContactOrder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class SectionIndexTest {
+    
+    private static List<Contact> contacts(String... names) {
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            contacts.add(new Contact(i + 1, names[i], "", ""));
+        }
+        Collections.sort(contacts, ContactOrder.BY_NAME);
+        return contacts;
+    }
+    
+    @Test
+    public void testSectionOf() {
+        assertEquals('M', SectionIndex.sectionOf(new Contact(1, "Müller", "", "")));
+        assertEquals('A', SectionIndex.sectionOf(new Contact(1, "'Abd", "", "")));
+        assertEquals(SectionIndex.OTHER, SectionIndex.sectionOf(new Contact(1, "42nd Unit", "", "")));
+        assertEquals(SectionIndex.OTHER, SectionIndex.sectionOf(new Contact(1, "", "", "")));
+    }
+    
+    @Test
+    public void testPositionForLetter() {
+        SectionIndex index = new SectionIndex();
+        index.rebuild(contacts("Anna", "Anton", "Bernd", "Dora", "Dieter", "Zoe"));
+        
+        assertEquals(0, index.getPositionForLetter('A'));
+        assertEquals(2, index.getPositionForLetter('B'));
+        // No C, jumps to D
+        assertEquals(3, index.getPositionForLetter('C'));
+        assertEquals(5, index.getPositionForLetter('z'));
+        // No # at the top, jumps to the first row
+        assertEquals(0, index.getPositionForLetter('#'));
+        assertEquals(4, index.getSectionCount());
+        
+        index.rebuild(new ArrayList<>());
+        assertEquals(-1, index.getPositionForLetter('A'));
+    }
+    
+    @Test
+    public void testIncrementalChangesMatchRebuild() {
+        Random random = new Random(7);
+        List<Contact> displayed = new ArrayList<>();
+        SectionIndex index = new SectionIndex();
+        index.rebuild(displayed);
+        
+        for (int step = 0; step < 2000; step++) {
+            if (displayed.isEmpty() || random.nextInt(3) > 0) {
+                String name = (char) ('A' + random.nextInt(26)) + "name" + random.nextInt(1000);
+                Contact contact = new Contact(step, name, "", "");
+                int position = ContactOrder.insert(displayed, contact);
+                index.insert(position, SectionIndex.sectionOf(contact));
+            } else {
+                int position = random.nextInt(displayed.size());
+                displayed.remove(position);
+                index.remove(position);
+            }
+            
+            SectionIndex expected = new SectionIndex();
+            expected.rebuild(displayed);
+            assertEquals(expected.getSectionCount(), index.getSectionCount());
+            for (int i = 0; i < SectionIndex.LETTERS.length(); i++) {
+                char letter = SectionIndex.LETTERS.charAt(i);
+                assertEquals(expected.getPositionForLetter(letter), index.getPositionForLetter(letter));
+            }
+        }
+    }
+    
+    @Test
+    public void testInsertSplitsAndRemoveMerges() {
+        SectionIndex index = new SectionIndex();
+        index.rebuild(contacts("Anna", "Anton", "Arne"));
+        
+        // A row of another letter in the middle of a run
+        index.insert(1, 'X');
+        assertEquals(3, index.getSectionCount());
+        assertEquals('A', index.getSectionAt(0));
+        assertEquals('X', index.getSectionAt(1));
+        assertEquals('A', index.getSectionAt(2));
+        
+        index.remove(1);
+        assertEquals(1, index.getSectionCount());
+        assertEquals(0, index.getPositionForLetter('A'));
+    }
+}
@@ -0,0 +1,111 @@
+package com.atakmap.android.contacts.plugin.cot;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replays a recorded CoT feed through parsing and ingestion to measure
+ * the sustained rate. Another recording can be replayed with
+ * -Dcot.replay=/path/to/feed.xml, a file of CoT events one after the other.
+ */
+public class CotReplayTest {
+    
+    // Events replayed in total, the recording is repeated with shifted times
+    private static final int EVENTS = 200000;
+    // Simulated time between two flushes. The recorded units report about every
+    // ten seconds, so in windows of this length several reports of a unit coalesce
+    private static final long FLUSH_MS = 10 * LivePositionIngestor.FLUSH_INTERVAL_MS;
+    
+    @Test
+    public void testSustainedThroughput() throws IOException {
+        List<String> recording = CotXml.splitEvents(readRecording());
+        assertFalse(recording.isEmpty());
+        
+        // Every unit of the recording is followed by a contact, half by uid and half by callsign
+        Map<String, String> units = new LinkedHashMap<>();
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (String event : recording) {
+            CotXml.Report report = CotXml.parse(event);
+            assertNotNull(report);
+            units.put(report.uid, report.callsign);
+            first = Math.min(first, report.time);
+            last = Math.max(last, report.time);
+        }
+        LivePositionIngestor ingestor = new LivePositionIngestor();
+        long contactId = 0;
+        for (Map.Entry<String, String> unit : units.entrySet()) {
+            boolean byUid = contactId % 2 == 0 || unit.getValue() == null;
+            ingestor.link(contactId++, byUid ? unit.getKey() : unit.getValue());
+        }
+        long span = last - first + FLUSH_MS;
+        
+        int written = 0;
+        int expected = 0;
+        // Units with an accepted report since the last flush
+        Set<String> reported = new HashSet<>();
+        long nextFlush = first + FLUSH_MS;
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENTS; i++) {
+            int pass = i / recording.size();
+            CotXml.Report report = CotXml.parse(recording.get(i % recording.size()));
+            long time = report.time + pass * span;
+            if (time >= nextFlush) {
+                // One write per unit that reported in the window, however often it did
+                Map<Long, LivePositionIngestor.Fix> fixes = ingestor.drain();
+                assertEquals(reported.size(), fixes.size());
+                written += fixes.size();
+                expected += reported.size();
+                reported.clear();
+                nextFlush = time - (time - first) % FLUSH_MS + FLUSH_MS;
+            }
+            if (ingestor.offer(report.uid, report.callsign, report.latitude, report.longitude, time)) {
+                reported.add(report.uid);
+            }
+        }
+        written += ingestor.drain().size();
+        expected += reported.size();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        assertEquals(EVENTS, ingestor.getReportCount());
+        assertEquals(EVENTS, ingestor.getMatchedCount());
+        assertEquals(expected, written);
+        // The recording has 40 units and four reports a second, so a window
+        // of 40 reports holds between 20 and 30 of them
+        assertTrue("Only " + (EVENTS - written) + " of " + EVENTS + " reports coalesced",
+                written < EVENTS * 3 / 4);
+        // Far above several reports per second from hundreds of contacts
+        double rate = EVENTS / seconds;
+        assertTrue("Only " + Math.round(rate) + " events/s", rate > 10000);
+    }
+    
+    private String readRecording() throws IOException {
+        String path = System.getProperty("cot.replay");
+        InputStream in = path != null ? new FileInputStream(path)
+                : getClass().getResourceAsStream("/cot/recorded_feed.xml");
+        assertNotNull("Recording not found", in);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.atakmap.android.contacts.plugin.cot;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class CotXmlTest {
+    
+    private static final String EVENT = "<?xml version='1.0' encoding='UTF-8' standalone='yes'?>"
+            + "<event version='2.0' uid='ANDROID-1234' type='a-f-G-U-C' time='2024-05-01T12:30:15.250Z'"
+            + " start='2024-05-01T12:30:15.250Z' stale='2024-05-01T12:32:15.250Z' how='m-g'>"
+            + "<point lat='48.1374' lon='-11.5755' hae='520.3' ce='9.9' le='9999999.0'/>"
+            + "<detail><contact endpoint='*:-1:stcp' callsign='Alpha &amp; Omega'/></detail></event>";
+    
+    @Test
+    public void testParseEvent() {
+        CotXml.Report report = CotXml.parse(EVENT);
+        assertNotNull(report);
+        assertEquals("ANDROID-1234", report.uid);
+        assertEquals("Alpha & Omega", report.callsign);
+        assertEquals(48.1374, report.latitude, 0.0);
+        assertEquals(-11.5755, report.longitude, 0.0);
+        // 2024-05-01T12:30:15.250Z
+        assertEquals(1714566615250L, report.time);
+    }
+    
+    @Test
+    public void testEventsWithoutPositionAreSkipped() {
+        assertNull(CotXml.parse("<event uid='x' type='t-x-c-t'><detail/></event>"));
+        assertNull(CotXml.parse("<event uid='x'><point lat='91.0' lon='0'/></event>"));
+        assertNull(CotXml.parse("<event uid='x'><point lat='abc' lon='0'/></event>"));
+        assertNull(CotXml.parse("<event type='a-f-G'><point lat='1' lon='2'/></event>"));
+        
+        // No contact detail and no time
+        CotXml.Report report = CotXml.parse("<event uid=\"u\"><point lat=\"1\" lon=\"2\"/></event>");
+        assertNotNull(report);
+        assertNull(report.callsign);
+        assertEquals(0, report.time);
+    }
+    
+    @Test
+    public void testAttributeNamesMustMatchWholly() {
+        String tag = "<point xlat='5' lat = \"6\" lon='7'/>";
+        assertEquals("6", CotXml.attribute(tag, 0, tag.length(), "lat"));
+        assertNull(CotXml.attribute(tag, 0, tag.length(), "hae"));
+    }
+    
+    @Test
+    public void testParseTime() {
+        assertEquals(0, CotXml.parseTime("1970-01-01T00:00:00Z"));
+        assertEquals(951782400000L, CotXml.parseTime("2000-02-29T00:00:00Z"));
+        assertEquals(951782400120L, CotXml.parseTime("2000-02-29T00:00:00.12Z"));
+        assertEquals(0, CotXml.parseTime("yesterday"));
+    }
+    
+    @Test
+    public void testSplitRecording() {
+        String recording = EVENT + "\n" + "<event uid='b' time='2024-05-01T12:30:16Z'/>\n" + EVENT + "\n<event uid='c'";
+        List<String> events = CotXml.splitEvents(recording);
+        // The cut off event at the end is left out
+        assertEquals(3, events.size());
+        assertTrue(events.get(0).startsWith("<event version"));
+        assertTrue(events.get(0).endsWith("</event>"));
+        assertEquals("<event uid='b' time='2024-05-01T12:30:16Z'/>", events.get(1));
+    }
+}
@@ -0,0 +1,76 @@
+package com.atakmap.android.contacts.plugin.cot;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class LivePositionIngestorTest {
+    
+    private LivePositionIngestor ingestor;
+    
+    @Before
+    public void setUp() {
+        ingestor = new LivePositionIngestor();
+    }
+    
+    @Test
+    public void testMatchByUidOrCallsign() {
+        ingestor.link(1, "ANDROID-1234");
+        ingestor.link(2, "Bravo 2");
+        
+        assertTrue(ingestor.offer("ANDROID-1234", "Whatever", 48.0, 11.0, 1000));
+        // Callsigns ignore case and surrounding spaces, uids do not
+        assertTrue(ingestor.offer("ANDROID-9999", " bravo 2", 49.0, 12.0, 1000));
+        assertFalse(ingestor.offer("android-1234", null, 50.0, 13.0, 1000));
+        assertFalse(ingestor.offer("ANDROID-5555", "Charlie", 50.0, 13.0, 1000));
+        
+        Map<Long, LivePositionIngestor.Fix> fixes = ingestor.drain();
+        assertEquals(2, fixes.size());
+        assertEquals(48.0, fixes.get(1L).latitude, 0.0);
+        assertEquals(12.0, fixes.get(2L).longitude, 0.0);
+        assertEquals(4, ingestor.getReportCount());
+        assertEquals(2, ingestor.getMatchedCount());
+        assertTrue(ingestor.drain().isEmpty());
+    }
+    
+    @Test
+    public void testOnlyLatestPositionIsKept() {
+        ingestor.link(1, "Alpha");
+        for (int i = 0; i < 100; i++) {
+            ingestor.offer("uid", "Alpha", 48.0 + i * 0.001, 11.0, 1000 + i);
+        }
+        // A late report of an older position is ignored
+        assertFalse(ingestor.offer("uid", "Alpha", 47.0, 11.0, 1050));
+        
+        Map<Long, LivePositionIngestor.Fix> fixes = ingestor.drain();
+        assertEquals(1, fixes.size());
+        assertEquals(48.099, fixes.get(1L).latitude, 1e-9);
+        assertEquals(1099, fixes.get(1L).time);
+    }
+    
+    @Test
+    public void testUnlinkDropsPendingPosition() {
+        ingestor.link(1, "Alpha");
+        ingestor.offer("uid", "Alpha", 48.0, 11.0, 1000);
+        ingestor.link(1, " ");
+        assertEquals(0, ingestor.size());
+        assertTrue(ingestor.drain().isEmpty());
+        assertFalse(ingestor.offer("uid", "Alpha", 48.0, 11.0, 2000));
+    }
+    
+    @Test
+    public void testSaveAndRestoreLinks() {
+        ingestor.link(12, "ANDROID-1234");
+        ingestor.link(40, "Team: Alpha");
+        
+        LivePositionIngestor restored = new LivePositionIngestor();
+        restored.restoreLinks(ingestor.saveLinks() + "\nbad\n7:");
+        assertEquals(2, restored.size());
+        assertEquals("ANDROID-1234", restored.getLink(12));
+        assertEquals("Team: Alpha", restored.getLink(40));
+        assertNull(restored.getLink(7));
+    }
+}
@@ -0,0 +1,132 @@
+package com.atakmap.android.contacts.plugin.db;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import org.junit.Test;
+
+public class ContactChangeEventTest {
+    
+    @Test
+    public void testChangesAreGroupedByType() {
+        Contact anna = new Contact(1, "Anna", "", "");
+        Contact bert = new Contact(2, "Bert", "", "");
+        
+        ContactChangeEvent event = new ContactChangeEvent.Builder()
+                .inserted(anna)
+                .updated(2, bert)
+                .updated(3, null)
+                .deleted(4)
+                .build();
+        
+        assertArrayEquals(new long[] { 1 }, event.getInserted());
+        assertArrayEquals(new long[] { 2, 3 }, event.getUpdated());
+        assertArrayEquals(new long[] { 4 }, event.getDeleted());
+        assertSame(anna, event.getContact(1));
+        assertSame(bert, event.getContact(2));
+        assertNull(event.getContact(3));
+        assertFalse(event.isEmpty());
+    }
+    
+    @Test
+    public void testWritesToOneContactAreMerged() {
+        Contact inserted = new Contact(1, "Anna", "", "");
+        Contact updated = new Contact(1, "Anna Berg", "", "");
+        
+        // Insert and update is one insert with the latest state
+        ContactChangeEvent event = new ContactChangeEvent.Builder()
+                .inserted(inserted)
+                .updated(1, updated)
+                .build();
+        assertArrayEquals(new long[] { 1 }, event.getInserted());
+        assertEquals(0, event.getUpdated().length);
+        assertSame(updated, event.getContact(1));
+        
+        // An update that only knows the id drops the outdated state
+        event = new ContactChangeEvent.Builder()
+                .updated(1, inserted)
+                .updated(1, null)
+                .build();
+        assertNull(event.getContact(1));
+        
+        // Update and delete is a delete
+        event = new ContactChangeEvent.Builder()
+                .updated(1, updated)
+                .deleted(1)
+                .build();
+        assertEquals(0, event.getUpdated().length);
+        assertArrayEquals(new long[] { 1 }, event.getDeleted());
+        assertNull(event.getContact(1));
+    }
+    
+    @Test
+    public void testMovesCarryOnlyThePosition() {
+        Contact edited = new Contact(1, "Anna Berg", "", "");
+        edited.setLocation(48.0, 11.0);
+        
+        // A move alone is an update with a position and no contact
+        ContactChangeEvent event = new ContactChangeEvent.Builder()
+                .moved(1, 48.1, 11.1)
+                .moved(1, 48.2, 11.2)
+                .build();
+        assertArrayEquals(new long[] { 1 }, event.getUpdated());
+        assertNull(event.getContact(1));
+        assertArrayEquals(new double[] { 48.2, 11.2 }, event.getPosition(1), 0);
+        
+        // An edit written after the move replaces it
+        event = new ContactChangeEvent.Builder()
+                .moved(1, 48.1, 11.1)
+                .updated(1, edited)
+                .build();
+        assertSame(edited, event.getContact(1));
+        assertNull(event.getPosition(1));
+        
+        // A move written after the edit keeps the edited fields
+        event = new ContactChangeEvent.Builder()
+                .updated(1, edited)
+                .moved(1, 48.1, 11.1)
+                .build();
+        assertEquals("Anna Berg", event.getContact(1).getName());
+        assertEquals(48.1, event.getContact(1).getLatitude(), 0);
+        assertEquals(48.0, edited.getLatitude(), 0);
+        
+        // A deleted contact does not move
+        event = new ContactChangeEvent.Builder()
+                .deleted(1)
+                .moved(1, 48.1, 11.1)
+                .build();
+        assertEquals(0, event.getUpdated().length);
+        assertNull(event.getPosition(1));
+    }
+    
+    @Test
+    public void testInsertedAndDeletedContactIsDropped() {
+        ContactChangeEvent.Builder builder = new ContactChangeEvent.Builder()
+                .inserted(new Contact(1, "Anna", "", ""))
+                .deleted(1);
+        
+        assertTrue(builder.isEmpty());
+        assertTrue(builder.build().isEmpty());
+    }
+    
+    @Test
+    public void testReusedIdIsAnUpdate() {
+        ContactChangeEvent event = new ContactChangeEvent.Builder()
+                .deleted(1)
+                .inserted(new Contact(1, "Anna", "", ""))
+                .build();
+        
+        assertEquals(0, event.getInserted().length);
+        assertEquals(0, event.getDeleted().length);
+        assertArrayEquals(new long[] { 1 }, event.getUpdated());
+    }
+    
+    @Test
+    public void testReload() {
+        ContactChangeEvent event = new ContactChangeEvent.Builder().reload().build();
+        
+        assertTrue(event.isReload());
+        assertFalse(event.isEmpty());
+    }
+}
@@ -172,6 +172,24 @@ public class DatabaseHelperTest {
         assertEquals(1, result);
     }
     
+    @Test
+    public void testDeleteContactsInOneTransaction() {
+        long[] ids = new long[1200];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        when(mockDatabase.delete(anyString(), anyString(), any())).thenReturn(500, 500, 200);
+        
+        int result = databaseHelper.deleteContacts(ids);
+        
+        // Three chunks below the bound parameter limit, committed together
+        verify(mockDatabase, times(1)).beginTransaction();
+        verify(mockDatabase, times(3)).delete(eq(DatabaseHelper.TABLE_CONTACTS), startsWith(DatabaseHelper.KEY_ID + " IN ("), any());
+        verify(mockDatabase).setTransactionSuccessful();
+        verify(mockDatabase).endTransaction();
+        assertEquals(1200, result);
+    }
+    
     @Test
     public void testGetAllContacts() {
         // Mock cursor for query
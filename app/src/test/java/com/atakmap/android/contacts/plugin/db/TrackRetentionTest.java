@@ -0,0 +1,80 @@
+package com.atakmap.android.contacts.plugin.db;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TrackRetentionTest {
+    
+    private static final long SECOND = 1000L;
+    // On an interval boundary, so the counts below are exact
+    private static final long NOW = TrackRetention.windowStart(1_700_000_000_000L);
+    
+    @Test
+    public void testIntervalsByAge() {
+        assertEquals(0, TrackRetention.interval(0));
+        assertEquals(0, TrackRetention.interval(TrackRetention.RAW_AGE - 1));
+        assertEquals(TrackRetention.MINUTE, TrackRetention.interval(TrackRetention.RAW_AGE));
+        assertEquals(TrackRetention.MAX_INTERVAL, TrackRetention.interval(TrackRetention.MINUTE_AGE));
+        assertEquals(-1, TrackRetention.interval(TrackRetention.MAX_AGE));
+    }
+    
+    @Test
+    public void testThinKeepsFirstFixPerInterval() {
+        // A fix every 10 seconds for two days
+        int count = (int) (2 * TrackRetention.DAY / (10 * SECOND));
+        long start = TrackRetention.windowStart(NOW - 2 * TrackRetention.DAY);
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = start + i * 10 * SECOND;
+        }
+        boolean[] drop = TrackRetention.thin(times, count, NOW);
+        
+        int raw = 0;
+        int older = 0;
+        for (int i = 0; i < count; i++) {
+            if (!drop[i]) {
+                if (NOW - times[i] < TrackRetention.RAW_AGE) {
+                    raw++;
+                } else {
+                    older++;
+                }
+            } else {
+                assertTrue(NOW - times[i] >= TrackRetention.RAW_AGE);
+            }
+        }
+        // The last day is kept in full, the day before one fix per minute
+        assertEquals(8640, raw, 1);
+        assertEquals(1440, older, 1);
+    }
+    
+    @Test
+    public void testThinningAgainDropsNothing() {
+        long start = TrackRetention.windowStart(NOW - 30 * TrackRetention.DAY);
+        int count = 10000;
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = start + i * 7 * 60 * SECOND;
+        }
+        boolean[] drop = TrackRetention.thin(times, count, NOW);
+        long[] kept = new long[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (!drop[i]) {
+                kept[size++] = times[i];
+            }
+        }
+        assertTrue(size < count);
+        for (boolean dropped : TrackRetention.thin(kept, size, NOW)) {
+            assertFalse(dropped);
+        }
+    }
+    
+    @Test
+    public void testFixesBeyondAYearAreDropped() {
+        long[] times = { NOW - TrackRetention.MAX_AGE - 1, NOW - TrackRetention.MAX_AGE + TrackRetention.DAY };
+        boolean[] drop = TrackRetention.thin(times, 2, NOW);
+        assertTrue(drop[0]);
+        assertFalse(drop[1]);
+    }
+}
@@ -0,0 +1,151 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ClusterIndexTest {
+    
+    private ClusterIndex index;
+    
+    @Before
+    public void setUp() {
+        index = new ClusterIndex();
+    }
+    
+    @Test
+    public void testNearbyContactsClusterAtLowZoom() {
+        index.put(1, 48.137, 11.575);
+        index.put(2, 48.139, 11.577);
+        index.put(3, 52.520, 13.405);
+        
+        // Continent scale: everything in one cell
+        List<ClusterIndex.Cluster> clusters = index.clusters(2);
+        assertEquals(1, clusters.size());
+        assertEquals(3, clusters.get(0).count);
+        assertEquals(-1, clusters.get(0).contactId);
+        assertEquals((48.137 + 48.139 + 52.520) / 3, clusters.get(0).latitude, 1e-9);
+        
+        // City scale: the two close contacts stay together
+        clusters = index.clusters(8);
+        assertEquals(2, clusters.size());
+        for (ClusterIndex.Cluster cluster : clusters) {
+            if (cluster.count == 1) {
+                assertEquals(3, cluster.contactId);
+                assertEquals(52.520, cluster.latitude, 0.0);
+            } else {
+                assertEquals(2, cluster.count);
+            }
+        }
+        
+        // Beyond the finest level every contact is on its own
+        assertEquals(3, index.clusters(ClusterIndex.MAX_LEVEL + 1).size());
+    }
+    
+    @Test
+    public void testMoveAndRemoveUpdateAllLevels() {
+        index.put(1, 48.137, 11.575);
+        index.put(2, 48.139, 11.577);
+        
+        // Moving one contact away splits the cluster
+        index.put(2, 52.520, 13.405);
+        assertEquals(2, index.clusters(8).size());
+        
+        index.remove(1);
+        List<ClusterIndex.Cluster> clusters = index.clusters(0);
+        assertEquals(1, clusters.size());
+        assertEquals(1, clusters.get(0).count);
+        assertEquals(2, clusters.get(0).contactId);
+        assertEquals(1, index.size());
+        
+        index.remove(2);
+        assertTrue(index.clusters(0).isEmpty());
+        assertTrue(index.clusters(ClusterIndex.MAX_LEVEL).isEmpty());
+    }
+    
+    @Test
+    public void testClustersInArea() {
+        index.put(1, 48.137, 11.575);
+        index.put(2, 48.138, 11.576);
+        index.put(3, 52.520, 13.405);
+        
+        // Munich only
+        List<ClusterIndex.Cluster> clusters = index.clusters(ClusterIndex.MAX_LEVEL + 1, 48.0, 11.0, 48.5, 12.0);
+        assertEquals(2, clusters.size());
+        for (ClusterIndex.Cluster cluster : clusters) {
+            assertEquals(1, cluster.count);
+            assertTrue(cluster.contactId == 1 || cluster.contactId == 2);
+        }
+        
+        // Clustered at city scale
+        clusters = index.clusters(8, 48.0, 11.0, 48.5, 12.0);
+        assertEquals(1, clusters.size());
+        assertEquals(2, clusters.get(0).count);
+        
+        // Nothing in the ocean
+        assertTrue(index.clusters(8, -10.0, -30.0, 10.0, -20.0).isEmpty());
+    }
+    
+    @Test
+    public void testAreaAcrossTheAntimeridian() {
+        index.put(1, -17.7, 178.0);
+        index.put(2, -14.3, -170.7);
+        index.put(3, 48.1, 11.5);
+        
+        // West edge below -180 and east edge above 180 describe the same area
+        assertEquals(2, index.clusters(ClusterIndex.MAX_LEVEL + 1, -20.0, 175.0, -10.0, 190.0).size());
+        assertEquals(2, index.clusters(ClusterIndex.MAX_LEVEL + 1, -20.0, -185.0, -10.0, -170.0).size());
+    }
+    
+    @Test
+    public void testLevelForResolution() {
+        // 64 pixels of 0.1 m are finer than the cells of the last level
+        assertEquals(ClusterIndex.MAX_LEVEL + 1, ClusterIndex.levelFor(0.1, 64));
+        assertEquals(0, ClusterIndex.levelFor(1e6, 64));
+        int city = ClusterIndex.levelFor(20, 64);
+        int country = ClusterIndex.levelFor(2000, 64);
+        assertTrue(country < city);
+        assertEquals(ClusterIndex.MAX_LEVEL + 1, ClusterIndex.levelFor(0, 64));
+    }
+    
+    @Test
+    public void testDensityCellsFollowChanges() {
+        index.put(1, 48.137, 11.575);
+        index.put(2, 48.139, 11.577);
+        index.put(3, 48.139, 11.577);
+        
+        List<ClusterIndex.Cluster> cells = index.clusters(12, 48.0, 11.0, 48.5, 12.0);
+        assertEquals(1, cells.size());
+        assertEquals(3, cells.get(0).count);
+        double[] bounds = ClusterIndex.cellBounds(12, cells.get(0).key);
+        assertTrue(bounds[0] <= 48.137 && 48.139 < bounds[2]);
+        assertTrue(bounds[1] <= 11.575 && 11.577 < bounds[3]);
+        assertEquals(360.0 / 4096, bounds[3] - bounds[1], 1e-12);
+        
+        // Moving a contact out of the cell leaves the others counted
+        index.put(3, 48.4, 11.9);
+        cells = index.clusters(12, 48.0, 11.0, 48.5, 12.0);
+        assertEquals(2, cells.size());
+        for (ClusterIndex.Cluster cell : cells) {
+            bounds = ClusterIndex.cellBounds(12, cell.key);
+            assertEquals(cell.count == 1 ? 48.4 : 48.138, (bounds[0] + bounds[2]) / 2, 0.05);
+        }
+        
+        index.remove(1);
+        index.remove(2);
+        assertEquals(1, index.clusters(12, 48.0, 11.0, 48.5, 12.0).size());
+    }
+    
+    @Test
+    public void testCellBoundsStayOnTheGlobe() {
+        // The single cell of level 0 is taller than the globe
+        assertArrayEquals(new double[] { -90.0, -180.0, 90.0, 180.0 },
+                ClusterIndex.cellBounds(0, ClusterIndex.cellKey(0, 10.0, 20.0)), 0.0);
+        double[] bounds = ClusterIndex.cellBounds(3, ClusterIndex.cellKey(3, -89.0, 179.0));
+        assertEquals(-90.0, bounds[0], 0.0);
+        assertEquals(180.0, bounds[3], 0.0);
+    }
+}
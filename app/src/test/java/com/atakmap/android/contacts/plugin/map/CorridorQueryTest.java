@@ -0,0 +1,129 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class CorridorQueryTest {
+    
+    private NearestContactIndex index;
+    
+    @Before
+    public void setUp() {
+        index = new NearestContactIndex();
+    }
+    
+    @Test
+    public void testOrderedAlongTheRoute() {
+        // Route east along the equator, then north
+        double[] latitudes = { 0, 0, 1 };
+        double[] longitudes = { 0, 1, 1 };
+        index.put(1, 0.005, 0.9);   // Near the first leg, late
+        index.put(2, -0.005, 0.1);  // Near the first leg, early
+        index.put(3, 0.5, 1.004);   // Near the second leg
+        index.put(4, 0.5, 0.5);     // Far from both
+        
+        List<CorridorQuery.Hit> hits = CorridorQuery.query(index, latitudes, longitudes, 1000);
+        assertEquals(3, hits.size());
+        assertEquals(2, hits.get(0).contactId);
+        assertEquals(1, hits.get(1).contactId);
+        assertEquals(3, hits.get(2).contactId);
+        
+        // About 556 m north of the equator, 11.1 km along
+        assertEquals(556, hits.get(0).metersFromRoute, 5);
+        assertEquals(11119, hits.get(0).metersAlongRoute, 20);
+        // One degree of the first leg plus half a degree of the second
+        assertEquals(111195 * 1.5, hits.get(2).metersAlongRoute, 200);
+    }
+    
+    @Test
+    public void testEndsAndAntimeridian() {
+        index.put(1, 10.0, 179.999);
+        index.put(2, 10.0, -179.999);
+        index.put(3, 10.0, -179.98);
+        
+        // Short route across the antimeridian
+        List<CorridorQuery.Hit> hits = CorridorQuery.query(index,
+                new double[] { 10.0, 10.0 }, new double[] { 179.995, -179.995 }, 500);
+        assertEquals(2, hits.size());
+        assertEquals(1, hits.get(0).contactId);
+        assertEquals(2, hits.get(1).contactId);
+        
+        // Beyond the end of the route only the distance to the end counts
+        hits = CorridorQuery.query(index, new double[] { 10.0, 10.0 }, new double[] { 179.9, 179.995 }, 3000);
+        assertEquals(3, hits.size());
+        assertEquals(3, hits.get(2).contactId);
+        assertEquals(1, hits.get(2).metersAlongRoute / hits.get(1).metersAlongRoute, 1e-9);
+    }
+    
+    @Test
+    public void testMatchesSampledRoute() {
+        Random random = new Random(3);
+        double[] latitudes = new double[40];
+        double[] longitudes = new double[40];
+        latitudes[0] = 48;
+        longitudes[0] = 11;
+        for (int i = 1; i < latitudes.length; i++) {
+            latitudes[i] = latitudes[i - 1] + (random.nextDouble() - 0.3) * 0.05;
+            longitudes[i] = longitudes[i - 1] + (random.nextDouble() - 0.3) * 0.08;
+        }
+        Map<Long, double[]> contacts = new HashMap<>();
+        for (long id = 0; id < 3000; id++) {
+            double[] position = { 47.9 + random.nextDouble() * 1.5, 10.9 + random.nextDouble() * 2.5 };
+            contacts.put(id, position);
+            index.put(id, position[0], position[1]);
+        }
+        
+        double width = 2000;
+        Map<Long, CorridorQuery.Hit> hits = new HashMap<>();
+        for (CorridorQuery.Hit hit : CorridorQuery.query(index, latitudes, longitudes, width)) {
+            hits.put(hit.contactId, hit);
+        }
+        
+        // The route sampled every few meters as the reference
+        for (Map.Entry<Long, double[]> entry : contacts.entrySet()) {
+            double[] position = entry.getValue();
+            double closest = Double.MAX_VALUE;
+            for (int i = 0; i + 1 < latitudes.length; i++) {
+                for (int step = 0; step <= 1000; step++) {
+                    double f = step / 1000.0;
+                    closest = Math.min(closest, haversine(position[0], position[1],
+                            latitudes[i] + (latitudes[i + 1] - latitudes[i]) * f,
+                            longitudes[i] + (longitudes[i + 1] - longitudes[i]) * f));
+                }
+            }
+            CorridorQuery.Hit hit = hits.get(entry.getKey());
+            if (closest < width - 20) {
+                assertNotNull("Missing contact " + entry.getKey(), hit);
+            } else if (closest > width + 20) {
+                assertNull("Contact " + entry.getKey() + " outside", hit);
+            }
+            if (hit != null) {
+                assertEquals(closest, hit.metersFromRoute, 20);
+            }
+        }
+    }
+    
+    @Test
+    public void testSinglePointAndEmpty() {
+        index.put(1, 48.0, 11.0);
+        assertEquals(1, CorridorQuery.query(index, new double[] { 48.001 }, new double[] { 11.0 }, 200).size());
+        assertTrue(CorridorQuery.query(index, new double[0], new double[0], 200).isEmpty());
+        assertTrue(CorridorQuery.query(index, new double[] { 48.001 }, new double[] { 11.0 }, 0).isEmpty());
+    }
+    
+    private static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * NearestContactIndex.EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,158 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.SortKeys;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class GazetteerTest {
+    
+    private static final String LIST = "# name, latitude, longitude\n"
+            + "Munich\t48.1351\t11.5820\n"
+            + "Augsburg\t48.3705\t10.8978\n"
+            + "Suva\t-18.1248\t178.4501\n"
+            + "Dateline\t-16.0\t-179.6\n"
+            + "\n"
+            + "Broken\tnorth\t11.0\n"
+            + "Nowhere\t95.0\t11.0\n";
+    
+    @Test
+    public void testParseSkipsMalformedLines() throws IOException {
+        List<Gazetteer.Place> places = Gazetteer.parse(LIST);
+        assertEquals(4, places.size());
+        assertEquals("Munich", places.get(0).name);
+        assertEquals(-179.6, places.get(3).longitude, 1e-9);
+    }
+    
+    @Test
+    public void testDescribeRelativeToNearestPlace() throws IOException {
+        Gazetteer gazetteer = load(LIST);
+        assertEquals(4, gazetteer.size());
+        
+        // About 2.3 km north-east of Munich
+        double latitude = 48.1351 + 1600 / 111320.0;
+        double longitude = 11.5820 + 1600 / (111320.0 * Math.cos(Math.toRadians(48.1351)));
+        assertEquals("2.3 km NE of Munich", gazetteer.describe(latitude, longitude));
+        
+        // At the place itself only its name
+        assertEquals("Augsburg", gazetteer.describe(48.3710, 10.8980));
+        
+        // No place within the searched cells
+        assertNull(gazetteer.describe(0, 0));
+    }
+    
+    @Test
+    public void testNearestAcrossTheAntimeridian() throws IOException {
+        Gazetteer gazetteer = load(LIST);
+        Gazetteer.Place place = gazetteer.nearest(-18.0, -179.9);
+        assertNotNull(place);
+        assertEquals("Suva", place.name);
+        place = gazetteer.nearest(-16.1, 179.9);
+        assertNotNull(place);
+        assertEquals("Dateline", place.name);
+    }
+    
+    @Test
+    public void testNearestMatchesFullScan() throws IOException {
+        Random random = new Random(3);
+        List<Gazetteer.Place> places = new ArrayList<>();
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            double latitude = 40 + random.nextDouble() * 20;
+            double longitude = random.nextDouble() * 30;
+            places.add(new Gazetteer.Place("P" + i, latitude, longitude));
+            list.append("P").append(i).append('\t').append(latitude).append('\t').append(longitude).append('\n');
+        }
+        Gazetteer gazetteer = load(list.toString());
+        for (int q = 0; q < 500; q++) {
+            double latitude = 41 + random.nextDouble() * 18;
+            double longitude = 1 + random.nextDouble() * 28;
+            Gazetteer.Place found = gazetteer.nearest(latitude, longitude);
+            assertNotNull(found);
+            double best = Double.POSITIVE_INFINITY;
+            for (Gazetteer.Place place : places) {
+                best = Math.min(best, SortKeys.distanceMeters(latitude, longitude, place.latitude, place.longitude));
+            }
+            // The index compares flat distances, which differ from the sphere by well under a percent here
+            double distance = SortKeys.distanceMeters(latitude, longitude, found.latitude, found.longitude);
+            assertTrue(distance <= best * 1.01 + 1);
+        }
+    }
+    
+    @Test
+    public void testIndexIsCompiledAgainWhenTheListChanges() throws IOException {
+        File index = File.createTempFile("gazetteer", ".idx");
+        index.deleteOnExit();
+        assertTrue(index.delete());
+        Gazetteer.load(stream(LIST), index);
+        long checksum = Gazetteer.checksum(index);
+        assertTrue(checksum >= 0);
+        long length = index.length();
+        
+        // The same list reuses the index
+        assertEquals(4, Gazetteer.load(stream(LIST), index).size());
+        assertEquals(checksum, Gazetteer.checksum(index));
+        
+        Gazetteer changed = Gazetteer.load(stream(LIST + "Ingolstadt\t48.7665\t11.4258\n"), index);
+        assertEquals(5, changed.size());
+        assertNotEquals(checksum, Gazetteer.checksum(index));
+        assertTrue(index.length() > length);
+    }
+    
+    @Test
+    public void testBundledListParses() throws IOException {
+        // Gradle runs the unit tests in the module directory, an IDE may use the project directory
+        File asset = new File("src/main/assets/gazetteer.tsv");
+        if (!asset.isFile()) {
+            asset = new File("app/src/main/assets/gazetteer.tsv");
+        }
+        assertTrue("Bundled gazetteer not found", asset.isFile());
+        InputStream source = new FileInputStream(asset);
+        try {
+            String list = new String(readAll(source), StandardCharsets.UTF_8);
+            int lines = 0;
+            for (String line : list.split("\n")) {
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    lines++;
+                }
+            }
+            assertEquals(lines, Gazetteer.parse(list).size());
+            assertEquals("Munich", load(list).nearest(48.2, 11.6).name);
+        } finally {
+            source.close();
+        }
+    }
+    
+    private static Gazetteer load(String list) throws IOException {
+        File index = File.createTempFile("gazetteer", ".idx");
+        index.deleteOnExit();
+        assertTrue(index.delete());
+        return Gazetteer.load(stream(list), index);
+    }
+    
+    private static InputStream stream(String list) {
+        return new ByteArrayInputStream(list.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,120 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GeofenceEngineTest {
+    
+    // About one meter in latitude
+    private static final double METER = 1 / 111195.0;
+    
+    private GeofenceEngine engine;
+    private final List<String> events = new ArrayList<>();
+    
+    @Before
+    public void setUp() {
+        engine = new GeofenceEngine();
+        engine.setListener(new GeofenceEngine.Listener() {
+            @Override
+            public void onEnter(long contactId, double meters) {
+                events.add("enter " + contactId);
+            }
+            
+            @Override
+            public void onExit(long contactId, double meters) {
+                events.add("exit " + contactId);
+            }
+        });
+    }
+    
+    /**
+     * Feeds positions north of (48, 11) at the given distances in meters
+     */
+    private void walk(double... meters) {
+        for (double m : meters) {
+            engine.update(48.0 + m * METER, 11.0);
+        }
+    }
+    
+    @Test
+    public void testEnterAndExitWithHysteresis() {
+        engine.setRadius(1, 100);
+        engine.setLocation(1, 48.0, 11.0);
+        
+        walk(500, 200, 101, 99);
+        assertEquals("[enter 1]", events.toString());
+        
+        // Jitter around the edge stays inside until beyond 125 m
+        walk(105, 98, 120, 95, 124);
+        assertEquals("[enter 1]", events.toString());
+        assertTrue(engine.isInside(1));
+        
+        walk(126);
+        assertEquals("[enter 1, exit 1]", events.toString());
+        walk(110, 102);
+        assertEquals("[enter 1, exit 1]", events.toString());
+    }
+    
+    @Test
+    public void testLeavingFarAwayInOneFix() {
+        engine.setRadius(1, 100);
+        engine.setLocation(1, 48.0, 11.0);
+        walk(50);
+        // A jump far beyond every exit radius is not found by the range query
+        walk(50000);
+        assertEquals("[enter 1, exit 1]", events.toString());
+    }
+    
+    @Test
+    public void testOnlyFencedContactsAreWatched() {
+        engine.setLocation(1, 48.0, 11.0);
+        walk(0);
+        assertTrue(events.isEmpty());
+        
+        // Fences are checked against the last position when set or moved
+        engine.setRadius(2, 1000);
+        engine.setLocation(2, 48.0, 11.0);
+        assertEquals("[enter 2]", events.toString());
+        engine.setLocation(2, 49.0, 11.0);
+        assertEquals("[enter 2, exit 2]", events.toString());
+        
+        engine.setRadius(2, 0);
+        assertEquals(0, engine.size());
+    }
+    
+    @Test
+    public void testSaveAndRestoreRadii() {
+        engine.setRadius(12, 250);
+        engine.setRadius(40, 1000);
+        
+        GeofenceEngine restored = new GeofenceEngine();
+        restored.restoreRadii(engine.saveRadii() + ";bad;7:x");
+        assertEquals(2, restored.size());
+        assertEquals(250, restored.getRadius(12), 0);
+        assertEquals(1000, restored.getRadius(40), 0);
+        assertEquals(0, restored.getRadius(7), 0);
+    }
+    
+    @Test
+    public void testManyFences() {
+        // A grid of fences about 1.1 km apart
+        long id = 0;
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 100; j++) {
+                engine.setRadius(id, 200);
+                engine.setLocation(id, 48.0 + i * 0.01, 11.0 + j * 0.015);
+                id++;
+            }
+        }
+        engine.update(48.5, 11.75);
+        assertEquals("[enter " + (50 * 100 + 50) + "]", events.toString());
+        engine.update(48.505, 11.75);
+        assertEquals(2, events.size());
+        assertEquals(10000, engine.getRadii().size());
+    }
+}
@@ -0,0 +1,132 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class NearestContactIndexTest {
+    
+    private NearestContactIndex index;
+    
+    @Before
+    public void setUp() {
+        index = new NearestContactIndex();
+    }
+    
+    @Test
+    public void testNearestWithDistances() {
+        index.put(1, 48.137, 11.575);  // Munich
+        index.put(2, 52.520, 13.405);  // Berlin
+        index.put(3, 48.208, 16.373);  // Vienna
+        
+        List<NearestContactIndex.Neighbor> nearest = index.nearest(48.137, 11.575, 2, 0);
+        assertEquals(2, nearest.size());
+        assertEquals(1, nearest.get(0).contactId);
+        assertEquals(0, nearest.get(0).meters, 0.001);
+        assertEquals(3, nearest.get(1).contactId);
+        // Munich to Vienna is about 355 km
+        assertEquals(355000, nearest.get(1).meters, 3000);
+    }
+    
+    @Test
+    public void testMaxDistance() {
+        index.put(1, 48.137, 11.575);
+        index.put(2, 52.520, 13.405);
+        
+        List<NearestContactIndex.Neighbor> nearest = index.nearest(48.14, 11.58, 10, 10000);
+        assertEquals(1, nearest.size());
+        assertEquals(1, nearest.get(0).contactId);
+        assertTrue(index.nearest(0, 0, 10, 1000).isEmpty());
+    }
+    
+    @Test
+    public void testMatchesBruteForceAfterChanges() {
+        Random random = new Random(42);
+        double[][] positions = new double[2000][];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new double[] { random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180 };
+            index.put(i, positions[i][0], positions[i][1]);
+        }
+        // Moves and removals, enough to rebuild the tree several times
+        for (int i = 0; i < 1500; i++) {
+            int id = random.nextInt(positions.length);
+            if (i % 3 == 0) {
+                positions[id] = null;
+                index.remove(id);
+            } else {
+                positions[id] = new double[] { random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180 };
+                index.put(id, positions[id][0], positions[id][1]);
+            }
+        }
+        
+        for (int q = 0; q < 50; q++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            List<NearestContactIndex.Neighbor> nearest = index.nearest(latitude, longitude, 10, 0);
+            
+            List<Double> expected = new ArrayList<>();
+            for (double[] position : positions) {
+                if (position != null) {
+                    expected.add(haversine(latitude, longitude, position[0], position[1]));
+                }
+            }
+            expected.sort(null);
+            assertEquals(10, nearest.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(expected.get(i), nearest.get(i).meters, 1.0);
+            }
+        }
+    }
+    
+    @Test
+    public void testWithinMatchesBruteForce() {
+        Random random = new Random(7);
+        double[][] positions = new double[3000][];
+        for (int i = 0; i < positions.length; i++) {
+            // Dense enough that a 50 km circle holds a few contacts
+            positions[i] = new double[] { 47 + random.nextDouble() * 3, 9 + random.nextDouble() * 5 };
+            index.put(i, positions[i][0], positions[i][1]);
+        }
+        for (int q = 0; q < 20; q++) {
+            double latitude = 47 + random.nextDouble() * 3;
+            double longitude = 9 + random.nextDouble() * 5;
+            int expected = 0;
+            for (double[] position : positions) {
+                if (haversine(latitude, longitude, position[0], position[1]) <= 50000) {
+                    expected++;
+                }
+            }
+            List<NearestContactIndex.Neighbor> within = index.within(latitude, longitude, 50000);
+            assertEquals(expected, within.size());
+            for (NearestContactIndex.Neighbor neighbor : within) {
+                assertTrue(neighbor.meters <= 50000);
+            }
+        }
+    }
+    
+    @Test
+    public void testRemove() {
+        index.put(1, 10, 10);
+        index.put(2, 10.1, 10.1);
+        index.remove(1);
+        
+        List<NearestContactIndex.Neighbor> nearest = index.nearest(10, 10, 5, 0);
+        assertEquals(1, nearest.size());
+        assertEquals(2, nearest.get(0).contactId);
+        assertEquals(1, index.size());
+    }
+    
+    private static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * NearestContactIndex.EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
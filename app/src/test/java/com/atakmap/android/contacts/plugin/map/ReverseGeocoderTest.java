@@ -0,0 +1,108 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReverseGeocoderTest {
+    
+    private final List<Runnable> work = new ArrayList<>();
+    private final List<Runnable> main = new ArrayList<>();
+    private final List<String> results = new ArrayList<>();
+    private int loads;
+    
+    private Gazetteer load() throws IOException {
+        loads++;
+        File index = File.createTempFile("gazetteer", ".idx");
+        index.deleteOnExit();
+        assertTrue(index.delete());
+        String list = "Munich\t48.1351\t11.5820\nAugsburg\t48.3705\t10.8978\n";
+        return Gazetteer.load(new ByteArrayInputStream(list.getBytes(StandardCharsets.UTF_8)), index);
+    }
+    
+    private void runAll() {
+        while (!work.isEmpty() || !main.isEmpty()) {
+            if (!work.isEmpty()) {
+                work.remove(0).run();
+            } else {
+                main.remove(0).run();
+            }
+        }
+    }
+    
+    @Test
+    public void testLookupIsCachedPerCell() {
+        ReverseGeocoder geocoder = new ReverseGeocoder(this::load, work::add, main::add);
+        geocoder.describe(48.1351, 11.5820, results::add);
+        // Nothing is looked up on the calling thread
+        assertTrue(results.isEmpty());
+        assertEquals(0, loads);
+        assertNull(geocoder.getCached(48.1351, 11.5820));
+        runAll();
+        assertEquals(1, loads);
+        assertEquals("Munich", results.get(0));
+        
+        // The same cell is answered at once
+        geocoder.describe(48.13512, 11.58203, results::add);
+        assertEquals(2, results.size());
+        assertEquals("Munich", results.get(1));
+        assertTrue(work.isEmpty());
+        assertEquals("Munich", geocoder.getCached(48.1351, 11.5820));
+    }
+    
+    @Test
+    public void testRequestsForOneCellShareTheLookup() {
+        ReverseGeocoder geocoder = new ReverseGeocoder(this::load, work::add, main::add);
+        geocoder.describe(48.3705, 10.8978, results::add);
+        geocoder.describe(48.3705, 10.8978, results::add);
+        assertEquals(1, work.size());
+        geocoder.describe(48.1351, 11.5820, results::add);
+        assertEquals(2, work.size());
+        runAll();
+        assertEquals(1, loads);
+        assertEquals(3, results.size());
+        assertEquals("Augsburg", results.get(0));
+        assertEquals("Augsburg", results.get(1));
+        assertEquals("Munich", results.get(2));
+    }
+    
+    @Test
+    public void testNoPlaceAndFailedLoad() {
+        ReverseGeocoder geocoder = new ReverseGeocoder(this::load, work::add, main::add);
+        geocoder.describe(0, 0, results::add);
+        runAll();
+        assertEquals(1, results.size());
+        assertNull(results.get(0));
+        // Cached as well
+        geocoder.describe(0, 0, results::add);
+        assertEquals(2, results.size());
+        assertTrue(work.isEmpty());
+        
+        ReverseGeocoder broken = new ReverseGeocoder(() -> {
+            loads++;
+            throw new IOException("missing");
+        }, work::add, main::add);
+        loads = 0;
+        broken.describe(48.1351, 11.5820, results::add);
+        broken.describe(48.3705, 10.8978, results::add);
+        runAll();
+        // The load is not retried for every position
+        assertEquals(1, loads);
+        assertNull(results.get(2));
+        assertNull(results.get(3));
+    }
+    
+    @Test
+    public void testCellsWrapAroundTheGlobe() {
+        assertEquals(ReverseGeocoder.cell(10, -180), ReverseGeocoder.cell(10, 180));
+        assertNotEquals(ReverseGeocoder.cell(10, 11), ReverseGeocoder.cell(10, 11 + 2 * ReverseGeocoder.CELL_DEGREES));
+        assertEquals(ReverseGeocoder.cell(90, 0), ReverseGeocoder.cell(90 - ReverseGeocoder.CELL_DEGREES / 2, 0));
+    }
+}
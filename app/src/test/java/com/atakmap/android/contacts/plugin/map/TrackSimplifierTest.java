@@ -0,0 +1,85 @@
+package com.atakmap.android.contacts.plugin.map;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.Track;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TrackSimplifierTest {
+    
+    // About one meter in latitude
+    private static final double METER = 1 / 111320.0;
+    
+    @Test
+    public void testStraightLineKeepsEnds() {
+        Track track = new Track(1);
+        for (int i = 0; i < 100; i++) {
+            track.add(i, 48.0 + i * 10 * METER, 11.0);
+        }
+        int[] kept = TrackSimplifier.simplify(track.latitudes(), track.longitudes(), track.size(), 1);
+        assertArrayEquals(new int[] { 0, 99 }, kept);
+    }
+    
+    @Test
+    public void testCornerIsKept() {
+        Track track = new Track(1);
+        for (int i = 0; i <= 50; i++) {
+            track.add(i, 48.0 + i * 10 * METER, 11.0);
+        }
+        // East along the parallel from the corner
+        for (int i = 1; i <= 50; i++) {
+            track.add(50 + i, 48.0 + 500 * METER, 11.0 + i * 0.0001);
+        }
+        int[] kept = TrackSimplifier.simplify(track.latitudes(), track.longitudes(), track.size(), 5);
+        assertArrayEquals(new int[] { 0, 50, 100 }, kept);
+        
+        Track simplified = track.subset(kept);
+        assertEquals(3, simplified.size());
+        assertEquals(50, simplified.getTime(1));
+    }
+    
+    @Test
+    public void testDroppedFixesStayWithinTolerance() {
+        // A random walk of a year of fixes, one every ten minutes
+        Random random = new Random(7);
+        Track track = new Track(1);
+        double latitude = 48.0;
+        double longitude = 11.0;
+        for (int i = 0; i < 52560; i++) {
+            latitude += (random.nextDouble() - 0.5) * 50 * METER;
+            longitude += (random.nextDouble() - 0.5) * 75 * METER;
+            track.add(i, latitude, longitude);
+        }
+        int[] kept = TrackSimplifier.simplify(track.latitudes(), track.longitudes(), track.size(), 20);
+        assertTrue(kept.length < track.size());
+        assertEquals(0, kept[0]);
+        assertEquals(track.size() - 1, kept[kept.length - 1]);
+        
+        double xScale = Math.cos(Math.toRadians(48.0));
+        for (int k = 0; k + 1 < kept.length; k++) {
+            int a = kept[k];
+            int b = kept[k + 1];
+            for (int i = a + 1; i < b; i++) {
+                double distance = Math.sqrt(TrackSimplifier.segmentDistanceSquared(
+                        track.getLongitude(i) * xScale, track.getLatitude(i),
+                        track.getLongitude(a) * xScale, track.getLatitude(a),
+                        track.getLongitude(b) * xScale, track.getLatitude(b))) / METER;
+                assertTrue(distance <= 20.5);
+            }
+        }
+    }
+    
+    @Test
+    public void testTrackAcrossTheAntimeridian() {
+        Track track = new Track(1);
+        track.add(0, 0.0, 179.999);
+        track.add(1, 0.0, -179.9995);
+        track.add(2, 0.0, -179.998);
+        // Without unwrapping the middle fix would be far off the line
+        assertArrayEquals(new int[] { 0, 2 },
+                TrackSimplifier.simplify(track.latitudes(), track.longitudes(), track.size(), 1));
+    }
+}
@@ -0,0 +1,74 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.search.ContactSearchEngine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ContactDistancesTest {
+    
+    @Test
+    public void testBearings() {
+        assertEquals(0, SortKeys.bearingDegrees(48, 11, 49, 11), 1e-6);
+        assertEquals(90, SortKeys.bearingDegrees(0, 11, 0, 12), 1e-6);
+        assertEquals(180, SortKeys.bearingDegrees(49, 11, 48, 11), 1e-6);
+        assertEquals(270, SortKeys.bearingDegrees(0, 12, 0, 11), 1e-6);
+    }
+    
+    @Test
+    public void testComputedDistancesAreOnlyAppliedLater() {
+        List<Contact> contacts = new ArrayList<>();
+        contacts.add(new Contact(1, "North", "", "", 48.01, 11.0));
+        contacts.add(new Contact(2, "Nowhere", "", ""));
+        
+        ContactDistances distances = ContactDistances.compute(contacts, 48.0, 11.0);
+        assertTrue(Double.isNaN(contacts.get(0).getSortDistance()));
+        
+        distances.apply();
+        assertEquals(1112, contacts.get(0).getSortDistance(), 1);
+        assertEquals(0, contacts.get(0).getSortBearing(), 0.01);
+        assertTrue(Double.isNaN(contacts.get(1).getSortDistance()));
+        assertEquals("1.1 km 000°", ContactDistances.format(contacts.get(0)));
+        assertNull(ContactDistances.format(contacts.get(1)));
+    }
+    
+    @Test
+    public void testOnlyMovesPastTheThresholdCount() {
+        double[] origin = { 48.0, 11.0 };
+        assertTrue(ContactDistances.hasMoved(null, 48.0, 11.0));
+        // About 11 m
+        assertFalse(ContactDistances.hasMoved(origin, 48.0001, 11.0));
+        // About 111 m
+        assertTrue(ContactDistances.hasMoved(origin, 48.001, 11.0));
+    }
+    
+    @Test
+    public void testEngineResortsByNewDistances() {
+        ContactSearchEngine engine = new ContactSearchEngine();
+        List<Contact> contacts = new ArrayList<>();
+        contacts.add(new Contact(1, "Berlin", "", "", 52.52, 13.40));
+        contacts.add(new Contact(2, "Munich", "", "", 48.14, 11.58));
+        engine.setContacts(contacts);
+        engine.setSortMode(SortMode.DISTANCE);
+        engine.setDistanceOrigin(48.14, 11.58);
+        assertEquals("Munich", engine.getContacts().get(0).getName());
+        
+        ContactDistances distances = ContactDistances.compute(new ArrayList<>(engine.getContacts()), 52.5, 13.4);
+        assertTrue(engine.setDistances(distances));
+        assertEquals("Berlin", engine.getContacts().get(0).getName());
+        
+        engine.setSortMode(SortMode.NAME);
+        assertFalse(engine.setDistances(distances));
+    }
+    
+    @Test
+    public void testFormatDistance() {
+        assertEquals("850 m", ContactDistances.formatDistance(850.4));
+        assertEquals("1.2 km", ContactDistances.formatDistance(1230));
+        assertEquals("12.5 km", ContactDistances.formatDistance(12460));
+    }
+}
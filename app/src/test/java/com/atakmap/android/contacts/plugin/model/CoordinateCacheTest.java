@@ -0,0 +1,65 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CoordinateCacheTest {
+    
+    @Test
+    public void testConvertedOncePerLocation() {
+        CoordinateCache cache = new CoordinateCache();
+        Contact contact = new Contact(1, "Tower", "", "", 48.8582, 2.2945);
+        assertEquals("31U DQ 48251 11932", cache.format(contact, CoordinateFormat.MGRS));
+        assertEquals("31U DQ 48251 11932", cache.format(new Contact(contact), CoordinateFormat.MGRS));
+        assertEquals(1, cache.getConversionCount());
+        
+        // Another format of the same location is a new conversion, kept alongside
+        cache.format(contact, CoordinateFormat.DMS);
+        assertEquals(2, cache.getConversionCount());
+        cache.format(contact, CoordinateFormat.MGRS);
+        assertEquals(2, cache.getConversionCount());
+        
+        // A moved contact is converted again
+        Contact moved = new Contact(contact);
+        moved.setLocation(48.8583, 2.2945);
+        assertNotEquals("31U DQ 48251 11932", cache.format(moved, CoordinateFormat.MGRS));
+        assertEquals(3, cache.getConversionCount());
+        
+        assertNull(cache.format(new Contact(2, "Nowhere", "", ""), CoordinateFormat.MGRS));
+    }
+    
+    @Test
+    public void testRepeatedBatchIsNotConvertedAgain() {
+        CoordinateCache cache = new CoordinateCache();
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            if (i % 10 == 0) {
+                contacts.add(new Contact(i, "C" + i, "", ""));
+            } else {
+                contacts.add(new Contact(i, "C" + i, "", "", 40 + (i % 1000) * 0.01, 10 + (i / 1000) * 0.01));
+            }
+        }
+        String[] first = cache.formatAll(contacts, CoordinateFormat.MGRS);
+        assertEquals(90000, cache.getConversionCount());
+        assertNull(first[0]);
+        assertEquals(Coordinates.toMgrs(contacts.get(1).getLatitude(), contacts.get(1).getLongitude()), first[1]);
+        
+        String[] second = cache.formatAll(contacts, CoordinateFormat.MGRS);
+        assertEquals(90000, cache.getConversionCount());
+        assertArrayEquals(first, second);
+        assertSame(first[1], second[1]);
+        
+        // Single lookups find the batch entries
+        cache.format(contacts.get(5), CoordinateFormat.MGRS);
+        assertEquals(90000, cache.getConversionCount());
+        
+        cache.retain(contacts.subList(0, 10));
+        assertEquals(9, cache.size());
+        cache.remove(1);
+        assertEquals(8, cache.size());
+    }
+}
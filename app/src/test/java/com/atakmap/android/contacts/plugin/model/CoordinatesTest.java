@@ -0,0 +1,87 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class CoordinatesTest {
+    
+    // Eiffel Tower
+    private static final double LATITUDE = 48.8582;
+    private static final double LONGITUDE = 2.2945;
+    
+    @Test
+    public void testFormats() {
+        assertEquals("31U DQ 48251 11932", Coordinates.toMgrs(LATITUDE, LONGITUDE));
+        assertEquals("31U 448251 5411932", Coordinates.toUtm(LATITUDE, LONGITUDE));
+        assertEquals("48°51'29.52\"N 002°17'40.20\"E", Coordinates.toDms(LATITUDE, LONGITUDE));
+        assertEquals("33°51'00.00\"S 151°12'54.00\"W", Coordinates.toDms(-33.85, -151.215));
+        // Seconds that round up carry into the minute
+        assertEquals("10°01'00.00\"N 010°00'00.00\"E", Coordinates.toDms(10.0166666666, 10));
+        
+        assertNull(Coordinates.toMgrs(85, 0));
+        assertEquals("85.000000, 0.000000", CoordinateFormat.UTM.format(85, 0));
+    }
+    
+    @Test
+    public void testZoneExceptions() {
+        // Bergen is in the widened zone 32, Svalbard in the odd zones only
+        assertTrue(Coordinates.toMgrs(60.39, 5.32).startsWith("32V "));
+        assertTrue(Coordinates.toMgrs(78.22, 15.63).startsWith("33X "));
+        assertTrue(Coordinates.toMgrs(78.22, 8.9).startsWith("31X "));
+        // 180 degrees east is the start of zone 1
+        assertTrue(Coordinates.toUtm(0.5, 180).startsWith("1N "));
+    }
+    
+    @Test
+    public void testParseFormats() {
+        assertPosition(LATITUDE, LONGITUDE, 2, Coordinates.parse("31U DQ 48251 11932"));
+        assertPosition(LATITUDE, LONGITUDE, 2, Coordinates.parse("31udq4825111932"));
+        assertPosition(LATITUDE, LONGITUDE, 2, Coordinates.parse("31U 448251 5411932"));
+        assertPosition(LATITUDE, LONGITUDE, 2, Coordinates.parse("31U 448251mE 5411932mN"));
+        assertPosition(LATITUDE, LONGITUDE, 1, Coordinates.parse("48°51'29.52\"N 002°17'40.20\"E"));
+        assertPosition(LATITUDE, LONGITUDE, 1, Coordinates.parse("N 48 51 29.52, E 2 17 40.2"));
+        assertPosition(LATITUDE, LONGITUDE, 1, Coordinates.parse("2 17 40.2 E 48 51 29.52 N"));
+        assertPosition(LATITUDE, LONGITUDE, 1, Coordinates.parse("48.8582, 2.2945"));
+        assertPosition(-33.85, -151.215, 1, Coordinates.parse("33 51 S 151 12.9 W"));
+        assertPosition(-33.85, -151.215, 1, Coordinates.parse("-33 51 0, -151 12 54"));
+        // A 1 km MGRS square is read as its middle
+        assertPosition(LATITUDE, LONGITUDE, 800, Coordinates.parse("31U DQ 48 11"));
+    }
+    
+    @Test
+    public void testParseRejectsInvalidText() {
+        assertNull(Coordinates.parse(null));
+        assertNull(Coordinates.parse(""));
+        assertNull(Coordinates.parse("hello"));
+        assertNull(Coordinates.parse("91, 10"));
+        assertNull(Coordinates.parse("48 61 0 N 11 0 0 E"));
+        assertNull(Coordinates.parse("48 N 11 N"));
+        assertNull(Coordinates.parse("31U DQ 4825 11932"));
+        assertNull(Coordinates.parse("31U DI 48251 11932"));
+        assertNull(Coordinates.parse("1 2 3"));
+    }
+    
+    @Test
+    public void testRoundTripsAcrossTheGlobe() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            double latitude = -80 + random.nextDouble() * 164;
+            double longitude = -180 + random.nextDouble() * 360;
+            String mgrs = Coordinates.toMgrs(latitude, longitude);
+            assertNotNull(mgrs);
+            assertPosition(latitude, longitude, 2, Coordinates.parse(mgrs));
+            assertEquals(mgrs, Coordinates.toMgrs(Coordinates.parse(mgrs)[0], Coordinates.parse(mgrs)[1]));
+            assertPosition(latitude, longitude, 2, Coordinates.parse(Coordinates.toUtm(latitude, longitude)));
+            assertPosition(latitude, longitude, 1, Coordinates.parse(Coordinates.toDms(latitude, longitude)));
+        }
+    }
+    
+    private static void assertPosition(double latitude, double longitude, double meters, double[] position) {
+        assertNotNull(position);
+        double distance = SortKeys.distanceMeters(latitude, longitude, position[0], position[1]);
+        assertTrue("Off by " + distance + " m at " + latitude + ", " + longitude, distance <= meters);
+    }
+}
@@ -0,0 +1,166 @@
+package com.atakmap.android.contacts.plugin.model;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.search.ContactSearchEngine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class SortKeysTest {
+    
+    @Test
+    public void testUmlautsSortWithTheirBaseLetter() {
+        List<Contact> contacts = new ArrayList<>();
+        contacts.add(new Contact(1, "Zander", "", ""));
+        contacts.add(new Contact(2, "Özil", "", ""));
+        contacts.add(new Contact(3, "Oswald", "", ""));
+        contacts.add(new Contact(4, "otto", "", ""));
+        
+        Collections.sort(contacts, ContactOrder.BY_NAME);
+        
+        // Byte order would put Özil after Zander and otto after Oswald
+        assertEquals("Oswald", contacts.get(0).getName());
+        assertEquals("otto", contacts.get(1).getName());
+        assertEquals("Özil", contacts.get(2).getName());
+        assertEquals("Zander", contacts.get(3).getName());
+    }
+    
+    @Test
+    public void testKeyIsCachedAndDroppedOnRename() {
+        Contact contact = new Contact(1, "Anna", "", "");
+        byte[] key = SortKeys.of(contact);
+        assertSame(key, SortKeys.of(contact));
+        
+        contact.setName("Berta");
+        assertNull(contact.getSortKey());
+        assertTrue(SortKeys.compare(key, SortKeys.of(contact)) < 0);
+    }
+    
+    @Test
+    public void testCompareIsUnsigned() {
+        assertTrue(SortKeys.compare(new byte[] { 0x10 }, new byte[] { (byte) 0x90 }) < 0);
+        assertTrue(SortKeys.compare(new byte[] { 1 }, new byte[] { 1, 0 }) < 0);
+    }
+    
+    @Test
+    public void testSortModes() {
+        ContactSearchEngine engine = new ContactSearchEngine();
+        List<Contact> contacts = new ArrayList<>();
+        contacts.add(new Contact(1, "Far", "", "", 52.52, 13.40));
+        contacts.add(new Contact(2, "Near", "", "", 48.14, 11.58));
+        contacts.add(new Contact(3, "Nowhere", "", ""));
+        contacts.get(2).setLastUsed(1000);
+        engine.setContacts(contacts);
+        
+        engine.setSortMode(SortMode.RECENT);
+        assertEquals("Nowhere", engine.getContacts().get(0).getName());
+        
+        engine.setDistanceOrigin(48.13, 11.57);
+        engine.setSortMode(SortMode.DISTANCE);
+        assertEquals("Near", engine.getContacts().get(0).getName());
+        assertEquals("Far", engine.getContacts().get(1).getName());
+        // Contacts without location come last
+        assertEquals("Nowhere", engine.getContacts().get(2).getName());
+        
+        engine.setSortMode(SortMode.LOCATION_FIRST);
+        assertEquals("Far", engine.getContacts().get(0).getName());
+        assertEquals("Nowhere", engine.getContacts().get(2).getName());
+        
+        // Single changes keep the current order
+        engine.add(new Contact(4, "Aaron", "", "", 0.0, 0.0));
+        assertEquals("Aaron", engine.getContacts().get(0).getName());
+    }
+    
+    @Test
+    public void testSwitchingSortModeOn50kContacts() {
+        List<Contact> contacts = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 50_000; i++) {
+            Contact contact = new Contact(i, "Name " + random.nextInt(1_000_000), "", "");
+            if (random.nextBoolean()) {
+                contact.setLocation(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            }
+            contact.setLastUsed(random.nextInt(1000));
+            contacts.add(contact);
+        }
+        ContactSearchEngine engine = new ContactSearchEngine();
+        engine.setContacts(contacts);
+        engine.setDistanceOrigin(48.13, 11.57);
+        
+        // Sorted ahead of time like the adapter does on its worker
+        for (SortMode mode : SortMode.values()) {
+            List<Contact> sorted = ContactSearchEngine.sort(engine.getContacts(), mode);
+            assertTrue(engine.setOrder(mode, sorted, engine.getVersion()));
+        }
+        
+        long worstNanos = 0;
+        for (int round = 0; round < 5; round++) {
+            for (SortMode mode : SortMode.values()) {
+                long start = System.nanoTime();
+                engine.setSortMode(mode);
+                worstNanos = Math.max(worstNanos, System.nanoTime() - start);
+                assertEquals(ContactSearchEngine.sort(contacts, mode), engine.getContacts());
+            }
+        }
+        // Only lists are swapped, a full sort takes hundreds of milliseconds here
+        long worstMicros = worstNanos / 1000;
+        assertTrue("Worst " + worstMicros + " us", worstMicros < 5_000);
+    }
+    
+    @Test
+    public void testSortOrdersFollowChanges() {
+        Random random = new Random(5);
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            contacts.add(randomContact(i, random));
+        }
+        ContactSearchEngine engine = new ContactSearchEngine();
+        engine.setContacts(contacts);
+        engine.setDistanceOrigin(48.13, 11.57);
+        for (SortMode mode : SortMode.values()) {
+            engine.setOrder(mode, ContactSearchEngine.sort(engine.getContacts(), mode), engine.getVersion());
+        }
+        
+        // An order sorted before a change is outdated
+        int version = engine.getVersion();
+        List<Contact> outdated = ContactSearchEngine.sort(engine.getContacts(), SortMode.RECENT);
+        engine.remove(0);
+        assertFalse(engine.setOrder(SortMode.RECENT, outdated, version));
+        
+        for (int i = 0; i < 300; i++) {
+            long id = random.nextInt(600);
+            if (random.nextInt(3) == 0) {
+                engine.remove(id);
+            } else {
+                engine.update(randomContact(id, random));
+            }
+        }
+        List<Contact> expected = new ArrayList<>(engine.getContacts());
+        for (SortMode mode : SortMode.values()) {
+            engine.setSortMode(mode);
+            assertEquals(mode.name(), ContactSearchEngine.sort(expected, mode), engine.getContacts());
+        }
+        
+        // A new own position only outdates the distance order
+        engine.setSortMode(SortMode.NAME);
+        engine.setDistanceOrigin(52.52, 13.40);
+        assertTrue(engine.hasOrder(SortMode.RECENT));
+        assertFalse(engine.hasOrder(SortMode.DISTANCE));
+        engine.setSortMode(SortMode.DISTANCE);
+        assertEquals(ContactSearchEngine.sort(expected, SortMode.DISTANCE), engine.getContacts());
+    }
+    
+    private static Contact randomContact(long id, Random random) {
+        Contact contact = new Contact(id, "Name " + random.nextInt(1000), "", "");
+        if (random.nextBoolean()) {
+            contact.setLocation(random.nextDouble() * 10 + 45, random.nextDouble() * 10 + 5);
+        }
+        contact.setLastUsed(random.nextInt(100));
+        return contact;
+    }
+}
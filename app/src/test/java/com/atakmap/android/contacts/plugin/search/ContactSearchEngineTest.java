@@ -0,0 +1,96 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ContactSearchEngineTest {
+    
+    private ContactSearchEngine engine;
+    
+    @Before
+    public void setUp() {
+        List<Contact> contacts = new ArrayList<>();
+        contacts.add(new Contact(1, "Jane Smith", "987-654-3210", "Another note"));
+        contacts.add(new Contact(2, "John Doe", "123-456-7890", "Test notes"));
+        contacts.add(new Contact(3, "Johanna Berg", "555-555-5555", ""));
+        contacts.add(new Contact(4, "Mike Jones", "111-222-3333", ""));
+        
+        engine = new ContactSearchEngine();
+        engine.setContacts(contacts);
+    }
+    
+    @Test
+    public void testEmptyQueryReturnsAllContacts() {
+        assertEquals(4, engine.search("").size());
+        assertEquals(4, engine.search(null).size());
+    }
+    
+    @Test
+    public void testRefinementNarrowsResults() {
+        assertEquals(3, engine.search("jo").size());
+        
+        List<Contact> refined = engine.search("joh");
+        assertEquals(2, refined.size());
+        assertEquals("Johanna Berg", refined.get(0).getName());
+        assertEquals("John Doe", refined.get(1).getName());
+        
+        assertEquals(1, engine.search("john").size());
+    }
+    
+    @Test
+    public void testBackspaceReturnsCachedResult() {
+        List<Contact> first = engine.search("jo");
+        engine.search("joh");
+        
+        // Going back must hand out the cached list instead of recomputing
+        assertSame(first, engine.search("jo"));
+    }
+    
+    @Test
+    public void testSearchIsCaseInsensitive() {
+        assertEquals(engine.search("JOH").size(), engine.search("joh").size());
+    }
+    
+    @Test
+    public void testSetContactsDropsCachedResults() {
+        List<Contact> before = engine.search("jo");
+        
+        List<Contact> contacts = new ArrayList<>();
+        contacts.add(new Contact(5, "Joe Bloggs", "", ""));
+        engine.setContacts(contacts);
+        
+        List<Contact> after = engine.search("jo");
+        assertNotSame(before, after);
+        assertEquals(1, after.size());
+    }
+    
+    @Test
+    public void testAddUpdateRemoveKeepOrder() {
+        engine.add(new Contact(5, "Adam West", "", ""));
+        assertEquals("Adam West", engine.getContacts().get(0).getName());
+        
+        Contact previous = engine.update(new Contact(5, "Zack West", "", ""));
+        assertEquals("Adam West", previous.getName());
+        assertEquals("Zack West", engine.getContacts().get(4).getName());
+        
+        assertNotNull(engine.remove(5));
+        assertNull(engine.getContact(5));
+        assertEquals(4, engine.getContacts().size());
+    }
+    
+    @Test
+    public void testChangesDropCachedResults() {
+        assertEquals(2, engine.search("joh").size());
+        
+        engine.add(new Contact(6, "Johnny Cash", "", ""));
+        
+        assertEquals(3, engine.search("joh").size());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class FuzzyMatcherTest {
+    
+    private FuzzyMatcher matcher;
+    private ContactSearchEngine engine;
+    
+    @Before
+    public void setUp() {
+        matcher = new FuzzyMatcher();
+        
+        List<Contact> contacts = new ArrayList<>();
+        contacts.add(new Contact(1, "Hans Mueller", "0171 111111", ""));
+        contacts.add(new Contact(2, "Anna Schmidt", "0171 222222", "Works with Mueller"));
+        contacts.add(new Contact(3, "Muel Berger", "0171 333333", ""));
+        contacts.add(new Contact(4, "Jonathan Meyer", "0171 444444", ""));
+        
+        engine = new ContactSearchEngine();
+        engine.setContacts(contacts);
+        engine.setFuzzy(true);
+    }
+    
+    @Test
+    public void testDistance() {
+        assertEquals(0, matcher.distance("mueller", "mueller", 2));
+        assertEquals(1, matcher.distance("mueler", "mueller", 2));
+        // Swapped letters count as one edit
+        assertEquals(1, matcher.distance("mulele", "muelle", 2));
+        assertEquals(1, matcher.distance("schmitt", "schmidt", 2));
+        assertEquals(2, matcher.distance("shmitt", "schmidt", 2));
+    }
+    
+    @Test
+    public void testDistanceStopsAtBound() {
+        // Everything beyond the bound is reported as bound + 1
+        assertEquals(2, matcher.distance("abcdef", "uvwxyz", 1));
+        assertEquals(3, matcher.distance("a", "abcdefgh", 2));
+    }
+    
+    @Test
+    public void testTyposStillMatch() {
+        List<Contact> result = engine.search("mueler");
+        assertFalse(result.isEmpty());
+        assertEquals(1, result.get(0).getId());
+        
+        assertEquals(2, engine.search("shmidt").get(0).getId());
+        assertTrue(engine.search("xyzzy").isEmpty());
+    }
+    
+    @Test
+    public void testRanking() {
+        List<Contact> result = engine.search("muel");
+        // Exact word first, then prefix of a name, then notes
+        assertEquals(3, result.get(0).getId());
+        assertEquals(1, result.get(1).getId());
+        assertEquals(2, result.get(2).getId());
+    }
+    
+    @Test
+    public void testFuzzyToggleKeepsCachesApart() {
+        engine.setFuzzy(false);
+        assertTrue(engine.search("mueler").isEmpty());
+        
+        engine.setFuzzy(true);
+        assertFalse(engine.search("mueler").isEmpty());
+        assertTrue(engine.isRanked("mueler"));
+        assertFalse(engine.isRanked(""));
+    }
+    
+    @Test
+    public void testFuzzySearchOn50kNames() {
+        List<Contact> contacts = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            contacts.add(new Contact(i, randomWord(random) + " " + randomWord(random), "", ""));
+        }
+        engine.setContacts(contacts);
+        
+        // First query builds the index
+        engine.search("warmup");
+        
+        long worstNanos = 0;
+        for (int i = 0; i < 200; i++) {
+            Contact target = contacts.get(random.nextInt(contacts.size()));
+            String typo = withTypo(target.getName().toLowerCase().split(" ")[1], random);
+            
+            long start = System.nanoTime();
+            List<Contact> result = engine.search(typo);
+            worstNanos = Math.max(worstNanos, System.nanoTime() - start);
+            
+            assertTrue(typo, result.contains(target));
+        }
+        // Worst case of a keystroke, well within one search debounce even on slow build machines
+        long worstMicros = worstNanos / 1000;
+        assertTrue("Worst " + worstMicros + " us", worstMicros < 250_000);
+    }
+    
+    /**
+     * Swaps two adjacent letters somewhere inside the word
+     */
+    private static String withTypo(String word, Random random) {
+        int i = 1 + random.nextInt(word.length() - 2);
+        char[] chars = word.toCharArray();
+        char swap = chars[i];
+        chars[i] = chars[i + 1];
+        chars[i + 1] = swap;
+        return new String(chars);
+    }
+    
+    private static String randomWord(Random random) {
+        int length = 5 + random.nextInt(5);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
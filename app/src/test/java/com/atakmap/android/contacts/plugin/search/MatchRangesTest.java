@@ -0,0 +1,70 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MatchRangesTest {
+    
+    private ContactSearchEngine engine;
+    
+    @Before
+    public void setUp() {
+        engine = new ContactSearchEngine();
+    }
+    
+    @Test
+    public void testRangesAreInOriginalText() {
+        Contact contact = new Contact(1, "Hans Müller", "", "");
+        
+        // "mueller" is folded, the range covers the original "Müller"
+        MatchRanges ranges = engine.findMatches(contact, "mueller");
+        assertArrayEquals(new int[] { 5, 11 }, ranges.getName());
+        
+        // A match ending inside an expansion covers the whole letter
+        ranges = engine.findMatches(contact, "mu");
+        assertArrayEquals(new int[] { 5, 7 }, ranges.getName());
+        assertEquals(1L, ranges.getContactId());
+    }
+    
+    @Test
+    public void testAllOccurrencesInAllFields() {
+        Contact contact = new Contact(1, "Anna Hanna", "555-0100", "Meet Anna at the gate");
+        
+        MatchRanges ranges = engine.findMatches(contact, "ann");
+        assertArrayEquals(new int[] { 0, 3, 6, 9 }, ranges.getName());
+        assertArrayEquals(new int[] { 5, 8 }, ranges.getNotes());
+        assertEquals(0, ranges.getPhone().length);
+    }
+    
+    @Test
+    public void testPhoneDigitsAcrossSeparators() {
+        Contact contact = new Contact(1, "John Doe", "123-456-7890", "");
+        
+        MatchRanges ranges = engine.findMatches(contact, "4567");
+        assertArrayEquals(new int[] { 4, 9 }, ranges.getPhone());
+    }
+    
+    @Test
+    public void testFuzzyRangesCoverSimilarWords() {
+        Contact contact = new Contact(1, "Maria Schmidt", "", "Schmitt in Bonn");
+        engine.setFuzzy(true);
+        
+        MatchRanges ranges = engine.findMatches(contact, "shmidt");
+        assertArrayEquals(new int[] { 6, 13 }, ranges.getName());
+        assertArrayEquals(new int[] { 0, 7 }, ranges.getNotes());
+        
+        // Prefix of a longer word
+        ranges = engine.findMatches(contact, "mar");
+        assertArrayEquals(new int[] { 0, 3 }, ranges.getName());
+    }
+    
+    @Test
+    public void testEmptyQueryHasNoRanges() {
+        assertTrue(engine.findMatches(new Contact(1, "Anna", "", ""), "").isEmpty());
+        assertTrue(engine.findMatches(new Contact(1, null, null, null), "x").isEmpty());
+    }
+}
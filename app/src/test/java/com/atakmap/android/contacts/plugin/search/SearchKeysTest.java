@@ -0,0 +1,95 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SearchKeysTest {
+    
+    @Test
+    public void testGermanTransliteration() {
+        assertEquals("mueller", SearchKeys.fold("Müller"));
+        assertEquals("mueller", SearchKeys.fold("MUELLER"));
+        assertEquals("strasse", SearchKeys.fold("Straße"));
+        // Already decomposed input folds the same way
+        assertEquals("mueller", SearchKeys.fold("Mu\u0308ller"));
+    }
+    
+    @Test
+    public void testAccentsAreStripped() {
+        assertEquals("francois", SearchKeys.fold("François"));
+        assertEquals("helene", SearchKeys.fold("Hélène"));
+        assertEquals("lukasz", SearchKeys.fold("Łukasz"));
+        assertEquals("soeren", SearchKeys.fold("Søren"));
+    }
+    
+    @Test
+    public void testArabicTransliterations() {
+        assertEquals(SearchKeys.fold("Abd al Rahman"), SearchKeys.fold("ʿAbd al-Rahman"));
+        assertEquals("quray", SearchKeys.fold("Qurayʾ"));
+        assertEquals("omar", SearchKeys.fold("O'mar"));
+    }
+    
+    @Test
+    public void testAsciiIsOnlyLowerCased() {
+        assertEquals("john doe", SearchKeys.fold("John Doe"));
+        assertEquals("", SearchKeys.fold(null));
+    }
+    
+    @Test
+    public void testKeysAreKeptOnContact() {
+        Contact contact = new Contact(1, "Jürgen", "", "");
+        assertEquals("juergen", SearchKeys.name(contact));
+        assertEquals("juergen", contact.getNameKey());
+        
+        // Changing the name drops the stale key
+        contact.setName("Björn");
+        assertNull(contact.getNameKey());
+        assertEquals("bjoern", SearchKeys.name(contact));
+    }
+    
+    @Test
+    public void testSearchIgnoresAccents() {
+        List<Contact> contacts = new ArrayList<>();
+        contacts.add(new Contact(1, "Hans Müller", "", ""));
+        contacts.add(new Contact(2, "Anna Mueller", "", ""));
+        contacts.add(new Contact(3, "Zoë Dubois", "", "Café near the bridge"));
+        contacts.add(new Contact(4, "Paul Muller", "", ""));
+        ContactSearchEngine engine = new ContactSearchEngine();
+        engine.setContacts(contacts);
+        
+        // All three spellings find each other without fuzzy search
+        assertEquals(3, engine.search("mueller").size());
+        assertEquals(3, engine.search("Müller").size());
+        assertEquals(3, engine.search("muller").size());
+        assertEquals(3, engine.search("mull").size());
+        assertEquals(1, engine.search("zoe").size());
+        assertEquals(1, engine.search("cafe").size());
+    }
+    
+    @Test
+    public void testPlainKeys() {
+        assertEquals("muller", SearchKeys.plain(SearchKeys.fold("Müller")));
+        assertEquals("muller", SearchKeys.plain("mueller"));
+        assertEquals("gothe", SearchKeys.plain(SearchKeys.fold("Göthe")));
+        // Texts without a pair are returned as they are
+        String folded = "anna schmidt";
+        assertSame(folded, SearchKeys.plain(folded));
+    }
+    
+    @Test
+    public void testPlainMatchIsHighlighted() {
+        ContactSearchEngine engine = new ContactSearchEngine();
+        Contact contact = new Contact(1, "Hans Müller", "", "Meets Mueller");
+        
+        // "muller" covers "Müller" and "Mueller" in the original text
+        MatchRanges ranges = engine.findMatches(contact, "muller");
+        assertArrayEquals(new int[] { 5, 11 }, ranges.getName());
+        assertArrayEquals(new int[] { 6, 13 }, ranges.getNotes());
+    }
+}
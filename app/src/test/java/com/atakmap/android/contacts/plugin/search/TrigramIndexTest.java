@@ -0,0 +1,111 @@
+package com.atakmap.android.contacts.plugin.search;
+
+import static org.junit.Assert.*;
+
+import com.atakmap.android.contacts.plugin.model.Contact;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TrigramIndexTest {
+    
+    private TrigramIndex index;
+    
+    @Before
+    public void setUp() {
+        index = new TrigramIndex();
+        index.add(new Contact(1, "Alpha Bravo", "+49 171 2345678", "Liaison north sector"));
+        index.add(new Contact(2, "Charlie Delta", "555-0199", "Rally point east"));
+        index.add(new Contact(3, "Echo Foxtrot", "030 998877", ""));
+    }
+    
+    @Test
+    public void testShortQueryCannotUseIndex() {
+        assertNull(index.candidates("al"));
+    }
+    
+    @Test
+    public void testCandidatesFromEveryField() {
+        // Middle of a call sign
+        assertEquals(1, index.candidates("lie d").size());
+        // Last digits of a phone number
+        assertEquals(1, index.candidates("5678").size());
+        // Notes
+        assertEquals(1, index.candidates("rally").size());
+        // No contact contains "zzz"
+        assertEquals(0, index.candidates("zzz").size());
+    }
+    
+    @Test
+    public void testRemoveAndReAdd() {
+        index.remove(2);
+        assertEquals(0, index.candidates("charlie").size());
+        assertEquals(2, index.size());
+        
+        index.add(new Contact(2, "Charlie Golf", "", ""));
+        assertEquals(1, index.candidates("golf").size());
+        assertEquals(0, index.candidates("delta").size());
+    }
+    
+    @Test
+    public void testCompactionKeepsLiveContacts() {
+        // Enough removals to trigger compaction of dead slots
+        for (int i = 100; i < 3100; i++) {
+            index.add(new Contact(i, "Temp " + i, "", ""));
+        }
+        for (int i = 100; i < 3100; i++) {
+            index.remove(i);
+        }
+        assertEquals(3, index.size());
+        assertEquals(1, index.candidates("echo").size());
+    }
+    
+    @Test
+    public void testSubstringSearchOn100kContacts() {
+        ContactSearchEngine engine = new ContactSearchEngine();
+        List<Contact> contacts = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            contacts.add(new Contact(i, randomWord(random) + " " + randomWord(random),
+                    String.valueOf(1_000_000_000L + random.nextInt(900_000_000)), randomWord(random)));
+        }
+        engine.setContacts(contacts);
+        
+        // First query builds the index
+        engine.search("warmup");
+        
+        long[] nanos = new long[200];
+        for (int i = 0; i < nanos.length; i++) {
+            Contact target = contacts.get(random.nextInt(contacts.size()));
+            String name = target.getName().toLowerCase();
+            String fragment = name.substring(1, Math.min(name.length(), 5));
+            
+            long start = System.nanoTime();
+            List<Contact> result = engine.search(fragment);
+            nanos[i] = System.nanoTime() - start;
+            
+            assertTrue(result.contains(target));
+            engine.search("");
+        }
+        // A few milliseconds per query, with headroom for slow build machines
+        Arrays.sort(nanos);
+        long medianMicros = nanos[nanos.length / 2] / 1000;
+        long worstMicros = nanos[nanos.length - 1] / 1000;
+        assertTrue("Median " + medianMicros + " us", medianMicros < 10_000);
+        assertTrue("Worst " + worstMicros + " us", worstMicros < 100_000);
+    }
+    
+    private static String randomWord(Random random) {
+        int length = 4 + random.nextInt(6);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}